@@ -0,0 +1,84 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes the entries of a ZIP archive in the order they are put, either compressing them on worker
+ * threads ({@link ParallelZipWriter}) or on the calling thread ({@link SequentialZipWriter}).
+ */
+public interface ArchiveWriter extends AutoCloseable {
+
+  /**
+   * Supplies the data for one entry; may be called on a worker thread, and called again on the
+   * writing thread if the entry is stored uncompressed.
+   */
+  @FunctionalInterface
+  interface EntrySource {
+    InputStream open() throws IOException;
+  }
+
+  /** Writes the data for one entry; called on the thread that adds the entry. */
+  @FunctionalInterface
+  interface EntryWriter {
+    void write(OutputStream out) throws IOException;
+  }
+
+  /**
+   * Adds an entry whose data is read from a source.
+   *
+   * @param path the path of the entry in the archive
+   * @param source supplies the data of the entry
+   * @throws IOException if the entry or a previously added one could not be read or written
+   */
+  void putEntry(String path, EntrySource source) throws IOException;
+
+  /**
+   * Adds an entry whose data is written to the archive as it is produced.
+   *
+   * @param path the path of the entry in the archive
+   * @param writer writes the data of the entry; it must not close the stream it is given
+   * @throws IOException if the entry could not be written
+   */
+  void putStreamedEntry(String path, EntryWriter writer) throws IOException;
+
+  /**
+   * Adds an empty directory entry.
+   *
+   * @param path the path of the directory, ending with <code>/</code>
+   * @throws IOException if the entry or a previously added one could not be written
+   */
+  void putDirectory(String path) throws IOException;
+
+  /** @return the number of entries that have been written to the archive so far */
+  int getWrittenCount();
+
+  /**
+   * Completes the archive and closes the underlying stream.
+   *
+   * @throws IOException if an entry or the end of the archive could not be written
+   */
+  @Override
+  void close() throws IOException;
+
+  /**
+   * Closes the underlying stream without completing the archive; does nothing if the archive was
+   * already closed. The data written so far is not a valid ZIP file and should be deleted.
+   */
+  void abort();
+}
@@ -33,6 +33,7 @@
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -282,6 +283,166 @@ public void save() throws IOException {
 
     // Create the new file
     File newFile = new File(tmpDir, new GUID() + ".pak");
+    try {
+      addedFileSet.remove(CONTENT_FILE);
+      if (canSaveInParallel()) {
+        saveEntriesParallel(newFile, saveTimer);
+      } else {
+        saveEntries(newFile, saveTimer);
+      }
+
+      // Backup the original
+      saveTimer.start("backup");
+      File backupFile = new File(tmpDir, new GUID() + ".mv");
+      if (file.exists()) {
+        backupFile.delete(); // Always delete the old backup file first; renameTo() is very
+        // platform-dependent
+        if (!file.renameTo(backupFile)) {
+          saveTimer.start("backup file");
+          FileUtil.copyFile(file, backupFile);
+          file.delete();
+          saveTimer.stop("backup file");
+        }
+      }
+      saveTimer.stop("backup");
+
+      saveTimer.start("finalize");
+      // Finalize
+      if (!newFile.renameTo(file)) {
+        saveTimer.start("backup newFile");
+        FileUtil.copyFile(newFile, file);
+        saveTimer.stop("backup newFile");
+      }
+      if (backupFile.exists()) backupFile.delete();
+      saveTimer.stop("finalize");
+
+      dirty = false;
+    } finally {
+      saveTimer.start("cleanup");
+      try {
+        if (zFile != null) zFile.close();
+      } catch (IOException e) {
+        // ignore close exception
+      }
+      if (newFile.exists()) newFile.delete();
+      saveTimer.stop("cleanup");
+
+      if (log.isDebugEnabled()) log.debug(saveTimer);
+      saveTimer = null;
+    }
+  }
+
+  /**
+   * Returns whether the archive can be written by {@link ParallelZipWriter}, which does not support
+   * ZIP64 archives.
+   *
+   * @return <code>true</code> if the entries can be compressed in parallel
+   * @throws IOException if the original file cannot be read
+   */
+  private boolean canSaveInParallel() throws IOException {
+    int entries = addedFileSet.size() + 2;
+    long totalSize = 0;
+    for (String path : addedFileSet) {
+      totalSize += getExplodedFile(path).length();
+    }
+    File contentFile = getExplodedFile(CONTENT_FILE);
+    totalSize += contentFile.exists() ? contentFile.length() : 0;
+    if (file.exists()) {
+      for (ZipEntry entry : Collections.list(getZipFile().entries())) {
+        entries++;
+        totalSize += entry.getSize() < 0 ? ParallelZipWriter.MAX_ARCHIVE_SIZE : entry.getSize();
+      }
+    }
+    return ParallelZipWriter.canWrite(entries, totalSize);
+  }
+
+  /**
+   * Writes all entries to <code>newFile</code>, compressing them on worker threads. Entries still
+   * in the original archive are recompressed as well, as the ZIP API has no way to copy them raw.
+   *
+   * @param newFile the file to write the archive to
+   * @param saveTimer timer used to record how long each step takes
+   * @throws IOException If an I/O error occurs
+   */
+  private void saveEntriesParallel(File newFile, CodeTimer saveTimer) throws IOException {
+    try (ParallelZipWriter zout =
+        new ParallelZipWriter(
+            new BufferedOutputStream(new FileOutputStream(newFile)), Deflater.BEST_COMPRESSION)) {
+      saveTimer.start(CONTENT_FILE);
+      if (hasFile(CONTENT_FILE)) {
+        putParallelEntry(zout, CONTENT_FILE);
+      }
+      saveTimer.stop(CONTENT_FILE);
+
+      saveTimer.start(PROPERTY_FILE);
+      if (getPropertyMap().isEmpty()) {
+        removeFile(PROPERTY_FILE);
+      } else {
+        byte[] properties = xstream.toXML(getPropertyMap()).getBytes(StandardCharsets.UTF_8);
+        zout.putEntry(PROPERTY_FILE, () -> new ByteArrayInputStream(properties));
+      }
+      saveTimer.stop(PROPERTY_FILE);
+
+      // Now put each file
+      saveTimer.start("addFiles");
+      for (String path : addedFileSet) {
+        putParallelEntry(zout, path);
+      }
+      saveTimer.stop("addFiles");
+
+      // Copy the rest of the zip entries over
+      saveTimer.start("copyFiles");
+      if (file.exists()) {
+        ZipFile zipFile = getZipFile();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          if (!entry.isDirectory()
+              && !addedFileSet.contains(entry.getName())
+              && !removedFileSet.contains(entry.getName())
+              && !CONTENT_FILE.equals(entry.getName())
+              && !PROPERTY_FILE.equals(entry.getName())) {
+            zout.putEntry(entry.getName(), () -> zipFile.getInputStream(entry));
+          } else if (entry.isDirectory()) {
+            zout.putDirectory(entry.getName());
+          }
+        }
+      }
+      saveTimer.stop("copyFiles");
+
+      // Closing waits for the workers, so the original zip must stay open until then
+      saveTimer.start("close");
+    }
+    saveTimer.stop("close");
+
+    try {
+      if (zFile != null) zFile.close();
+    } catch (IOException e) {
+      // ignore close exception
+    }
+    zFile = null;
+  }
+
+  private void putParallelEntry(ParallelZipWriter zout, String path) throws IOException {
+    File explodedFile = getExplodedFile(path);
+    if (explodedFile.exists()) {
+      zout.putEntry(path, () -> FileUtil.getFileAsInputStream(explodedFile));
+    } else {
+      ZipFile zipFile = getZipFile();
+      ZipEntry entry = new ZipEntry(path);
+      zout.putEntry(path, () -> zipFile.getInputStream(entry));
+    }
+  }
+
+  /**
+   * Writes all entries to <code>newFile</code> on the calling thread. Used for archives that are
+   * too large for {@link ParallelZipWriter}.
+   *
+   * @param newFile the file to write the archive to
+   * @param saveTimer timer used to record how long each step takes
+   * @throws IOException If an I/O error occurs
+   */
+  private void saveEntries(File newFile, CodeTimer saveTimer) throws IOException {
     ZipOutputStream zout =
         new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(newFile)));
     zout.setLevel(Deflater.BEST_COMPRESSION); // fast compression
@@ -304,7 +465,6 @@ public void save() throws IOException {
 
       // Now put each file
       saveTimer.start("addFiles");
-      addedFileSet.remove(CONTENT_FILE);
       for (String path : addedFileSet) {
         saveEntry(zout, path);
       }
@@ -313,7 +473,7 @@ public void save() throws IOException {
       // Copy the rest of the zip entries over
       saveTimer.start("copyFiles");
       if (file.exists()) {
-        Enumeration<? extends ZipEntry> entries = zFile.entries();
+        Enumeration<? extends ZipEntry> entries = getZipFile().entries();
         while (entries.hasMoreElements()) {
           ZipEntry entry = entries.nextElement();
           if (!entry.isDirectory()
@@ -352,46 +512,8 @@ public void save() throws IOException {
       IOUtils.closeQuietly(zout);
       zout = null;
       saveTimer.stop("close");
-
-      // Backup the original
-      saveTimer.start("backup");
-      File backupFile = new File(tmpDir, new GUID() + ".mv");
-      if (file.exists()) {
-        backupFile.delete(); // Always delete the old backup file first; renameTo() is very
-        // platform-dependent
-        if (!file.renameTo(backupFile)) {
-          saveTimer.start("backup file");
-          FileUtil.copyFile(file, backupFile);
-          file.delete();
-          saveTimer.stop("backup file");
-        }
-      }
-      saveTimer.stop("backup");
-
-      saveTimer.start("finalize");
-      // Finalize
-      if (!newFile.renameTo(file)) {
-        saveTimer.start("backup newFile");
-        FileUtil.copyFile(newFile, file);
-        saveTimer.stop("backup newFile");
-      }
-      if (backupFile.exists()) backupFile.delete();
-      saveTimer.stop("finalize");
-
-      dirty = false;
     } finally {
-      saveTimer.start("cleanup");
-      try {
-        if (zFile != null) zFile.close();
-      } catch (IOException e) {
-        // ignore close exception
-      }
-      if (newFile.exists()) newFile.delete();
       IOUtils.closeQuietly(zout);
-      saveTimer.stop("cleanup");
-
-      if (log.isDebugEnabled()) log.debug(saveTimer);
-      saveTimer = null;
     }
   }
 
@@ -419,10 +541,13 @@ public void setContent(Object content) throws IOException {
    * associated with the temporary location. The caller is then expected to open and write their
    * data to the file which will later be added to the ZIP file.
    *
+   * <p>This is synchronized so that files can be added from several threads at once, as is done
+   * when assets are saved.
+   *
    * @param path path within the ZIP to write to
    * @return the <code>File</code> object for the temporary location
    */
-  private File putFileImpl(String path) {
+  private synchronized File putFileImpl(String path) {
     if (!tmpFile.exists()) tmpFile.getParentFile().mkdirs();
 
     // Have to store it in the exploded area since we can't directly save it to the zip
@@ -0,0 +1,538 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a ZIP archive whose entries are compressed on a pool of worker threads.
+ *
+ * <p>{@link java.util.zip.ZipOutputStream} compresses each entry on the calling thread, which
+ * leaves all but one core idle while a large campaign is saved. This writer hands every entry to a
+ * worker that streams it through a deflater into a memory buffer; the calling thread then appends
+ * the finished buffers to the archive in submission order. The number of entries in flight is
+ * bounded, so memory use is proportional to the number of workers and not to the size of the
+ * archive. The workers are shared by all writers.
+ *
+ * <p>Large entries that are generated rather than read, such as serialized XML, can be streamed
+ * into the archive with {@link #putStreamedEntry(String, EntryWriter)} instead, which compresses
+ * them on the calling thread without ever holding the whole entry in memory.
+ *
+ * <p>Entries whose data does not shrink when deflated (PNG and JPEG images, mostly) are written
+ * <code>STORED</code> instead; their source is opened a second time and copied straight into the
+ * archive, so they aren't held in memory either. The archive does not use any ZIP64 extensions, so
+ * callers must keep the archive under {@link #MAX_ENTRIES} entries and {@link #MAX_ARCHIVE_SIZE}
+ * bytes; see {@link #canWrite(int, long)}.
+ */
+public class ParallelZipWriter implements ArchiveWriter {
+
+  /** The maximum number of entries that can be written without ZIP64 extensions. */
+  public static final int MAX_ENTRIES = 0xFFFF;
+
+  /**
+   * The maximum total (uncompressed) size of all entries that is accepted. This leaves room below
+   * the 4GB ZIP offset limit for the headers and central directory.
+   */
+  public static final long MAX_ARCHIVE_SIZE = 0xF0000000L;
+
+  private static final int LOCAL_HEADER_SIG = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIR_SIG = 0x06054b50;
+  private static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+  private static final int VERSION = 20;
+  private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final long MAX_OFFSET = 0xFFFFFFFFL;
+  private static final int METHOD_STORED = 0;
+  private static final int METHOD_DEFLATED = 8;
+
+  /** The number of workers shared by all writers. */
+  private static final int WORKERS = Runtime.getRuntime().availableProcessors();
+
+  /** Compresses the entries of all writers; its threads go away when no archive is written. */
+  private static final ExecutorService executor = createExecutor();
+
+  /**
+   * Thrown when the archive or one of its entries turns out to need ZIP64 extensions, so that the
+   * caller can write it again with {@link java.util.zip.ZipOutputStream}.
+   */
+  public static class ArchiveTooLargeException extends IOException {
+    public ArchiveTooLargeException(String message) {
+      super(message);
+    }
+  }
+
+  /** An entry that has been read and compressed, waiting to be appended to the archive. */
+  private static class CompressedEntry {
+    private final byte[] name;
+    private final int flags;
+    private final int method;
+    private final long crc;
+    private final long size;
+    private final long dataLength;
+    /** The compressed data, or null if it is stored; dropped once the entry has been written. */
+    private byte[] data;
+    /** Supplies the data of a stored entry; dropped once the entry has been written. */
+    private EntrySource source;
+
+    private CompressedEntry(
+        byte[] name, int flags, int method, long crc, long size, byte[] data, long dataLength) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.crc = crc;
+      this.size = size;
+      this.data = data;
+      this.dataLength = dataLength;
+    }
+  }
+
+  /** Central directory information for an entry that has already been written. */
+  private static class CentralEntry {
+    private final CompressedEntry entry;
+    private final long offset;
+
+    private CentralEntry(CompressedEntry entry, long offset) {
+      this.entry = entry;
+      this.offset = offset;
+    }
+  }
+
+  private final CountingOutputStream out;
+  private final int level;
+  private final int maxPending;
+  private final Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+  private final List<CentralEntry> written = new ArrayList<>();
+  private final int dosTime = toDosTime(System.currentTimeMillis());
+  private boolean closed;
+
+  /**
+   * Creates a writer.
+   *
+   * @param out the stream the archive is written to; closed when this writer is closed
+   * @param level the {@link Deflater} compression level
+   */
+  public ParallelZipWriter(OutputStream out, int level) {
+    this.out = new CountingOutputStream(out);
+    this.level = level;
+    this.maxPending = WORKERS * 2;
+  }
+
+  private static ExecutorService createExecutor() {
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            WORKERS,
+            WORKERS,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+              Thread t = new Thread(r, "ParallelZipWriter");
+              t.setDaemon(true);
+              return t;
+            });
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * Returns whether an archive with the given number of entries and total size can be written by
+   * this class.
+   *
+   * @param entries the number of entries
+   * @param totalSize the sum of the uncompressed sizes of all entries
+   * @return <code>true</code> if the archive does not need ZIP64 extensions
+   */
+  public static boolean canWrite(int entries, long totalSize) {
+    return entries < MAX_ENTRIES && totalSize >= 0 && totalSize < MAX_ARCHIVE_SIZE;
+  }
+
+  /**
+   * Queues an entry for compression. Entries are written to the archive in the order they are
+   * queued. If too many entries are in flight this call blocks until the oldest has been written.
+   *
+   * @param path the path of the entry in the archive
+   * @param source supplies the data of the entry
+   * @throws IOException if a previously queued entry could not be read or written
+   */
+  @Override
+  public void putEntry(String path, EntrySource source) throws IOException {
+    if (closed) {
+      throw new IOException("ParallelZipWriter is closed");
+    }
+    byte[] name = path.getBytes(StandardCharsets.UTF_8);
+    pending.addLast(executor.submit(() -> compress(name, source)));
+    while (pending.size() > maxPending) {
+      writeNext();
+    }
+  }
+
+  /**
+   * Compresses an entry on the calling thread while it is being written, so the entry never has to
+   * fit in memory. The entry is appended to the archive right away, ahead of any queued entries
+   * that have not been written yet.
+   *
+   * @param path the path of the entry in the archive
+   * @param writer writes the data of the entry; it must not close the stream it is given
+   * @throws IOException if the entry could not be written
+   */
+  @Override
+  public void putStreamedEntry(String path, EntryWriter writer) throws IOException {
+    if (closed) {
+      throw new IOException("ParallelZipWriter is closed");
+    }
+    byte[] name = path.getBytes(StandardCharsets.UTF_8);
+    int flags = FLAG_UTF8 | FLAG_DATA_DESCRIPTOR;
+    long offset = out.getCount();
+
+    // Sizes and CRC aren't known yet; they follow the data in a data descriptor
+    writeLocalHeader(name, flags, METHOD_DEFLATED, 0, 0, 0);
+    long start = out.getCount();
+    CRC32 crc = new CRC32();
+    Deflater deflater = new Deflater(level, true);
+    long size;
+    try {
+      OutputStream unclosable =
+          new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+              out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+              out.write(b, off, len);
+            }
+          };
+      DeflaterOutputStream dos = new DeflaterOutputStream(unclosable, deflater, 16 * 1024);
+      writer.write(new CheckedOutputStream(dos, crc));
+      dos.finish();
+      size = deflater.getBytesRead();
+    } finally {
+      deflater.end();
+    }
+    long dataLength = out.getCount() - start;
+    if (size > MAX_OFFSET || dataLength > MAX_OFFSET) {
+      throw new ArchiveTooLargeException("Zip entry " + path + " is too large");
+    }
+    writeInt(DATA_DESCRIPTOR_SIG);
+    writeInt(crc.getValue());
+    writeInt(dataLength);
+    writeInt(size);
+    written.add(
+        new CentralEntry(
+            new CompressedEntry(
+                name, flags, METHOD_DEFLATED, crc.getValue(), size, null, dataLength),
+            offset));
+  }
+
+  /** @return the number of entries that have been written to the archive so far */
+  @Override
+  public int getWrittenCount() {
+    return written.size();
+  }
+
+  /**
+   * Queues an empty directory entry.
+   *
+   * @param path the path of the directory, ending with <code>/</code>
+   * @throws IOException if a previously queued entry could not be read or written
+   */
+  @Override
+  public void putDirectory(String path) throws IOException {
+    putEntry(path, () -> InputStream.nullInputStream());
+  }
+
+  /**
+   * Waits for all queued entries, writes the central directory and closes the underlying stream.
+   *
+   * @throws IOException if an entry could not be read or written
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      while (!pending.isEmpty()) {
+        writeNext();
+      }
+      writeCentralDirectory();
+      out.flush();
+    } finally {
+      for (Future<CompressedEntry> f : pending) {
+        f.cancel(true);
+      }
+      pending.clear();
+      out.close();
+    }
+  }
+
+  /**
+   * Discards all queued entries and closes the underlying stream without completing the archive.
+   * The data written so far is not a valid ZIP file and should be deleted by the caller.
+   */
+  @Override
+  public void abort() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Future<CompressedEntry> f : pending) {
+      f.cancel(true);
+    }
+    pending.clear();
+    try {
+      out.close();
+    } catch (IOException ioe) {
+      // Nothing useful to do about it; the output is being thrown away
+    }
+  }
+
+  private CompressedEntry compress(byte[] name, EntrySource source) throws IOException {
+    CRC32 crc = new CRC32();
+    long size = 0;
+    Deflater deflater = new Deflater(level, true);
+    try {
+      // Compressed data is only kept for as long as it is smaller than the data read so far
+      ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+      byte[] in = new byte[16 * 1024];
+      byte[] buf = new byte[16 * 1024];
+      try (InputStream is = source.open()) {
+        int n;
+        while ((n = is.read(in)) >= 0) {
+          size += n;
+          crc.update(in, 0, n);
+          if (deflated != null && n > 0) {
+            deflater.setInput(in, 0, n);
+            while (!deflater.needsInput()) {
+              deflated.write(buf, 0, deflater.deflate(buf));
+            }
+            if (deflated.size() >= size) {
+              deflated = null; // Not worth compressing; store it instead
+            }
+          }
+        }
+      }
+      if (size > MAX_OFFSET) {
+        throw new ArchiveTooLargeException(
+            "Zip entry " + new String(name, StandardCharsets.UTF_8) + " is too large");
+      }
+      if (deflated != null && size > 0) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          deflated.write(buf, 0, deflater.deflate(buf));
+        }
+        if (deflated.size() < size) {
+          byte[] data = deflated.toByteArray();
+          return new CompressedEntry(
+              name, FLAG_UTF8, METHOD_DEFLATED, crc.getValue(), size, data, data.length);
+        }
+      }
+    } finally {
+      deflater.end();
+    }
+    CompressedEntry entry =
+        new CompressedEntry(name, FLAG_UTF8, METHOD_STORED, crc.getValue(), size, null, size);
+    entry.source = source;
+    return entry;
+  }
+
+  private void writeNext() throws IOException {
+    CompressedEntry entry;
+    try {
+      entry = pending.removeFirst().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while compressing zip entry", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Unable to compress zip entry", cause);
+    }
+    long offset = out.getCount();
+    writeLocalHeader(
+        entry.name, entry.flags, entry.method, entry.crc, entry.dataLength, entry.size);
+    if (entry.data != null) {
+      out.write(entry.data, 0, entry.data.length);
+    } else {
+      copyStored(entry);
+    }
+    // Only the central directory information is needed from now on
+    entry.data = null;
+    entry.source = null;
+    written.add(new CentralEntry(entry, offset));
+  }
+
+  /** Copies the data of a stored entry, which must not have changed since it was compressed. */
+  private void copyStored(CompressedEntry entry) throws IOException {
+    CRC32 crc = new CRC32();
+    long copied = 0;
+    byte[] buf = new byte[16 * 1024];
+    try (InputStream is = entry.source.open()) {
+      int n;
+      while ((n = is.read(buf)) >= 0 && copied + n <= entry.size) {
+        out.write(buf, 0, n);
+        crc.update(buf, 0, n);
+        copied += n;
+      }
+      if (n >= 0) {
+        copied += n;
+      }
+    }
+    if (copied != entry.size || crc.getValue() != entry.crc) {
+      throw new IOException(
+          "Zip entry " + new String(entry.name, StandardCharsets.UTF_8) + " changed while saving");
+    }
+  }
+
+  private void writeLocalHeader(
+      byte[] name, int flags, int method, long crc, long dataLength, long size) throws IOException {
+    writeInt(LOCAL_HEADER_SIG);
+    writeShort(VERSION);
+    writeShort(flags);
+    writeShort(method);
+    writeInt(dosTime);
+    writeInt(crc);
+    writeInt(dataLength);
+    writeInt(size);
+    writeShort(name.length);
+    writeShort(0); // extra field length
+    out.write(name);
+  }
+
+  private void writeCentralDirectory() throws IOException {
+    long start = out.getCount();
+    if (start > MAX_OFFSET || written.size() >= MAX_ENTRIES) {
+      throw new ArchiveTooLargeException(
+          "Zip archive is too large to be written without ZIP64 extensions");
+    }
+    for (CentralEntry ce : written) {
+      CompressedEntry entry = ce.entry;
+      writeInt(CENTRAL_HEADER_SIG);
+      writeShort(VERSION); // version made by
+      writeShort(VERSION); // version needed to extract
+      writeShort(entry.flags);
+      writeShort(entry.method);
+      writeInt(dosTime);
+      writeInt(entry.crc);
+      writeInt(entry.dataLength);
+      writeInt(entry.size);
+      writeShort(entry.name.length);
+      writeShort(0); // extra field length
+      writeShort(0); // comment length
+      writeShort(0); // disk number start
+      writeShort(0); // internal attributes
+      writeInt(0); // external attributes
+      writeInt(ce.offset);
+      out.write(entry.name);
+    }
+    long size = out.getCount() - start;
+
+    writeInt(END_OF_CENTRAL_DIR_SIG);
+    writeShort(0); // number of this disk
+    writeShort(0); // disk with the central directory
+    writeShort(written.size());
+    writeShort(written.size());
+    writeInt(size);
+    writeInt(start);
+    writeShort(0); // comment length
+  }
+
+  private void writeShort(int v) throws IOException {
+    out.write(v & 0xff);
+    out.write((v >>> 8) & 0xff);
+  }
+
+  private void writeInt(long v) throws IOException {
+    out.write((int) (v & 0xff));
+    out.write((int) ((v >>> 8) & 0xff));
+    out.write((int) ((v >>> 16) & 0xff));
+    out.write((int) ((v >>> 24) & 0xff));
+  }
+
+  private static int toDosTime(long millis) {
+    Calendar c = Calendar.getInstance();
+    c.setTimeInMillis(millis);
+    int year = c.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25
+        | (c.get(Calendar.MONTH) + 1) << 21
+        | c.get(Calendar.DAY_OF_MONTH) << 16
+        | c.get(Calendar.HOUR_OF_DAY) << 11
+        | c.get(Calendar.MINUTE) << 5
+        | c.get(Calendar.SECOND) >> 1;
+  }
+
+  /** Keeps track of the number of bytes written so that entry offsets are known. */
+  private static class CountingOutputStream extends OutputStream {
+    private final OutputStream delegate;
+    private long count;
+
+    private CountingOutputStream(OutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    private long getCount() {
+      return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      delegate.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      delegate.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+}
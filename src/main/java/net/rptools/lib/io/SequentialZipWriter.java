@@ -0,0 +1,97 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a ZIP archive with a {@link ZipOutputStream} on the calling thread. Slower than {@link
+ * ParallelZipWriter}, but it adds ZIP64 extensions when needed, so it is used for the archives
+ * that are too large for it.
+ */
+public class SequentialZipWriter implements ArchiveWriter {
+  private final OutputStream out;
+  private final ZipOutputStream zout;
+  private int writtenCount;
+  private boolean closed;
+
+  /**
+   * Creates a writer.
+   *
+   * @param out the stream the archive is written to; closed when this writer is closed
+   * @param level the {@link java.util.zip.Deflater} compression level
+   */
+  public SequentialZipWriter(OutputStream out, int level) {
+    this.out = out;
+    zout = new ZipOutputStream(out);
+    zout.setLevel(level);
+  }
+
+  @Override
+  public void putEntry(String path, EntrySource source) throws IOException {
+    zout.putNextEntry(new ZipEntry(path));
+    try (InputStream in = source.open()) {
+      in.transferTo(zout);
+    }
+    zout.closeEntry();
+    writtenCount++;
+  }
+
+  @Override
+  public void putStreamedEntry(String path, EntryWriter writer) throws IOException {
+    zout.putNextEntry(new ZipEntry(path));
+    writer.write(zout);
+    zout.closeEntry();
+    writtenCount++;
+  }
+
+  @Override
+  public void putDirectory(String path) throws IOException {
+    zout.putNextEntry(new ZipEntry(path));
+    zout.closeEntry();
+    writtenCount++;
+  }
+
+  @Override
+  public int getWrittenCount() {
+    return writtenCount;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    zout.close();
+  }
+
+  @Override
+  public void abort() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      out.close(); // Leaves the archive without its central directory
+    } catch (IOException ioe) {
+      // Nothing useful to do about it; the output is being thrown away
+    }
+  }
+}
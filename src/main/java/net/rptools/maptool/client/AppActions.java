@@ -61,6 +61,7 @@
 import net.rptools.maptool.client.tool.GridTool;
 import net.rptools.maptool.client.ui.AddResourceDialog;
 import net.rptools.maptool.client.ui.AppMenuBar;
+import net.rptools.maptool.client.ui.ArchiveExportWorker;
 import net.rptools.maptool.client.ui.CampaignExportDialog;
 import net.rptools.maptool.client.ui.ClientConnectionPanel;
 import net.rptools.maptool.client.ui.ConnectToServerDialog;
@@ -73,6 +74,7 @@
 import net.rptools.maptool.client.ui.MapToolFrame.MTFrame;
 import net.rptools.maptool.client.ui.PreferencesDialog;
 import net.rptools.maptool.client.ui.PreviewPanelFileChooser;
+import net.rptools.maptool.client.ui.Scale;
 import net.rptools.maptool.client.ui.StartServerDialog;
 import net.rptools.maptool.client.ui.StartServerDialogPreferences;
 import net.rptools.maptool.client.ui.StaticMessageDialog;
@@ -2636,9 +2638,39 @@ public static void doCampaignExport() {
     CampaignExportDialog dialog = MapTool.getCampaign().getExportCampaignDialog();
     dialog.setVisible(true);
 
-    if (dialog.getSaveStatus() == JFileChooser.APPROVE_OPTION) {
-      saveAndUpdateCampaignName(dialog.getVersionText(), dialog.getCampaignFile(), null);
+    if (dialog.getSaveStatus() != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    File campaignFile =
+        getFileWithExtension(dialog.getCampaignFile(), AppConstants.CAMPAIGN_FILE_EXTENSION);
+    if (campaignFile.exists() && !MapTool.confirm("msg.confirm.overwriteExistingCampaign")) {
+      return;
+    }
+    if (AppState.testBackgroundTaskLock()) {
+      MapTool.showError("msg.error.failedSaveCampaignLock");
+      return;
     }
+    String campaignVersion = dialog.getVersionText();
+    Campaign campaign = MapTool.getCampaign();
+    ZoneRenderer currentZoneRenderer = MapTool.getFrame().getCurrentZoneRenderer();
+    GUID currentZoneId =
+        currentZoneRenderer != null ? currentZoneRenderer.getZone().getId() : null;
+    Scale currentView =
+        currentZoneRenderer != null ? new Scale(currentZoneRenderer.getZoneScale()) : null;
+    // Input stays blocked until the export is done, as the live campaign is serialized
+    new ArchiveExportWorker(
+            "msg.info.campaignExporting",
+            progress ->
+                PersistenceUtil.exportCampaign(
+                    campaign, currentZoneId, currentView, campaignFile, campaignVersion, progress),
+            () -> {
+              PersistenceUtil.saveCampaignThumbnail(campaignFile.getName());
+              MapTool.getFrame().setStatusMessage(I18N.getString("msg.info.campaignExported"));
+              updateCampaignName(campaignFile);
+            },
+            "msg.error.failedExportCampaign",
+            true)
+        .execute();
   }
 
   private static void saveAndUpdateCampaignName(
@@ -2648,6 +2680,10 @@ private static void saveAndUpdateCampaignName(
       return;
     }
     doSaveCampaign(campaignFile, campaignVersion, onSuccess);
+    updateCampaignName(campaignFile);
+  }
+
+  private static void updateCampaignName(File campaignFile) {
     AppState.setCampaignFile(campaignFile);
     AppPreferences.setSaveDir(campaignFile.getParentFile());
     AppMenuBar.getMruManager().addMRUCampaign(AppState.getCampaignFile());
@@ -441,6 +441,12 @@ public static int getHaloLineWidth() {
   private static final String KEY_FRAME_RATE_CAP = "frameRateCap";
   private static final int DEFAULT_FRAME_RATE_CAP = 60;
 
+  private static final String KEY_UNDO_MEMORY_BUDGET = "undoMemoryBudget";
+  private static final int DEFAULT_UNDO_MEMORY_BUDGET = 8 * 1024; // KB
+
+  private static final String KEY_UNDO_HISTORY_BUDGET = "undoHistoryBudget";
+  private static final int DEFAULT_UNDO_HISTORY_BUDGET = 64 * 1024; // KB
+
   private static final String KEY_UPNP_DISCOVERY_TIMEOUT = "upnpDiscoveryTimeout";
   private static final int DEFAULT_UPNP_DISCOVERY_TIMEOUT = 5000;
 
@@ -890,6 +896,34 @@ public static int getFrameRateCap() {
     return prefs.getInt(KEY_FRAME_RATE_CAP, DEFAULT_FRAME_RATE_CAP);
   }
 
+  /**
+   * Sets how much of the compressed drawing undo history of each map is kept in memory before the
+   * oldest entries are moved to disk.
+   *
+   * @param kb the budget in kilobytes
+   */
+  public static void setUndoMemoryBudget(int kb) {
+    prefs.putInt(KEY_UNDO_MEMORY_BUDGET, kb);
+  }
+
+  public static int getUndoMemoryBudget() {
+    return prefs.getInt(KEY_UNDO_MEMORY_BUDGET, DEFAULT_UNDO_MEMORY_BUDGET);
+  }
+
+  /**
+   * Sets the total size (in memory and on disk) of the compressed drawing undo history of each map.
+   * The oldest entries are discarded once it is exceeded.
+   *
+   * @param kb the budget in kilobytes
+   */
+  public static void setUndoHistoryBudget(int kb) {
+    prefs.putInt(KEY_UNDO_HISTORY_BUDGET, kb);
+  }
+
+  public static int getUndoHistoryBudget() {
+    return prefs.getInt(KEY_UNDO_HISTORY_BUDGET, DEFAULT_UNDO_HISTORY_BUDGET);
+  }
+
   public static void setUpnpDiscoveryTimeout(int timeout) {
     prefs.putInt(KEY_UPNP_DISCOVERY_TIMEOUT, timeout);
   }
@@ -17,23 +17,50 @@
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.html.HTMLEditorKit;
 import net.rptools.maptool.client.ui.commandpanel.CommandPanel;
 import net.rptools.maptool.language.I18N;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-/** @author frank */
+/**
+ * Periodically saves the chat history to the autosave directory.
+ *
+ * <p>Each save writes only the messages added since the previous one, just before the closing tags
+ * that end the file. Every {@link #COMPACTION_INTERVAL} saves, whenever the chat has been cleared,
+ * and whenever the end of the file isn't as it was left, the file is rewritten from the whole
+ * history instead so that it matches the chat panel again.
+ *
+ * @author frank
+ */
 public class ChatAutoSave {
   private static Logger log = LogManager.getLogger(ChatAutoSave.class);
   private static final ChatAutoSave self = new ChatAutoSave();
 
+  /** Number of saves after which the log is rewritten from the whole history. */
+  private static final int COMPACTION_INTERVAL = 12;
+
+  /** Ends the log; new messages are written in its place and it is written again after them. */
+  static final String LOG_TAIL =
+      "</body>" + System.lineSeparator() + "</html>" + System.lineSeparator(); // $NON-NLS-1$
+
   private final Timer countdown;
   private TimerTask task;
   private long delay;
-  private static String chatlog = null;
+  private String chatlog = null;
+  private int savesSinceCompaction;
+  private boolean rewriteNeeded = true;
 
   private ChatAutoSave() {
     log.debug("Creating chat log autosave timer"); // $NON-NLS-1$
@@ -42,53 +69,162 @@ private ChatAutoSave() {
     countdown = new Timer();
   }
 
-  private static TimerTask createTimer(final long timeout) {
+  private TimerTask createTimer(final long timeout) {
     TimerTask t =
         new TimerTask() {
           @Override
           public void run() {
             if (log.isDebugEnabled())
               log.debug("Chat log autosave countdown complete from " + timeout); // $NON-NLS-1$
-            if (chatlog == null) {
-              String filename = AppPreferences.getChatFilenameFormat();
-              // FJE Ugly kludge to replace older default entry with newer default
-              // TODO This is going into 1.3.b77 so remove it in 3-4 builds
-              if ("chatlog.html".equals(filename)) { // $NON-NLS-1$
-                AppPreferences.clearChatFilenameFormat();
-                filename = AppPreferences.getChatFilenameFormat();
-              }
-              chatlog = String.format(filename, new Date()).replace(':', '-');
-            }
-            File chatFile =
-                new File(AppUtil.getAppHome("autosave").toString(), chatlog); // $NON-NLS-1$
-            if (log.isInfoEnabled())
-              log.info("Saving log to '" + chatFile + "'"); // $NON-NLS-1$ //$NON-NLS-2$
-
-            CommandPanel chat = MapTool.getFrame().getCommandPanel();
-            String old = MapTool.getFrame().getStatusMessage();
-            try {
-              MapTool.getFrame()
-                  .setStatusMessage(
-                      I18N.getString("ChatAutoSave.status.chatAutosave")); // $NON-NLS-1$
-              try (FileWriter writer = new FileWriter(chatFile)) {
-                writer.write(chat.getMessageHistory());
-              }
-              if (log.isInfoEnabled()) log.info("Log saved"); // $NON-NLS-1$
-            } catch (IOException e) {
-              // If this happens should we track it and turn off the autosave? Perhaps
-              // after a certain number of consecutive failures? Or maybe just lengthen
-              // the amount of time between attempts in that case? At a minimum we
-              // should probably give the user a chance to turn it off as part of this
-              // message box that pops up...
-              MapTool.showWarning("msg.warn.failedAutoSavingMessageHistory", e); // $NON-NLS-1$
-            } finally {
-              MapTool.getFrame().setStatusMessage(old);
-            }
+            save();
           }
         };
     return t;
   }
 
+  private synchronized void save() {
+    if (chatlog == null) {
+      String filename = AppPreferences.getChatFilenameFormat();
+      // FJE Ugly kludge to replace older default entry with newer default
+      // TODO This is going into 1.3.b77 so remove it in 3-4 builds
+      if ("chatlog.html".equals(filename)) { // $NON-NLS-1$
+        AppPreferences.clearChatFilenameFormat();
+        filename = AppPreferences.getChatFilenameFormat();
+      }
+      chatlog = String.format(filename, new Date()).replace(':', '-');
+    }
+    File chatFile = new File(AppUtil.getAppHome("autosave").toString(), chatlog); // $NON-NLS-1$
+    if (log.isInfoEnabled())
+      log.info("Saving log to '" + chatFile + "'"); // $NON-NLS-1$ //$NON-NLS-2$
+
+    CommandPanel chat = MapTool.getFrame().getCommandPanel();
+    List<String> messages = chat.takeUnsavedMessages();
+    boolean compact =
+        messages == null
+            || rewriteNeeded
+            || !chatFile.exists()
+            || savesSinceCompaction + 1 >= COMPACTION_INTERVAL;
+    if (!compact && messages.isEmpty()) {
+      if (log.isDebugEnabled()) log.debug("No new messages to save"); // $NON-NLS-1$
+      return;
+    }
+    String old = MapTool.getFrame().getStatusMessage();
+    try {
+      MapTool.getFrame()
+          .setStatusMessage(I18N.getString("ChatAutoSave.status.chatAutosave")); // $NON-NLS-1$
+      if (!compact) {
+        compact = !appendMessages(chatFile, normalizeMessages(messages));
+        savesSinceCompaction++;
+      }
+      if (compact) {
+        // Also contains the messages taken above
+        String history = chat.takeMessageHistory();
+        if (history == null) {
+          rewriteNeeded = true;
+          return;
+        }
+        writeHistory(chatFile, history);
+        savesSinceCompaction = 0;
+      }
+      rewriteNeeded = false;
+      if (log.isInfoEnabled()) log.info("Log saved"); // $NON-NLS-1$
+    } catch (IOException e) {
+      // The appended messages may be lost, so rewrite the whole log next time
+      rewriteNeeded = true;
+      // If this happens should we track it and turn off the autosave? Perhaps
+      // after a certain number of consecutive failures? Or maybe just lengthen
+      // the amount of time between attempts in that case? At a minimum we
+      // should probably give the user a chance to turn it off as part of this
+      // message box that pops up...
+      MapTool.showWarning("msg.warn.failedAutoSavingMessageHistory", e); // $NON-NLS-1$
+    } finally {
+      MapTool.getFrame().setStatusMessage(old);
+    }
+  }
+
+  /**
+   * Replaces the log with the whole history.
+   *
+   * @param file the log
+   * @param history the HTML of the chat panel
+   * @throws IOException if the log can't be written
+   */
+  static void writeHistory(File file, String history) throws IOException {
+    int end = history.lastIndexOf("</body>"); // $NON-NLS-1$
+    try (Writer writer = new FileWriter(file)) {
+      writer.write(end < 0 ? history : history.substring(0, end));
+      writer.write(LOG_TAIL);
+    }
+  }
+
+  /**
+   * Adds messages to the end of a log written by {@link #writeHistory(File, String)}.
+   *
+   * @param file the log
+   * @param messages the HTML of the messages, or <code>null</code> if they couldn't be normalized
+   * @return <code>false</code> if nothing was written because the messages are <code>null</code>
+   *     or the log doesn't end the way it was left, in which case it has to be rewritten
+   * @throws IOException if the log can't be read or written
+   */
+  static boolean appendMessages(File file, List<String> messages) throws IOException {
+    if (messages == null) {
+      return false;
+    }
+    byte[] tail = LOG_TAIL.getBytes();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { // $NON-NLS-1$
+      long start = raf.length() - tail.length;
+      if (start < 0) {
+        return false;
+      }
+      byte[] end = new byte[tail.length];
+      raf.seek(start);
+      raf.readFully(end);
+      if (!Arrays.equals(tail, end)) {
+        return false;
+      }
+      StringBuilder text = new StringBuilder();
+      for (String message : messages) {
+        text.append(message).append(System.lineSeparator());
+      }
+      text.append(LOG_TAIL);
+      raf.seek(start);
+      raf.write(text.toString().getBytes());
+    }
+    return true;
+  }
+
+  /**
+   * Parses each message on its own and writes it back out, so that a message with unbalanced tags
+   * can't change the meaning of the ones appended after it.
+   *
+   * @param messages the HTML of the messages as they were added to the chat
+   * @return the messages as well-formed HTML, or <code>null</code> if one couldn't be parsed
+   */
+  static List<String> normalizeMessages(List<String> messages) {
+    HTMLEditorKit kit = new HTMLEditorKit();
+    String[] normalized = new String[messages.size()];
+    for (int i = 0; i < normalized.length; i++) {
+      Document doc = kit.createDefaultDocument();
+      StringWriter out = new StringWriter();
+      try {
+        kit.read(new StringReader("<html><body>" + messages.get(i) + "</body></html>"), doc, 0);
+        kit.write(out, doc, 0, doc.getLength());
+      } catch (IOException | BadLocationException e) {
+        log.debug("Unable to normalize chat message", e); // $NON-NLS-1$
+        return null;
+      }
+      String html = out.toString();
+      int body = html.indexOf("<body"); // $NON-NLS-1$
+      int start = html.indexOf('>', body) + 1;
+      int end = html.lastIndexOf("</body>"); // $NON-NLS-1$
+      if (body < 0 || end < start) {
+        return null;
+      }
+      normalized[i] = html.substring(start, end).strip();
+    }
+    return Arrays.asList(normalized);
+  }
+
   private static ChatAutoSave getInstance() {
     return self;
   }
@@ -230,13 +230,7 @@ public String parseLine(MapToolVariableResolver res, Token tokenInContext, Strin
   public String parseLine(
       MapToolVariableResolver res, Token tokenInContext, String line, MapToolMacroContext context)
       throws ParserException {
-    // copy previous rolls and clear out for new rolls.
-    if (parserRecurseDepth == 0 && macroRecurseDepth == 0) {
-      lastRolled.clear();
-      lastRolled.addAll(rolled);
-      rolled.clear();
-      newRolls.clear();
-    }
+    startNewLine();
 
     if (line == null) {
       return "";
@@ -1408,8 +1402,7 @@ public Token getTokenMacroLib(String location) throws ParserException {
     if (libTokenName.length() > 0) {
       List<ZoneRenderer> zrenderers = MapTool.getFrame().getZoneRenderers();
       for (ZoneRenderer zr : zrenderers) {
-        List<Token> tokenList =
-            zr.getZone().getTokensFiltered(t -> t.getName().equalsIgnoreCase(libTokenName));
+        List<Token> tokenList = zr.getZone().getTokensByName(libTokenName);
 
         for (Token token : tokenList) {
           // If we are not the GM and the token is not visible to players then we don't
@@ -1449,8 +1442,7 @@ public Zone getTokenMacroLibZone(String location) throws ParserException {
     if (libTokenName.length() > 0) {
       List<ZoneRenderer> zrenderers = MapTool.getFrame().getZoneRenderers();
       for (ZoneRenderer zr : zrenderers) {
-        List<Token> tokenList =
-            zr.getZone().getTokensFiltered(t -> t.getName().equalsIgnoreCase(libTokenName));
+        List<Token> tokenList = zr.getZone().getTokensByName(libTokenName);
 
         for (Token token : tokenList) {
           // If we are not the GM and the token is not visible to players then we don't
@@ -1821,6 +1813,19 @@ public List<Integer> getNewRolls() {
     return rolls;
   }
 
+  /**
+   * Copies the rolls of the previous line to the last rolls and clears them out for new rolls, as
+   * every line parsed does first. Does nothing while a line or a macro is being run.
+   */
+  public void startNewLine() {
+    if (parserRecurseDepth == 0 && macroRecurseDepth == 0) {
+      lastRolled.clear();
+      lastRolled.addAll(rolled);
+      rolled.clear();
+      newRolls.clear();
+    }
+  }
+
   /** Resets all the lists of rolls that have occurred. */
   public void clearRolls() {
     newRolls.clear();
@@ -17,7 +17,6 @@
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import java.awt.*;
 import java.math.BigDecimal;
@@ -84,6 +83,9 @@ private static Ownership getOwnership(String strOwnership) {
 
   private static final FindTokenFunctions instance = new FindTokenFunctions();
 
+  /** The parsed conditions and results of the latest getTokens queries. */
+  private static final TokenQueryCache queryCache = new TokenQueryCache(64);
+
   /** Filter for all non image / non lib tokens. */
   private static class AllFilter implements Zone.Filter {
     private final boolean match;
@@ -240,22 +242,20 @@ public boolean matchToken(Token t) {
    * layers).
    */
   private static class LayerFilter implements Zone.Filter {
-    private final JsonArray filterLayers;
+    private final Set<Zone.Layer> filterLayers = EnumSet.noneOf(Zone.Layer.class);
 
     public LayerFilter(JsonArray layers) {
-      filterLayers = new JsonArray();
       for (Object s : layers) {
         // Can't use .toString() as it wraps in extra quotes - bug in the JSON lib?
         String name = ((JsonPrimitive) s).getAsString().toUpperCase();
         name = "HIDDEN".equals(name) ? "GM" : name;
-        name = Zone.Layer.valueOf(name).toString();
-        filterLayers.add(name);
+        filterLayers.add(Zone.Layer.valueOf(name));
       }
     }
 
     public boolean matchToken(Token t) {
       // Filter out the utility lib: and image: tokens
-      return filterLayers.contains(new JsonPrimitive(t.getLayer().toString())) && !t.isImgOrLib();
+      return filterLayers.contains(t.getLayer()) && !t.isImgOrLib();
     }
   }
 
@@ -403,7 +403,7 @@ public Object childEvaluate(
   private static Object getTokenList(
       MapToolVariableResolver resolver, boolean nameOnly, String delim, String jsonString)
       throws ParserException {
-    JsonObject jobj = JsonParser.parseString(jsonString).getAsJsonObject();
+    JsonObject jobj = queryCache.parse(jsonString);
 
     // First get a list of all our tokens. By default this is limited to the TOKEN and GM layers.
     List<Token> allTokens = null;
@@ -442,9 +442,20 @@ private static Object getTokenList(
       }
     }
     Zone zone = zoneRenderer.getZone();
-    allTokens = zone.getTokensFiltered(new LayerFilter(layers));
-    List<Token> tokenList = new ArrayList<Token>(allTokens.size());
-    tokenList.addAll(allTokens);
+
+    boolean cacheable = TokenQueryCache.isCacheable(jobj);
+    String player = MapTool.getPlayer().getName();
+    long modelVersion = zone.getModelVersion();
+    if (cacheable) {
+      List<String> cached = queryCache.getResult(zone, jsonString, nameOnly, player);
+      if (cached != null) {
+        return formatValues(cached, delim);
+      }
+    }
+
+    LayerFilter layerFilter = new LayerFilter(layers);
+    allTokens = getTokensFiltered(layerFilter, zone.getTokensOnLayers(layerFilter.filterLayers));
+    List<Token> tokenList = new ArrayList<Token>(allTokens);
     JsonObject range = null;
     JsonObject area = null;
 
@@ -596,14 +607,14 @@ private static Object getTokenList(
       if (range.has("metric")) {
         metric = range.get("metric").getAsString();
       }
-      List<Token> inrange = new LinkedList<Token>();
+      List<Token> inrange = new ArrayList<Token>();
       for (Token targetToken : tokenList) {
         double distance = instance.getDistance(token, targetToken, useDistancePerCell, metric);
         if (distance <= upto && distance >= from && token != targetToken) {
           inrange.add(targetToken);
         }
       }
-      tokenList.retainAll(inrange);
+      tokenList = inrange;
     }
 
     // Loop through and compare the area if we have it
@@ -655,12 +666,12 @@ private static Object getTokenList(
         points[ip] = new Point(joff.get("x").getAsInt() + cp.x, joff.get("y").getAsInt() + cp.y);
         ip += 1;
       }
-      Set<Token> matching = new HashSet<Token>();
+      List<Token> matching = new ArrayList<Token>();
       for (Token targetToken : tokenList) {
         if (TokenLocationFunctions.isTokenAtXY(targetToken, zone, points))
           matching.add(targetToken);
       }
-      tokenList.retainAll(matching);
+      tokenList = matching;
     }
 
     ArrayList<String> values = new ArrayList<String>();
@@ -671,6 +682,20 @@ private static Object getTokenList(
         values.add(token.getId().toString());
       }
     }
+    if (cacheable) {
+      queryCache.putResult(zone, modelVersion, jsonString, nameOnly, player, values);
+    }
+    return formatValues(values, delim);
+  }
+
+  /**
+   * Formats the names or ids of tokens as the result of getTokens.
+   *
+   * @param values the names or ids
+   * @param delim either <code>json</code> or a string delimiter between output entries
+   * @return a json array or a delimited string
+   */
+  private static Object formatValues(List<String> values, String delim) {
     if ("json".equals(delim)) {
       JsonArray jsonArray = new JsonArray();
       for (String val : values) {
@@ -719,7 +744,7 @@ private static List<Token> getTokenList(
       List<Token> originalList,
       ZoneRenderer zoneRenderer)
       throws ParserException {
-    List<Token> tokenList = new LinkedList<Token>();
+    List<Token> tokenList = new ArrayList<Token>();
     if (originalList.size() == 0) return tokenList;
 
     Zone zone = zoneRenderer.getZone();
@@ -800,9 +825,10 @@ private static List<Token> getTokensFiltered(Zone.Filter filter, List<Token> ori
   private static List<Token> getTokensFiltered(
       List<Token> editList, List<Token> originalList, boolean match) {
     List<Token> tokenList = new ArrayList<Token>(originalList);
+    Set<Token> editSet = new HashSet<Token>(editList);
 
-    if (match) tokenList.retainAll(editList); // keep tokens in both lists
-    else tokenList.removeAll(editList); // remove edit list from original list
+    if (match) tokenList.retainAll(editSet); // keep tokens in both lists
+    else tokenList.removeAll(editSet); // remove edit list from original list
     return tokenList;
   }
 
@@ -0,0 +1,146 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.functions;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.maptool.model.Zone;
+
+/**
+ * The parsed conditions of getTokens queries, and the results of the queries that only depend on
+ * the map and the player, kept until the map changes. Only the most recently used queries are
+ * kept.
+ */
+class TokenQueryCache {
+
+  /**
+   * The conditions that getTokens results only depend on the map and the player for. Conditions
+   * on the selection, the view, the token in context, the impersonated token, distances or lights
+   * make a query uncacheable.
+   */
+  private static final Set<String> CACHEABLE_CONDITIONS =
+      Set.of("layer", "mapname", "setstates", "unsetstates", "propertytype", "owned", "npc", "pc");
+
+  private final int maxQueries;
+
+  /** The parsed conditions, by their JSON text. */
+  private final Map<String, JsonObject> parsedQueries;
+
+  /** The results of cacheable queries, by map, conditions, output and player. */
+  private final Map<List<Object>, CachedResult> results;
+
+  /** The result of a query and the version of the map it was computed for. */
+  private static class CachedResult {
+    private final long modelVersion;
+    private final List<String> values;
+
+    private CachedResult(long modelVersion, List<String> values) {
+      this.modelVersion = modelVersion;
+      this.values = values;
+    }
+  }
+
+  /** @param maxQueries the number of queries whose parsed conditions and results are kept */
+  TokenQueryCache(int maxQueries) {
+    this.maxQueries = maxQueries;
+    parsedQueries = createMap();
+    results = createMap();
+  }
+
+  private <K, V> Map<K, V> createMap() {
+    return Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxQueries;
+          }
+        });
+  }
+
+  /**
+   * Returns the parsed conditions of a query, parsing them the first time. The object returned is
+   * shared and must not be modified.
+   *
+   * @param jsonString the conditions, as a JSON object
+   * @return the parsed conditions
+   */
+  JsonObject parse(String jsonString) {
+    JsonObject conditions = parsedQueries.get(jsonString);
+    if (conditions == null) {
+      conditions = JsonParser.parseString(jsonString).getAsJsonObject();
+      parsedQueries.put(jsonString, conditions);
+    }
+    return conditions;
+  }
+
+  /**
+   * Checks whether the results of a query can be cached until the map changes.
+   *
+   * @param conditions the conditions of the query
+   * @return <code>true</code> if the query only has conditions on the tokens themselves
+   */
+  static boolean isCacheable(JsonObject conditions) {
+    for (String key : conditions.keySet()) {
+      if (!CACHEABLE_CONDITIONS.contains(key.toLowerCase())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the result of a query, if it was computed for the current version of the map.
+   *
+   * @param zone the map queried
+   * @param jsonString the conditions, as a JSON object
+   * @param nameOnly whether the result holds token names rather than ids
+   * @param player the name of the player running the query
+   * @return the names or ids of the tokens found, or null if the result isn't known
+   */
+  List<String> getResult(Zone zone, String jsonString, boolean nameOnly, String player) {
+    CachedResult cached = results.get(List.of(zone.getId(), jsonString, nameOnly, player));
+    if (cached == null || cached.modelVersion != zone.getModelVersion()) {
+      return null;
+    }
+    return cached.values;
+  }
+
+  /**
+   * Keeps the result of a query, for as long as the map stays at the version it was computed for.
+   *
+   * @param zone the map queried
+   * @param modelVersion the version of the map, taken before the query was run
+   * @param jsonString the conditions, as a JSON object
+   * @param nameOnly whether the result holds token names rather than ids
+   * @param player the name of the player running the query
+   * @param values the names or ids of the tokens found
+   */
+  void putResult(
+      Zone zone,
+      long modelVersion,
+      String jsonString,
+      boolean nameOnly,
+      String player,
+      List<String> values) {
+    results.put(
+        List.of(zone.getId(), jsonString, nameOnly, player),
+        new CachedResult(modelVersion, Collections.unmodifiableList(values)));
+  }
+}
@@ -0,0 +1,499 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.tool.drawing;
+
+import com.thoughtworks.xstream.XStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import net.rptools.lib.FileUtil;
+import net.rptools.maptool.client.AppUtil;
+import net.rptools.maptool.model.drawing.Drawable;
+import net.rptools.maptool.model.drawing.Pen;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps the drawing operations recorded by {@link UndoPerZone} in compressed form.
+ *
+ * <p>Each operation is serialized to XML and deflated shortly after it is recorded, so the undo
+ * history doesn't hold on to the <code>Drawable</code> and <code>Area</code> objects of drawings
+ * that have long since been erased or cleared. Compressed operations stay in memory until the
+ * memory budget is exceeded; the oldest are then moved to a temporary spill file. The spill file
+ * is compacted once most of it belongs to operations that have been discarded.
+ *
+ * <p>Compressing, spilling and compacting happen on a background writer thread shared by all
+ * stores, so recording an operation doesn't slow down drawing. Until its turn comes an operation
+ * is kept as it is.
+ *
+ * <p>This class only stores data. Deciding which operations to discard when the history grows too
+ * large is up to {@link UndoPerZone}, which calls {@link #release(Record)} for each of them.
+ */
+class UndoHistoryStore {
+  private static final Logger log = LogManager.getLogger(UndoHistoryStore.class);
+
+  /** Only compact the spill file once it is at least this big. */
+  private static final long MIN_COMPACT_SIZE = 1024 * 1024;
+
+  private static final XStream xstream = FileUtil.getConfiguredXStream();
+
+  /** Compresses and spills the operations of all stores, in the order they were recorded. */
+  private static final ExecutorService writer = createWriter();
+
+  /** The spill files in use, deleted when the JVM exits if they are still around. */
+  private static final Set<File> spillFiles = ConcurrentHashMap.newKeySet();
+
+  static {
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  for (File file : spillFiles) {
+                    file.delete();
+                  }
+                },
+                "undo-history-cleanup"));
+  }
+
+  /** A recorded operation. */
+  static class Record {
+    /** Compressed operation while it is held in memory, <code>null</code> once spilled. */
+    private byte[] data;
+    /** The operation itself, until it has been compressed or if it could not be serialized. */
+    private Operation operation;
+    /** Offset of the compressed operation in the spill file, or -1 if it is in memory. */
+    private long offset = -1;
+
+    private int length;
+    private boolean released;
+
+    /** @return the size of the compressed operation in bytes */
+    int getLength() {
+      return length;
+    }
+  }
+
+  /** The pen and drawable of a recorded operation. */
+  static class Operation {
+    private final Pen pen;
+    private final Drawable drawable;
+
+    Operation(Pen pen, Drawable drawable) {
+      this.pen = pen;
+      this.drawable = drawable;
+    }
+
+    Pen getPen() {
+      return pen;
+    }
+
+    Drawable getDrawable() {
+      return drawable;
+    }
+  }
+
+  /** Where spill files are created, or null for the application's temporary directory. */
+  private final File spillDir;
+
+  private final long minCompactSize;
+
+  /** Records held in memory, oldest first. */
+  private final Set<Record> resident = new LinkedHashSet<>();
+
+  /** Records in the spill file, oldest first. */
+  private final Set<Record> spilled = new LinkedHashSet<>();
+
+  private long residentBytes;
+  private long spilledBytes;
+  private long spillFileLength;
+  private long compressedTotal;
+  private long uncompressedTotal;
+  private boolean compactionScheduled;
+
+  private File spillFile;
+  private RandomAccessFile spill;
+
+  UndoHistoryStore() {
+    this(null, MIN_COMPACT_SIZE);
+  }
+
+  /**
+   * @param spillDir where spill files are created, or null for the application's temporary
+   *     directory
+   * @param minCompactSize only compact the spill file once it is at least this big
+   */
+  UndoHistoryStore(File spillDir, long minCompactSize) {
+    this.spillDir = spillDir;
+    this.minCompactSize = minCompactSize;
+  }
+
+  private static ExecutorService createWriter() {
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (new com.google.common.util.concurrent.ThreadFactoryBuilder())
+                .setNameFormat("undo-history-%d")
+                .setDaemon(true)
+                .build());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /**
+   * Records an operation. It is compressed, and older records are spilled to disk, on the writer
+   * thread.
+   *
+   * @param pen the pen used to draw
+   * @param drawable the drawable that was drawn
+   * @param memoryBudget the number of bytes that may be held in memory; older records beyond this
+   *     are spilled to disk
+   * @return the record, to be passed to {@link #load(Record)} and {@link #release(Record)}
+   */
+  synchronized Record store(Pen pen, Drawable drawable, long memoryBudget) {
+    Record record = new Record();
+    record.operation = new Operation(pen, drawable);
+    resident.add(record);
+    writer.execute(() -> compress(record, memoryBudget));
+    return record;
+  }
+
+  /**
+   * Restores a recorded operation.
+   *
+   * @param record the record returned by {@link #store(Pen, Drawable, long)}
+   * @return the pen and drawable of the operation
+   * @throws IOException if the operation can't be read back from the spill file
+   */
+  synchronized Operation load(Record record) throws IOException {
+    if (record.released) {
+      throw new IllegalStateException("Undo record has already been released");
+    }
+    if (record.operation != null) {
+      return record.operation;
+    }
+    byte[] data = record.data;
+    if (data == null) {
+      data = new byte[record.length];
+      readFully(spill.getChannel(), record.offset, data);
+    }
+    try (Reader r =
+        new InputStreamReader(
+            new InflaterInputStream(new ByteArrayInputStream(data)), StandardCharsets.UTF_8)) {
+      return (Operation) xstream.fromXML(r);
+    }
+  }
+
+  /**
+   * Discards a record. Its space in memory is freed immediately; its space in the spill file is
+   * reclaimed by the next compaction.
+   *
+   * @param record the record to discard
+   */
+  synchronized void release(Record record) {
+    if (record.released) {
+      return;
+    }
+    record.released = true;
+    if (resident.remove(record)) {
+      residentBytes -= record.length;
+    } else if (spilled.remove(record)) {
+      spilledBytes -= record.length;
+    }
+    record.data = null;
+    record.operation = null;
+
+    if (spilled.isEmpty()) {
+      closeSpillFile();
+    } else if (needsCompaction() && !compactionScheduled) {
+      compactionScheduled = true;
+      writer.execute(this::compact);
+    }
+  }
+
+  /** Discards every record and deletes the spill file. */
+  synchronized void clear() {
+    for (Record record : resident) {
+      record.released = true;
+    }
+    for (Record record : spilled) {
+      record.released = true;
+    }
+    resident.clear();
+    spilled.clear();
+    residentBytes = 0;
+    spilledBytes = 0;
+    closeSpillFile();
+  }
+
+  /**
+   * Waits until the writer thread has caught up with everything recorded or released so far.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void flush() throws InterruptedException {
+    try {
+      writer.submit(() -> {}).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** @return the number of records currently kept */
+  synchronized int getRecordCount() {
+    return resident.size() + spilled.size();
+  }
+
+  /** @return the number of compressed bytes held in memory */
+  synchronized long getMemoryBytes() {
+    return residentBytes;
+  }
+
+  /** @return the number of compressed bytes of live records in the spill file */
+  synchronized long getSpilledBytes() {
+    return spilledBytes;
+  }
+
+  /** @return the size of the spill file, including the space of discarded records */
+  synchronized long getSpillFileLength() {
+    return spillFileLength;
+  }
+
+  /** @return the total number of compressed bytes of live records */
+  synchronized long getTotalBytes() {
+    return residentBytes + spilledBytes;
+  }
+
+  /** @return the ratio of compressed to uncompressed size of everything stored so far */
+  synchronized double getCompressionRatio() {
+    return uncompressedTotal == 0 ? 1.0 : (double) compressedTotal / uncompressedTotal;
+  }
+
+  /** Compresses a record on the writer thread, then spills older records if needed. */
+  private void compress(Record record, long memoryBudget) {
+    Operation operation;
+    synchronized (this) {
+      if (record.released) {
+        return;
+      }
+      operation = record.operation;
+    }
+    byte[] data;
+    long uncompressed;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try (Writer w =
+          new OutputStreamWriter(
+              new DeflaterOutputStream(bytes, deflater), StandardCharsets.UTF_8)) {
+        xstream.toXML(operation, w);
+      } finally {
+        uncompressed = deflater.getBytesRead();
+        deflater.end();
+      }
+      data = bytes.toByteArray();
+    } catch (IOException | RuntimeException e) {
+      // Not worth losing the undo over; keep the objects themselves
+      log.warn("Unable to compress drawing for undo history", e);
+      return;
+    }
+    synchronized (this) {
+      uncompressedTotal += uncompressed;
+      compressedTotal += data.length;
+      if (record.released) {
+        return;
+      }
+      record.data = data;
+      record.length = data.length;
+      record.operation = null;
+      residentBytes += record.length;
+      spill(memoryBudget);
+    }
+  }
+
+  private void spill(long memoryBudget) {
+    Iterator<Record> it = resident.iterator();
+    while (residentBytes > memoryBudget && it.hasNext()) {
+      Record record = it.next();
+      if (record.data == null) {
+        continue; // Not compressed yet, or couldn't be serialized, so it has to stay in memory
+      }
+      try {
+        openSpillFile();
+        spill.seek(spillFileLength);
+        spill.write(record.data);
+      } catch (IOException ioe) {
+        log.warn("Unable to spill undo history to disk; keeping it in memory", ioe);
+        return;
+      }
+      record.offset = spillFileLength;
+      record.data = null;
+      spillFileLength += record.length;
+      it.remove();
+      residentBytes -= record.length;
+      spilled.add(record);
+      spilledBytes += record.length;
+    }
+  }
+
+  private boolean needsCompaction() {
+    return spillFileLength > minCompactSize && spilledBytes < spillFileLength / 2;
+  }
+
+  private File createSpillFile() throws IOException {
+    File file =
+        File.createTempFile("undo", ".tmp", spillDir != null ? spillDir : AppUtil.getTmpDir());
+    spillFiles.add(file);
+    return file;
+  }
+
+  private static void deleteSpillFile(File file) {
+    file.delete();
+    spillFiles.remove(file);
+  }
+
+  private void openSpillFile() throws IOException {
+    if (spill == null) {
+      spillFile = createSpillFile();
+      spill = new RandomAccessFile(spillFile, "rw");
+      spillFileLength = 0;
+    }
+  }
+
+  private void closeSpillFile() {
+    if (spill != null) {
+      try {
+        spill.close();
+      } catch (IOException ioe) {
+        // Ignore it
+      }
+      spill = null;
+    }
+    if (spillFile != null) {
+      deleteSpillFile(spillFile);
+      spillFile = null;
+    }
+    spillFileLength = 0;
+  }
+
+  /**
+   * Rewrites the spill file so that it only contains live records. Runs on the writer thread, which
+   * is the only one writing to the spill file, so the records are copied without holding the lock.
+   */
+  private void compact() {
+    File oldFile;
+    RandomAccessFile oldSpill;
+    List<Record> records;
+    List<Long> offsets = new ArrayList<>();
+    synchronized (this) {
+      compactionScheduled = false;
+      if (spill == null || !needsCompaction()) {
+        return;
+      }
+      oldFile = spillFile;
+      oldSpill = spill;
+      records = new ArrayList<>(spilled);
+      for (Record record : records) {
+        offsets.add(record.offset);
+      }
+    }
+    File newFile = null;
+    RandomAccessFile newSpill = null;
+    boolean swapped = false;
+    try {
+      newFile = createSpillFile();
+      newSpill = new RandomAccessFile(newFile, "rw");
+      for (int i = 0; i < records.size(); i++) {
+        byte[] data = new byte[records.get(i).length];
+        readFully(oldSpill.getChannel(), offsets.get(i), data);
+        newSpill.write(data);
+      }
+      synchronized (this) {
+        if (spill != oldSpill) {
+          throw new IOException("Spill file was closed while being compacted");
+        }
+        // Records released while copying keep their space until the next compaction
+        long length = 0;
+        for (Record record : records) {
+          if (!record.released) {
+            record.offset = length;
+          }
+          length += record.length;
+        }
+        spill = newSpill;
+        spillFile = newFile;
+        spillFileLength = length;
+        swapped = true;
+      }
+      oldSpill.close();
+      deleteSpillFile(oldFile);
+    } catch (IOException ioe) {
+      synchronized (this) {
+        if (spill == oldSpill) {
+          log.warn("Unable to compact undo history spill file", ioe);
+        }
+      }
+    } finally {
+      if (!swapped) {
+        if (newSpill != null) {
+          try {
+            newSpill.close();
+          } catch (IOException ioe) {
+            // Ignore it
+          }
+        }
+        if (newFile != null) {
+          deleteSpillFile(newFile);
+        }
+      }
+    }
+  }
+
+  private static void readFully(FileChannel channel, long offset, byte[] data) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+}
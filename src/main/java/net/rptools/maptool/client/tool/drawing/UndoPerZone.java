@@ -14,10 +14,12 @@
  */
 package net.rptools.maptool.client.tool.drawing;
 
+import java.io.IOException;
 import javax.swing.undo.AbstractUndoableEdit;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoManager;
+import net.rptools.maptool.client.AppPreferences;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.model.ModelChangeEvent;
 import net.rptools.maptool.model.ModelChangeListener;
@@ -37,6 +39,11 @@
  * the Swing UndoManager however, as that class does not support non-linear editing of the
  * UndoManager.
  *
+ * <p>The edits themselves are kept compressed in an {@link UndoHistoryStore}. Once the compressed
+ * history exceeds {@link AppPreferences#getUndoMemoryBudget()} the oldest edits are moved to disk,
+ * and once it exceeds {@link AppPreferences#getUndoHistoryBudget()} the oldest edits are
+ * discarded.
+ *
  * @author jgorrell
  * @version $Revision: 5828 $ $Date: 2011-11-26 18:29:24 -0500 (Sat, 26 Nov 2011) $ $Author:
  *     azhrei_fje $
@@ -45,7 +52,13 @@ public class UndoPerZone implements ModelChangeListener {
   private static final Logger log = LogManager.getLogger(UndoPerZone.class);
 
   /** Swing's undo/redo support */
-  private final UndoManager manager;
+  private final BoundedUndoManager manager;
+
+  /** Compressed storage for the pen and drawable of each edit */
+  private final UndoHistoryStore store = new UndoHistoryStore();
+
+  /** Number of edits discarded because the history exceeded its budget */
+  private int evictedCount;
 
   private Zone zone = null;
 
@@ -67,7 +80,7 @@ public UndoPerZone(Zone z) {
     // as a change listener. Seems a little weird
     // to me, but the whole MapTool as both server/client is weird anyway...
     zone = z;
-    manager = new UndoManager();
+    manager = new BoundedUndoManager();
   }
 
   protected UndoPerZone(UndoPerZone upz) throws IllegalArgumentException {
@@ -88,11 +101,57 @@ public void addDrawable(Pen pen, Drawable drawable) {
     checkZone();
     if (log.isDebugEnabled())
       log.debug("drawable " + drawable + " being added to zone " + zone.getName());
-    manager.addEdit(new DrawableUndoableEdit(pen, drawable));
+    long memoryBudget = AppPreferences.getUndoMemoryBudget() * 1024L;
+    manager.addEdit(new DrawableUndoableEdit(store.store(pen, drawable, memoryBudget)));
+    enforceBudget();
     net.rptools.maptool.client.AppActions.UNDO_PER_MAP.isAvailable();
     net.rptools.maptool.client.AppActions.REDO_PER_MAP.isAvailable();
   }
 
+  /** Discards the oldest edits until the history fits within its budget. */
+  private void enforceBudget() {
+    long historyBudget = AppPreferences.getUndoHistoryBudget() * 1024L;
+    while (store.getTotalBytes() > historyBudget && manager.getEditCount() > 1) {
+      manager.discardOldest();
+      evictedCount++;
+    }
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "undo history for zone "
+              + zone.getName()
+              + ": "
+              + getHistorySize()
+              + " edits, "
+              + getHistoryMemoryBytes()
+              + " bytes in memory, "
+              + getHistorySpilledBytes()
+              + " bytes on disk, "
+              + evictedCount
+              + " evicted, compression ratio "
+              + store.getCompressionRatio());
+    }
+  }
+
+  /** @return the number of edits in the undo history */
+  public int getHistorySize() {
+    return store.getRecordCount();
+  }
+
+  /** @return the number of bytes of compressed undo history held in memory */
+  public long getHistoryMemoryBytes() {
+    return store.getMemoryBytes();
+  }
+
+  /** @return the number of bytes of compressed undo history moved to disk */
+  public long getHistorySpilledBytes() {
+    return store.getSpilledBytes();
+  }
+
+  /** @return the number of edits discarded because the history exceeded its budget */
+  public int getEvictedCount() {
+    return evictedCount;
+  }
+
   public boolean canUndo() {
     return manager.canUndo();
   }
@@ -109,7 +168,11 @@ public void undo() {
       return;
     }
     if (log.isDebugEnabled()) log.debug("Undoing last change on zone " + zone.getName());
-    manager.undo();
+    try {
+      manager.undo();
+    } catch (CannotUndoException e) {
+      log.warn("Unable to undo last change on zone " + zone.getName());
+    }
   }
 
   /** Redo the last undo if one exists. */
@@ -120,7 +183,11 @@ public void redo() {
       return;
     }
     if (log.isDebugEnabled()) log.debug("Redoing next change on zone " + zone.getName());
-    manager.redo();
+    try {
+      manager.redo();
+    } catch (CannotRedoException e) {
+      log.warn("Unable to redo next change on zone " + zone.getName());
+    }
   }
 
   /**
@@ -130,6 +197,7 @@ public void redo() {
    */
   public void clear() {
     manager.discardAllEdits();
+    store.clear();
   }
 
   /**
@@ -142,6 +210,23 @@ public UndoManager getUndoManager() {
     return manager;
   }
 
+  /** Adds the ability to discard the oldest edits to Swing's UndoManager. */
+  private static class BoundedUndoManager extends UndoManager {
+    private static final long serialVersionUID = 4361592914727423893L;
+
+    /** @return the number of edits, both undoable and redoable */
+    private synchronized int getEditCount() {
+      return edits.size();
+    }
+
+    /** Discards the oldest edit, which dies and releases its storage. */
+    private synchronized void discardOldest() {
+      if (!edits.isEmpty()) {
+        trimEdits(0, 0);
+      }
+    }
+  }
+
   /**
    * Class used to undo/redo drawables. The GM can undo/redo any drawables, but clients should be
    * able to manipulate only their own.
@@ -153,21 +238,25 @@ public UndoManager getUndoManager() {
   private class DrawableUndoableEdit extends AbstractUndoableEdit {
     private static final long serialVersionUID = -1373046215655231284L;
 
-    /** The pen used to modify the zone. */
-    private final Pen pen;
-
-    /** What has been drawn. */
-    private final Drawable drawable;
+    /** The compressed pen and drawable. */
+    private final UndoHistoryStore.Record record;
 
     /**
      * Create the undoable edit.
      *
-     * @param aPen The pen for drawing.
-     * @param aDrawable The drawable rendered.
+     * @param aRecord The stored pen and drawable.
      */
-    public DrawableUndoableEdit(Pen aPen, Drawable aDrawable) {
-      pen = aPen;
-      drawable = aDrawable;
+    public DrawableUndoableEdit(UndoHistoryStore.Record aRecord) {
+      record = aRecord;
+    }
+
+    private UndoHistoryStore.Operation getOperation() {
+      try {
+        return store.load(record);
+      } catch (IOException ioe) {
+        log.error("Unable to read undo history for zone " + zone.getName(), ioe);
+        return null;
+      }
     }
 
     /**
@@ -177,17 +266,32 @@ public DrawableUndoableEdit(Pen aPen, Drawable aDrawable) {
      */
     @Override
     public void undo() throws CannotUndoException {
+      UndoHistoryStore.Operation op = getOperation();
+      if (op == null) {
+        throw new CannotUndoException();
+      }
       super.undo();
       // Tell the server to undo the drawable.
-      MapTool.serverCommand().undoDraw(zone.getId(), drawable.getId());
+      MapTool.serverCommand().undoDraw(zone.getId(), op.getDrawable().getId());
     }
 
     /** @see javax.swing.undo.UndoableEdit#redo() */
     @Override
     public void redo() throws CannotRedoException {
+      UndoHistoryStore.Operation op = getOperation();
+      if (op == null) {
+        throw new CannotRedoException();
+      }
       super.redo();
       // Render the drawable again, but don't add it to the undo manager.
-      MapTool.serverCommand().draw(zone.getId(), pen, drawable);
+      MapTool.serverCommand().draw(zone.getId(), op.getPen(), op.getDrawable());
+    }
+
+    /** Releases the stored pen and drawable once the edit is discarded. */
+    @Override
+    public void die() {
+      super.die();
+      store.release(record);
     }
   }
 
@@ -0,0 +1,147 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import net.rptools.maptool.client.AppState;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.language.I18N;
+import net.rptools.maptool.util.CampaignArchiveExporter;
+
+/**
+ * Runs an export on a background thread behind a {@link ProgressMonitor}, so the UI stays
+ * responsive and the user can cancel a long export. The background task lock is held while the
+ * export runs so it doesn't overlap with a campaign save or auto save.
+ *
+ * <p>A task that serializes the live campaign must block input to the main frame, the same way a
+ * campaign save does, so nothing is edited while it is written. The progress dialog stays usable
+ * and can still cancel the export.
+ */
+public class ArchiveExportWorker extends SwingWorker<Void, Void> {
+
+  private static final int MAX_WAIT_FOR_LOCK = 30;
+
+  /** The export to run. */
+  @FunctionalInterface
+  public interface ExportTask {
+    void export(CampaignArchiveExporter.Progress progress) throws IOException;
+  }
+
+  private final ExportTask task;
+  private final Runnable onSuccess;
+  private final String errorMsgKey;
+  private final boolean blockInput;
+  private final ProgressMonitor monitor;
+
+  /**
+   * @param messageKey the message shown in the progress dialog
+   * @param task the export to run
+   * @param onSuccess run on the EDT once the export has completed; may be <code>null</code>
+   * @param errorMsgKey the message shown if the export fails
+   */
+  public ArchiveExportWorker(
+      String messageKey, ExportTask task, Runnable onSuccess, String errorMsgKey) {
+    this(messageKey, task, onSuccess, errorMsgKey, false);
+  }
+
+  /**
+   * Must be called on the EDT.
+   *
+   * @param messageKey the message shown in the progress dialog
+   * @param task the export to run
+   * @param onSuccess run on the EDT once the export has completed; may be <code>null</code>
+   * @param errorMsgKey the message shown if the export fails
+   * @param blockInput whether input to the main frame is blocked until the export is done
+   */
+  public ArchiveExportWorker(
+      String messageKey,
+      ExportTask task,
+      Runnable onSuccess,
+      String errorMsgKey,
+      boolean blockInput) {
+    this.task = task;
+    this.onSuccess = onSuccess;
+    this.errorMsgKey = errorMsgKey;
+    this.blockInput = blockInput;
+    if (blockInput) {
+      // Shown right away so nothing can be changed between now and the start of the export
+      MapTool.getFrame().showFilledGlassPane(new StaticMessageDialog(I18N.getText(messageKey)));
+    }
+
+    monitor = new ProgressMonitor(MapTool.getFrame(), I18N.getText(messageKey), null, 0, 100);
+    monitor.setMillisToPopup(250);
+    addPropertyChangeListener(
+        evt -> {
+          if ("progress".equals(evt.getPropertyName())) {
+            monitor.setProgress((Integer) evt.getNewValue());
+          }
+          if (monitor.isCanceled() && !isDone()) {
+            // The export polls for cancellation between entries; interrupting it could leave
+            // channels closed under the compression workers
+            cancel(false);
+          }
+        });
+  }
+
+  @Override
+  protected Void doInBackground() throws Exception {
+    AppState.acquireBackgroundTaskLock(MAX_WAIT_FOR_LOCK);
+    try {
+      task.export(
+          new CampaignArchiveExporter.Progress() {
+            @Override
+            public void update(int done, int total) {
+              setProgress(total == 0 ? 100 : Math.min(100, (int) (100L * done / total)));
+            }
+
+            @Override
+            public boolean isCancelled() {
+              return ArchiveExportWorker.this.isCancelled() || monitor.isCanceled();
+            }
+          });
+    } finally {
+      AppState.releaseBackgroundTaskLock();
+    }
+    return null;
+  }
+
+  @Override
+  protected void done() {
+    monitor.close();
+    if (blockInput) {
+      MapTool.getFrame().hideGlassPane();
+    }
+    try {
+      get();
+      if (onSuccess != null) {
+        onSuccess.run();
+      }
+    } catch (CancellationException | InterruptedException e) {
+      MapTool.getFrame().setStatusMessage(I18N.getString("msg.info.exportCancelled"));
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof AppState.FailedToAcquireLockException) {
+        MapTool.showError("msg.error.failedSaveCampaignLock");
+      } else if (monitor.isCanceled()) {
+        MapTool.getFrame().setStatusMessage(I18N.getString("msg.info.exportCancelled"));
+      } else {
+        MapTool.showError(errorMsgKey, e.getCause());
+      }
+    }
+  }
+}
@@ -38,6 +38,7 @@
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
 import net.rptools.lib.net.FTPLocation;
 import net.rptools.lib.net.LocalLocation;
 import net.rptools.lib.net.Location;
@@ -91,15 +92,7 @@ public class ExportDialog extends JDialog implements IIOWriteProgressListener {
   // These are static because we don't expect more than
   // a single ExportDialog to ever be instanced.
 
-  // Pseudo-layers
-  private static Zone.VisionType savedVision;
-  private static boolean savedFog;
-  private static boolean savedBoard;
-  // real layers
-  private static boolean savedToken;
-  private static boolean savedHidden;
-  private static boolean savedObject;
-  private static boolean savedBackground;
+  private static LayerSettings savedLayers;
   // for ZoneRenderer preservation
   private static Rectangle origBounds;
   private static Scale origScale;
@@ -589,45 +582,49 @@ public void screenCapture() throws Exception {
                   .setStatusMessage(I18N.getString("dialog.screenshot.msg.screenshotSaved"));
             }
           } else if (interactPanel.isSelected("METHOD_BACKGROUND")) {
-            // We must call preScreenshot before creating the ZoneImageGenerator, because
-            // ZoneImageGenerator uses the ZoneRenderer's bounds to set itself up
-
-            MapTool.showError("This doesn't work! Try one of the other methods.", null);
-            if (false) {
-              //
-              // Note: this implementation is the obvious way, which doesn't work, since
-              // ZoneRenderer is part of the Swing component chain, and the threads get deadlocked.
-              //
-              // The suggested implementation by
-              // "Reiger" at http://ubuntuforums.org/archive/index.php/t-1455270.html
-              // might work... except that it would have to be part of ZoneRenderer
-              //
-              // The only way to make this really work is to pull the renderZone function
-              // out of ZoneRenderer into a new class: call it ZoneRasterizer. Then make
-              // ZoneRenderer create an instance of it, and patch up the code to make it
-              // compatible. Then we can create an instance of ZoneRasterizer, and run it
-              // in a separate thread, since it won't lock in any of the functions that
-              // Swing uses.
-              //
-              class backscreenRender implements Runnable {
-                public void run() {
-                  try {
-                    PlayerView view = preScreenshot();
-                    final ZoneImageGenerator zoneImageGenerator =
-                        new ZoneImageGenerator(renderer, view);
-                    final ImageWriter pngWriter = ImageIO.getImageWritersByFormatName("png").next();
-                    exportLocation.putContent(pngWriter, zoneImageGenerator);
-                    // postScreenshot is called by the callback imageComplete()
-                  } catch (Exception e) {
-                    assert false
-                        : "Unhandled Exception in renderOffScreen: '" + e.getMessage() + "'";
-                  }
-                }
-              }
-              backscreenRender p = new backscreenRender();
-              new Thread(p).start();
-              repaint();
+            // An off-screen renderer draws the map in tiles while the PNG is written from a
+            // background thread, so the renderer on screen is left alone. The layer settings
+            // of the export are applied to the zone once, until the image is written.
+            final Zone exportZone = renderer.getZone();
+            final double scale = renderer.getScale();
+            final LayerSettings previous = LayerSettings.forExport().apply(exportZone);
+            final TiledZoneImage image;
+            try {
+              PlayerView view = getExportView();
+              image = new TiledZoneImage(renderer, view, getExportExtents(view, scale), scale);
+            } catch (Exception | OutOfMemoryError e) {
+              previous.apply(exportZone);
+              throw e;
             }
+            final Location location = exportLocation;
+            MapTool.getFrame()
+                .setStatusMessage(I18N.getString("dialog.screenshot.msg.screenshotStreaming"));
+            new Thread(
+                    () -> {
+                      boolean saved = false;
+                      try {
+                        ImageWriter pngWriter = ImageIO.getImageWritersByFormatName("png").next();
+                        location.putContent(pngWriter, image);
+                        saved = true;
+                      } catch (Exception | OutOfMemoryError e) {
+                        log.error("Could not export the map", e);
+                      } finally {
+                        final boolean success = saved;
+                        SwingUtilities.invokeLater(
+                            () -> {
+                              image.close();
+                              previous.apply(exportZone);
+                              MapTool.getFrame()
+                                  .setStatusMessage(
+                                      I18N.getString(
+                                          success
+                                              ? "dialog.screenshot.msg.screenshotSaved"
+                                              : "dialog.screenshot.error.failedImageGeneration"));
+                            });
+                      }
+                    },
+                    "map-export")
+                .start();
           } else {
             throw new Exception("Unknown rendering method!");
           }
@@ -698,41 +695,84 @@ public void setExportLocation(Location loc) {
    */
   private static void setupZoneLayers() throws OutOfMemoryError {
     final Zone zone = MapTool.getFrame().getCurrentZoneRenderer().getZone();
-
-    //
-    // Preserve settings
-    //
-    // pseudo-layers
-    savedVision = zone.getVisionType();
-    savedFog = zone.hasFog();
-    savedBoard = zone.drawBoard();
-    // real layers
-    savedToken = Zone.Layer.TOKEN.isEnabled();
-    savedHidden = Zone.Layer.GM.isEnabled();
-    savedObject = Zone.Layer.OBJECT.isEnabled();
-    savedBackground = Zone.Layer.BACKGROUND.isEnabled();
-
-    //
-    // set according to dialog options
-    //
-    zone.setHasFog(ExportLayers.LAYER_FOG.isChecked());
-    if (!ExportLayers.LAYER_VISIBILITY.isChecked()) zone.setVisionType(Zone.VisionType.OFF);
-    zone.setDrawBoard(ExportLayers.LAYER_BOARD.isChecked());
-    Zone.Layer.TOKEN.setEnabled(ExportLayers.LAYER_TOKEN.isChecked());
-    Zone.Layer.GM.setEnabled(ExportLayers.LAYER_HIDDEN.isChecked());
-    Zone.Layer.OBJECT.setEnabled(ExportLayers.LAYER_OBJECT.isChecked());
-    Zone.Layer.BACKGROUND.setEnabled(ExportLayers.LAYER_BACKGROUND.isChecked());
+    savedLayers = LayerSettings.forExport().apply(zone);
   }
 
   /** This restores the layer settings on the Zone object. It should follow setupZoneLayers(). */
   private static void restoreZoneLayers() {
-    zone.setHasFog(savedFog);
-    zone.setVisionType(savedVision);
-    zone.setDrawBoard(savedBoard);
-    Zone.Layer.TOKEN.setEnabled(savedToken);
-    Zone.Layer.GM.setEnabled(savedHidden);
-    Zone.Layer.OBJECT.setEnabled(savedObject);
-    Zone.Layer.BACKGROUND.setEnabled(savedBackground);
+    savedLayers.apply(zone);
+  }
+
+  /** The layers and pseudo-layers rendered, which are changed on the zone for an export. */
+  private static class LayerSettings {
+    // Pseudo-layers
+    private final boolean fog;
+    private final Zone.VisionType vision;
+    private final boolean board;
+    // real layers
+    private final boolean token;
+    private final boolean hidden;
+    private final boolean object;
+    private final boolean background;
+
+    private LayerSettings(
+        boolean fog,
+        Zone.VisionType vision,
+        boolean board,
+        boolean token,
+        boolean hidden,
+        boolean object,
+        boolean background) {
+      this.fog = fog;
+      this.vision = vision;
+      this.board = board;
+      this.token = token;
+      this.hidden = hidden;
+      this.object = object;
+      this.background = background;
+    }
+
+    /** Returns the settings chosen in the dialog, for the vision type of the current zone. */
+    private static LayerSettings forExport() {
+      final Zone zone = MapTool.getFrame().getCurrentZoneRenderer().getZone();
+      return new LayerSettings(
+          ExportLayers.LAYER_FOG.isChecked(),
+          ExportLayers.LAYER_VISIBILITY.isChecked() ? zone.getVisionType() : Zone.VisionType.OFF,
+          ExportLayers.LAYER_BOARD.isChecked(),
+          ExportLayers.LAYER_TOKEN.isChecked(),
+          ExportLayers.LAYER_HIDDEN.isChecked(),
+          ExportLayers.LAYER_OBJECT.isChecked(),
+          ExportLayers.LAYER_BACKGROUND.isChecked());
+    }
+
+    /**
+     * Applies these settings to the zone and the layers.
+     *
+     * @param zone the zone to change
+     * @return the previous settings, to restore them
+     */
+    private LayerSettings apply(Zone zone) {
+      LayerSettings previous =
+          new LayerSettings(
+              zone.hasFog(),
+              zone.getVisionType(),
+              zone.drawBoard(),
+              Zone.Layer.TOKEN.isEnabled(),
+              Zone.Layer.GM.isEnabled(),
+              Zone.Layer.OBJECT.isEnabled(),
+              Zone.Layer.BACKGROUND.isEnabled());
+      // Changing the fog is announced to the listeners of the zone
+      if (zone.hasFog() != fog) {
+        zone.setHasFog(fog);
+      }
+      zone.setVisionType(vision);
+      zone.setDrawBoard(board);
+      Zone.Layer.TOKEN.setEnabled(token);
+      Zone.Layer.GM.setEnabled(hidden);
+      Zone.Layer.OBJECT.setEnabled(object);
+      Zone.Layer.BACKGROUND.setEnabled(background);
+      return previous;
+    }
   }
 
   /**
@@ -760,14 +800,41 @@ private PlayerView preScreenshot() throws Exception, OutOfMemoryError {
     origScale = renderer.getZoneScale();
 
     setupZoneLayers();
+    PlayerView view = getExportView();
+    Rectangle extents = getExportExtents(view, renderer.getScale());
+
+    // Setup the renderer to use the new extents
+    Scale s = new Scale();
+    s.setOffset(-extents.x, -extents.y);
+    s.setScale(renderer.getScale());
+    renderer.setZoneScale(s);
+    renderer.setBounds(extents);
+
+    waitingForPostScreenshot = true;
+    return view;
+  }
+
+  /** Returns the view the map is exported for, as chosen in the dialog. */
+  private static PlayerView getExportView() {
+    boolean viewAsPlayer = ExportRadioButtons.VIEW_PLAYER.isChecked();
+    Player.Role viewRole = viewAsPlayer ? Player.Role.PLAYER : Player.Role.GM;
+    return renderer.getPlayerView(viewRole, false);
+  }
+
+  /**
+   * Finds the extents of the map to export, with the layer settings of the export applied.
+   *
+   * @param view the view the map is exported for
+   * @param scale the scale the map is rendered at
+   * @return the extents, in pixels at the given scale
+   */
+  private static Rectangle getExportExtents(PlayerView view, double scale) throws Exception {
     boolean viewAsPlayer = ExportRadioButtons.VIEW_PLAYER.isChecked();
 
     // First, figure out the 'extents' of the canvas
     // This will be later modified by the fog (for players),
     // and by the tiling texture (for re-importing)
     //
-    Player.Role viewRole = viewAsPlayer ? Player.Role.PLAYER : Player.Role.GM;
-    PlayerView view = renderer.getPlayerView(viewRole, false);
     Rectangle extents = renderer.zoneExtents(view);
     try {
       // Clip to what the players know about (if applicable).
@@ -819,19 +886,9 @@ private PlayerView preScreenshot() throws Exception, OutOfMemoryError {
     }
 
     // Rescale the bounds to match the view scale
-    double scale = renderer.getScale();
     extents.setLocation((int) (extents.x * scale), (int) (extents.y * scale));
     extents.setSize((int) (extents.width * scale), (int) (extents.height * scale));
-
-    // Setup the renderer to use the new extents
-    Scale s = new Scale();
-    s.setOffset(-extents.x, -extents.y);
-    s.setScale(scale);
-    renderer.setZoneScale(s);
-    renderer.setBounds(extents);
-
-    waitingForPostScreenshot = true;
-    return view;
+    return extents;
   }
 
   private void postScreenshot() {
@@ -0,0 +1,308 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
+import net.rptools.maptool.client.ui.zone.PlayerView;
+import net.rptools.maptool.client.ui.zone.ZoneRenderer;
+
+/**
+ * A read-only image of a whole zone for ImageWriters, like {@link ZoneImageGenerator}, that renders
+ * the zone in tiles with an off-screen renderer instead of using the one on screen.
+ *
+ * <p>The zone is only safe to read on the event dispatch thread, so the tiles are rendered there,
+ * one at a time, and the UI keeps handling events between them. The image is produced in
+ * horizontal bands of tiles. The band following the one being written is rendered ahead, and
+ * earlier bands are dropped, so the memory used is bounded by the size of two bands whatever the
+ * size of the map. The image must be written from a background thread, never from the event
+ * dispatch thread, which would wait for itself.
+ *
+ * <p>The off-screen renderer must be released with {@link #close()} once the image is written.
+ */
+public class TiledZoneImage extends BufferedImage implements AutoCloseable {
+
+  /** Width and height of the tiles rendered by each task, in pixels. */
+  private static final int TILE_SIZE = 512;
+
+  /** Pixels of a band; bands of very wide maps are made shorter to stay within this. */
+  private static final int BAND_PIXELS = 4 * 1024 * 1024;
+
+  private static final ThreadFactory threadFactory =
+      (new com.google.common.util.concurrent.ThreadFactoryBuilder())
+          .setNameFormat("map-export-%d")
+          .setDaemon(true)
+          .build();
+
+  private final PlayerView view;
+  private final Rectangle bounds;
+  private final double scale;
+  private final int bandHeight;
+
+  /** Hands the tiles to the event dispatch thread in order, waiting for each one. */
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(threadFactory);
+
+  /** Only used on the event dispatch thread. */
+  private final ZoneRenderer renderer;
+
+  /** Only used on the event dispatch thread. */
+  private boolean closed;
+
+  private Band current;
+  private Band next;
+  private int bandCount;
+
+  /** A band of the image, and the tasks rendering its tiles. */
+  private static class Band {
+    private final int index;
+    private final BufferedImage image;
+    private final List<Future<?>> tiles = new ArrayList<>();
+
+    private Band(int index, BufferedImage image) {
+      this.index = index;
+      this.image = image;
+    }
+  }
+
+  /**
+   * Creates the image and the off-screen renderer; must be called on the event dispatch thread.
+   *
+   * @param renderer the renderer of the zone to export
+   * @param view the view to render the zone for
+   * @param bounds the region of the zone to export, in pixels at the given scale
+   * @param scale the scale to render the zone at
+   */
+  public TiledZoneImage(ZoneRenderer renderer, PlayerView view, Rectangle bounds, double scale) {
+    // The BufferedImage raster made by super() is just a dummy, as in ZoneImageGenerator
+    super(32, 32, Transparency.OPAQUE);
+    this.view = view;
+    this.bounds = new Rectangle(bounds);
+    this.scale = scale;
+    bandHeight = Math.max(1, Math.min(TILE_SIZE, BAND_PIXELS / Math.max(1, bounds.width)));
+    this.renderer = renderer.createOffscreenRenderer();
+  }
+
+  @Override
+  public synchronized Raster getData(Rectangle rect) {
+    int firstBand = rect.y / bandHeight;
+    int lastBand = (rect.y + rect.height - 1) / bandHeight;
+    if (firstBand == lastBand) {
+      return getBand(firstBand)
+          .createChild(rect.x, rect.y, rect.width, rect.height, rect.x, rect.y, null);
+    }
+    // Requests spanning several bands are copied together
+    WritableRaster raster =
+        getBand(firstBand).createCompatibleWritableRaster(rect.x, rect.y, rect.width, rect.height);
+    for (int band = firstBand; band <= lastBand; band++) {
+      Raster data = getBand(band);
+      Rectangle part = rect.intersection(data.getBounds());
+      raster.setRect(
+          data.createChild(part.x, part.y, part.width, part.height, part.x, part.y, null));
+    }
+    return raster;
+  }
+
+  /**
+   * Returns a finished band, starting the rendering of the next one.
+   *
+   * @param index the index of the band
+   * @return the raster of the band, in image coordinates
+   */
+  private Raster getBand(int index) {
+    if (current == null || current.index != index) {
+      if (next != null && next.index == index) {
+        current = next;
+      } else {
+        cancel(next);
+        cancel(current);
+        current = startBand(index);
+      }
+      next = index + 1 < getBandCount() ? startBand(index + 1) : null;
+    }
+    try {
+      for (Future<?> tile : current.tiles) {
+        tile.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while rendering the map", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Could not render the map", e.getCause());
+    }
+    return current.image.getRaster().createTranslatedChild(0, index * bandHeight);
+  }
+
+  private int getBandCount() {
+    return (bounds.height + bandHeight - 1) / bandHeight;
+  }
+
+  private Band startBand(int index) {
+    int y = index * bandHeight;
+    int height = Math.min(bandHeight, bounds.height - y);
+    Band band =
+        new Band(index, new BufferedImage(bounds.width, height, BufferedImage.TYPE_INT_RGB));
+    for (int x = 0; x < bounds.width; x += TILE_SIZE) {
+      Rectangle tile = new Rectangle(x, 0, Math.min(TILE_SIZE, bounds.width - x), height);
+      band.tiles.add(
+          executor.submit(
+              () -> {
+                SwingUtilities.invokeAndWait(() -> renderTile(band.image, tile, y));
+                return null;
+              }));
+    }
+    bandCount++;
+    return band;
+  }
+
+  private static void cancel(Band band) {
+    if (band != null) {
+      band.tiles.forEach(tile -> tile.cancel(false));
+    }
+  }
+
+  /**
+   * Renders a tile of a band with the off-screen renderer, on the event dispatch thread.
+   *
+   * @param bandImage the image of the band
+   * @param tile the tile, in band coordinates
+   * @param bandY the top of the band in the image
+   */
+  private void renderTile(BufferedImage bandImage, Rectangle tile, int bandY) {
+    if (closed) {
+      return;
+    }
+    Scale s = new Scale();
+    s.setScale(scale);
+    s.setOffset(-(bounds.x + tile.x), -(bounds.y + bandY));
+    renderer.setZoneScale(s);
+    renderer.setBounds(0, 0, tile.width, tile.height);
+
+    BufferedImage image = new BufferedImage(tile.width, tile.height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    try {
+      g.setClip(0, 0, tile.width, tile.height);
+      renderer.renderZone(g, view);
+    } finally {
+      g.dispose();
+    }
+    bandImage.getRaster().setRect(tile.x, tile.y, image.getRaster());
+  }
+
+  /**
+   * Stops rendering and releases the off-screen renderer; must be called on the event dispatch
+   * thread.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdownNow();
+    renderer.detachFromZone();
+    synchronized (this) {
+      current = null;
+      next = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TiledZoneImage: "
+        + bounds.width
+        + "x"
+        + bounds.height
+        + ", bands of "
+        + bandHeight
+        + " rows, "
+        + bandCount
+        + " rendered";
+  }
+
+  ///////////////////////////////////////////////////////////////////////
+  // As in ZoneImageGenerator, the rest makes sure that writing to this
+  // read-only image fails in a predictable way.
+  ///////////////////////////////////////////////////////////////////////
+
+  /** This object cannot be written to. Returns null. */
+  @Override
+  public WritableRaster getRaster() {
+    return null;
+  }
+
+  /** This object cannot be written to. Method does nothing. */
+  @Override
+  public synchronized void setRGB(int x, int y, int rgb) {}
+
+  /** This object cannot be written to. Method does nothing. */
+  @Override
+  public void setRGB(
+      int startX, int startY, int w, int h, int[] rgbArray, int offset, int scansize) {}
+
+  /** To the outside world, we represent that this image is as large as the exported region. */
+  @Override
+  public int getWidth() {
+    return bounds.width;
+  }
+
+  /** To the outside world, we represent that this image is as large as the exported region. */
+  @Override
+  public int getHeight() {
+    return bounds.height;
+  }
+
+  @Override
+  public int getWidth(ImageObserver observer) {
+    return getWidth();
+  }
+
+  @Override
+  public int getHeight(ImageObserver observer) {
+    return getHeight();
+  }
+
+  /** This object cannot be written to. Returns null. */
+  @Override
+  public Graphics getGraphics() {
+    return null;
+  }
+
+  /** This object cannot be written to. Returns null. */
+  @Override
+  public Graphics2D createGraphics() {
+    return null;
+  }
+
+  /** The whole image is never held in memory. Returns null. */
+  @Override
+  public Raster getData() {
+    return null;
+  }
+
+  /** This object cannot be written to. Method does nothing. */
+  @Override
+  public void setData(Raster r) {}
+}
@@ -37,8 +37,10 @@
 import net.rptools.lib.FileUtil;
 import net.rptools.lib.swing.SwingUtil;
 import net.rptools.maptool.client.AppConstants;
+import net.rptools.maptool.client.AppState;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.swing.FormPanelI18N;
+import net.rptools.maptool.client.ui.ArchiveExportWorker;
 import net.rptools.maptool.client.ui.zone.ZoneRenderer;
 import net.rptools.maptool.language.I18N;
 import net.rptools.maptool.model.AssetManager;
@@ -872,12 +874,21 @@ private void initExportButton() {
                   return;
                 }
               }
-              try {
-                PersistenceUtil.saveCampaignProperties(campaign, chooser.getSelectedFile());
-                MapTool.showInformation("Properties Saved.");
-              } catch (IOException ioe) {
-                MapTool.showError("Could not save properties: ", ioe);
+              if (AppState.testBackgroundTaskLock()) {
+                MapTool.showError("msg.error.failedSaveCampaignLock");
+                return;
               }
+              // Save a copy, as the properties can be changed again while the export runs
+              CampaignProperties properties =
+                  new CampaignProperties(campaign.getCampaignProperties());
+              new ArchiveExportWorker(
+                      "msg.info.campaignPropertiesExporting",
+                      progress ->
+                          PersistenceUtil.saveCampaignProperties(
+                              properties, selectedFile, progress),
+                      () -> MapTool.showInformation("Properties Saved."),
+                      "Could not save properties: ")
+                  .execute();
             });
   }
 
@@ -579,6 +579,26 @@ public String getMessageHistory() {
     return messagePanel.getMessagesText();
   }
 
+  /**
+   * Returns the whole history and forgets the unsaved messages.
+   *
+   * @return the HTML of the history, or <code>null</code> if interrupted
+   * @see MessagePanel#takeMessagesText()
+   */
+  public String takeMessageHistory() {
+    return messagePanel.takeMessagesText();
+  }
+
+  /**
+   * Returns the HTML of the messages added since the last call.
+   *
+   * @return the new messages, or <code>null</code> if the whole history must be saved instead
+   * @see MessagePanel#takeUnsavedMessages()
+   */
+  public List<String> takeUnsavedMessages() {
+    return messagePanel.takeUnsavedMessages();
+  }
+
   public void setCharacterLabel(String label) {
     characterLabel.setText(label);
   }
@@ -23,8 +23,11 @@
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.swing.JEditorPane;
@@ -57,6 +60,15 @@ public class MessagePanel extends JPanel {
   public static final Pattern URL_PATTERN =
       Pattern.compile("([^:]*)://([^/]*)/([^?]*)(?:\\?(.*))?");
 
+  /** Beyond this many unsaved messages the whole history is saved instead of the new messages. */
+  private static final int MAX_UNSAVED_MESSAGES = 5000;
+
+  /** HTML of the messages added since {@link #takeUnsavedMessages()} was last called. */
+  private List<String> unsavedMessages = new ArrayList<>();
+
+  /** Whether the saved history can no longer be brought up to date by appending messages. */
+  private boolean unsavedHistoryInvalid = true;
+
   public MessagePanel() {
     setLayout(new GridLayout());
 
@@ -165,9 +177,71 @@ public void clearMessages() {
         () -> {
           textPane.setText("<html><body id=\"body\"></body></html>");
           ((MessagePanelEditorKit) textPane.getEditorKit()).flush();
+          invalidateUnsavedMessages();
         });
   }
 
+  /**
+   * Returns the whole history and forgets the unsaved messages, which it already contains. Both
+   * are taken on the EDT, where messages are added, so a message is either part of the history or
+   * returned by the next {@link #takeUnsavedMessages()}, never both.
+   *
+   * @return the HTML of the whole history, or <code>null</code> if interrupted while waiting for
+   *     the EDT
+   */
+  public String takeMessagesText() {
+    if (EventQueue.isDispatchThread()) {
+      return takeMessagesTextNow();
+    }
+    String[] text = new String[1];
+    try {
+      EventQueue.invokeAndWait(() -> text[0] = takeMessagesTextNow());
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (InvocationTargetException ite) {
+      throw new IllegalStateException(ite.getCause());
+    }
+    return text[0];
+  }
+
+  private synchronized String takeMessagesTextNow() {
+    unsavedMessages = new ArrayList<>();
+    unsavedHistoryInvalid = false;
+    return textPane.getText();
+  }
+
+  /**
+   * Returns the HTML of each message added since the last call, so that a saved copy of the
+   * history can be brought up to date by appending them. The HTML is the message as it was added,
+   * not as the document parsed it.
+   *
+   * @return the new messages, or <code>null</code> if the messages were cleared or too many
+   *     accumulated, in which case the whole history from {@link #takeMessagesText()} must be saved
+   */
+  public synchronized List<String> takeUnsavedMessages() {
+    List<String> messages = unsavedHistoryInvalid ? null : unsavedMessages;
+    unsavedMessages = new ArrayList<>();
+    unsavedHistoryInvalid = false;
+    return messages;
+  }
+
+  private synchronized void addUnsavedMessage(String html) {
+    if (unsavedHistoryInvalid) {
+      return;
+    }
+    if (unsavedMessages.size() >= MAX_UNSAVED_MESSAGES) {
+      invalidateUnsavedMessages();
+    } else {
+      unsavedMessages.add(html);
+    }
+  }
+
+  private synchronized void invalidateUnsavedMessages() {
+    unsavedMessages = new ArrayList<>();
+    unsavedHistoryInvalid = true;
+  }
+
   /*
    * We use ASCII control characters to mark off the rolls so that there's no limitation on what (printable) characters the output can include Rolls look like "\036roll output\036" or
    * "\036tooltip\037roll output\036" or "\036\001format info\002roll output\036" or "\036\001format info\002tooltip\037roll output\036"
@@ -244,7 +318,9 @@ else if (options.contains("s")
 
             try {
               Element element = document.getElement("body");
-              document.insertBeforeEnd(element, "<div>" + output + "</div>");
+              String html = "<div>" + output + "</div>";
+              document.insertBeforeEnd(element, html);
+              addUnsavedMessage(html);
               if (!message.getSource().equals(MapTool.getPlayer().getName())) {
                 MapTool.playSound(SND_MESSAGE_RECEIVED);
               }
@@ -83,8 +83,16 @@ public void flush() {
     chunkMap.clear();
   }
 
+  public void invalidate(DrawnElement element) {
+    flush();
+  }
+
   public void renderDrawables(
-      Graphics g, List<DrawnElement> drawableList, Rectangle viewport, double scale) {
+      Graphics g,
+      List<DrawnElement> drawableList,
+      Rectangle viewport,
+      double scale,
+      boolean complete) {
     // NOTHING TO DO
     if (drawableList == null || drawableList.size() == 0) {
       flush();
@@ -22,8 +22,30 @@
 /** */
 public interface DrawableRenderer {
 
+  /**
+   * Draws a layer of drawables.
+   *
+   * @param g the graphics to draw on
+   * @param drawableList the drawables of the layer, back to front
+   * @param viewport the offset and size of the view
+   * @param scale the current scale
+   * @param complete if <code>true</code>, every part of the layer is drawn before returning, as
+   *     needed for screenshots; otherwise the renderer may finish parts of it in later repaints
+   */
   public void renderDrawables(
-      Graphics g, List<DrawnElement> drawableList, Rectangle viewport, double scale);
+      Graphics g,
+      List<DrawnElement> drawableList,
+      Rectangle viewport,
+      double scale,
+      boolean complete);
 
   public void flush();
+
+  /**
+   * Tells the renderer that a drawable on its layer was added, removed or changed, so it can
+   * redraw just the part of the layer under it.
+   *
+   * @param element the drawable
+   */
+  public void invalidate(DrawnElement element);
 }
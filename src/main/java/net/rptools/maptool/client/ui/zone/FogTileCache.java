@@ -0,0 +1,161 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the rendered fog of war as a grid of tiles fixed to the map rather than to the screen.
+ *
+ * <p>Tiles are laid out in map space at the current scale, so when the map is panned the tiles that
+ * are still on screen are simply drawn at their new position, and only the tiles scrolling into
+ * view have to be rasterized. When the fog changes in a known region, only the tiles covering that
+ * region are dropped. Changing the scale, the view or the fog paint drops every tile.
+ */
+class FogTileCache {
+  /** Width and height of a tile in screen pixels. */
+  static final int TILE_SIZE = 256;
+
+  /** Pixels added around an invalidated region to account for anti-aliased edges and outlines. */
+  private static final int INVALIDATE_MARGIN = 2;
+
+  /** Paints the fog into one tile. */
+  @FunctionalInterface
+  interface TilePainter {
+    /**
+     * @param g a graphics whose transform maps screen coordinates at the current view offset into
+     *     the tile, and whose clip is the tile
+     */
+    void paint(Graphics2D g);
+  }
+
+  private final Map<Point, BufferedImage> tiles = new HashMap<>();
+  private double scale;
+  private int imageType;
+  private Object viewKey;
+  private Object paintKey;
+
+  /** Drops every tile. */
+  void invalidateAll() {
+    tiles.clear();
+  }
+
+  /**
+   * Drops the tiles covering part of the map.
+   *
+   * @param bounds the region of the map whose fog changed, in map coordinates
+   */
+  void invalidate(Rectangle2D bounds) {
+    if (tiles.isEmpty()) {
+      return;
+    }
+    int x1 = toTile(bounds.getMinX() * scale - INVALIDATE_MARGIN);
+    int y1 = toTile(bounds.getMinY() * scale - INVALIDATE_MARGIN);
+    int x2 = toTile(bounds.getMaxX() * scale + INVALIDATE_MARGIN);
+    int y2 = toTile(bounds.getMaxY() * scale + INVALIDATE_MARGIN);
+    tiles.keySet().removeIf(p -> p.x >= x1 && p.x <= x2 && p.y >= y1 && p.y <= y2);
+  }
+
+  private static int toTile(double pixel) {
+    return Math.floorDiv((int) Math.floor(pixel), TILE_SIZE);
+  }
+
+  /** @return the number of tiles currently held */
+  int getTileCount() {
+    return tiles.size();
+  }
+
+  /**
+   * Draws the fog over the screen, rasterizing the tiles that aren't cached yet.
+   *
+   * @param g the graphics to draw on
+   * @param offsetX the horizontal view offset
+   * @param offsetY the vertical view offset
+   * @param width the width of the screen area
+   * @param height the height of the screen area
+   * @param scale the current scale
+   * @param imageType the {@link BufferedImage} type of the tiles
+   * @param viewKey identifies what the fog was rendered for; tiles are dropped when it changes
+   * @param paintKey the fog paint; tiles are dropped when it changes
+   * @param painter paints a tile that is not cached
+   * @return the number of tiles that were rasterized
+   */
+  int render(
+      Graphics2D g,
+      int offsetX,
+      int offsetY,
+      int width,
+      int height,
+      double scale,
+      int imageType,
+      Object viewKey,
+      Object paintKey,
+      TilePainter painter) {
+    if (scale != this.scale
+        || imageType != this.imageType
+        || !Objects.equals(viewKey, this.viewKey)
+        || paintKey != this.paintKey) {
+      tiles.clear();
+      this.scale = scale;
+      this.imageType = imageType;
+      this.viewKey = viewKey;
+      this.paintKey = paintKey;
+    }
+    int minX = Math.floorDiv(-offsetX, TILE_SIZE);
+    int minY = Math.floorDiv(-offsetY, TILE_SIZE);
+    int maxX = Math.floorDiv(width - 1 - offsetX, TILE_SIZE);
+    int maxY = Math.floorDiv(height - 1 - offsetY, TILE_SIZE);
+
+    int rendered = 0;
+    for (int ty = minY; ty <= maxY; ty++) {
+      for (int tx = minX; tx <= maxX; tx++) {
+        Point key = new Point(tx, ty);
+        int screenX = offsetX + tx * TILE_SIZE;
+        int screenY = offsetY + ty * TILE_SIZE;
+        BufferedImage tile = tiles.get(key);
+        if (tile == null) {
+          tile = new BufferedImage(TILE_SIZE, TILE_SIZE, imageType);
+          Graphics2D tileG = tile.createGraphics();
+          try {
+            tileG.translate(-screenX, -screenY);
+            tileG.setClip(screenX, screenY, TILE_SIZE, TILE_SIZE);
+            painter.paint(tileG);
+          } finally {
+            tileG.dispose();
+          }
+          tiles.put(key, tile);
+          rendered++;
+        }
+        g.drawImage(tile, screenX, screenY, null);
+      }
+    }
+
+    // Keep a ring of tiles around the screen for small pans back and forth; drop the rest
+    for (Iterator<Point> it = tiles.keySet().iterator(); it.hasNext(); ) {
+      Point p = it.next();
+      if (p.x < minX - 1 || p.x > maxX + 1 || p.y < minY - 1 || p.y > maxY + 1) {
+        it.remove();
+      }
+    }
+    return rendered;
+  }
+}
@@ -0,0 +1,595 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import javax.swing.SwingUtilities;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.client.AppUtil;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.ModelChangeEvent;
+import net.rptools.maptool.model.ModelChangeListener;
+import net.rptools.maptool.model.Player;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.drawing.DrawablePaint;
+import net.rptools.maptool.model.drawing.DrawnElement;
+import net.rptools.maptool.util.GraphicsUtil;
+import net.rptools.maptool.util.ImageManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Renders a small overview of a zone (board, drawings, tokens and fog) on a background thread.
+ *
+ * <p>The overview is divided into tiles. Model events mark the tiles covering what changed, and a
+ * few times a second the background thread redraws those tiles and publishes a copy of the
+ * overview, so the event dispatch thread only ever draws a finished image. The whole overview is
+ * redrawn when the extents of the map change or when something changes without a known location,
+ * like the board.
+ *
+ * <p>The background thread never reads the zone. Before each update it has the EDT take a
+ * snapshot of what the overview shows: the tokens a player is allowed to see, using the rules of
+ * {@link ZoneRenderer}, copies of the drawings and pens, and the exposed area. Copies of drawings
+ * are kept until the drawing changes. Labels and templates, which can only be drawn on the EDT,
+ * are left out.
+ */
+class MiniMapRenderer implements ModelChangeListener {
+  private static final Logger log = LogManager.getLogger(MiniMapRenderer.class);
+
+  /** Width and height of a tile of the overview, in pixels. */
+  private static final int TILE_SIZE = 64;
+
+  /** How often the dirty tiles are redrawn, in milliseconds. */
+  private static final long UPDATE_INTERVAL = 500;
+
+  /** The longest wait before an update that failed is tried again, in milliseconds. */
+  private static final long MAX_RETRY_DELAY = 30000;
+
+  /** Map units added around a changed region to account for pens and rounding. */
+  private static final int DIRTY_MARGIN = 10;
+
+  private static final ThreadFactory threadFactory =
+      (new com.google.common.util.concurrent.ThreadFactoryBuilder())
+          .setNameFormat("minimap-renderer-%d")
+          .setDaemon(true)
+          .build();
+
+  private static final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+  private final ZoneRenderer renderer;
+  private final Zone zone;
+  private final int maxSize;
+  private final Runnable onUpdate;
+
+  /** Redraws everything once the images that were still loading arrive. */
+  private final ImageObserver imageObserver =
+      (img, infoflags, x, y, w, h) -> {
+        if ((infoflags & (ImageObserver.ALLBITS | ImageObserver.FRAMEBITS)) != 0) {
+          invalidateAll();
+          return false;
+        }
+        return true;
+      };
+
+  // Guarded by this: what changed since the last update, and where the tokens were drawn
+  private boolean allDirty = true;
+  private final List<Rectangle> dirtyRegions = new ArrayList<>();
+  private final Map<GUID, Rectangle> tokenBounds = new HashMap<>();
+  private final Set<DrawnElement> changedDrawings =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /** Whether what a player sees depends on the vision of the tokens, so any token can change it. */
+  private volatile boolean visionDependent;
+
+  // Only used on the EDT: copies of the drawings, or null for those only drawn on the EDT
+  private Map<DrawnElement, DrawnElement> drawingCopies = new IdentityHashMap<>();
+
+  // Only used by the background thread
+  private Rectangle extents;
+  private double scale;
+  private BufferedImage canvas;
+  private int failures;
+  private long retryTime;
+
+  private volatile BufferedImage image;
+  private ScheduledFuture<?> task;
+
+  /**
+   * @param renderer the renderer of the zone, which provides the view of the player
+   * @param maxSize the largest width or height of the overview
+   * @param onUpdate called from the background thread each time a new overview is published
+   */
+  MiniMapRenderer(ZoneRenderer renderer, int maxSize, Runnable onUpdate) {
+    this.renderer = renderer;
+    this.zone = renderer.getZone();
+    this.maxSize = maxSize;
+    this.onUpdate = onUpdate;
+  }
+
+  /** @return the largest width or height of the overview */
+  int getMaxSize() {
+    return maxSize;
+  }
+
+  /** Starts listening to the zone and updating the overview. */
+  synchronized void start() {
+    if (task != null) {
+      return;
+    }
+    allDirty = true;
+    zone.addModelChangeListener(this);
+    task = executor.scheduleWithFixedDelay(this::update, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops updating the overview and releases it. */
+  synchronized void stop() {
+    if (task == null) {
+      return;
+    }
+    zone.removeModelChangeListener(this);
+    task.cancel(false);
+    task = null;
+    image = null;
+  }
+
+  /** @return the latest overview, or null if none was rendered yet */
+  BufferedImage getImage() {
+    return image;
+  }
+
+  /** Marks the whole overview to be redrawn. */
+  synchronized void invalidateAll() {
+    allDirty = true;
+  }
+
+  private synchronized void invalidate(Rectangle2D bounds) {
+    if (allDirty || bounds == null || bounds.isEmpty()) {
+      return;
+    }
+    Rectangle region = bounds.getBounds();
+    region.grow(DIRTY_MARGIN, DIRTY_MARGIN);
+    dirtyRegions.add(region);
+  }
+
+  @Override
+  public void modelChanged(ModelChangeEvent event) {
+    Object evt = event.getEvent();
+    if (evt == Zone.Event.TOKEN_ADDED
+        || evt == Zone.Event.TOKEN_CHANGED
+        || evt == Zone.Event.TOKEN_REMOVED) {
+      if (visionDependent) {
+        invalidateAll();
+      } else if (event.getArg() instanceof List<?>) {
+        for (Object token : (List<?>) event.getArg()) {
+          tokenChanged((Token) token, evt == Zone.Event.TOKEN_REMOVED);
+        }
+      } else if (event.getArg() instanceof Token) {
+        tokenChanged((Token) event.getArg(), evt == Zone.Event.TOKEN_REMOVED);
+      } else {
+        invalidateAll();
+      }
+    } else if (evt == Zone.Event.DRAWABLE_ADDED || evt == Zone.Event.DRAWABLE_REMOVED) {
+      if (event.getArg() instanceof DrawnElement) {
+        DrawnElement element = (DrawnElement) event.getArg();
+        Rectangle bounds = new Rectangle(element.getDrawable().getBounds());
+        int penSize = (int) Math.ceil(element.getPen().getThickness() / 2);
+        bounds.grow(penSize, penSize);
+        synchronized (this) {
+          changedDrawings.add(element);
+        }
+        invalidate(bounds);
+      } else {
+        invalidateAll();
+      }
+    } else if (evt == Zone.Event.FOG_CHANGED) {
+      if (event.getArg() instanceof Area) {
+        invalidate(((Area) event.getArg()).getBounds2D());
+      } else {
+        invalidateAll();
+      }
+    } else if (evt == Zone.Event.BOARD_CHANGED || evt == Zone.Event.GRID_CHANGED) {
+      // Token footprints depend on the grid
+      invalidateAll();
+    }
+  }
+
+  private synchronized void tokenChanged(Token token, boolean removed) {
+    Rectangle previous;
+    if (removed) {
+      previous = tokenBounds.remove(token.getId());
+    } else {
+      Rectangle bounds = token.getBounds(zone);
+      previous = tokenBounds.put(token.getId(), bounds);
+      invalidate(bounds);
+    }
+    invalidate(previous);
+  }
+
+  /** Redraws the tiles that changed and publishes the overview; runs on the background thread. */
+  private void update() {
+    if (System.currentTimeMillis() < retryTime) {
+      return;
+    }
+    boolean all;
+    List<Rectangle> regions;
+    synchronized (this) {
+      if (!allDirty && dirtyRegions.isEmpty()) {
+        return;
+      }
+      all = allDirty;
+      regions = new ArrayList<>(dirtyRegions);
+      allDirty = false;
+      dirtyRegions.clear();
+    }
+    try {
+      Snapshot snapshot = takeSnapshotOnEdt(all);
+      if (snapshot == null) {
+        invalidateAll(); // Interrupted; try again on the next update
+        return;
+      }
+      if (canvas == null || !snapshot.extents.equals(extents)) {
+        extents = snapshot.extents;
+        scale = Math.min(maxSize / (double) extents.width, maxSize / (double) extents.height);
+        canvas =
+            new BufferedImage(
+                Math.max(1, (int) Math.ceil(extents.width * scale)),
+                Math.max(1, (int) Math.ceil(extents.height * scale)),
+                BufferedImage.TYPE_INT_RGB);
+        all = true;
+      }
+
+      Set<Point> tiles = new HashSet<>();
+      int columns = (canvas.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+      int rows = (canvas.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+      if (all) {
+        for (int row = 0; row < rows; row++) {
+          for (int col = 0; col < columns; col++) {
+            tiles.add(new Point(col, row));
+          }
+        }
+      } else {
+        for (Rectangle region : regions) {
+          int x1 = Math.max(0, toTile(region.getMinX() - extents.x));
+          int y1 = Math.max(0, toTile(region.getMinY() - extents.y));
+          int x2 = Math.min(columns - 1, toTile(region.getMaxX() - extents.x));
+          int y2 = Math.min(rows - 1, toTile(region.getMaxY() - extents.y));
+          for (int row = y1; row <= y2; row++) {
+            for (int col = x1; col <= x2; col++) {
+              tiles.add(new Point(col, row));
+            }
+          }
+        }
+      }
+      for (Point tile : tiles) {
+        renderTile(tile, snapshot);
+      }
+
+      BufferedImage published =
+          new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = published.createGraphics();
+      g.drawImage(canvas, 0, 0, null);
+      g.dispose();
+      image = published;
+      failures = 0;
+      onUpdate.run();
+    } catch (RuntimeException e) {
+      // Wait longer after each failure in a row rather than failing again on every update
+      failures++;
+      long delay = Math.min(MAX_RETRY_DELAY, UPDATE_INTERVAL << Math.min(failures, 6));
+      retryTime = System.currentTimeMillis() + delay;
+      log.warn("Could not update the mini map, trying again in " + delay + " ms", e);
+      invalidateAll();
+    }
+  }
+
+  private int toTile(double mapDistance) {
+    return (int) Math.floor(mapDistance * scale / TILE_SIZE);
+  }
+
+  /**
+   * Has the EDT take a snapshot of the zone and waits for it.
+   *
+   * @param all whether every token is recorded as drawn, for a full redraw
+   * @return the snapshot, or null if the thread was interrupted
+   */
+  private Snapshot takeSnapshotOnEdt(boolean all) {
+    Snapshot[] snapshot = new Snapshot[1];
+    try {
+      SwingUtilities.invokeAndWait(() -> snapshot[0] = takeSnapshot(all));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    return snapshot[0];
+  }
+
+  /** Reads what the overview shows from the zone; runs on the EDT. */
+  private Snapshot takeSnapshot(boolean all) {
+    PlayerView view = renderer.getPlayerView();
+    ZoneView zoneView = renderer.getZoneView();
+    boolean usingVision = !view.isGMView() && zoneView.isUsingVision();
+    visionDependent = usingVision;
+    Area visibleArea = usingVision ? zoneView.getVisibleArea(view) : null;
+
+    Snapshot snapshot = new Snapshot();
+    snapshot.gmRole = view.getRole() == Player.Role.GM;
+    snapshot.mapAssetId = zone.getMapAssetId();
+    snapshot.boardX = zone.getBoardX();
+    snapshot.boardY = zone.getBoardY();
+    snapshot.backgroundPaint = zone.getBackgroundPaint();
+    snapshot.fogPaint = zone.getFogPaint();
+    if (zone.hasFog()) {
+      // Exposed as on the map, e.g. only by the player's own tokens with individual fog of war
+      snapshot.exposedArea = new Area(renderer.getFogExposedArea(view));
+    }
+
+    Map<DrawnElement, DrawnElement> copies = new IdentityHashMap<>();
+    synchronized (this) {
+      for (DrawnElement changed : changedDrawings) {
+        drawingCopies.remove(changed);
+      }
+      changedDrawings.clear();
+    }
+    Map<GUID, Rectangle> allTokenBounds = new HashMap<>();
+    BiPredicate<Token, Rectangle> shown =
+        (token, bounds) -> isShown(token, bounds, view, usingVision, visibleArea);
+    // Each layer is drawn with its drawings below its tokens, as on the map
+    snapshot.layers.add(
+        snapshotLayer(
+            zone.getBackgroundDrawnElements(),
+            zone.getBackgroundStamps(),
+            shown,
+            copies,
+            allTokenBounds));
+    snapshot.layers.add(
+        snapshotLayer(
+            zone.getObjectDrawnElements(), zone.getStampTokens(), shown, copies, allTokenBounds));
+    if (view.isGMView()) {
+      snapshot.layers.add(
+          snapshotLayer(
+              zone.getGMDrawnElements(), zone.getGMStamps(), shown, copies, allTokenBounds));
+    }
+    snapshot.layers.add(
+        snapshotLayer(zone.getDrawnElements(), zone.getTokens(), shown, copies, allTokenBounds));
+    drawingCopies = copies;
+
+    Rectangle result = null;
+    if (snapshot.mapAssetId != null) {
+      BufferedImage map = ImageManager.getImage(snapshot.mapAssetId, imageObserver);
+      result = new Rectangle(snapshot.boardX, snapshot.boardY, map.getWidth(), map.getHeight());
+    }
+    for (LayerSnapshot layer : snapshot.layers) {
+      for (DrawnElement element : layer.drawings) {
+        result = add(result, element.getDrawable().getBounds());
+      }
+      for (TokenSnapshot token : layer.tokens) {
+        result = add(result, token.bounds);
+      }
+    }
+    snapshot.extents =
+        result == null || result.isEmpty() ? new Rectangle(0, 0, maxSize, maxSize) : result;
+    if (all) {
+      synchronized (this) {
+        tokenBounds.clear();
+        tokenBounds.putAll(allTokenBounds);
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * @param elements the drawings of the layer
+   * @param tokens the tokens of the layer
+   * @param shown decides whether a token is shown, given its bounds
+   * @param copies receives the copies of the drawings, for the next snapshot
+   * @param allTokenBounds receives the bounds of every token, shown or not
+   * @return the drawings and shown tokens of the layer
+   */
+  private LayerSnapshot snapshotLayer(
+      List<DrawnElement> elements,
+      List<Token> tokens,
+      BiPredicate<Token, Rectangle> shown,
+      Map<DrawnElement, DrawnElement> copies,
+      Map<GUID, Rectangle> allTokenBounds) {
+    LayerSnapshot layer = new LayerSnapshot();
+    for (DrawnElement element : elements) {
+      DrawnElement copy;
+      if (drawingCopies.containsKey(element)) {
+        copy = drawingCopies.get(element);
+      } else {
+        copy = PartitionedDrawableRenderer.snapshot(element);
+      }
+      copies.put(element, copy);
+      if (copy != null) {
+        layer.drawings.add(copy);
+      }
+    }
+    for (Token token : tokens) {
+      Rectangle bounds = token.getBounds(zone);
+      allTokenBounds.put(token.getId(), bounds);
+      if (shown.test(token, bounds)) {
+        layer.tokens.add(new TokenSnapshot(bounds, token.getImageAssetId()));
+      }
+    }
+    return layer;
+  }
+
+  /**
+   * Applies the rules {@link ZoneRenderer#renderTokens} uses to hide tokens from players.
+   *
+   * @param token the token
+   * @param bounds the bounds of the token on the map
+   * @param view the view of the player
+   * @param usingVision whether the player sees only what the vision of their tokens shows
+   * @param visibleArea what the player's tokens can see, if using vision
+   * @return whether the token is shown
+   */
+  static boolean isShown(
+      Token token, Rectangle bounds, PlayerView view, boolean usingVision, Area visibleArea) {
+    if ((!token.isVisible() || token.isGMStamp()) && !view.isGMView()) {
+      return false;
+    }
+    if (token.isVisibleOnlyToOwner() && !AppUtil.playerOwns(token)) {
+      return false;
+    }
+    if (usingVision && token.isToken()) {
+      return GraphicsUtil.intersects(visibleArea, new Area(bounds));
+    }
+    return true;
+  }
+
+  private static Rectangle add(Rectangle extents, Rectangle bounds) {
+    if (extents == null) {
+      return new Rectangle(bounds);
+    }
+    extents.add(bounds);
+    return extents;
+  }
+
+  private void renderTile(Point tile, Snapshot snapshot) {
+    Rectangle tileBounds =
+        new Rectangle(tile.x * TILE_SIZE, tile.y * TILE_SIZE, TILE_SIZE, TILE_SIZE)
+            .intersection(new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight()));
+    if (tileBounds.isEmpty()) {
+      return;
+    }
+    Graphics2D g = canvas.createGraphics();
+    try {
+      g.setClip(tileBounds);
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+      int offsetX = (int) Math.round(-extents.x * scale);
+      int offsetY = (int) Math.round(-extents.y * scale);
+      g.setPaint(snapshot.backgroundPaint.getPaint(offsetX, offsetY, scale, imageObserver));
+      g.fill(tileBounds);
+
+      g.scale(scale, scale);
+      g.translate(-extents.x, -extents.y);
+      Rectangle2D mapBounds =
+          new Rectangle2D.Double(
+              extents.x + tileBounds.x / scale,
+              extents.y + tileBounds.y / scale,
+              tileBounds.width / scale,
+              tileBounds.height / scale);
+
+      if (snapshot.mapAssetId != null) {
+        BufferedImage map = ImageManager.getImage(snapshot.mapAssetId, imageObserver);
+        g.drawImage(map, snapshot.boardX, snapshot.boardY, null);
+      }
+
+      for (LayerSnapshot layer : snapshot.layers) {
+        renderDrawings(g, layer.drawings, mapBounds);
+        renderTokens(g, layer.tokens, mapBounds);
+      }
+
+      if (snapshot.exposedArea != null) {
+        Area fog = new Area(mapBounds);
+        fog.subtract(snapshot.exposedArea);
+        if (snapshot.gmRole) {
+          g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, .6f));
+        }
+        g.setPaint(snapshot.fogPaint.getPaint(imageObserver));
+        g.fill(fog);
+      }
+    } finally {
+      g.dispose();
+    }
+  }
+
+  private void renderTokens(Graphics2D g, List<TokenSnapshot> tokens, Rectangle2D mapBounds) {
+    for (TokenSnapshot token : tokens) {
+      if (token.bounds.intersects(mapBounds)) {
+        BufferedImage tokenImage = ImageManager.getImage(token.imageAssetId, imageObserver);
+        Rectangle bounds = token.bounds;
+        g.drawImage(tokenImage, bounds.x, bounds.y, bounds.width, bounds.height, null);
+      }
+    }
+  }
+
+  private static void renderDrawings(
+      Graphics2D g, List<DrawnElement> elements, Rectangle2D mapBounds) {
+    for (DrawnElement element : elements) {
+      Rectangle bounds = new Rectangle(element.getDrawable().getBounds());
+      int penSize = (int) Math.ceil(element.getPen().getThickness() / 2);
+      bounds.grow(penSize, penSize);
+      if (bounds.intersects(mapBounds)) {
+        element.getDrawable().draw(g, element.getPen());
+      }
+    }
+  }
+
+  /** What an update draws, read from the zone on the EDT. */
+  private static class Snapshot {
+    boolean gmRole;
+    MD5Key mapAssetId;
+    int boardX;
+    int boardY;
+    DrawablePaint backgroundPaint;
+    DrawablePaint fogPaint;
+    /** The exposed area, or null if the zone has no fog. */
+    Area exposedArea;
+    final List<LayerSnapshot> layers = new ArrayList<>();
+    Rectangle extents;
+  }
+
+  /** The copies of the drawings of a layer and the tokens shown on it, back to front. */
+  private static class LayerSnapshot {
+    final List<DrawnElement> drawings = new ArrayList<>();
+    final List<TokenSnapshot> tokens = new ArrayList<>();
+  }
+
+  /** Where a token is drawn and with which image. */
+  private static class TokenSnapshot {
+    final Rectangle bounds;
+    final MD5Key imageAssetId;
+
+    TokenSnapshot(Rectangle bounds, MD5Key imageAssetId) {
+      this.bounds = bounds;
+      this.imageAssetId = imageAssetId;
+    }
+  }
+}
@@ -26,28 +26,80 @@
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.*;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
 import net.rptools.lib.CodeTimer;
 import net.rptools.lib.image.ImageUtil;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.drawing.Cross;
 import net.rptools.maptool.model.drawing.Drawable;
 import net.rptools.maptool.model.drawing.DrawablesGroup;
 import net.rptools.maptool.model.drawing.DrawnElement;
+import net.rptools.maptool.model.drawing.LineSegment;
 import net.rptools.maptool.model.drawing.Pen;
+import net.rptools.maptool.model.drawing.ShapeDrawable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-/** */
+/**
+ * Renders a layer of drawables as a grid of cached images, so only the chunks scrolling into view
+ * have to be drawn.
+ *
+ * <p>The drawables are kept in a {@link SpatialGrid} by their bounds on the map, so drawing a chunk
+ * only visits the drawables under it. Chunk images are kept in a size-bounded, least recently used
+ * cache keyed by scale and position. When drawables are added, removed, reordered or given a new
+ * pen, only the chunks under them are dropped.
+ *
+ * <p>When created with a repaint callback, missing chunks are drawn by a shared pool of background
+ * threads, nearest to the center of the view first, so zooming or a large change doesn't block the
+ * EDT. Until a chunk is ready, the cached chunks of the previous scale are stretched over it, and
+ * the callback is run as each chunk completes. The workers draw copies of the drawables and pens
+ * taken on the EDT, as both are changed in place. Chunks under drawables that can't be copied, such
+ * as labels and templates, are still drawn on the EDT.
+ */
 public class PartitionedDrawableRenderer implements DrawableRenderer {
   private static Logger log = LogManager.getLogger(PartitionedDrawableRenderer.class);
   private static boolean messageLogged = false;
 
   private static final int CHUNK_SIZE = 256;
+  /** Size of the cells of the drawable index, in map units. */
+  private static final int INDEX_CELL_SIZE = 512;
+
+  /** The most chunks of the previous scale stretched over a single missing chunk. */
+  private static final int MAX_PLACEHOLDER_CHUNKS = 16;
+
   private static List<BufferedImage> unusedChunkList = new LinkedList<BufferedImage>();
 
-  private final Set<String> noImageSet = new HashSet<String>();
-  private final List<Tuple> chunkList = new LinkedList<Tuple>();
+  /** Draws chunks in the background for every renderer, taking the highest priority first. */
+  private static final ThreadPoolExecutor chunkExecutor = createChunkExecutor();
+
+  private final Set<ChunkKey> noImageSet = new HashSet<ChunkKey>();
+  private final Map<ChunkKey, BufferedImage> chunkCache =
+      new LinkedHashMap<ChunkKey, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ChunkKey, BufferedImage> eldest) {
+          if (size() > maxChunks) {
+            recycle(eldest.getValue());
+            return true;
+          }
+          return false;
+        }
+      };
   private int maxChunks;
 
-  private double lastDrawableCount;
+  private final SpatialGrid<IndexedDrawable> index = new SpatialGrid<>(INDEX_CELL_SIZE);
+  private Map<GUID, IndexedDrawable> indexedDrawables = new HashMap<>();
+  private final Set<GUID> changedDrawables = new HashSet<>();
+  private List<DrawnElement> indexedList;
+  private boolean indexDirty;
+
+  /** Run on the EDT when a chunk drawn in the background is ready; null to draw on the EDT. */
+  private final Runnable onChunkRendered;
+  private final Map<ChunkKey, ChunkTask> pendingChunks = new HashMap<>();
+  private double placeholderScale;
+
   private double lastScale;
   private Rectangle lastViewport;
 
@@ -56,21 +108,74 @@ public class PartitionedDrawableRenderer implements DrawableRenderer {
 
   private CodeTimer timer;
 
+  /** Creates a renderer that draws missing chunks before returning. */
+  public PartitionedDrawableRenderer() {
+    this(null);
+  }
+
+  /**
+   * Creates a renderer that draws missing chunks in the background.
+   *
+   * @param onChunkRendered run on the EDT each time a chunk is ready, typically to repaint
+   */
+  public PartitionedDrawableRenderer(Runnable onChunkRendered) {
+    this.onChunkRendered = onChunkRendered;
+  }
+
+  private static ThreadPoolExecutor createChunkExecutor() {
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            30,
+            TimeUnit.SECONDS,
+            new PriorityBlockingQueue<>(),
+            new com.google.common.util.concurrent.ThreadFactoryBuilder()
+                .setNameFormat("drawable-chunk-renderer-%d")
+                .setDaemon(true)
+                .setPriority(Thread.NORM_PRIORITY - 1)
+                .build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   public void flush() {
-    int unusedSize = unusedChunkList.size();
-    for (Tuple tuple : chunkList) {
-      // Reuse the images
-      if (unusedSize < maxChunks && tuple != null) {
-        unusedChunkList.add(tuple.image);
-        unusedSize++;
-      }
+    for (ChunkTask task : pendingChunks.values()) {
+      cancel(task);
     }
-    chunkList.clear();
+    pendingChunks.clear();
+    for (BufferedImage image : chunkCache.values()) {
+      recycle(image);
+    }
+    chunkCache.clear();
     noImageSet.clear();
+    index.clear();
+    indexedDrawables.clear();
+    changedDrawables.clear();
+    indexedList = null;
+  }
+
+  public void invalidate(DrawnElement element) {
+    changedDrawables.add(element.getDrawable().getId());
+    indexDirty = true;
+  }
+
+  /** Keeps a chunk image for reuse, up to the size of the cache. */
+  private void recycle(BufferedImage image) {
+    synchronized (unusedChunkList) {
+      if (unusedChunkList.size() < maxChunks) {
+        unusedChunkList.add(image);
+      }
+    }
   }
 
   public void renderDrawables(
-      Graphics g, List<DrawnElement> drawableList, Rectangle viewport, double scale) {
+      Graphics g,
+      List<DrawnElement> drawableList,
+      Rectangle viewport,
+      double scale,
+      boolean complete) {
     timer = new CodeTimer("Renderer");
     timer.setThreshold(10);
     timer.setEnabled(false);
@@ -80,10 +185,16 @@ public void renderDrawables(
       flush();
       return;
     }
-    // View changed ?
-    if (drawableList.size() != lastDrawableCount || lastScale != scale) {
-      flush();
+    // Chunks at other scales stay cached until they age out, but the empty ones aren't worth it
+    if (lastScale != scale) {
+      noImageSet.clear();
+      placeholderScale = lastScale;
     }
+    boolean background = onChunkRendered != null && !complete;
+    timer.start("render:updateIndex");
+    updateIndex(drawableList);
+    timer.stop("render:updateIndex");
+
     if (lastViewport == null
         || viewport.width != lastViewport.width
         || viewport.height != lastViewport.height) {
@@ -104,46 +215,48 @@ public void renderDrawables(
     gridx += (viewport.x > CHUNK_SIZE && (viewport.x % CHUNK_SIZE == 0) ? -1 : 0);
     gridy += (viewport.y > CHUNK_SIZE && (viewport.y % CHUNK_SIZE == 0) ? -1 : 0);
 
+    Set<ChunkKey> visibleKeys = new HashSet<>();
     for (int row = 0; row < verticalChunkCount; row++) {
       for (int col = 0; col < horizontalChunkCount; col++) {
         int cellX = gridx + col;
         int cellY = gridy + row;
+        int x =
+            col * CHUNK_SIZE
+                - ((CHUNK_SIZE - viewport.x)) % CHUNK_SIZE
+                - (gridx < -1 ? CHUNK_SIZE : 0);
+        int y =
+            row * CHUNK_SIZE
+                - ((CHUNK_SIZE - viewport.y)) % CHUNK_SIZE
+                - (gridy < -1 ? CHUNK_SIZE : 0);
 
-        String key = getKey(cellX, cellY);
+        ChunkKey key = new ChunkKey(scale, cellX, cellY);
         if (noImageSet.contains(key)) {
           continue;
         }
-        Tuple chunk = findChunk(chunkList, key);
+        BufferedImage chunk = chunkCache.get(key); // Marks the chunk as most recently used
+        if (chunk == null && background) {
+          // Chunks nearest the center of the view are drawn first
+          int dx = 2 * col + 1 - horizontalChunkCount;
+          int dy = 2 * row + 1 - verticalChunkCount;
+          if (queueChunk(key, dx * dx + dy * dy)) {
+            visibleKeys.add(key);
+            drawPlaceholder(g, key, x, y);
+            continue;
+          }
+        }
         if (chunk == null) {
-          chunk = new Tuple(key, createChunk(drawableList, cellX, cellY, scale));
+          cancel(pendingChunks.remove(key));
+          chunk = createChunk(getDrawablesIn(key.getBounds()), cellX, cellY, scale, timer);
 
-          if (chunk.image == null) {
+          if (chunk == null) {
             noImageSet.add(key);
             continue;
           }
+          chunkCache.put(key, chunk);
         }
-        // Most recently used is at the front
-        chunkList.add(0, chunk);
-
-        // Trim to the right size
-        if (chunkList.size() > maxChunks) {
-          int chunkSize = chunkList.size();
-          // chunkList.subList(maxChunks, chunkSize).clear();
-          while (chunkSize > maxChunks) {
-            chunkList.remove(--chunkSize);
-          }
-        }
-        int x =
-            col * CHUNK_SIZE
-                - ((CHUNK_SIZE - viewport.x)) % CHUNK_SIZE
-                - (gridx < -1 ? CHUNK_SIZE : 0);
-        int y =
-            row * CHUNK_SIZE
-                - ((CHUNK_SIZE - viewport.y)) % CHUNK_SIZE
-                - (gridy < -1 ? CHUNK_SIZE : 0);
 
         timer.start("render:DrawImage");
-        g.drawImage(chunk.image, x, y, null);
+        g.drawImage(chunk, x, y, null);
         timer.stop("render:DrawImage");
 
         // DEBUG: Partition boundaries
@@ -169,13 +282,22 @@ public void renderDrawables(
             }
           }
           g.drawRect(x, y, CHUNK_SIZE - 1, CHUNK_SIZE - 1);
-          g.drawString(key, x + CHUNK_SIZE / 2, y + CHUNK_SIZE / 2);
+          g.drawString(key.toString(), x + CHUNK_SIZE / 2, y + CHUNK_SIZE / 2);
+        }
+      }
+    }
+    if (background) {
+      // Don't spend time on chunks that have scrolled out of view
+      for (Iterator<ChunkTask> it = pendingChunks.values().iterator(); it.hasNext(); ) {
+        ChunkTask task = it.next();
+        if (!visibleKeys.contains(task.key)) {
+          cancel(task);
+          it.remove();
         }
       }
     }
     // REMEMBER
     lastViewport = viewport;
-    lastDrawableCount = drawableList.size();
     lastScale = scale;
 
     if (timer.isEnabled()) {
@@ -184,26 +306,266 @@ public void renderDrawables(
   }
 
   /**
-   * Given a List and a String key, find the element in the list that matches the key.
+   * Brings the drawable index up to date with the layer and drops the chunks under every drawable
+   * that was added, removed, reordered or changed since the last call. The layer is only compared
+   * to the index when it was reported as changed or its size differs from the index.
+   *
+   * @param drawableList the drawables of the layer, back to front
+   */
+  private void updateIndex(List<DrawnElement> drawableList) {
+    if (!indexDirty
+        && drawableList == indexedList
+        && drawableList.size() == indexedDrawables.size()) {
+      return;
+    }
+    Map<GUID, IndexedDrawable> previous = indexedDrawables;
+    indexedDrawables = new HashMap<>(drawableList.size() * 2);
+    int order = 0;
+    int highestPreviousOrder = -1;
+    for (DrawnElement element : drawableList) {
+      GUID id = element.getDrawable().getId();
+      IndexedDrawable entry = previous.remove(id);
+      if (entry == null || entry.element != element || changedDrawables.contains(id)) {
+        if (entry != null) {
+          index.remove(entry);
+          invalidateChunks(entry.bounds);
+        }
+        entry = new IndexedDrawable(element);
+        if (entry.bounds != null) {
+          index.put(entry, entry.bounds);
+          invalidateChunks(entry.bounds);
+        }
+      } else {
+        // A drawable that now comes before one it used to be drawn after has changed places
+        if (entry.order < highestPreviousOrder && entry.bounds != null) {
+          invalidateChunks(entry.bounds);
+        }
+        highestPreviousOrder = Math.max(highestPreviousOrder, entry.order);
+      }
+      entry.order = order++;
+      indexedDrawables.put(id, entry);
+    }
+    for (IndexedDrawable removed : previous.values()) {
+      index.remove(removed);
+      if (removed.bounds != null) {
+        invalidateChunks(removed.bounds);
+      }
+    }
+    indexedList = drawableList;
+    changedDrawables.clear();
+    indexDirty = false;
+  }
+
+  /**
+   * Queues a chunk to be drawn in the background, or updates its priority if it is still waiting.
+   *
+   * @param key the chunk
+   * @param priority lower values are drawn first
+   * @return <code>false</code> if the chunk has to be drawn on the EDT instead
+   */
+  private boolean queueChunk(ChunkKey key, int priority) {
+    ChunkTask task = pendingChunks.get(key);
+    if (task != null) {
+      if (task.priority != priority && chunkExecutor.remove(task)) {
+        task.priority = priority;
+        chunkExecutor.execute(task);
+      }
+      return true;
+    }
+    List<DrawnElement> snapshots = getSnapshotsIn(key.getBounds());
+    if (snapshots == null) {
+      return false;
+    }
+    task = new ChunkTask(key, snapshots, priority);
+    pendingChunks.put(key, task);
+    chunkExecutor.execute(task);
+    return true;
+  }
+
+  private static void cancel(ChunkTask task) {
+    if (task != null) {
+      task.cancelled = true;
+      chunkExecutor.remove(task);
+    }
+  }
+
+  /** Stores a chunk drawn in the background, unless it was invalidated while being drawn. */
+  private void chunkRendered(ChunkTask task, BufferedImage image) {
+    if (task.cancelled || pendingChunks.get(task.key) != task) {
+      if (image != null) {
+        recycle(image);
+      }
+      return;
+    }
+    pendingChunks.remove(task.key);
+    if (image == null) {
+      noImageSet.add(task.key);
+    } else {
+      chunkCache.put(task.key, image);
+    }
+    onChunkRendered.run();
+  }
+
+  /**
+   * Stretches the cached chunks of the previous scale over a chunk that isn't ready yet. Nothing
+   * is drawn if too many chunks would be needed, as when zooming far out in one step.
+   */
+  private void drawPlaceholder(Graphics g, ChunkKey key, int x, int y) {
+    if (placeholderScale <= 0 || placeholderScale == key.scale) {
+      return;
+    }
+    // Size of a chunk of the previous scale, in chunks of the current scale
+    double ratio = key.scale / placeholderScale;
+    int minX = (int) Math.floor(key.x / ratio);
+    int minY = (int) Math.floor(key.y / ratio);
+    int maxX = (int) Math.ceil((key.x + 1) / ratio) - 1;
+    int maxY = (int) Math.ceil((key.y + 1) / ratio) - 1;
+    if ((maxX - minX + 1) * (maxY - minY + 1) > MAX_PLACEHOLDER_CHUNKS) {
+      return;
+    }
+    int size = (int) Math.ceil(CHUNK_SIZE * ratio);
+    Graphics2D g2d = (Graphics2D) g.create();
+    try {
+      g2d.clipRect(x, y, CHUNK_SIZE, CHUNK_SIZE);
+      for (int py = minY; py <= maxY; py++) {
+        for (int px = minX; px <= maxX; px++) {
+          BufferedImage image = chunkCache.get(new ChunkKey(placeholderScale, px, py));
+          if (image != null) {
+            int sx = x + (int) Math.round((px * ratio - key.x) * CHUNK_SIZE);
+            int sy = y + (int) Math.round((py * ratio - key.y) * CHUNK_SIZE);
+            g2d.drawImage(image, sx, sy, size, size, null);
+          }
+        }
+      }
+    } finally {
+      g2d.dispose();
+    }
+  }
+
+  /** Drops the cached chunks, at any scale, that overlap a region of the map. */
+  private void invalidateChunks(Rectangle2D bounds) {
+    for (Iterator<Map.Entry<ChunkKey, BufferedImage>> it = chunkCache.entrySet().iterator();
+        it.hasNext(); ) {
+      Map.Entry<ChunkKey, BufferedImage> entry = it.next();
+      if (entry.getKey().getBounds().intersects(bounds)) {
+        recycle(entry.getValue());
+        it.remove();
+      }
+    }
+    noImageSet.removeIf(key -> key.getBounds().intersects(bounds));
+    // Chunks being drawn from the old drawables have to start over
+    for (Iterator<ChunkTask> it = pendingChunks.values().iterator(); it.hasNext(); ) {
+      ChunkTask task = it.next();
+      if (task.key.getBounds().intersects(bounds)) {
+        cancel(task);
+        it.remove();
+      }
+    }
+  }
+
+  /** @return the drawables that overlap a region of the map, back to front */
+  private List<DrawnElement> getDrawablesIn(Rectangle2D bounds) {
+    List<IndexedDrawable> found = new ArrayList<>(index.query(bounds));
+    found.sort(Comparator.comparingInt(entry -> entry.order));
+    List<DrawnElement> result = new ArrayList<>(found.size());
+    for (IndexedDrawable entry : found) {
+      result.add(entry.element);
+    }
+    return result;
+  }
+
+  /**
+   * @return copies of the drawables that overlap a region of the map, back to front, or <code>null
+   *     </code> if one of them can only be drawn on the EDT
+   */
+  private List<DrawnElement> getSnapshotsIn(Rectangle2D bounds) {
+    List<IndexedDrawable> found = new ArrayList<>(index.query(bounds));
+    found.sort(Comparator.comparingInt(entry -> entry.order));
+    List<DrawnElement> result = new ArrayList<>(found.size());
+    for (IndexedDrawable entry : found) {
+      DrawnElement snapshot = entry.getSnapshot();
+      if (snapshot == null) {
+        return null;
+      }
+      result.add(snapshot);
+    }
+    return result;
+  }
+
+  /**
+   * Copies what drawing an element reads, so the copy can be drawn on another thread while the EDT
+   * keeps changing the original. The pen is copied as pens are changed in place, and so are line
+   * segments, which update themselves when drawn. Shapes, rectangles, ovals and crosses aren't
+   * changed once created and are shared. Must be called on the EDT.
    *
-   * @param list
-   * @param key
-   * @return
+   * @param element the element to copy
+   * @return the copy, or <code>null</code> if the element reads other state when drawn, like the
+   *     labels and templates, and can only be drawn on the EDT
    */
-  private Tuple findChunk(List<Tuple> list, String key) {
-    ListIterator<Tuple> iter = list.listIterator();
-    while (iter.hasNext()) {
-      Tuple tuple = iter.next();
-      if (tuple.key.equals(key)) {
-        iter.remove();
-        return tuple;
+  static DrawnElement snapshot(DrawnElement element) {
+    Drawable drawable = element.getDrawable();
+    Pen pen = new Pen(element.getPen());
+    if (drawable instanceof DrawablesGroup) {
+      List<DrawnElement> group = ((DrawablesGroup) drawable).getDrawableList();
+      List<DrawnElement> copies = new ArrayList<>(group.size());
+      for (DrawnElement child : group) {
+        DrawnElement copy = snapshot(child);
+        if (copy == null) {
+          return null;
+        }
+        copies.add(copy);
       }
+      return new DrawnElement(new DrawablesGroup(copies), pen);
+    }
+    if (drawable instanceof LineSegment) {
+      LineSegment line = (LineSegment) drawable;
+      Float width = line.getWidth();
+      LineSegment copy =
+          new LineSegment(width != null ? width : pen.getThickness(), line.isSquareCap());
+      copy.getPoints().addAll(line.getPoints());
+      return new DrawnElement(copy, pen);
+    }
+    if (drawable instanceof ShapeDrawable
+        || drawable instanceof net.rptools.maptool.model.drawing.Rectangle
+        || drawable instanceof Cross) {
+      return new DrawnElement(drawable, pen);
     }
     return null;
   }
 
+  /**
+   * @return the bounds of a drawable on the map including its pen, or <code>null</code> if it has
+   *     none
+   */
+  private static Rectangle2D getDrawnBounds(DrawnElement element) {
+    Drawable drawable = element.getDrawable();
+    if (drawable.getBounds() == null) {
+      return null;
+    }
+    Rectangle2D drawnBounds = new Rectangle(drawable.getBounds());
+
+    // Handle pen size
+    Pen pen = element.getPen();
+    int penSize = (int) (pen.getThickness() / 2 + 1);
+    drawnBounds.setRect(
+        drawnBounds.getX() - penSize,
+        drawnBounds.getY() - penSize,
+        drawnBounds.getWidth() + pen.getThickness(),
+        drawnBounds.getHeight() + pen.getThickness());
+    return drawnBounds;
+  }
+
+  /** @return the region of the map covered by a chunk */
+  private static Rectangle2D getChunkBounds(int gridx, int gridy, double scale) {
+    return new Rectangle(
+        (int) (gridx * (CHUNK_SIZE / scale)),
+        (int) (gridy * (CHUNK_SIZE / scale)),
+        (int) (CHUNK_SIZE / scale),
+        (int) (CHUNK_SIZE / scale));
+  }
+
   private BufferedImage createChunk(
-      List<DrawnElement> drawableList, int gridx, int gridy, double scale) {
+      List<DrawnElement> drawableList, int gridx, int gridy, double scale, CodeTimer timer) {
     int x = gridx * CHUNK_SIZE;
     int y = gridy * CHUNK_SIZE;
 
@@ -211,30 +573,16 @@ private BufferedImage createChunk(
     Composite oldComposite = null;
     Graphics2D g = null;
 
+    Rectangle2D chunkBounds = getChunkBounds(gridx, gridy, scale);
     for (DrawnElement element : drawableList) {
       timer.start("createChunk:calculate");
       Drawable drawable = element.getDrawable();
-      if (drawable.getBounds() == null) {
+      Rectangle2D drawnBounds = getDrawnBounds(element);
+      if (drawnBounds == null) {
         timer.stop("createChunk:calculate");
         continue;
       }
-
-      Rectangle2D drawnBounds = new Rectangle(drawable.getBounds());
-      Rectangle2D chunkBounds =
-          new Rectangle(
-              (int) (gridx * (CHUNK_SIZE / scale)),
-              (int) (gridy * (CHUNK_SIZE / scale)),
-              (int) (CHUNK_SIZE / scale),
-              (int) (CHUNK_SIZE / scale));
-
-      // Handle pen size
       Pen pen = element.getPen();
-      int penSize = (int) (pen.getThickness() / 2 + 1);
-      drawnBounds.setRect(
-          drawnBounds.getX() - penSize,
-          drawnBounds.getY() - penSize,
-          drawnBounds.getWidth() + pen.getThickness(),
-          drawnBounds.getHeight() + pen.getThickness());
       timer.stop("createChunk:calculate");
 
       timer.start("createChunk:BoundsCheck");
@@ -272,7 +620,7 @@ private BufferedImage createChunk(
       timer.start("createChunk:Draw");
       if (drawable instanceof DrawablesGroup) {
         DrawablesGroup dg = (DrawablesGroup) drawable;
-        BufferedImage groupImage = createChunk(dg.getDrawableList(), gridx, gridy, scale);
+        BufferedImage groupImage = createChunk(dg.getDrawableList(), gridx, gridy, scale, timer);
         Graphics2D g2 = image.createGraphics();
         g2.drawImage(groupImage, 0, 0, CHUNK_SIZE, CHUNK_SIZE, null);
         g2.dispose();
@@ -288,8 +636,12 @@ private BufferedImage createChunk(
 
   private BufferedImage getNewChunk() {
     BufferedImage image = null;
-    if (unusedChunkList.size() > 0) {
-      image = unusedChunkList.remove(0);
+    synchronized (unusedChunkList) {
+      if (unusedChunkList.size() > 0) {
+        image = unusedChunkList.remove(0);
+      }
+    }
+    if (image != null) {
       ImageUtil.clearImage(image);
     } else {
       image = new BufferedImage(CHUNK_SIZE, CHUNK_SIZE, Transparency.BITMASK);
@@ -298,30 +650,97 @@ private BufferedImage getNewChunk() {
     return image;
   }
 
-  private String getKey(int col, int row) {
-    return col + "." + row;
+  /** Draws a chunk on a background thread and hands it back on the EDT. */
+  private class ChunkTask implements Runnable, Comparable<ChunkTask> {
+    final ChunkKey key;
+    final List<DrawnElement> drawables;
+    volatile int priority;
+    volatile boolean cancelled;
+
+    ChunkTask(ChunkKey key, List<DrawnElement> drawables, int priority) {
+      this.key = key;
+      this.drawables = drawables;
+      this.priority = priority;
+    }
+
+    @Override
+    public void run() {
+      if (cancelled) {
+        return;
+      }
+      CodeTimer chunkTimer = new CodeTimer("ChunkTask");
+      chunkTimer.setEnabled(false);
+      BufferedImage image = createChunk(drawables, key.x, key.y, key.scale, chunkTimer);
+      SwingUtilities.invokeLater(() -> chunkRendered(this, image));
+    }
+
+    @Override
+    public int compareTo(ChunkTask other) {
+      return Integer.compare(priority, other.priority);
+    }
   }
 
-  private static class Tuple {
-    String key;
-    BufferedImage image;
+  /** A drawable in the index, with its position in the layer. */
+  private static class IndexedDrawable {
+    final DrawnElement element;
+    final Rectangle2D bounds;
+    int order;
+    private DrawnElement snapshot;
+    private boolean snapshotTaken;
+
+    IndexedDrawable(DrawnElement element) {
+      this.element = element;
+      this.bounds = getDrawnBounds(element);
+    }
 
-    public Tuple(String key, BufferedImage image) {
-      this.key = key;
-      this.image = image;
+    /**
+     * The copy is taken the first time a chunk under the drawable is queued. A drawable reported
+     * as changed is indexed again, which takes a new copy.
+     *
+     * @return a copy of the element for the chunk workers, or <code>null</code> if it can only be
+     *     drawn on the EDT
+     */
+    DrawnElement getSnapshot() {
+      if (!snapshotTaken) {
+        snapshot = snapshot(element);
+        snapshotTaken = true;
+      }
+      return snapshot;
+    }
+  }
+
+  /** Identifies a chunk image by the scale it was drawn at and its position in the grid. */
+  private static class ChunkKey {
+    final double scale;
+    final int x;
+    final int y;
+
+    ChunkKey(double scale, int x, int y) {
+      this.scale = scale;
+      this.x = x;
+      this.y = y;
+    }
+
+    Rectangle2D getBounds() {
+      return getChunkBounds(x, y, scale);
     }
 
     @Override
     public boolean equals(Object o) {
       if (this == o) return true;
       if (o == null || getClass() != o.getClass()) return false;
-      Tuple tuple = (Tuple) o;
-      return Objects.equals(key, tuple.key);
+      ChunkKey chunkKey = (ChunkKey) o;
+      return Double.compare(chunkKey.scale, scale) == 0 && x == chunkKey.x && y == chunkKey.y;
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(key);
+      return Objects.hash(scale, x, y);
+    }
+
+    @Override
+    public String toString() {
+      return x + "." + y;
     }
   }
 }
@@ -0,0 +1,154 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.Rectangle;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Merges repaint requests and paces the resulting paints to a target frame rate.
+ *
+ * <p>Requests can come from any thread. The first request after a quiet period is passed on
+ * immediately; requests arriving less than a frame after the last one that was passed on are
+ * merged into a single repaint of the union of their regions, issued when the frame is due. This
+ * way a burst of changes, such as a macro updating many tokens, is painted once per frame instead
+ * of once per change, while a single change is still shown without delay.
+ */
+class RepaintScheduler {
+
+  /** Issues the merged repaints on a named daemon thread. */
+  private static final ThreadFactory threadFactory =
+      (new com.google.common.util.concurrent.ThreadFactoryBuilder())
+          .setNameFormat("repaint-scheduler-%d")
+          .setDaemon(true)
+          .build();
+
+  private static final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+  /** Receives the repaints that are passed on. */
+  @FunctionalInterface
+  interface Target {
+    /**
+     * Repaints a region.
+     *
+     * @param x the x of the region
+     * @param y the y of the region
+     * @param width the width of the region
+     * @param height the height of the region
+     */
+    void repaint(int x, int y, int width, int height);
+  }
+
+  private final Target target;
+  private final IntSupplier targetFrameRate;
+
+  private final Object lock = new Object();
+  private Rectangle pending;
+  private boolean scheduled;
+  private long lastIssued;
+  private long requestedCount;
+  private long issuedCount;
+  private long paintedCount;
+
+  /**
+   * @param target receives the repaints that are passed on
+   * @param targetFrameRate gives the maximum number of repaints per second; zero or less means no
+   *     limit
+   */
+  RepaintScheduler(Target target, IntSupplier targetFrameRate) {
+    this.target = target;
+    this.targetFrameRate = targetFrameRate;
+  }
+
+  /**
+   * Requests a repaint of a region.
+   *
+   * @param x the x of the region
+   * @param y the y of the region
+   * @param width the width of the region
+   * @param height the height of the region
+   */
+  void request(int x, int y, int width, int height) {
+    Rectangle region;
+    synchronized (lock) {
+      requestedCount++;
+      if (width <= 0 || height <= 0) {
+        return;
+      }
+      if (pending == null) {
+        pending = new Rectangle(x, y, width, height);
+      } else {
+        pending.add(new Rectangle(x, y, width, height));
+      }
+      if (scheduled) {
+        return;
+      }
+      int frameRate = targetFrameRate.getAsInt();
+      long interval = frameRate > 0 ? TimeUnit.SECONDS.toNanos(1) / frameRate : 0;
+      long wait = lastIssued + interval - System.nanoTime();
+      if (wait > 0) {
+        scheduled = true;
+        executor.schedule(this::issuePending, wait, TimeUnit.NANOSECONDS);
+        return;
+      }
+      region = takePending();
+    }
+    target.repaint(region.x, region.y, region.width, region.height);
+  }
+
+  /** Counts a frame that was actually painted. */
+  void framePainted() {
+    synchronized (lock) {
+      paintedCount++;
+    }
+  }
+
+  private void issuePending() {
+    Rectangle region;
+    synchronized (lock) {
+      scheduled = false;
+      if (pending == null) {
+        return;
+      }
+      region = takePending();
+    }
+    target.repaint(region.x, region.y, region.width, region.height);
+  }
+
+  private Rectangle takePending() {
+    Rectangle region = pending;
+    pending = null;
+    lastIssued = System.nanoTime();
+    issuedCount++;
+    return region;
+  }
+
+  @Override
+  public String toString() {
+    synchronized (lock) {
+      return "repaints: requested "
+          + requestedCount
+          + ", issued "
+          + issuedCount
+          + ", painted "
+          + paintedCount;
+    }
+  }
+}
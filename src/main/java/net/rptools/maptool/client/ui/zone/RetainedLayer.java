@@ -0,0 +1,128 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * A screen-sized image holding the result of rendering some layers of the map, so that repaints
+ * that don't change those layers can copy the image instead of rendering them again.
+ *
+ * <p>The image is kept until it is {@link #invalidate() invalidated} because the content of the
+ * layers changed, or until it is asked for with a different key, which holds everything about the
+ * view the layers depend on (scale, position, size, player view and so on).
+ */
+class RetainedLayer {
+  private final String name;
+  private BufferedImage image;
+  private List<Object> key;
+  private volatile boolean dirty = true;
+  private long renderCount;
+  private long reuseCount;
+
+  /** @param name the name of the layer, for profiling */
+  RetainedLayer(String name) {
+    this.name = name;
+  }
+
+  /** Marks the image as out of date, so the layer is rendered again on the next repaint. */
+  void invalidate() {
+    dirty = true;
+  }
+
+  /**
+   * Checks that a graphics can show the image: it may be scaled for high resolution screens but not
+   * rotated or sheared.
+   *
+   * @param g the graphics the layer is painted on
+   * @return <code>true</code> if the layer can be retained for this graphics
+   */
+  static boolean canRetain(Graphics2D g) {
+    int type = g.getTransform().getType();
+    return (type & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_MASK_SCALE)) == 0
+        && g.getTransform().getScaleX() > 0
+        && g.getTransform().getScaleY() > 0;
+  }
+
+  /**
+   * @param viewKey the values the layer depends on
+   * @return <code>true</code> if the image can be painted as is
+   */
+  boolean isCurrent(List<Object> viewKey) {
+    return !dirty && image != null && viewKey.equals(key);
+  }
+
+  /**
+   * Starts rendering the layer into the image.
+   *
+   * @param g the graphics the layer will be painted on, whose hints and scale are used
+   * @param viewKey the values the layer depends on
+   * @param width the width of the view
+   * @param height the height of the view
+   * @return a graphics to render the layer with, in view coordinates and clipped to the view
+   */
+  Graphics2D startRender(Graphics2D g, List<Object> viewKey, int width, int height) {
+    double scaleX = g.getTransform().getScaleX();
+    double scaleY = g.getTransform().getScaleY();
+    int imageWidth = Math.max(1, (int) Math.ceil(width * scaleX));
+    int imageHeight = Math.max(1, (int) Math.ceil(height * scaleY));
+    if (image == null || image.getWidth() != imageWidth || image.getHeight() != imageHeight) {
+      image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+    }
+    Graphics2D layerG = image.createGraphics();
+    layerG.setComposite(AlphaComposite.Clear);
+    layerG.fillRect(0, 0, imageWidth, imageHeight);
+    layerG.setComposite(AlphaComposite.SrcOver);
+    layerG.setRenderingHints(g.getRenderingHints());
+    layerG.setFont(g.getFont());
+    layerG.scale(scaleX, scaleY);
+    layerG.setClip(0, 0, width, height);
+
+    key = viewKey;
+    dirty = false;
+    renderCount++;
+    return layerG;
+  }
+
+  /**
+   * Paints the image.
+   *
+   * @param g the graphics to paint on
+   * @param width the width of the view
+   * @param height the height of the view
+   * @param reused <code>true</code> if the layer wasn't rendered for this repaint
+   */
+  void paint(Graphics2D g, int width, int height, boolean reused) {
+    if (reused) {
+      reuseCount++;
+    }
+    g.drawImage(image, 0, 0, width, height, null);
+  }
+
+  /** Releases the image, e.g. while the map isn't shown. */
+  void release() {
+    image = null;
+    dirty = true;
+  }
+
+  @Override
+  public String toString() {
+    return name + ": rendered " + renderCount + ", reused " + reuseCount;
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A spatial hash of items by their bounds on the map.
+ *
+ * <p>The map is divided into square cells and each item is listed in every cell its bounds
+ * overlap, so finding the items in a region only looks at the items near it. Items covering a
+ * very large number of cells, such as a drawing spanning the whole map, are kept in a separate
+ * list that every query checks, to keep the number of cell entries bounded.
+ *
+ * @param <T> the type of the items; they are identified by <code>equals</code> and <code>
+ *     hashCode</code>
+ */
+class SpatialGrid<T> {
+  /** Items overlapping more cells than this are kept in {@link #oversized}. */
+  private static final int MAX_CELLS_PER_ITEM = 256;
+
+  private final double cellSize;
+  private final Map<Long, List<T>> cells = new HashMap<>();
+  private final Map<T, Rectangle2D> bounds = new HashMap<>();
+  private final List<T> oversized = new ArrayList<>();
+
+  /** @param cellSize the width and height of a cell, in map units */
+  SpatialGrid(double cellSize) {
+    this.cellSize = cellSize;
+  }
+
+  /**
+   * Adds an item, or moves it if it is already in the grid.
+   *
+   * @param item the item
+   * @param itemBounds the bounds of the item, in map coordinates
+   */
+  void put(T item, Rectangle2D itemBounds) {
+    remove(item);
+    Rectangle2D copy = itemBounds.getBounds2D();
+    bounds.put(item, copy);
+    if (isOversized(copy)) {
+      oversized.add(item);
+      return;
+    }
+    forEachCell(copy, key -> cells.computeIfAbsent(key, k -> new ArrayList<>(4)).add(item));
+  }
+
+  /**
+   * Removes an item.
+   *
+   * @param item the item
+   * @return <code>true</code> if the item was in the grid
+   */
+  boolean remove(T item) {
+    Rectangle2D itemBounds = bounds.remove(item);
+    if (itemBounds == null) {
+      return false;
+    }
+    if (isOversized(itemBounds)) {
+      oversized.remove(item);
+    } else {
+      forEachCell(
+          itemBounds,
+          key -> {
+            List<T> list = cells.get(key);
+            if (list != null) {
+              list.remove(item);
+              if (list.isEmpty()) {
+                cells.remove(key);
+              }
+            }
+          });
+    }
+    return true;
+  }
+
+  /**
+   * @param item the item
+   * @return the bounds the item was added with, or <code>null</code> if it isn't in the grid
+   */
+  Rectangle2D getBounds(T item) {
+    return bounds.get(item);
+  }
+
+  /**
+   * Finds the items whose bounds intersect a region.
+   *
+   * @param region the region, in map coordinates
+   * @return the items, in no particular order
+   */
+  Set<T> query(Rectangle2D region) {
+    Set<T> result = new LinkedHashSet<>();
+    if (bounds.isEmpty()) {
+      return result;
+    }
+    if (isOversized(region)) {
+      // Cheaper to test every item than to visit every cell
+      for (Map.Entry<T, Rectangle2D> entry : bounds.entrySet()) {
+        if (entry.getValue().intersects(region)) {
+          result.add(entry.getKey());
+        }
+      }
+      return result;
+    }
+    forEachCell(
+        region,
+        key -> {
+          for (T item : cells.getOrDefault(key, Collections.emptyList())) {
+            if (bounds.get(item).intersects(region)) {
+              result.add(item);
+            }
+          }
+        });
+    for (T item : oversized) {
+      if (bounds.get(item).intersects(region)) {
+        result.add(item);
+      }
+    }
+    return result;
+  }
+
+  /** @return the number of items in the grid */
+  int size() {
+    return bounds.size();
+  }
+
+  /** Removes every item. */
+  void clear() {
+    cells.clear();
+    bounds.clear();
+    oversized.clear();
+  }
+
+  private boolean isOversized(Rectangle2D rect) {
+    double columns = Math.floor(rect.getMaxX() / cellSize) - Math.floor(rect.getMinX() / cellSize);
+    double rows = Math.floor(rect.getMaxY() / cellSize) - Math.floor(rect.getMinY() / cellSize);
+    return (columns + 1) * (rows + 1) > MAX_CELLS_PER_ITEM;
+  }
+
+  private void forEachCell(Rectangle2D rect, CellVisitor visitor) {
+    int minX = (int) Math.floor(rect.getMinX() / cellSize);
+    int minY = (int) Math.floor(rect.getMinY() / cellSize);
+    int maxX = (int) Math.floor(rect.getMaxX() / cellSize);
+    int maxY = (int) Math.floor(rect.getMaxY() / cellSize);
+    for (int y = minY; y <= maxY; y++) {
+      for (int x = minX; x <= maxX; x++) {
+        visitor.visit(((long) x << 32) | (y & 0xffffffffL));
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface CellVisitor {
+    void visit(long key);
+  }
+}
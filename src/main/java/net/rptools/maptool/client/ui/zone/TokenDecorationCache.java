@@ -0,0 +1,130 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.rptools.maptool.model.GUID;
+
+/**
+ * The state and bar overlays of tokens, composited into one image per token.
+ *
+ * <p>Painting the overlays means going through every state and bar of the campaign and often
+ * scaling their images, which on a crowded map costs more than drawing the tokens. The composited
+ * image of a token is kept as long as its key, holding the size of the token on screen and
+ * everything the overlays depend on (state and bar values, overlays shown, opacity), stays the
+ * same. Tokens that haven't been drawn for a while drop out of the cache.
+ */
+class TokenDecorationCache {
+  /** The number of tokens whose decorations are kept. */
+  private static final int MAX_ENTRIES = 1024;
+
+  /** Paints the overlays of a token. */
+  @FunctionalInterface
+  interface DecorationPainter {
+    /**
+     * @param g the graphics to paint on, with the origin at the top left of the token
+     * @param bounds the bounds of the token, at the origin
+     */
+    void paint(Graphics2D g, Rectangle bounds);
+  }
+
+  private static class Entry {
+    private final List<Object> key;
+    private final BufferedImage image;
+
+    private Entry(List<Object> key, BufferedImage image) {
+      this.key = key;
+      this.image = image;
+    }
+  }
+
+  private final Map<GUID, Entry> entries =
+      new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<GUID, Entry> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  /**
+   * Paints the decorations of a token, from the cache when the key hasn't changed.
+   *
+   * @param g the graphics of the token
+   * @param tokenId the id of the token
+   * @param bounds where the token is on screen
+   * @param key the values the decorations depend on
+   * @param painter paints the decorations when they aren't cached
+   */
+  synchronized void paint(
+      Graphics2D g, GUID tokenId, Rectangle bounds, List<Object> key, DecorationPainter painter) {
+    if (bounds.width <= 0 || bounds.height <= 0) {
+      return;
+    }
+    Rectangle origin = new Rectangle(0, 0, bounds.width, bounds.height);
+    if (!RetainedLayer.canRetain(g)) {
+      Graphics2D locg = (Graphics2D) g.create(bounds.x, bounds.y, bounds.width, bounds.height);
+      try {
+        painter.paint(locg, origin);
+      } finally {
+        locg.dispose();
+      }
+      return;
+    }
+    double scaleX = g.getTransform().getScaleX();
+    double scaleY = g.getTransform().getScaleY();
+    List<Object> fullKey = List.of(key, bounds.width, bounds.height, scaleX, scaleY);
+
+    Entry entry = entries.get(tokenId);
+    if (entry == null || !entry.key.equals(fullKey)) {
+      BufferedImage image =
+          new BufferedImage(
+              Math.max(1, (int) Math.ceil(bounds.width * scaleX)),
+              Math.max(1, (int) Math.ceil(bounds.height * scaleY)),
+              BufferedImage.TYPE_INT_ARGB);
+      Graphics2D imageG = image.createGraphics();
+      try {
+        imageG.setRenderingHints(g.getRenderingHints());
+        imageG.setFont(g.getFont());
+        imageG.scale(scaleX, scaleY);
+        imageG.setClip(origin);
+        painter.paint(imageG, origin);
+      } finally {
+        imageG.dispose();
+      }
+      entry = new Entry(fullKey, image);
+      entries.put(tokenId, entry);
+    }
+    g.drawImage(entry.image, bounds.x, bounds.y, bounds.width, bounds.height, null);
+  }
+
+  /**
+   * Forgets the decorations of a token.
+   *
+   * @param tokenId the id of the token
+   */
+  synchronized void remove(GUID tokenId) {
+    entries.remove(tokenId);
+  }
+
+  /** Forgets all decorations. */
+  synchronized void clear() {
+    entries.clear();
+  }
+}
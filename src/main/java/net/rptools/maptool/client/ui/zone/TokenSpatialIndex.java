@@ -0,0 +1,169 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+
+/**
+ * The footprints of the tokens of a zone, indexed by layer and position on the map.
+ *
+ * <p>The index is kept up to date from the token events of the zone and lets the renderer find the
+ * tokens near a point or inside a region without computing the bounds of every token. It is built
+ * lazily from the zone the first time it is queried, and again after {@link #invalidate()}.
+ */
+class TokenSpatialIndex {
+  /** Size of the cells of the index, in map units. */
+  private static final double CELL_SIZE = 256;
+
+  private final Zone zone;
+  private final Map<Zone.Layer, SpatialGrid<Token>> layers = new EnumMap<>(Zone.Layer.class);
+  private final Map<Token, Zone.Layer> tokenLayers = new HashMap<>();
+  private boolean valid;
+
+  /** @param zone the zone whose tokens are indexed */
+  TokenSpatialIndex(Zone zone) {
+    this.zone = zone;
+  }
+
+  /**
+   * Adds a token, or updates its position and layer if it is already indexed.
+   *
+   * @param token the token
+   */
+  synchronized void update(Token token) {
+    if (!valid) {
+      return; // The token will be picked up by the next rebuild
+    }
+    if (zone.getToken(token.getId()) == null) {
+      remove(token);
+      return;
+    }
+    Zone.Layer oldLayer = tokenLayers.put(token, token.getLayer());
+    if (oldLayer != null && oldLayer != token.getLayer()) {
+      layers.get(oldLayer).remove(token);
+    }
+    getLayer(token.getLayer()).put(token, getFootprint(zone, token));
+  }
+
+  /**
+   * Removes a token.
+   *
+   * @param token the token
+   */
+  synchronized void remove(Token token) {
+    Zone.Layer layer = tokenLayers.remove(token);
+    if (layer != null) {
+      layers.get(layer).remove(token);
+    }
+  }
+
+  /** Discards the index so it is rebuilt on the next query, e.g. after the grid changed. */
+  synchronized void invalidate() {
+    valid = false;
+    layers.clear();
+    tokenLayers.clear();
+  }
+
+  /**
+   * @param token the token
+   * @return <code>true</code> if the token is in the index
+   */
+  synchronized boolean contains(Token token) {
+    validate();
+    return tokenLayers.containsKey(token);
+  }
+
+  /**
+   * @param token the token
+   * @return the layer the token is indexed on, or null if it isn't in the index
+   */
+  synchronized Zone.Layer getLayer(Token token) {
+    validate();
+    return tokenLayers.get(token);
+  }
+
+  /**
+   * Finds the tokens of a layer whose footprints intersect a region.
+   *
+   * @param layer the layer
+   * @param region the region, in map coordinates
+   * @return the tokens, in no particular order
+   */
+  synchronized Set<Token> query(Zone.Layer layer, Rectangle2D region) {
+    validate();
+    SpatialGrid<Token> grid = layers.get(layer);
+    return grid == null ? Collections.emptySet() : grid.query(region);
+  }
+
+  /**
+   * Finds the tokens of every layer whose footprints intersect a region.
+   *
+   * @param region the region, in map coordinates
+   * @return the tokens, in no particular order
+   */
+  synchronized Set<Token> query(Rectangle2D region) {
+    validate();
+    Set<Token> result = new HashSet<>();
+    for (SpatialGrid<Token> grid : layers.values()) {
+      result.addAll(grid.query(region));
+    }
+    return result;
+  }
+
+  private void validate() {
+    if (valid) {
+      return;
+    }
+    valid = true;
+    for (Token token : zone.getAllTokens()) {
+      tokenLayers.put(token, token.getLayer());
+      getLayer(token.getLayer()).put(token, getFootprint(zone, token));
+    }
+  }
+
+  private SpatialGrid<Token> getLayer(Zone.Layer layer) {
+    return layers.computeIfAbsent(layer, l -> new SpatialGrid<>(CELL_SIZE));
+  }
+
+  /**
+   * Returns the area covered by a token on the map, matching the bounds the renderer draws it in:
+   * top down tokens with a facing are rotated around their center.
+   *
+   * @param zone the zone of the token
+   * @param token the token
+   * @return the bounds, in map coordinates
+   */
+  static Rectangle2D getFootprint(Zone zone, Token token) {
+    Rectangle bounds = token.getBounds(zone);
+    if (token.hasFacing() && token.getShape() == Token.TokenShape.TOP_DOWN) {
+      double cx = bounds.getCenterX() - token.getAnchor().x;
+      double cy = bounds.getCenterY() - token.getAnchor().y;
+      return AffineTransform.getRotateInstance(Math.toRadians(-token.getFacing() - 90), cx, cy)
+          .createTransformedShape(bounds)
+          .getBounds2D();
+    }
+    return bounds;
+  }
+}
@@ -31,19 +31,19 @@
 import net.rptools.lib.swing.SwingUtil;
 import net.rptools.maptool.client.AppStyle;
 import net.rptools.maptool.client.MapTool;
-import net.rptools.maptool.model.ModelChangeEvent;
-import net.rptools.maptool.model.ModelChangeListener;
 import net.rptools.maptool.model.Zone;
 import net.rptools.maptool.util.ImageManager;
 
 /** */
-public class ZoneMiniMapPanel extends JPanel implements ModelChangeListener {
+public class ZoneMiniMapPanel extends JPanel {
 
   private static final int SIZE_WIDTH = 125;
   private static final int SIZE_HEIGHT = 100;
 
   private Rectangle bounds;
   private BufferedImage backBuffer;
+  /** The overview drawn in {@link #backBuffer}. */
+  private BufferedImage miniImage;
 
   private Zone zone;
 
@@ -69,14 +69,15 @@ protected void paintComponent(Graphics g) {
       return;
     }
 
+    // The overview is rendered in the background; only draw it again when a new one is published
+    BufferedImage img = renderer.getMiniImage(SIZE_WIDTH);
     if (backBuffer == null
         || backBuffer.getWidth() != mySize.width
-        || backBuffer.getHeight() != mySize.height) {
+        || backBuffer.getHeight() != mySize.height
+        || img != miniImage) {
 
       backBuffer = new BufferedImage(mySize.width, mySize.height, Transparency.OPAQUE);
-
-      // TODO: This is a naive solution. In the future, actually render the zone
-      BufferedImage img = renderer.getMiniImage(SIZE_WIDTH);
+      miniImage = img;
       if (img == null || img == ImageManager.TRANSFERING_IMAGE) {
         img = ImageManager.TRANSFERING_IMAGE;
 
@@ -149,6 +150,16 @@ public void flush() {
     backBuffer = null;
   }
 
+  /** Shows the overview of the current map after it was rendered again. */
+  public void miniMapUpdated() {
+    flush();
+    resize();
+    if (getParent() != null) {
+      getParent().doLayout();
+    }
+    repaint();
+  }
+
   public void resize() {
 
     setSize(getPreferredSize());
@@ -161,12 +172,7 @@ public void zoneAdded(Zone zone) {}
 
   public void zoneActivated(Zone zone) {
 
-    if (this.zone != null) {
-      this.zone.removeModelChangeListener(this);
-    }
-
     this.zone = zone;
-    this.zone.addModelChangeListener(this);
 
     flush();
     resize();
@@ -175,15 +181,6 @@ public void zoneActivated(Zone zone) {
     repaint();
   }
 
-  ////
-  // ModelChangeListener
-  public void modelChanged(ModelChangeEvent event) {
-    if (event.getEvent() == Zone.Event.FOG_CHANGED) {
-      flush();
-      repaint();
-    }
-  }
-
   ////
   // IMAGE OBSERVER
   @Override
@@ -36,6 +36,8 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -64,7 +66,6 @@
 import net.rptools.maptool.client.AppState;
 import net.rptools.maptool.client.AppStyle;
 import net.rptools.maptool.client.AppUtil;
-import net.rptools.maptool.client.DebounceExecutor;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.MapToolUtil;
 import net.rptools.maptool.client.ScreenPoint;
@@ -88,6 +89,7 @@
 import net.rptools.maptool.model.AbstractPoint;
 import net.rptools.maptool.model.Asset;
 import net.rptools.maptool.model.AssetManager;
+import net.rptools.maptool.model.Campaign;
 import net.rptools.maptool.model.CellPoint;
 import net.rptools.maptool.model.ExposedAreaMetaData;
 import net.rptools.maptool.model.GUID;
@@ -135,8 +137,8 @@ public class ZoneRenderer extends JComponent
   private static final Color TRANSLUCENT_YELLOW =
       new Color(Color.yellow.getRed(), Color.yellow.getGreen(), Color.yellow.getBlue(), 50);
 
-  /** DebounceExecutor for throttling repaint() requests. */
-  private final DebounceExecutor repaintDebouncer;
+  /** Merges the repaint() requests from every caller and paces them to the frame rate cap. */
+  private final RepaintScheduler repaintScheduler;
 
   /** Noise for mask on repeating tiles. */
   private DrawableNoise noise = null;
@@ -153,10 +155,19 @@ public class ZoneRenderer extends JComponent
   private final ZoneView zoneView;
 
   private Scale zoneScale;
-  private final DrawableRenderer backgroundDrawableRenderer = new PartitionedDrawableRenderer();
-  private final DrawableRenderer objectDrawableRenderer = new PartitionedDrawableRenderer();
-  private final DrawableRenderer tokenDrawableRenderer = new PartitionedDrawableRenderer();
-  private final DrawableRenderer gmDrawableRenderer = new PartitionedDrawableRenderer();
+  private final DrawableRenderer backgroundDrawableRenderer =
+      new PartitionedDrawableRenderer(this::drawableChunkRendered);
+  private final DrawableRenderer objectDrawableRenderer =
+      new PartitionedDrawableRenderer(this::drawableChunkRendered);
+  private final DrawableRenderer tokenDrawableRenderer =
+      new PartitionedDrawableRenderer(this::drawableChunkRendered);
+  private final DrawableRenderer gmDrawableRenderer =
+      new PartitionedDrawableRenderer(this::drawableChunkRendered);
+  /**
+   * Whether the zone is being painted on screen, where the drawable renderers can leave parts of
+   * a layer to be drawn in the background, rather than for a screenshot.
+   */
+  private boolean paintingOnScreen;
   private final List<ZoneOverlay> overlayList = new ArrayList<ZoneOverlay>();
   private final Map<Zone.Layer, List<TokenLocation>> tokenLocationMap =
       new HashMap<Zone.Layer, List<TokenLocation>>();
@@ -171,6 +182,17 @@ public class ZoneRenderer extends JComponent
   // TokenLocation>());
   private final Map<Token, TokenLocation> tokenLocationCache = new HashMap<Token, TokenLocation>();
   private final List<TokenLocation> markerLocationList = new ArrayList<TokenLocation>();
+  /** The board, background and object layers and the grid, as last rendered on screen. */
+  private final RetainedLayer baseLayers = new RetainedLayer("baseLayers");
+  /** Where the tokens in {@link #baseLayers} were drawn, restored when it is reused. */
+  private final Map<Zone.Layer, List<TokenLocation>> baseTokenLocations =
+      new EnumMap<>(Zone.Layer.class);
+  /** Where the markers in {@link #baseLayers} were drawn, restored when it is reused. */
+  private final List<TokenLocation> baseMarkerLocations = new ArrayList<TokenLocation>();
+  /** The state and bar overlays of the tokens, composited per token. */
+  private final TokenDecorationCache decorationCache = new TokenDecorationCache();
+  /** Footprints of the tokens of the zone, for culling and hit-testing without a full scan. */
+  private final TokenSpatialIndex tokenIndex;
   private GeneralPath facingArrow;
   private final List<Token> showPathList = new ArrayList<Token>();
   private boolean showAllPaths = true; // Jamz: new option to show path
@@ -184,7 +206,7 @@ public class ZoneRenderer extends JComponent
   private Zone.Layer activeLayer;
   private String loadingProgress;
   private boolean isLoaded;
-  private BufferedImage fogBuffer;
+  private final FogTileCache fogTileCache = new FogTileCache();
   /**
    * I don't like this, at all, but it'll work for now, basically keep track of when the fog cache
    * needs to be flushed in the case of switching views
@@ -194,7 +216,10 @@ public class ZoneRenderer extends JComponent
   /** In screen space */
   private Area exposedFogArea;
 
-  private BufferedImage miniImage;
+  /** Renders the overview shown by the mini map, started the first time it is asked for. */
+  private MiniMapRenderer miniMap;
+
+  private final ZoneModelChangeListener modelChangeListener = new ZoneModelChangeListener();
   private BufferedImage backbuffer;
   private boolean drawBackground = true;
   private int lastX;
@@ -232,11 +257,13 @@ public ZoneRenderer(Zone zone) {
       throw new IllegalArgumentException("Zone cannot be null");
     }
     this.zone = zone;
-    zone.addModelChangeListener(new ZoneModelChangeListener());
+    tokenIndex = new TokenSpatialIndex(zone);
+    zone.addModelChangeListener(modelChangeListener);
 
-    // The interval, in milliseconds, during which calls to repaint() will be debounced.
-    int repaintDebounceInterval = 1000 / AppPreferences.getFrameRateCap();
-    repaintDebouncer = new DebounceExecutor(repaintDebounceInterval, this::repaint);
+    repaintScheduler =
+        new RepaintScheduler(
+            (x, y, width, height) -> super.repaint(0, x, y, width, height),
+            AppPreferences::getFrameRateCap);
 
     setFocusable(true);
     setZoneScale(new Scale());
@@ -293,6 +320,7 @@ public void showPath(Token token, boolean show) {
     } else {
       showPathList.remove(token);
     }
+    baseLayers.invalidate();
   }
 
   /**
@@ -331,10 +359,11 @@ public boolean isPathShowing(Token token) {
 
   public void clearShowPaths() {
     showPathList.clear();
+    baseLayers.invalidate();
     // [PNICHOLS04] This call is unnecessary, because we are in a method that is
     // only called once (from clearSelectedTokens), and the caller requires a
     // repaint after we return.
-    // repaintDebouncer.dispatch();
+    // repaint();
   }
 
   /**
@@ -345,7 +374,7 @@ public void updateAfterSelection() {
     MapTool.getFrame().getSelectionPanel().reset();
     MapTool.getFrame().getImpersonatePanel().resetIfNotImpersonating();
     HTMLFrameFactory.selectedListChanged();
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   public Scale getZoneScale() {
@@ -366,7 +395,7 @@ public void setZoneScale(Scale scale) {
             // flushFog = true;
           }
           visibleScreenArea = null;
-          repaintDebouncer.dispatch();
+          repaint();
         });
   }
 
@@ -376,12 +405,30 @@ public void setZoneScale(Scale scale) {
    * up, add the drawable renderer as a listener
    */
   public void flushDrawableRenderer() {
+    baseLayers.invalidate();
     backgroundDrawableRenderer.flush();
     objectDrawableRenderer.flush();
     tokenDrawableRenderer.flush();
     gmDrawableRenderer.flush();
   }
 
+  /**
+   * @param layer the layer
+   * @return the renderer of the drawables on the layer
+   */
+  private DrawableRenderer getDrawableRenderer(Zone.Layer layer) {
+    switch (layer) {
+      case BACKGROUND:
+        return backgroundDrawableRenderer;
+      case OBJECT:
+        return objectDrawableRenderer;
+      case GM:
+        return gmDrawableRenderer;
+      default:
+        return tokenDrawableRenderer;
+    }
+  }
+
   public ScreenPoint getPointUnderMouse() {
     return pointUnderMouse;
   }
@@ -391,7 +438,7 @@ public void setMouseOver(Token token) {
       return;
     }
     tokenUnderMouse = token;
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   @Override
@@ -408,7 +455,9 @@ public void addMoveSelectionSet(
       }
     }
     selectionSetMap.put(keyToken, new SelectionSet(playerId, keyToken, tokenList));
-    repaintDebouncer.dispatch(); // Jamz: Seems to have no affect?
+    // Stamps being moved are drawn differently
+    baseLayers.invalidate();
+    repaint(); // Jamz: Seems to have no affect?
   }
 
   public boolean hasMoveSelectionSetMoved(GUID keyToken, ZonePoint point) {
@@ -430,7 +479,7 @@ public void updateMoveSelectionSet(GUID keyToken, ZonePoint offset) {
     }
     Token token = zone.getToken(keyToken);
     set.setOffset(offset.x - token.getX(), offset.y - token.getY());
-    repaintDebouncer.dispatch(); // Jamz: may cause flicker when using AI
+    repaint(); // Jamz: may cause flicker when using AI
   }
 
   public void toggleMoveSelectionSetWaypoint(GUID keyToken, ZonePoint location) {
@@ -439,7 +488,7 @@ public void toggleMoveSelectionSetWaypoint(GUID keyToken, ZonePoint location) {
       return;
     }
     set.toggleWaypoint(location);
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   public ZonePoint getLastWaypoint(GUID keyToken) {
@@ -455,7 +504,8 @@ public void removeMoveSelectionSet(GUID keyToken) {
     if (set == null) {
       return;
     }
-    repaintDebouncer.dispatch();
+    baseLayers.invalidate();
+    repaint();
   }
 
   /**
@@ -695,7 +745,7 @@ public void centerOn(ZonePoint point) {
     y = getSize().height / 2 - (int) (y * getScale()) - 1;
 
     setViewOffset(x, y);
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   public void centerOn(CellPoint point) {
@@ -749,9 +799,15 @@ public void flush() {
     // tokenLocationCache.clear();
 
     flushDrawableRenderer();
+    baseLayers.release();
+    decorationCache.clear();
+    if (miniMap != null) {
+      miniMap.stop();
+      miniMap = null;
+    }
     flipImageMap.clear();
     flipIsoImageMap.clear();
-    fogBuffer = null;
+    fogTileCache.invalidateAll();
     renderedLightMap = null;
     renderedAuraMap = null;
 
@@ -760,17 +816,18 @@ public void flush() {
 
   /** Set the rendererLightMap and renderedAuraMap to null, flush the zoneView, and repaint. */
   public void flushLight() {
+    flushFog = true; // The fog shows what is currently visible
     renderedLightMap = null;
     renderedAuraMap = null;
     zoneView.flush();
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   /** Set flushFog to true, visibleScreenArea to null, and repaints */
   public void flushFog() {
     flushFog = true;
     visibleScreenArea = null;
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   /** @return the Zone */
@@ -854,17 +911,57 @@ public void maybeForcePlayersView() {
     }
   }
 
+  /**
+   * Creates another renderer of the zone that is only used off screen, e.g. to export the map
+   * while this one keeps being painted. Like this one, it must only be used on the event dispatch
+   * thread. It has the scale of this renderer and must be released with {@link #detachFromZone()}
+   * once it is no longer needed.
+   *
+   * @return the new renderer
+   */
+  public ZoneRenderer createOffscreenRenderer() {
+    ZoneRenderer offscreen = new ZoneRenderer(zone);
+    offscreen.timer = new CodeTimer("ZoneRenderer.renderZone");
+    offscreen.timer.setEnabled(false);
+    offscreen.setZoneScale(new Scale(getZoneScale()));
+    return offscreen;
+  }
+
+  /** Stops following the changes of the zone, for renderers that are no longer used. */
+  public void detachFromZone() {
+    zone.removeModelChangeListener(modelChangeListener);
+    zone.removeModelChangeListener(zoneView);
+    if (miniMap != null) {
+      miniMap.stop();
+      miniMap = null;
+    }
+  }
+
+  /**
+   * Returns an overview of the zone, rendered in the background and kept up to date as the zone
+   * changes.
+   *
+   * @param size the largest width or height of the overview
+   * @return the latest overview, or null if it isn't rendered yet
+   */
   public BufferedImage getMiniImage(int size) {
-    // if (miniImage == null && getTileImage() !=
-    // ImageManager.UNKNOWN_IMAGE) {
-    // miniImage = new BufferedImage(size, size, Transparency.OPAQUE);
-    // Graphics2D g = miniImage.createGraphics();
-    // g.setPaint(new TexturePaint(getTileImage(), new Rectangle(0, 0,
-    // miniImage.getWidth(), miniImage.getHeight())));
-    // g.fillRect(0, 0, size, size);
-    // g.dispose();
-    // }
-    return miniImage;
+    if (miniMap == null || miniMap.getMaxSize() != size) {
+      if (miniMap != null) {
+        miniMap.stop();
+      }
+      miniMap = new MiniMapRenderer(this, size, this::miniMapUpdated);
+      miniMap.start();
+    }
+    return miniMap.getImage();
+  }
+
+  private void miniMapUpdated() {
+    SwingUtilities.invokeLater(
+        () -> {
+          if (MapTool.getFrame() != null && MapTool.getFrame().getCurrentZoneRenderer() == this) {
+            MapTool.getFrame().getZoneMiniMapPanel().miniMapUpdated();
+          }
+        });
   }
 
   @Override
@@ -882,7 +979,13 @@ public void paintComponent(Graphics g) {
     PlayerView pl = getPlayerView();
     timer.stop("paintComponent:createView");
 
-    renderZone(g2d, pl);
+    repaintScheduler.framePainted();
+    paintingOnScreen = true;
+    try {
+      renderZone(g2d, pl);
+    } finally {
+      paintingOnScreen = false;
+    }
     int noteVPos = 20;
     if (!zone.isVisible() && pl.isGMView()) {
       GraphicsUtil.drawBoxedString(
@@ -893,7 +996,17 @@ public void paintComponent(Graphics g) {
       GraphicsUtil.drawBoxedString(g2d, "Player View", getSize().width / 2, noteVPos);
     }
     if (timer.isEnabled()) {
-      String results = timer.toString();
+      String results =
+          timer.toString()
+              + "  "
+              + baseLayers
+              + "\n  "
+              + repaintScheduler
+              + "\n  "
+              + zone.getGrid().getShapedAreaStatistics()
+              + "\n  "
+              + Token.getPropertyEvaluationStatistics()
+              + "\n";
       MapTool.getProfilingNoteFrame().addText(results);
       if (log.isDebugEnabled()) {
         log.debug(results);
@@ -902,6 +1015,21 @@ public void paintComponent(Graphics g) {
     }
   }
 
+  /**
+   * Repaint requests from every source, whether model listeners, tools, overlays or macros, go
+   * through the {@link RepaintScheduler}, which merges them and limits the paints to the frame rate
+   * cap from the preferences.
+   */
+  @Override
+  public void repaint(long tm, int x, int y, int width, int height) {
+    if (repaintScheduler == null) {
+      // Still being constructed
+      super.repaint(tm, x, y, width, height);
+      return;
+    }
+    repaintScheduler.request(x, y, width, height);
+  }
+
   public PlayerView getPlayerView() {
     return getPlayerView(MapTool.getPlayer().getEffectiveRole());
   }
@@ -1214,47 +1342,8 @@ public void renderZone(Graphics2D g2d, PlayerView view) {
     timer.stop("calcs-2");
 
     // Rendering pipeline
-    if (zone.drawBoard()) {
-      timer.start("board");
-      renderBoard(g2d, view);
-      timer.stop("board");
-    }
-    if (Zone.Layer.BACKGROUND.isEnabled()) {
-      List<DrawnElement> drawables = zone.getBackgroundDrawnElements();
-      // if (!drawables.isEmpty()) {
-      timer.start("drawableBackground");
-      renderDrawableOverlay(g2d, backgroundDrawableRenderer, view, drawables);
-      timer.stop("drawableBackground");
-      // }
-      List<Token> background = zone.getBackgroundStamps(false);
-      if (!background.isEmpty()) {
-        timer.start("tokensBackground");
-        renderTokens(g2d, background, view);
-        timer.stop("tokensBackground");
-      }
-    }
-    if (Zone.Layer.OBJECT.isEnabled()) {
-      // Drawables on the object layer are always below the grid, and...
-      List<DrawnElement> drawables = zone.getObjectDrawnElements();
-      // if (!drawables.isEmpty()) {
-      timer.start("drawableObjects");
-      renderDrawableOverlay(g2d, objectDrawableRenderer, view, drawables);
-      timer.stop("drawableObjects");
-      // }
-    }
-    timer.start("grid");
-    renderGrid(g2d, view);
-    timer.stop("grid");
+    renderBaseLayers(g2d, view);
 
-    if (Zone.Layer.OBJECT.isEnabled()) {
-      // ... Images on the object layer are always ABOVE the grid.
-      List<Token> stamps = zone.getStampTokens(false);
-      if (!stamps.isEmpty()) {
-        timer.start("tokensStamp");
-        renderTokens(g2d, stamps, view);
-        timer.stop("tokensStamp");
-      }
-    }
     if (Zone.Layer.TOKEN.isEnabled()) {
       timer.start("lights");
       renderLights(g2d, view);
@@ -1438,6 +1527,127 @@ public void renderZone(Graphics2D g2d, PlayerView view) {
     }
   }
 
+  /**
+   * Renders the layers below the lights: the board, the background and object layers and the grid.
+   * Nothing in them depends on vision, the pointer or the selection while another layer is active,
+   * so on screen they are kept in a {@link RetainedLayer} and only rendered again when their
+   * content or the view changes.
+   *
+   * @param g2d the graphics to render on
+   * @param view the player view
+   */
+  private void renderBaseLayers(Graphics2D g2d, PlayerView view) {
+    int width = getSize().width;
+    int height = getSize().height;
+    Zone.Layer active = getActiveLayer();
+    if (!paintingOnScreen
+        || active == Zone.Layer.BACKGROUND
+        || active == Zone.Layer.OBJECT
+        || !RetainedLayer.canRetain(g2d)) {
+      drawBaseLayers(g2d, view);
+      return;
+    }
+    List<Object> key =
+        List.of(
+            getScale(),
+            getViewOffsetX(),
+            getViewOffsetY(),
+            width,
+            height,
+            g2d.getTransform().getScaleX(),
+            g2d.getTransform().getScaleY(),
+            view,
+            Zone.Layer.BACKGROUND.isEnabled(),
+            Zone.Layer.OBJECT.isEnabled(),
+            AppState.isShowGrid(),
+            AppState.getGridSize(),
+            zone.getGridColor());
+    if (baseLayers.isCurrent(key)) {
+      timer.start("baseLayers:reused");
+      // Hit-testing still needs to know where the retained tokens are
+      for (Map.Entry<Zone.Layer, List<TokenLocation>> entry : baseTokenLocations.entrySet()) {
+        getTokenLocations(entry.getKey()).addAll(entry.getValue());
+      }
+      markerLocationList.addAll(baseMarkerLocations);
+      baseLayers.paint(g2d, width, height, true);
+      timer.stop("baseLayers:reused");
+      return;
+    }
+    timer.start("baseLayers:render");
+    Graphics2D layerG = baseLayers.startRender(g2d, key, width, height);
+    try {
+      drawBaseLayers(layerG, view);
+    } finally {
+      layerG.dispose();
+    }
+    baseTokenLocations.clear();
+    for (Zone.Layer layer : List.of(Zone.Layer.BACKGROUND, Zone.Layer.OBJECT)) {
+      baseTokenLocations.put(layer, new ArrayList<>(getTokenLocations(layer)));
+    }
+    baseMarkerLocations.clear();
+    baseMarkerLocations.addAll(markerLocationList);
+    baseLayers.paint(g2d, width, height, false);
+    timer.stop("baseLayers:render");
+  }
+
+  /**
+   * @param layer a layer, or null
+   * @return <code>true</code> if the layer is drawn in {@link #baseLayers}
+   */
+  private static boolean isBaseLayer(Zone.Layer layer) {
+    return layer == Zone.Layer.BACKGROUND || layer == Zone.Layer.OBJECT;
+  }
+
+  /**
+   * Draws the layers kept in {@link #baseLayers}.
+   *
+   * @param g2d the graphics to draw on
+   * @param view the player view
+   */
+  private void drawBaseLayers(Graphics2D g2d, PlayerView view) {
+    if (zone.drawBoard()) {
+      timer.start("board");
+      renderBoard(g2d, view);
+      timer.stop("board");
+    }
+    if (Zone.Layer.BACKGROUND.isEnabled()) {
+      List<DrawnElement> drawables = zone.getBackgroundDrawnElements();
+      // if (!drawables.isEmpty()) {
+      timer.start("drawableBackground");
+      renderDrawableOverlay(g2d, backgroundDrawableRenderer, view, drawables);
+      timer.stop("drawableBackground");
+      // }
+      List<Token> background = zone.getBackgroundStamps(false);
+      if (!background.isEmpty()) {
+        timer.start("tokensBackground");
+        renderTokens(g2d, background, view);
+        timer.stop("tokensBackground");
+      }
+    }
+    if (Zone.Layer.OBJECT.isEnabled()) {
+      // Drawables on the object layer are always below the grid, and...
+      List<DrawnElement> drawables = zone.getObjectDrawnElements();
+      // if (!drawables.isEmpty()) {
+      timer.start("drawableObjects");
+      renderDrawableOverlay(g2d, objectDrawableRenderer, view, drawables);
+      timer.stop("drawableObjects");
+      // }
+    }
+    timer.start("grid");
+    renderGrid(g2d, view);
+    timer.stop("grid");
+
+    if (Zone.Layer.OBJECT.isEnabled()) {
+      // ... Images on the object layer are always ABOVE the grid.
+      List<Token> stamps = zone.getStampTokens(false);
+      if (!stamps.isEmpty()) {
+        timer.start("tokensStamp");
+        renderTokens(g2d, stamps, view);
+        timer.stop("tokensStamp");
+      }
+    }
+  }
+
   private void delayRendering(ItemRenderer renderer) {
     itemRenderList.add(renderer);
   }
@@ -1770,191 +1980,132 @@ private void renderLabels(Graphics2D g, PlayerView view) {
     timer.stop("labels-1");
   }
 
-  // Private cache variables just for renderFog() and no one else. :)
-  Integer fogX = null;
-  Integer fogY = null;
-
-  private Area renderFog(Graphics2D g, PlayerView view) {
+  private void renderFog(Graphics2D g, PlayerView view) {
     Dimension size = getSize();
-    Area fogClip = new Area(new Rectangle(0, 0, size.width, size.height));
-    Area combined = null;
-
-    // Optimization for panning
-    if (!flushFog
-        && fogX != null
-        && fogY != null
-        && (fogX != getViewOffsetX() || fogY != getViewOffsetY())) {
-      // This optimization does not seem to keep the alpha channel correctly, and sometimes leaves
-      // lines on some graphics boards, we'll leave it out for now
-      // if (Math.abs(fogX - getViewOffsetX()) < size.width && Math.abs(fogY - getViewOffsetY()) <
-      // size.height) {
-      // int deltaX = getViewOffsetX() - fogX;
-      // int deltaY = getViewOffsetY() - fogY;
-      //
-      // Graphics2D buffG = fogBuffer.createGraphics();
-      //
-      // buffG.setComposite(AlphaComposite.Src);
-      // buffG.copyArea(0, 0, size.width, size.height, deltaX, deltaY);
-      // buffG.dispose();
-      //
-      // fogClip = new Area();
-      // if (deltaX < 0) {
-      // fogClip.add(new Area(new Rectangle(size.width+deltaX, 0, -deltaX, size.height)));
-      // } else if (deltaX > 0){
-      // fogClip.add(new Area(new Rectangle(0, 0, deltaX, size.height)));
-      // }
-      //
-      // if (deltaY < 0) {
-      // fogClip.add(new Area(new Rectangle(0, size.height + deltaY, size.width, -deltaY)));
-      // } else if (deltaY > 0) {
-      // fogClip.add(new Area(new Rectangle(0, 0, size.width, deltaY)));
-      // }
-      // }
-      flushFog = true;
+    if (flushFog) {
+      fogTileCache.invalidateAll();
+      flushFog = false;
     }
-    boolean cacheNotValid =
-        (fogBuffer == null
-            || fogBuffer.getWidth() != size.width
-            || fogBuffer.getHeight() != size.height);
     timer.start("renderFog");
-    if (flushFog || cacheNotValid) {
-      fogX = getViewOffsetX();
-      fogY = getViewOffsetY();
-
-      boolean newImage = false;
-      if (cacheNotValid) {
-        newImage = true;
-        timer.start("renderFog-allocateBufferedImage");
-        fogBuffer =
-            new BufferedImage(
-                size.width,
-                size.height,
-                view.isGMView() ? Transparency.TRANSLUCENT : Transparency.BITMASK);
-        timer.stop("renderFog-allocateBufferedImage");
-      }
-      Graphics2D buffG = fogBuffer.createGraphics();
-      buffG.setClip(fogClip);
-      SwingUtil.useAntiAliasing(buffG);
-
-      // XXX Is this even needed? Immediately below is another call to fillRect() with the same
-      // dimensions!
-      if (!newImage) {
-        timer.start("renderFog-clearOldImage");
-        // Composite oldComposite = buffG.getComposite();
-        buffG.setComposite(AlphaComposite.Clear);
-        // buffG.fillRect(0, 0, size.width, size.height); // Jamz: Removed as it's called again
-        // below
-        // buffG.setComposite(oldComposite);
-        timer.stop("renderFog-clearOldImage");
-      }
-      timer.start("renderFog-fill");
-      // Fill
-      double scale = getScale();
-      buffG.setPaint(zone.getFogPaint().getPaint(fogX, fogY, scale));
-      buffG.setComposite(
-          AlphaComposite.getInstance(AlphaComposite.SRC, view.isGMView() ? .6f : 1f)); // JFJ this
-      // fixes the
-      // GM
-      // exposed
-      // area
-      // view.
-      buffG.fillRect(0, 0, size.width, size.height);
-      timer.stop("renderFog-fill");
-
-      // Cut out the exposed area
-      AffineTransform af = new AffineTransform();
-      af.translate(fogX, fogY);
-      af.scale(scale, scale);
+    // The fog areas are only needed if some tile has to be rasterized; work them out once for all
+    // of them
+    fogTileCache.render(
+        g,
+        getViewOffsetX(),
+        getViewOffsetY(),
+        size.width,
+        size.height,
+        getScale(),
+        view.isGMView() ? Transparency.TRANSLUCENT : Transparency.BITMASK,
+        view,
+        zone.getFogPaint(),
+        new FogTileCache.TilePainter() {
+          private Area exposedArea;
+          private Area visibleArea;
 
-      buffG.setTransform(af);
-      // buffG.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC, view.isGMView() ? .6f :
-      // 1f));
-      buffG.setComposite(AlphaComposite.getInstance(AlphaComposite.CLEAR));
-
-      timer.start("renderFog-visibleArea");
-      Area visibleArea = zoneView.getVisibleArea(view);
-      timer.stop("renderFog-visibleArea");
+          @Override
+          public void paint(Graphics2D tileG) {
+            if (exposedArea == null) {
+              timer.start("renderFog-visibleArea");
+              visibleArea = zoneView.getVisibleArea(view);
+              timer.stop("renderFog-visibleArea");
+              exposedArea = getFogExposedArea(view);
+            }
+            renderFogTile(tileG, view, exposedArea, visibleArea);
+          }
+        });
+    timer.stop("renderFog");
+  }
 
-      String msg = null;
-      if (timer.isEnabled()) {
-        List<Token> list = view.getTokens();
-        msg = "renderFog-combined(" + (list == null ? 0 : list.size()) + ")";
+  /**
+   * Returns the exposed area the fog is cut away from for the given view. With individual fog of
+   * war this combines the exposed areas of the relevant tokens.
+   *
+   * @param view the player view
+   * @return the exposed area, in map coordinates; may be the zone's own, so it must not be changed
+   */
+  Area getFogExposedArea(PlayerView view) {
+    String msg = null;
+    if (timer.isEnabled()) {
+      List<Token> list = view.getTokens();
+      msg = "renderFog-combined(" + (list == null ? 0 : list.size()) + ")";
+    }
+    timer.start(msg);
+    Area combined = zone.getExposedArea(view);
+    timer.stop(msg);
+
+    boolean combinedView =
+        !zoneView.isUsingVision()
+            || MapTool.isPersonalServer()
+            || !MapTool.getServerPolicy().isUseIndividualFOW()
+            || view.isGMView();
+
+    if (view.getTokens() != null) {
+      if (combinedView) {
+        return combined;
       }
-      timer.start(msg);
-      combined = zone.getExposedArea(view);
-      timer.stop(msg);
-
-      timer.start("renderFogArea");
-      Area exposedArea = null;
+      // if there are tokens selected combine the areas, then, if individual FOW is enabled
+      // we pass the combined exposed area to build the soft FOW and visible area.
       Area tempArea = new Area();
-      boolean combinedView =
-          !zoneView.isUsingVision()
-              || MapTool.isPersonalServer()
-              || !MapTool.getServerPolicy().isUseIndividualFOW()
-              || view.isGMView();
-
-      if (view.getTokens() != null) {
-        // if there are tokens selected combine the areas, then, if individual FOW is enabled
-        // we pass the combined exposed area to build the soft FOW and visible area.
-        for (Token tok : view.getTokens()) {
-          ExposedAreaMetaData meta = zone.getExposedAreaMetaData(tok.getExposedAreaGUID());
-          exposedArea = meta.getExposedAreaHistory();
-          tempArea.add(new Area(exposedArea));
-        }
-        if (combinedView) {
-          // combined = zone.getExposedArea(view);
-          buffG.fill(combined);
-          renderFogArea(buffG, view, combined, visibleArea);
-          renderFogOutline(buffG, view, combined);
-        } else {
-          // 'combined' already includes the area encompassed by 'tempArea', so just
-          // use 'combined' instead in this block of code?
-          tempArea.add(combined);
-          buffG.fill(tempArea);
-          renderFogArea(buffG, view, tempArea, visibleArea);
-          renderFogOutline(buffG, view, tempArea);
-        }
-      } else {
-        // No tokens selected, so if we are using Individual FOW, we build up all the owned tokens
-        // exposed area's to build the soft FOW.
-        if (combinedView) {
-          if (combined.isEmpty()) {
-            combined = zone.getExposedArea();
-          }
-          buffG.fill(combined);
-          renderFogArea(buffG, view, combined, visibleArea);
-          renderFogOutline(buffG, view, combined);
-        } else {
-          Area myCombined = new Area();
-          List<Token> myToks = zone.getTokens();
-          for (Token tok : myToks) {
-            if (!AppUtil.playerOwns(
-                tok)) { // Only here if !isGMview() so should the tokens already be in
-              // PlayerView.getTokens()?
-              continue;
-            }
-            ExposedAreaMetaData meta = zone.getExposedAreaMetaData(tok.getExposedAreaGUID());
-            exposedArea = meta.getExposedAreaHistory();
-            myCombined.add(new Area(exposedArea));
-          }
-          buffG.fill(myCombined);
-          renderFogArea(buffG, view, myCombined, visibleArea);
-          renderFogOutline(buffG, view, myCombined);
-        }
+      for (Token tok : view.getTokens()) {
+        ExposedAreaMetaData meta = zone.getExposedAreaMetaData(tok.getExposedAreaGUID());
+        tempArea.add(new Area(meta.getExposedAreaHistory()));
+      }
+      // 'combined' already includes the area encompassed by 'tempArea', so just
+      // use 'combined' instead in this block of code?
+      tempArea.add(combined);
+      return tempArea;
+    }
+    // No tokens selected, so if we are using Individual FOW, we build up all the owned tokens
+    // exposed area's to build the soft FOW.
+    if (combinedView) {
+      return combined.isEmpty() ? zone.getExposedArea() : combined;
+    }
+    Area myCombined = new Area();
+    for (Token tok : zone.getTokens()) {
+      if (!AppUtil.playerOwns(tok)) { // Only here if !isGMview() so should the tokens already be in
+        // PlayerView.getTokens()?
+        continue;
       }
-      // renderFogArea(buffG, view, combined, visibleArea);
-      timer.stop("renderFogArea");
+      ExposedAreaMetaData meta = zone.getExposedAreaMetaData(tok.getExposedAreaGUID());
+      myCombined.add(new Area(meta.getExposedAreaHistory()));
+    }
+    return myCombined;
+  }
 
-      // timer.start("renderFogOutline");
-      // renderFogOutline(buffG, view, combined);
-      // timer.stop("renderFogOutline");
+  /**
+   * Rasterizes the fog into one tile of the {@link FogTileCache}.
+   *
+   * @param buffG the graphics of the tile, set up to draw in screen coordinates
+   * @param view the player view
+   * @param softFog the exposed area
+   * @param visibleArea the area currently visible, or <code>null</code>
+   */
+  private void renderFogTile(Graphics2D buffG, PlayerView view, Area softFog, Area visibleArea) {
+    AffineTransform screenTransform = buffG.getTransform();
+    SwingUtil.useAntiAliasing(buffG);
 
-      buffG.dispose();
-      flushFog = false;
-    }
-    timer.stop("renderFog");
-    g.drawImage(fogBuffer, 0, 0, this);
-    return combined;
+    timer.start("renderFog-fill");
+    // Fill
+    double scale = getScale();
+    buffG.setPaint(zone.getFogPaint().getPaint(getViewOffsetX(), getViewOffsetY(), scale));
+    // JFJ this fixes the GM exposed area view.
+    buffG.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC, view.isGMView() ? .6f : 1f));
+    buffG.fill(buffG.getClipBounds());
+    timer.stop("renderFog-fill");
+
+    // Cut out the exposed area
+    AffineTransform af = new AffineTransform(screenTransform);
+    af.translate(getViewOffsetX(), getViewOffsetY());
+    af.scale(scale, scale);
+    buffG.setTransform(af);
+    buffG.setComposite(AlphaComposite.getInstance(AlphaComposite.CLEAR));
+
+    timer.start("renderFogArea");
+    buffG.fill(softFog);
+    renderFogArea(buffG, view, softFog, visibleArea);
+    renderFogOutline(buffG, screenTransform);
+    timer.stop("renderFogArea");
   }
 
   private void renderFogArea(
@@ -1983,7 +2134,7 @@ private void renderFogArea(
     }
   }
 
-  private void renderFogOutline(final Graphics2D buffG, PlayerView view, Area softFog) {
+  private void renderFogOutline(final Graphics2D buffG, AffineTransform screenTransform) {
     // if (false && AppPreferences.getUseSoftFogEdges()) {
     // float alpha = view.isGMView() ? AppPreferences.getFogOverlayOpacity() / 255.0f : 1f;
     // GraphicsUtil.renderSoftClipping(buffG, softFog, (int) (zone.getGrid().getSize() * getScale()
@@ -1992,7 +2143,7 @@ private void renderFogOutline(final Graphics2D buffG, PlayerView view, Area soft
     {
       if (visibleScreenArea != null) {
         // buffG.setClip(softFog);
-        buffG.setTransform(new AffineTransform());
+        buffG.setTransform(screenTransform);
         buffG.setComposite(AlphaComposite.Src);
         buffG.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         buffG.setStroke(new BasicStroke(1));
@@ -2058,7 +2209,13 @@ protected void renderDrawableOverlay(
     // List<DrawnElement> list = new ArrayList<DrawnElement>();
     // list.addAll(drawnElements);
 
-    renderer.renderDrawables(g, drawnElements, viewport, getScale());
+    renderer.renderDrawables(g, drawnElements, viewport, getScale(), !paintingOnScreen);
+  }
+
+  /** Repaints once a drawable chunk drawn in the background is ready. */
+  private void drawableChunkRendered() {
+    baseLayers.invalidate();
+    repaint();
   }
 
   protected void renderBoard(Graphics2D g, PlayerView view) {
@@ -2887,7 +3044,7 @@ public void setActiveLayer(Zone.Layer layer) {
     }
     keepSelectedTokenSet = false; // Always reset it back, temp boolean only
 
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   /**
@@ -2895,7 +3052,7 @@ public void setActiveLayer(Zone.Layer layer) {
    * for the given layer
    */
   private List<TokenLocation> getTokenLocations(Zone.Layer layer) {
-    return tokenLocationMap.computeIfAbsent(layer, k -> new LinkedList<>());
+    return tokenLocationMap.computeIfAbsent(layer, k -> new ArrayList<>());
   }
 
   // TODO: I don't like this hardwiring
@@ -2976,6 +3133,9 @@ protected void renderTokens(
 
     // This is in screen coordinates
     Rectangle viewport = new Rectangle(0, 0, getSize().width, getSize().height);
+    // The index is in map coordinates; a pixel of margin absorbs rounding to the screen
+    Rectangle2D zoneViewport = toZoneBounds(viewport, 1);
+    Map<Zone.Layer, Set<Token>> onscreenTokens = new EnumMap<>(Zone.Layer.class);
 
     Rectangle clipBounds = g.getClipBounds();
     double scale = zoneScale.getScale();
@@ -3021,13 +3181,6 @@ protected void renderTokens(
         // This ensures that the timer is always stopped
         timer.stop("tokenlist-1");
       }
-      timer.start("tokenlist-1.1");
-      TokenLocation location = tokenLocationCache.get(token);
-      if (location != null && !location.maybeOnscreen(viewport)) {
-        timer.stop("tokenlist-1.1");
-        continue;
-      }
-      timer.stop("tokenlist-1.1");
 
       timer.start("tokenlist-1a");
       Rectangle footprintBounds = token.getBounds(zone);
@@ -3075,6 +3228,7 @@ protected void renderTokens(
       timer.stop("tokenlist-1d");
 
       timer.start("tokenlist-1e");
+      TokenLocation location;
       try {
         location =
             new TokenLocation(
@@ -3106,6 +3260,7 @@ protected void renderTokens(
       timer.start("renderTokens:Markers");
       // System.out.println("Token " + token.getName() + " is a marker? " + token.isMarker());
       if (token.isMarker() && canSeeMarker(token)) {
+        location.markerOrder = markerLocationList.size();
         markerLocationList.add(location);
       }
       timer.stop("renderTokens:Markers");
@@ -3147,6 +3302,7 @@ protected void renderTokens(
       Zone.Layer layer = token.getLayer();
       List<TokenLocation> locationList = getTokenLocations(layer);
       if (locationList != null) {
+        location.drawOrder = locationList.size();
         locationList.add(location);
       }
       timer.stop("renderTokens:Locations");
@@ -3159,7 +3315,11 @@ protected void renderTokens(
       // suffers a pause only once while scaling, and not as new tokens are
       // scrolled onto the screen
       timer.start("renderTokens:OnscreenCheck");
-      if (!location.bounds.intersects(clipBounds)) {
+      // Tokens the index puts outside the viewport are still visible, they just aren't drawn
+      Set<Token> onscreen =
+          onscreenTokens.computeIfAbsent(token.getLayer(), l -> tokenIndex.query(l, zoneViewport));
+      if ((!onscreen.contains(token) && tokenIndex.contains(token))
+          || !location.bounds.intersects(clipBounds)) {
         timer.stop("renderTokens:OnscreenCheck");
         continue;
       }
@@ -3472,24 +3632,16 @@ protected void renderTokens(
       timer.stop("tokenlist-8");
 
       timer.start("tokenlist-9");
-      // Set up the graphics so that the overlay can just be painted.
-      Graphics2D locg =
-          (Graphics2D)
-              tokenG.create(
-                  (int) tokenBounds.getBounds().getX(),
-                  (int) tokenBounds.getBounds().getY(),
-                  (int) tokenBounds.getBounds().getWidth(),
-                  (int) tokenBounds.getBounds().getHeight());
-      Rectangle bounds =
-          new Rectangle(
-              0,
-              0,
-              (int) tokenBounds.getBounds().getWidth(),
-              (int) tokenBounds.getBounds().getHeight());
-
+      // Find the overlays to paint; they only need painting again when these change
+      List<AbstractTokenOverlay> overlays = new ArrayList<AbstractTokenOverlay>();
+      List<Object> overlayValues = new ArrayList<Object>();
+      List<Object> decorationKey = new ArrayList<Object>();
+      decorationKey.add(token.getTokenOpacity());
       // Check each of the set values
       for (String state : MapTool.getCampaign().getTokenStatesMap().keySet()) {
         Object stateValue = token.getState(state);
+        // Flowing overlays are placed according to the other states that are set
+        decorationKey.add(stateValue);
         AbstractTokenOverlay overlay = MapTool.getCampaign().getTokenStatesMap().get(state);
         if (stateValue instanceof AbstractTokenOverlay) {
           overlay = (AbstractTokenOverlay) stateValue;
@@ -3499,12 +3651,9 @@ protected void renderTokens(
             || !overlay.showPlayer(token, MapTool.getPlayer())) {
           continue;
         }
-        overlay.paintOverlay(locg, token, bounds, stateValue);
+        overlays.add(overlay);
+        overlayValues.add(stateValue);
       }
-      timer.stop("tokenlist-9");
-
-      timer.start("tokenlist-10");
-
       for (String bar : MapTool.getCampaign().getTokenBarsMap().keySet()) {
         Object barValue = token.getState(bar);
         BarTokenOverlay overlay = MapTool.getCampaign().getTokenBarsMap().get(bar);
@@ -3513,10 +3662,26 @@ protected void renderTokens(
             || !overlay.showPlayer(token, MapTool.getPlayer())) {
           continue;
         }
-
-        overlay.paintOverlay(locg, token, bounds, barValue);
+        overlays.add(overlay);
+        overlayValues.add(barValue);
       } // endfor
-      locg.dispose();
+      decorationKey.addAll(overlays);
+      decorationKey.addAll(overlayValues);
+      timer.stop("tokenlist-9");
+
+      timer.start("tokenlist-10");
+      if (!overlays.isEmpty()) {
+        decorationCache.paint(
+            tokenG,
+            token.getId(),
+            tokenBounds.getBounds(),
+            decorationKey,
+            (locg, bounds) -> {
+              for (int i = 0; i < overlays.size(); i++) {
+                overlays.get(i).paintOverlay(locg, token, bounds, overlayValues.get(i));
+              }
+            });
+      }
       timer.stop("tokenlist-10");
 
       timer.start("tokenlist-11");
@@ -3895,12 +4060,20 @@ public void selectTokens(Collection<GUID> tokens) {
    * @param rect the selection rectangle
    */
   public void selectTokens(Rectangle rect) {
-    List<GUID> selectedList = new LinkedList<GUID>();
-    for (TokenLocation location : getTokenLocations(getActiveLayer())) {
-      if (rect.intersects(location.bounds.getBounds())) {
-        selectedList.add(location.token.getId());
+    List<TokenLocation> locationList = getTokenLocations(getActiveLayer());
+    List<TokenLocation> selected = new ArrayList<TokenLocation>();
+    for (Token token : tokenIndex.query(getActiveLayer(), toZoneBounds(rect, 1))) {
+      TokenLocation location = getDrawnLocation(token, locationList);
+      if (location != null && rect.intersects(location.bounds.getBounds())) {
+        selected.add(location);
       }
     }
+    // Keep the drawing order, as the scan of the whole list did
+    selected.sort(Comparator.comparingInt(location -> location.drawOrder));
+    List<GUID> selectedList = new LinkedList<GUID>();
+    for (TokenLocation location : selected) {
+      selectedList.add(location.token.getId());
+    }
     selectTokens(selectedList);
   }
 
@@ -4074,26 +4247,69 @@ public Rectangle getLabelBounds(Label label) {
    * @return the token
    */
   public Token getTokenAt(int x, int y) {
-    List<TokenLocation> locationList =
-        new ArrayList<TokenLocation>(getTokenLocations(getActiveLayer()));
-    Collections.reverse(locationList);
-    for (TokenLocation location : locationList) {
-      if (location.bounds.contains(x, y)) {
-        return location.token;
+    List<TokenLocation> locationList = getTokenLocations(getActiveLayer());
+    Rectangle2D point = toZoneBounds(new Rectangle(x, y, 0, 0), 1);
+    TokenLocation top = null;
+    for (Token token : tokenIndex.query(getActiveLayer(), point)) {
+      TokenLocation location = getDrawnLocation(token, locationList);
+      if (location != null
+          && location.bounds.contains(x, y)
+          && (top == null || location.drawOrder > top.drawOrder)) {
+        top = location;
       }
     }
-    return null;
+    return top != null ? top.token : null;
   }
 
   public Token getMarkerAt(int x, int y) {
-    List<TokenLocation> locationList = new ArrayList<TokenLocation>(markerLocationList);
-    Collections.reverse(locationList);
-    for (TokenLocation location : locationList) {
-      if (location.bounds.contains(x, y)) {
-        return location.token;
+    Rectangle2D point = toZoneBounds(new Rectangle(x, y, 0, 0), 1);
+    TokenLocation top = null;
+    for (Token token : tokenIndex.query(point)) {
+      TokenLocation location = tokenLocationCache.get(token);
+      if (location != null
+          && location.markerOrder >= 0
+          && location.markerOrder < markerLocationList.size()
+          && markerLocationList.get(location.markerOrder) == location
+          && location.bounds.contains(x, y)
+          && (top == null || location.markerOrder > top.markerOrder)) {
+        top = location;
       }
     }
-    return null;
+    return top != null ? top.token : null;
+  }
+
+  /**
+   * Returns where a token was drawn in the last frame, if it was drawn at all.
+   *
+   * @param token the token
+   * @param locationList the locations drawn on the token's layer
+   * @return the location, or null if the token wasn't drawn
+   */
+  private TokenLocation getDrawnLocation(Token token, List<TokenLocation> locationList) {
+    TokenLocation location = tokenLocationCache.get(token);
+    if (location == null
+        || location.drawOrder < 0
+        || location.drawOrder >= locationList.size()
+        || locationList.get(location.drawOrder) != location) {
+      return null;
+    }
+    return location;
+  }
+
+  /**
+   * Converts a rectangle on the screen to the region of the map it shows.
+   *
+   * @param screenBounds the rectangle, in screen coordinates
+   * @param margin the number of pixels to grow the rectangle by on each side
+   * @return the region, in map coordinates
+   */
+  private Rectangle2D toZoneBounds(Rectangle screenBounds, int margin) {
+    double scale = getScale();
+    return new Rectangle2D.Double(
+        (screenBounds.x - margin - getViewOffsetX()) / scale,
+        (screenBounds.y - margin - getViewOffsetY()) / scale,
+        (screenBounds.width + 2 * margin) / scale,
+        (screenBounds.height + 2 * margin) / scale);
   }
 
   public List<Token> getTokenStackAt(int x, int y) {
@@ -4135,7 +4351,7 @@ public int getViewOffsetY() {
 
   public void adjustGridSize(int delta) {
     zone.getGrid().setSize(Math.max(0, zone.getGrid().getSize() + delta));
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   public void moveGridBy(int dx, int dy) {
@@ -4152,7 +4368,7 @@ public void moveGridBy(int dx, int dy) {
       gridOffsetX = gridOffsetX - (int) zone.getGrid().getCellWidth();
     }
     zone.getGrid().setOffset(gridOffsetX, gridOffsetY);
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   /**
@@ -4204,7 +4420,8 @@ public double getScaledGridSize() {
   /** This makes sure that any image updates get refreshed. This could be a little smarter. */
   @Override
   public boolean imageUpdate(Image img, int infoflags, int x, int y, int w, int h) {
-    repaintDebouncer.dispatch();
+    baseLayers.invalidate();
+    repaint();
     return super.imageUpdate(img, infoflags, x, y, w, h);
   }
 
@@ -4475,6 +4692,10 @@ private class TokenLocation {
     public double y;
     public int offsetX;
     public int offsetY;
+    /** Position in the location list of the token's layer, or -1 if not listed. */
+    public int drawOrder = -1;
+    /** Position in the marker location list, or -1 if not listed. */
+    public int markerOrder = -1;
 
     /**
      * Construct a TokenLocation object that caches where images are stored and what their size is
@@ -4764,7 +4985,7 @@ private BufferedImage getTokenImage(Token token) {
           MapTool.getCampaign().getLookupTableMap().get(token.getImageTableName());
       if (lookupTable != null) {
         try {
-          LookupEntry result = lookupTable.getLookup(token.getFacing().toString());
+          LookupEntry result = lookupTable.getLookup(token.getFacing());
           if (result != null) {
             image = ImageManager.getImage(result.getImageId(), this);
           }
@@ -4842,16 +5063,80 @@ public void modelChanged(ModelChangeEvent event) {
           List<Token> list = (List<Token>) (event.getArg());
           for (Token token : list) {
             flush(token);
+            updateTokenIndex(evt, token);
           }
         } else {
           flush((Token) event.getArg());
+          updateTokenIndex(evt, (Token) event.getArg());
+        }
+      }
+      if (evt == Zone.Event.GRID_CHANGED) {
+        // Token footprints depend on the grid
+        tokenIndex.invalidate();
+      }
+      if (evt == Zone.Event.GRID_CHANGED || evt == Zone.Event.BOARD_CHANGED) {
+        baseLayers.invalidate();
+      }
+      if (evt == Zone.Event.DRAWABLE_ADDED || evt == Zone.Event.DRAWABLE_REMOVED) {
+        if (!(event.getArg() instanceof DrawnElement)
+            || isBaseLayer(((DrawnElement) event.getArg()).getDrawable().getLayer())) {
+          baseLayers.invalidate();
         }
       }
       if (evt == Zone.Event.FOG_CHANGED) {
-        flushFog = true;
+        if (event.getArg() instanceof Area) {
+          // Only the fog over the area that was exposed or hidden needs to be redrawn
+          fogTileCache.invalidate(((Area) event.getArg()).getBounds2D());
+        } else {
+          flushFog = true;
+        }
+      }
+      if ((evt == Zone.Event.DRAWABLE_ADDED || evt == Zone.Event.DRAWABLE_REMOVED)
+          && event.getArg() instanceof DrawnElement) {
+        DrawnElement element = (DrawnElement) event.getArg();
+        getDrawableRenderer(element.getDrawable().getLayer()).invalidate(element);
+      }
+      if (evt == Zone.Event.TOKEN_CHANGED
+          || evt == Zone.Event.TOKEN_REMOVED
+          || evt == Zone.Event.DRAWABLE_REMOVED) {
+        releaseUnreferencedImages();
       }
       MapTool.getFrame().updateTokenTree(); // for any event
-      repaintDebouncer.dispatch();
+      repaint();
+    }
+
+    private void updateTokenIndex(Object evt, Token token) {
+      if (isBaseLayer(token.getLayer()) || isBaseLayer(tokenIndex.getLayer(token))) {
+        // The token is drawn, or was drawn until now, in the retained layers
+        baseLayers.invalidate();
+      }
+      if (evt == Zone.Event.TOKEN_REMOVED) {
+        tokenIndex.remove(token);
+        decorationCache.remove(token.getId());
+      } else {
+        tokenIndex.update(token);
+      }
+    }
+
+    /**
+     * Drops the cached images of assets that are no longer used anywhere in the campaign, so memory
+     * is given back as tokens and drawings are removed instead of only when the map is closed.
+     */
+    private void releaseUnreferencedImages() {
+      Set<MD5Key> released = zone.takeUnreferencedAssetIds();
+      if (released.isEmpty()) {
+        return;
+      }
+      // Answered by the asset index of each zone, without collecting every asset of the campaign
+      Campaign campaign = MapTool.getCampaign();
+      released.removeIf(campaign::containsAsset);
+      if (released.isEmpty()) {
+        return;
+      }
+      released.removeAll(campaign.getCampaignProperties().getAllImageAssets());
+      for (MD5Key key : released) {
+        ImageManager.flushImage(key);
+      }
     }
   }
 
@@ -4873,7 +5158,7 @@ public List<Token> getHighlightCommonMacros() {
 
   public void setHighlightCommonMacros(List<Token> affectedTokens) {
     highlightCommonMacros = affectedTokens;
-    repaintDebouncer.dispatch();
+    repaint();
   }
 
   // End token common macro identification
@@ -22,10 +22,16 @@
 import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import net.rptools.lib.MD5Key;
 import net.rptools.lib.swing.SwingUtil;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.ui.zone.ZoneRenderer;
@@ -55,6 +61,22 @@ public class TokenVBL {
   private static final Logger log = LogManager.getLogger();
   private static int sliceSize = 100;
 
+  /** The number of generated areas kept. */
+  private static final int MAX_CACHED_AREAS = 64;
+
+  /**
+   * The areas generated from token images, by image asset and generation parameters. The same
+   * image is often stamped many times on a map; the areas are in image coordinates, so they can be
+   * reused for every token with that image and transformed like any token VBL.
+   */
+  private static final Map<List<Object>, Area> vblAreaCache =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Area> eldest) {
+          return size() > MAX_CACHED_AREAS;
+        }
+      };
+
   /**
    * A passed token will have it's image asset rendered into an Area based on pixels that have an
    * Alpha transparency level greater than or equal to the alphaSensitivity parameter.
@@ -76,16 +98,82 @@ public static Area createOptimizedVblArea(
       Color ignoreColor,
       int distanceTolerance,
       String method) {
-    final Area vblArea = createVblAreaFromToken(token, alphaSensitivity, inverseVbl, ignoreColor);
     final JTS_SimplifyMethodType jtsMethod = JTS_SimplifyMethodType.fromString(method);
-
-    return simplifyArea(vblArea, distanceTolerance, jtsMethod);
+    List<Object> key =
+        Arrays.asList(
+            token.getImageAssetId(),
+            alphaSensitivity,
+            inverseVbl,
+            ignoreColor,
+            distanceTolerance,
+            jtsMethod);
+
+    return getCachedArea(
+        token.getImageAssetId(),
+        key,
+        () -> {
+          final Area vblArea =
+              createVblAreaFromToken(token, alphaSensitivity, inverseVbl, ignoreColor);
+          return simplifyArea(vblArea, distanceTolerance, jtsMethod);
+        });
   }
 
   public static Area createVblAreaFromToken(
       Token token, int alphaSensitivity, boolean inverseVbl, Color ignoredColor) {
+    MD5Key assetId = token.getImageAssetId();
+    return getCachedArea(
+        assetId,
+        Arrays.asList(assetId, alphaSensitivity, inverseVbl, ignoredColor),
+        () -> createVblAreaFromImage(assetId, alphaSensitivity, inverseVbl, ignoredColor));
+  }
+
+  /**
+   * Returns a copy of the area generated for a key, generating it first if it isn't cached. Areas
+   * of images that aren't available aren't cached, so they are generated again once the image is.
+   *
+   * @param assetId the image asset the area is generated from
+   * @param key the asset and parameters the area depends on
+   * @param generator generates the area
+   * @return a copy of the area
+   */
+  private static Area getCachedArea(MD5Key assetId, List<Object> key, Supplier<Area> generator) {
+    return getCachedArea(
+        key,
+        generator,
+        () ->
+            assetId != null
+                && ImageManager.getImageAndWait(assetId) != ImageManager.BROKEN_IMAGE);
+  }
+
+  /**
+   * Returns a copy of the area generated for a key, generating it first if it isn't cached.
+   *
+   * @param key the asset and parameters the area depends on
+   * @param generator generates the area
+   * @param cacheable whether a generated area may be cached; called after generating it
+   * @return a copy of the area
+   */
+  static Area getCachedArea(
+      List<Object> key, Supplier<Area> generator, BooleanSupplier cacheable) {
+    synchronized (vblAreaCache) {
+      Area area = vblAreaCache.get(key);
+      if (area != null) {
+        return new Area(area);
+      }
+    }
+    Area area = generator.get();
+    if (cacheable.getAsBoolean()) {
+      synchronized (vblAreaCache) {
+        vblAreaCache.put(key, area);
+      }
+    }
+    return new Area(area);
+  }
+
+  private static Area createVblAreaFromImage(
+      MD5Key assetId, int alphaSensitivity, boolean inverseVbl, Color ignoredColor) {
     Stopwatch stopwatch = Stopwatch.createStarted();
-    BufferedImage image = ImageManager.getImageAndWait(token.getImageAssetId());
+    BufferedImage image = ImageManager.getImageAndWait(assetId);
 
     List<Geometry> geometryList =
         createVblGeometry(image, alphaSensitivity, inverseVbl, ignoredColor);
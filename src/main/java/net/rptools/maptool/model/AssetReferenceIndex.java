@@ -0,0 +1,162 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.model.drawing.DrawablePaint;
+import net.rptools.maptool.model.drawing.DrawableTexturePaint;
+import net.rptools.maptool.model.drawing.DrawnElement;
+
+/**
+ * Reference counts of the assets used by a {@link Zone}.
+ *
+ * <p>The zone updates the index as tokens and drawables are added, changed and removed, so the set
+ * of assets in use is available without walking every token and drawable. Each token and drawable
+ * contributes its assets once; an asset stays in the index until nothing references it anymore.
+ *
+ * <p>Tokens can have their images replaced without going through {@link Zone#putToken(Token)}, so
+ * the index also remembers the {@link Token#getAssetVersion()} each token was indexed at. When
+ * {@link Token#getLatestAssetVersion()} shows that some token changed, the zone reindexes the
+ * tokens whose version has moved on before answering a query.
+ */
+class AssetReferenceIndex {
+
+  private final Map<MD5Key, Integer> referenceCounts = new HashMap<>();
+  private final Map<GUID, Set<MD5Key>> tokenAssets = new HashMap<>();
+  private final Map<GUID, Long> tokenVersions = new HashMap<>();
+  private final Map<GUID, Set<MD5Key>> drawableAssets = new HashMap<>();
+  private Set<MD5Key> zoneAssets = Collections.emptySet();
+
+  /** Assets whose reference count dropped to zero since {@link #takeReleased()} was called. */
+  private final Set<MD5Key> released = new HashSet<>();
+
+  /**
+   * Adds or updates the assets referenced by a token.
+   *
+   * @param token the token
+   */
+  synchronized void putToken(Token token) {
+    Set<MD5Key> assets = token.getAllImageAssets();
+    tokenVersions.put(token.getId(), token.getAssetVersion());
+    replace(tokenAssets.put(token.getId(), assets), assets);
+  }
+
+  /**
+   * Removes the assets referenced by a token.
+   *
+   * @param token the token
+   */
+  synchronized void removeToken(Token token) {
+    tokenVersions.remove(token.getId());
+    replace(tokenAssets.remove(token.getId()), Collections.emptySet());
+  }
+
+  /**
+   * @param token the token
+   * @return <code>true</code> if the token's assets haven't changed since it was indexed
+   */
+  synchronized boolean isCurrent(Token token) {
+    Long version = tokenVersions.get(token.getId());
+    return version != null && version == token.getAssetVersion();
+  }
+
+  /**
+   * Adds or updates the assets referenced by the pen of a drawn element.
+   *
+   * @param element the drawn element
+   */
+  synchronized void putDrawable(DrawnElement element) {
+    Set<MD5Key> assets = new HashSet<>(2);
+    addPaint(assets, element.getPen().getPaint());
+    addPaint(assets, element.getPen().getBackgroundPaint());
+    replace(drawableAssets.put(element.getDrawable().getId(), assets), assets);
+  }
+
+  /**
+   * Removes the assets referenced by a drawn element.
+   *
+   * @param element the drawn element
+   */
+  synchronized void removeDrawable(DrawnElement element) {
+    replace(drawableAssets.remove(element.getDrawable().getId()), Collections.emptySet());
+  }
+
+  /**
+   * Replaces the assets referenced by the zone itself: board, background and fog.
+   *
+   * @param assets the assets; <code>null</code> values are ignored
+   */
+  synchronized void setZoneAssets(Collection<MD5Key> assets) {
+    Set<MD5Key> newAssets = new HashSet<>(assets);
+    newAssets.remove(null);
+    replace(zoneAssets, newAssets);
+    zoneAssets = newAssets;
+  }
+
+  /** @return a new set holding every asset that is referenced at least once */
+  synchronized Set<MD5Key> getAssetIds() {
+    return new HashSet<>(referenceCounts.keySet());
+  }
+
+  /**
+   * @param key the asset
+   * @return <code>true</code> if the asset is referenced at least once
+   */
+  synchronized boolean contains(MD5Key key) {
+    return referenceCounts.containsKey(key);
+  }
+
+  /**
+   * Returns the assets that stopped being referenced since the last call, so that any cached data
+   * for them can be released.
+   *
+   * @return the assets that are no longer referenced
+   */
+  synchronized Set<MD5Key> takeReleased() {
+    Set<MD5Key> result = new HashSet<>(released);
+    released.clear();
+    return result;
+  }
+
+  private static void addPaint(Set<MD5Key> assets, DrawablePaint paint) {
+    if (paint instanceof DrawableTexturePaint) {
+      MD5Key key = ((DrawableTexturePaint) paint).getAssetId();
+      if (key != null) {
+        assets.add(key);
+      }
+    }
+  }
+
+  private void replace(Set<MD5Key> oldAssets, Set<MD5Key> newAssets) {
+    for (MD5Key key : newAssets) {
+      referenceCounts.merge(key, 1, Integer::sum);
+      released.remove(key);
+    }
+    if (oldAssets != null) {
+      for (MD5Key key : oldAssets) {
+        if (referenceCounts.merge(key, -1, Integer::sum) <= 0) {
+          referenceCounts.remove(key);
+          released.add(key);
+        }
+      }
+    }
+  }
+}
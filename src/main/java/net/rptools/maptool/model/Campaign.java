@@ -415,8 +415,7 @@ public boolean containsAsset(MD5Key key) {
     }
 
     for (Zone zone : zonesToCheck) {
-      Set<MD5Key> assetSet = zone.getAllAssetIds();
-      if (assetSet.contains(key)) {
+      if (zone.isAssetReferenced(key)) {
         return true;
       }
     }
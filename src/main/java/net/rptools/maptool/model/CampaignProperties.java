@@ -44,11 +44,15 @@
 import net.rptools.maptool.client.ui.token.TwoToneBarTokenOverlay;
 import net.rptools.maptool.client.ui.token.XTokenOverlay;
 import net.rptools.maptool.client.ui.token.YieldTokenOverlay;
+import net.rptools.maptool.util.StringUtil;
 
 public class CampaignProperties {
   public static final String DEFAULT_TOKEN_PROPERTY_TYPE = "Basic";
 
   private Map<String, List<TokenProperty>> tokenTypeMap;
+
+  /** The token properties of each type by name; built on first use. */
+  private transient Map<String, TokenPropertyNames> tokenPropertyNames;
   private List<String> remoteRepositoryList;
   private Map<String, Map<GUID, LightSource>> lightSourcesMap;
   private Map<String, LookupTable> lookupTableMap;
@@ -190,6 +194,53 @@ public List<TokenProperty> getTokenPropertyList(String tokenType) {
     return getTokenTypeMap().get(tokenType);
   }
 
+  /** The properties of a token type by case-folded name, and the list they were read from. */
+  private static class TokenPropertyNames {
+    private final List<TokenProperty> list;
+    private final int size;
+    private final Map<String, TokenProperty> byName = new HashMap<String, TokenProperty>();
+
+    private TokenPropertyNames(List<TokenProperty> list) {
+      this.list = list;
+      this.size = list.size();
+      for (TokenProperty property : list) {
+        byName.putIfAbsent(StringUtil.foldCase(property.getName()), property);
+      }
+    }
+  }
+
+  /**
+   * Finds a property of a token type by name. The name is matched case-insensitively and the first
+   * matching property of the list is returned.
+   *
+   * <p>The properties are looked up in a map built from the list of the type. The map is built
+   * again when the list was replaced or its size changed, or when the property found was renamed.
+   *
+   * @param tokenType the token type
+   * @param name the name of the property
+   * @return the property, or null if the type doesn't exist or has no such property
+   */
+  public synchronized TokenProperty getTokenProperty(String tokenType, String name) {
+    List<TokenProperty> list = getTokenPropertyList(tokenType);
+    if (list == null || name == null) {
+      return null;
+    }
+    if (tokenPropertyNames == null) {
+      tokenPropertyNames = new HashMap<String, TokenPropertyNames>();
+    }
+    String key = StringUtil.foldCase(name);
+    TokenPropertyNames names = tokenPropertyNames.get(tokenType);
+    if (names != null && names.list == list && names.size == list.size()) {
+      TokenProperty property = names.byName.get(key);
+      if (property == null || name.equalsIgnoreCase(property.getName())) {
+        return property;
+      }
+    }
+    names = new TokenPropertyNames(list);
+    tokenPropertyNames.put(tokenType, names);
+    return names.byName.get(key);
+  }
+
   public List<String> getRemoteRepositoryList() {
     if (remoteRepositoryList == null) {
       initRemoteRepositoryList();
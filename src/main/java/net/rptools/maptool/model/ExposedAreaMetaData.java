@@ -20,6 +20,8 @@
 public class ExposedAreaMetaData {
   /** Area exposed so far. */
   private Area exposedAreaHistory;
+  /** Raster copy of {@link #exposedAreaHistory} for quick visibility tests; built when needed. */
+  private transient ExposureMask exposureMask;
 
   public ExposedAreaMetaData() {
     exposedAreaHistory = new Area();
@@ -39,16 +41,38 @@ public Area getExposedAreaHistory() {
   public void addToExposedAreaHistory(Area newArea) {
     if (newArea != null && !newArea.isEmpty()) {
       exposedAreaHistory.add(newArea);
+      if (exposureMask != null) {
+        exposureMask.add(newArea);
+      }
     }
   }
 
   public void removeExposedAreaHistory(Area newArea) {
     if (newArea != null && !newArea.isEmpty()) {
       exposedAreaHistory.subtract(newArea);
+      if (exposureMask != null) {
+        exposureMask.subtract(newArea);
+      }
     }
   }
 
   public void clearExposedAreaHistory() {
     exposedAreaHistory = new Area();
+    exposureMask = null;
+  }
+
+  /**
+   * Returns a raster copy of the exposed area, which answers most visibility tests without
+   * touching the area itself. It is kept up to date by the methods of this class.
+   *
+   * @return the exposure mask
+   */
+  public ExposureMask getExposureMask() {
+    ExposureMask mask = exposureMask;
+    if (mask == null) {
+      mask = ExposureMask.fromArea(exposedAreaHistory, ExposureMask.DEFAULT_RESOLUTION);
+      exposureMask = mask;
+    }
+    return mask;
   }
 }
@@ -0,0 +1,408 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A raster copy of an exposed fog-of-war area.
+ *
+ * <p>Exposed areas are kept as {@link Area}s, which gain segments every time something is exposed
+ * and get slower to test against over the course of a session. This mask divides the map into
+ * square cells of a fixed size in map units and records, for every cell, whether it is touched by
+ * the exposed area at all and whether it is entirely inside it. Cells are stored as bits in 64x64
+ * chunks that are only allocated where something is exposed, so looking up a cell is a hash lookup
+ * and a bit test no matter how complex the area is, and combining masks is a bitwise OR.
+ *
+ * <p>Because a cell can be partly exposed, tests return {@link Answer#MAYBE} for points and
+ * rectangles on the edge of the exposed area; callers then fall back to the exact area. Adding
+ * and subtracting areas keeps the mask conservative: cells are only marked as entirely exposed
+ * when they certainly are, and only marked as untouched when they certainly are.
+ */
+public class ExposureMask {
+  /** The default size of a cell, in map units. */
+  public static final int DEFAULT_RESOLUTION = 8;
+
+  /** The result of a test against the mask. */
+  public enum Answer {
+    YES,
+    NO,
+    /** The mask is not precise enough to tell; the exact area has to be checked. */
+    MAYBE
+  }
+
+  private static final int CHUNK_SHIFT = 6;
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+  /** The most chunks rasterized side by side in one pass, to bound the size of the images. */
+  private static final int MAX_BAND_CHUNKS = 64;
+
+  /** The cells of a 64x64 block, one <code>long</code> per row with bit <i>x</i> for column x. */
+  private static class Chunk {
+    /** Cells touched by the exposed area. */
+    private final long[] partial = new long[CHUNK_SIZE];
+    /** Cells entirely inside the exposed area; always a subset of {@link #partial}. */
+    private final long[] full = new long[CHUNK_SIZE];
+
+    private boolean isEmpty() {
+      for (long row : partial) {
+        if (row != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** Receives the rasterized rows of one chunk. */
+  @FunctionalInterface
+  private interface RowVisitor {
+    void visit(long key, int row, long partial, long full);
+  }
+
+  private final int resolution;
+  private final Map<Long, Chunk> chunks = new HashMap<>();
+
+  /** @param resolution the size of a cell in map units */
+  public ExposureMask(int resolution) {
+    if (resolution <= 0) {
+      throw new IllegalArgumentException("resolution must be positive: " + resolution);
+    }
+    this.resolution = resolution;
+  }
+
+  /**
+   * Converts an exposed area into a mask.
+   *
+   * @param area the exposed area
+   * @param resolution the size of a cell in map units
+   * @return the new mask
+   */
+  public static ExposureMask fromArea(Area area, int resolution) {
+    ExposureMask mask = new ExposureMask(resolution);
+    mask.add(area);
+    return mask;
+  }
+
+  /** @return the size of a cell in map units */
+  public int getResolution() {
+    return resolution;
+  }
+
+  /** @return <code>true</code> if nothing is exposed */
+  public synchronized boolean isEmpty() {
+    return chunks.isEmpty();
+  }
+
+  /** Removes all exposure. */
+  public synchronized void clear() {
+    chunks.clear();
+  }
+
+  /**
+   * Marks an area as exposed.
+   *
+   * @param area the area, in map coordinates
+   */
+  public synchronized void add(Area area) {
+    if (area == null || area.isEmpty()) {
+      return;
+    }
+    rasterize(
+        area,
+        (key, row, partial, full) -> {
+          if (partial != 0) {
+            Chunk chunk = chunks.computeIfAbsent(key, k -> new Chunk());
+            chunk.partial[row] |= partial;
+            chunk.full[row] |= full;
+          }
+        });
+  }
+
+  /**
+   * Marks an area as no longer exposed.
+   *
+   * @param area the area, in map coordinates
+   */
+  public synchronized void subtract(Area area) {
+    if (area == null || area.isEmpty() || chunks.isEmpty()) {
+      return;
+    }
+    rasterize(
+        area,
+        (key, row, partial, full) -> {
+          Chunk chunk = chunks.get(key);
+          if (chunk != null) {
+            // A cell touched by the removed area is no longer entirely exposed, and a cell entirely
+            // inside it is no longer exposed at all
+            chunk.full[row] &= ~partial;
+            chunk.partial[row] &= ~full;
+            chunk.full[row] &= chunk.partial[row];
+          }
+        });
+    chunks.values().removeIf(Chunk::isEmpty);
+  }
+
+  /**
+   * Adds the exposure of another mask to this one.
+   *
+   * @param other a mask with the same resolution
+   */
+  public void union(ExposureMask other) {
+    if (other.resolution != resolution) {
+      throw new IllegalArgumentException("Masks have different resolutions");
+    }
+    Map<Long, Chunk> otherChunks;
+    synchronized (other) {
+      otherChunks = new HashMap<>(other.chunks.size());
+      for (Map.Entry<Long, Chunk> entry : other.chunks.entrySet()) {
+        Chunk copy = new Chunk();
+        System.arraycopy(entry.getValue().partial, 0, copy.partial, 0, CHUNK_SIZE);
+        System.arraycopy(entry.getValue().full, 0, copy.full, 0, CHUNK_SIZE);
+        otherChunks.put(entry.getKey(), copy);
+      }
+    }
+    synchronized (this) {
+      for (Map.Entry<Long, Chunk> entry : otherChunks.entrySet()) {
+        Chunk chunk = chunks.get(entry.getKey());
+        if (chunk == null) {
+          chunks.put(entry.getKey(), entry.getValue());
+        } else {
+          for (int row = 0; row < CHUNK_SIZE; row++) {
+            chunk.partial[row] |= entry.getValue().partial[row];
+            chunk.full[row] |= entry.getValue().full[row];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests whether a point is exposed.
+   *
+   * @param x the x coordinate, in map units
+   * @param y the y coordinate, in map units
+   * @return {@link Answer#MAYBE} if the point is in a cell on the edge of the exposed area
+   */
+  public synchronized Answer contains(double x, double y) {
+    int cellX = toCell(x);
+    int cellY = toCell(y);
+    Chunk chunk = chunks.get(key(cellX >> CHUNK_SHIFT, cellY >> CHUNK_SHIFT));
+    if (chunk == null) {
+      return Answer.NO;
+    }
+    long bit = 1L << (cellX & (CHUNK_SIZE - 1));
+    int row = cellY & (CHUNK_SIZE - 1);
+    if ((chunk.full[row] & bit) != 0) {
+      return Answer.YES;
+    }
+    return (chunk.partial[row] & bit) != 0 ? Answer.MAYBE : Answer.NO;
+  }
+
+  /**
+   * Tests whether the interior of a rectangle intersects the exposed area, like {@link
+   * Area#intersects(Rectangle2D)}.
+   *
+   * @param rect the rectangle, in map coordinates
+   * @return {@link Answer#MAYBE} if the rectangle only overlaps cells on the edge of the exposed
+   *     area
+   */
+  public synchronized Answer intersects(Rectangle2D rect) {
+    if (rect.isEmpty() || chunks.isEmpty()) {
+      return Answer.NO;
+    }
+    int minX = toCell(rect.getMinX());
+    int minY = toCell(rect.getMinY());
+    int maxX = (int) Math.ceil(rect.getMaxX() / resolution) - 1;
+    int maxY = (int) Math.ceil(rect.getMaxY() / resolution) - 1;
+
+    Answer result = Answer.NO;
+    for (int chunkY = minY >> CHUNK_SHIFT; chunkY <= maxY >> CHUNK_SHIFT; chunkY++) {
+      int rowFrom = Math.max(minY - (chunkY << CHUNK_SHIFT), 0);
+      int rowTo = Math.min(maxY - (chunkY << CHUNK_SHIFT), CHUNK_SIZE - 1);
+      for (int chunkX = minX >> CHUNK_SHIFT; chunkX <= maxX >> CHUNK_SHIFT; chunkX++) {
+        Chunk chunk = chunks.get(key(chunkX, chunkY));
+        if (chunk == null) {
+          continue;
+        }
+        int colFrom = Math.max(minX - (chunkX << CHUNK_SHIFT), 0);
+        int colTo = Math.min(maxX - (chunkX << CHUNK_SHIFT), CHUNK_SIZE - 1);
+        long columns = (-1L >>> (CHUNK_SIZE - 1 - colTo)) & (-1L << colFrom);
+        for (int row = rowFrom; row <= rowTo; row++) {
+          if ((chunk.full[row] & columns) != 0) {
+            return Answer.YES;
+          }
+          if ((chunk.partial[row] & columns) != 0) {
+            result = Answer.MAYBE;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Converts the mask back into an area made of the cells that are at least partly exposed, so the
+   * result covers everything the original area did.
+   *
+   * @return the area, in map coordinates
+   */
+  public synchronized Area toArea() {
+    Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO);
+    for (Map.Entry<Long, Chunk> entry : chunks.entrySet()) {
+      int originX = (int) (entry.getKey() >> 32) << CHUNK_SHIFT;
+      int originY = (int) (long) entry.getKey() << CHUNK_SHIFT;
+      long[] rows = entry.getValue().partial;
+      int row = 0;
+      while (row < CHUNK_SIZE) {
+        // Merge rows with the same cells into a single band
+        int end = row + 1;
+        while (end < CHUNK_SIZE && rows[end] == rows[row]) {
+          end++;
+        }
+        long bits = rows[row];
+        while (bits != 0) {
+          int from = Long.numberOfTrailingZeros(bits);
+          int to = from + Long.numberOfTrailingZeros(~(bits >>> from));
+          path.append(
+              new Rectangle2D.Double(
+                  (double) (originX + from) * resolution,
+                  (double) (originY + row) * resolution,
+                  (double) (to - from) * resolution,
+                  (double) (end - row) * resolution),
+              false);
+          bits &= to >= CHUNK_SIZE ? 0 : -1L << to;
+        }
+        row = end;
+      }
+    }
+    return new Area(path);
+  }
+
+  /**
+   * Rasterizes an area and passes every affected chunk row to <code>visitor</code>. The area is
+   * drawn into binary images a band of chunks at a time: filling it marks the cells whose centre
+   * is inside, and stroking its outline two cells wide marks every cell the outline passes
+   * through, which are the only cells that can be partly covered.
+   */
+  private void rasterize(Area area, RowVisitor visitor) {
+    Rectangle2D bounds = area.getBounds2D();
+    // One extra cell on each side for the stroked outline
+    int minChunkX = (toCell(bounds.getMinX()) - 1) >> CHUNK_SHIFT;
+    int minChunkY = (toCell(bounds.getMinY()) - 1) >> CHUNK_SHIFT;
+    int maxChunkX = (toCell(bounds.getMaxX()) + 1) >> CHUNK_SHIFT;
+    int maxChunkY = (toCell(bounds.getMaxY()) + 1) >> CHUNK_SHIFT;
+    BasicStroke outline = new BasicStroke(2f * resolution);
+
+    for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+      for (int bandX = minChunkX; bandX <= maxChunkX; bandX += MAX_BAND_CHUNKS) {
+        int bandChunks = Math.min(MAX_BAND_CHUNKS, maxChunkX - bandX + 1);
+        int width = bandChunks * CHUNK_SIZE;
+
+        AffineTransform toCells =
+            AffineTransform.getScaleInstance(1.0 / resolution, 1.0 / resolution);
+        toCells.translate(
+            -(double) (bandX << CHUNK_SHIFT) * resolution,
+            -(double) (chunkY << CHUNK_SHIFT) * resolution);
+        byte[] inside = draw(area, toCells, width, null);
+        byte[] edge = draw(area, toCells, width, outline);
+
+        int stride = width / 8;
+        for (int row = 0; row < CHUNK_SIZE; row++) {
+          for (int c = 0; c < bandChunks; c++) {
+            long in = readBits(inside, row * stride + c * 8);
+            long on = readBits(edge, row * stride + c * 8);
+            long partial = in | on;
+            if (partial != 0) {
+              visitor.visit(key(bandX + c, chunkY), row, partial, in & ~on);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Draws the area into a one-bit image <code>width</code> cells wide and one chunk tall.
+   *
+   * @return the image data, one bit per cell with the leftmost cell in the highest bit of a byte
+   */
+  private static byte[] draw(Area area, AffineTransform toCells, int width, BasicStroke stroke) {
+    BufferedImage image = new BufferedImage(width, CHUNK_SIZE, BufferedImage.TYPE_BYTE_BINARY);
+    Graphics2D g = image.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+      g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+      g.setColor(Color.WHITE);
+      g.transform(toCells);
+      // Filling the stroked shape rather than drawing it avoids the pixel adjustments draw() makes,
+      // so both images use the same rule: a cell is set if its centre is inside the shape
+      g.fill(stroke == null ? area : stroke.createStrokedShape(area));
+    } finally {
+      g.dispose();
+    }
+    return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+  }
+
+  /** Reads 64 cells from the image data, returning them with the leftmost cell in bit 0. */
+  private static long readBits(byte[] data, int offset) {
+    long bits = 0;
+    for (int i = 0; i < 8; i++) {
+      bits |= (long) (Integer.reverse(data[offset + i] & 0xff) >>> 24) << (i * 8);
+    }
+    return bits;
+  }
+
+  private int toCell(double coordinate) {
+    return (int) Math.floor(coordinate / resolution);
+  }
+
+  private static long key(int chunkX, int chunkY) {
+    return ((long) chunkX << 32) | (chunkY & 0xffffffffL);
+  }
+
+  /** @return the number of 64x64 cell chunks in use, for diagnostics */
+  public synchronized int getChunkCount() {
+    return chunks.size();
+  }
+
+  @Override
+  public synchronized String toString() {
+    int cells = 0;
+    for (Chunk chunk : chunks.values()) {
+      for (long row : chunk.partial) {
+        cells += Long.bitCount(row);
+      }
+    }
+    return "ExposureMask[resolution="
+        + resolution
+        + ", chunks="
+        + chunks.size()
+        + ", cells="
+        + cells
+        + "]";
+  }
+}
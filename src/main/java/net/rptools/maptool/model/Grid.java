@@ -76,6 +76,8 @@ public abstract class Grid implements Cloneable {
   private int size;
   private Zone zone;
   private Area cellShape;
+  private transient GridTileCache tileCache;
+  private transient ShapedAreaCache shapedAreaCache;
 
   public Grid() {
     setSize(AppPreferences.getDefaultGridSize());
@@ -186,9 +188,10 @@ public boolean isHex() {
 
   @Override
   public Object clone() throws CloneNotSupportedException {
-    return super.clone();
-    // Grid newGrid = (Grid) super.clone();
-    // return newGrid;
+    Grid newGrid = (Grid) super.clone();
+    newGrid.tileCache = null;
+    newGrid.shapedAreaCache = null;
+    return newGrid;
   }
 
   /**
@@ -378,6 +381,45 @@ public Area getShapedArea(
       }
     }
 
+    if (shape == ShapeType.GRID) {
+      // Grid areas are aligned to the cells around the token, so they aren't origin centered
+      return getGridArea(token, range, scaleWithToken, visionRange);
+    }
+    if (shape == ShapeType.CONE && token.getFacing() == null) {
+      token.setFacing(0);
+    }
+
+    final ShapeType areaShape = shape;
+    final double areaRange = visionRange;
+    final int facing = shape == ShapeType.CONE ? token.getFacing() : 0;
+    final Rectangle footprint = token.getFootprint(this).getBounds(this);
+    List<Object> key = List.of(shape, visionRange, arcAngle, offsetAngle, facing, footprint);
+    return getShapedAreaCache()
+        .get(
+            key,
+            () ->
+                createShapedArea(
+                    areaShape, areaRange, arcAngle, offsetAngle, facing, new Rectangle(footprint)));
+  }
+
+  /**
+   * Builds the shape of a vision or light, centered on the origin.
+   *
+   * @param shape CIRCLE, SQUARE, CONE or HEX
+   * @param visionRange the range of the shape, in pixels
+   * @param arcAngle Only used by cone
+   * @param offsetAngle Arc distance from facing, only used by cone
+   * @param facing the facing of the token, only used by cone
+   * @param footprint the bounds of the token footprint
+   * @return Area
+   */
+  private Area createShapedArea(
+      ShapeType shape,
+      double visionRange,
+      double arcAngle,
+      int offsetAngle,
+      int facing,
+      Rectangle footprint) {
     Area visibleArea = new Area();
     switch (shape) {
       case CIRCLE:
@@ -385,9 +427,6 @@ public Area getShapedArea(
             GraphicsUtil.createLineSegmentEllipse(
                 -visionRange, -visionRange, visionRange, visionRange, CIRCLE_SEGMENTS);
         break;
-      case GRID:
-        visibleArea = getGridArea(token, range, scaleWithToken, visionRange);
-        break;
       case SQUARE:
         visibleArea =
             new Area(
@@ -395,10 +434,6 @@ public Area getShapedArea(
                     -visionRange, -visionRange, visionRange * 2, visionRange * 2));
         break;
       case CONE:
-        if (token.getFacing() == null) {
-          token.setFacing(0);
-        }
-
         Arc2D cone =
             new Arc2D.Double(
                 -visionRange,
@@ -417,9 +452,8 @@ public Area getShapedArea(
         // Rotate
         tempvisibleArea =
             tempvisibleArea.createTransformedArea(
-                AffineTransform.getRotateInstance(-Math.toRadians(token.getFacing())));
+                AffineTransform.getRotateInstance(-Math.toRadians(facing)));
 
-        Rectangle footprint = token.getFootprint(this).getBounds(this);
         footprint.x = -footprint.width / 2;
         footprint.y = -footprint.height / 2;
 
@@ -427,13 +461,10 @@ public Area getShapedArea(
         visibleArea.add(tempvisibleArea);
         break;
       case HEX:
-        footprint = token.getFootprint(this).getBounds(this);
         double x = footprint.getCenterX();
         double y = footprint.getCenterY();
 
-        double footprintWidth = token.getFootprint(this).getBounds(this).getWidth();
-        double footprintHeight = token.getFootprint(this).getBounds(this).getHeight();
-        double adjustment = Math.min(footprintWidth, footprintHeight);
+        double adjustment = Math.min(footprint.getWidth(), footprint.getHeight());
         x -= adjustment / 2;
         y -= adjustment / 2;
 
@@ -499,6 +530,7 @@ protected Area createHex(double x, double y, double radius, double rotation) {
   private void fireGridChanged() {
     if (zone != null) {
       gridShapeCache.clear();
+      getShapedAreaCache().clear();
       zone.fireModelChangeEvent(new ModelChangeEvent(this, Event.GRID_CHANGED));
     }
   }
@@ -514,6 +546,27 @@ public void draw(ZoneRenderer renderer, Graphics2D g, Rectangle bounds) {
     // Do nothing
   }
 
+  /** @return the cache of the pre-rendered tile used to draw the grid */
+  protected synchronized GridTileCache getTileCache() {
+    if (tileCache == null) {
+      tileCache = new GridTileCache();
+    }
+    return tileCache;
+  }
+
+  /** @return the cache of the vision and light shapes of the grid */
+  protected synchronized ShapedAreaCache getShapedAreaCache() {
+    if (shapedAreaCache == null) {
+      shapedAreaCache = new ShapedAreaCache();
+    }
+    return shapedAreaCache;
+  }
+
+  /** @return the hit and miss counts of the vision and light shape cache, for profiling */
+  public String getShapedAreaStatistics() {
+    return getShapedAreaCache().toString();
+  }
+
   /**
    * Returns a rectangle of pixels bounding the CellPoint, taking into account the grid offset.
    *
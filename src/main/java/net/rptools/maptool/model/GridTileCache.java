@@ -0,0 +1,169 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * A pre-rendered tile of a grid's lines, repeated to paint the grid.
+ *
+ * <p>Grids repeat with a fixed period on both axes, so instead of stroking every visible cell on
+ * every repaint the pattern is drawn once into an image covering a whole number of periods and
+ * that image is copied over the area to paint. The tile only depends on what the pattern looks
+ * like (grid type, size, scale, color and line width); the grid offset and the view position only
+ * move where the copies are placed, so panning never redraws the tile.
+ *
+ * <p>Copies can only be placed on whole pixels, so the tile is made of however many periods come
+ * closest to a whole number of pixels, and the copies are laid out a whole tile apart. The pattern
+ * then lines up across the edges of the copies even when the periods are fractional. What is left
+ * of the fraction shifts the copies slightly away from where the grid really is; if that would add
+ * up to half a pixel over the area painted, the grid is drawn directly instead.
+ */
+class GridTileCache {
+  /** Tiles are made at least this large so painting the screen takes few copies. */
+  private static final int MIN_TILE_SIZE = 256;
+
+  /** Tiles are made at most this large, which also keeps larger periods from being cached. */
+  private static final int MAX_TILE_SIZE = 1024;
+
+  /** How far from where the grid really is a copy may be placed, in pixels. */
+  private static final double MAX_DRIFT = 0.5;
+
+  /** Draws the pattern of a grid into a tile. */
+  @FunctionalInterface
+  interface TilePainter {
+    /**
+     * Draws the grid lines with a period starting at the origin, as far as the given size. The
+     * position of a period should be computed by multiplying the period, as the size of the tile
+     * is, so that the last one falls exactly on the edge.
+     *
+     * @param g the graphics of the tile
+     * @param width the width of the tile
+     * @param height the height of the tile
+     */
+    void paint(Graphics2D g, int width, int height);
+  }
+
+  private List<Object> key;
+  private BufferedImage tile;
+
+  /** How much wider and taller the periods in the tile are than the whole pixels it covers. */
+  private double excessX;
+
+  private double excessY;
+
+  /**
+   * Paints a grid by repeating a cached tile of its pattern, building the tile first if the
+   * pattern changed.
+   *
+   * @param g the graphics to paint on, in screen coordinates
+   * @param bounds the area to paint
+   * @param originX the horizontal screen position of a period start
+   * @param originY the vertical screen position of a period start
+   * @param periodX the horizontal period of the pattern, in screen pixels
+   * @param periodY the vertical period of the pattern, in screen pixels
+   * @param patternKey the values the pattern depends on
+   * @param painter draws the pattern when the tile is built
+   * @return <code>false</code> if the periods are too large to be worth caching or the copies
+   *     can't be placed close enough to the grid, in which case nothing was painted
+   */
+  synchronized boolean paint(
+      Graphics2D g,
+      Rectangle bounds,
+      double originX,
+      double originY,
+      double periodX,
+      double periodY,
+      List<Object> patternKey,
+      TilePainter painter) {
+    if (periodX < 1 || periodY < 1 || periodX > MAX_TILE_SIZE || periodY > MAX_TILE_SIZE) {
+      return false;
+    }
+    if (tile == null || !patternKey.equals(key)) {
+      createTile(periodX, periodY, painter);
+      key = patternKey;
+    }
+
+    int tileWidth = tile.getWidth();
+    int tileHeight = tile.getHeight();
+    int left = (int) Math.round(originX);
+    int top = (int) Math.round(originY);
+    int firstCol = Math.floorDiv(bounds.x - left, tileWidth);
+    int firstRow = Math.floorDiv(bounds.y - top, tileHeight);
+    int lastCol = Math.floorDiv(bounds.x + bounds.width - 1 - left, tileWidth);
+    int lastRow = Math.floorDiv(bounds.y + bounds.height - 1 - top, tileHeight);
+    // The further a copy is from the origin, the more the excess of the tile has added up
+    if (Math.max(Math.abs(firstCol), Math.abs(lastCol + 1)) * excessX > MAX_DRIFT
+        || Math.max(Math.abs(firstRow), Math.abs(lastRow + 1)) * excessY > MAX_DRIFT) {
+      return false;
+    }
+
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int col = firstCol; col <= lastCol; col++) {
+        g.drawImage(tile, left + col * tileWidth, top + row * tileHeight, null);
+      }
+    }
+    return true;
+  }
+
+  private void createTile(double periodX, double periodY, TilePainter painter) {
+    int countX = getPeriodCount(periodX);
+    int countY = getPeriodCount(periodY);
+    // The same expressions the painters use for the position of a period, so they agree on where
+    // the last one ends up
+    int width = (int) (countX * periodX);
+    int height = (int) (countY * periodY);
+    excessX = countX * periodX - width;
+    excessY = countY * periodY - height;
+    if (tile == null || tile.getWidth() != width || tile.getHeight() != height) {
+      tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+    Graphics2D g = tile.createGraphics();
+    try {
+      g.setComposite(AlphaComposite.Clear);
+      g.fillRect(0, 0, width, height);
+      g.setComposite(AlphaComposite.SrcOver);
+      painter.paint(g, width, height);
+    } finally {
+      g.dispose();
+    }
+  }
+
+  /**
+   * Finds the number of periods for a tile whose size is the closest to a whole number of pixels,
+   * rounding down.
+   *
+   * @param period the period, in pixels
+   * @return the number of periods
+   */
+  static int getPeriodCount(double period) {
+    int first = (int) Math.ceil(MIN_TILE_SIZE / period);
+    int best = first;
+    double bestExcess = 1;
+    for (int count = first; count == first || count * period <= MAX_TILE_SIZE; count++) {
+      double size = count * period;
+      double excess = size - (int) size;
+      if (excess < bestExcess) {
+        best = count;
+        bestExcess = excess;
+      }
+    }
+    return best;
+  }
+}
@@ -66,6 +66,9 @@ public class HeroLabData {
 
   private final Map<String, MD5Key> heroImageAssets = new HashMap<>();
 
+  /** Renewed whenever the set returned by {@link #getAllAssetIDs()} may have changed. */
+  private transient long assetVersion;
+
   private static interface DefaultAssetKey {
     final String PORTRAIT_KEY = "0";
     final String TOKEN_KEY = "1";
@@ -230,6 +233,7 @@ public void setStatBlocks(Map<String, Map<String, String>> statBlocks) {
         Asset statBlockAsset = new Asset(assetName, byteOut.toByteArray());
         AssetManager.putAsset(statBlockAsset);
         heroLabStatblockAssetID = statBlockAsset.getId();
+        assetVersion = Token.nextAssetVersion();
 
         out.close();
         byteOut.close();
@@ -415,24 +419,24 @@ public void setGameSystem(String gameSystem) {
 
   public MD5Key getTokenImage() {
     if (!heroImageAssets.containsKey(DefaultAssetKey.TOKEN_KEY))
-      heroImageAssets.put(DefaultAssetKey.TOKEN_KEY, DEFAULT_HERO_LAB_TOKEN_ASSET.getId());
+      putImageAsset(DefaultAssetKey.TOKEN_KEY, DEFAULT_HERO_LAB_TOKEN_ASSET.getId());
 
     return heroImageAssets.get(DefaultAssetKey.TOKEN_KEY);
   }
 
   public void setTokenImage(MD5Key imageAsset) {
-    heroImageAssets.put(DefaultAssetKey.TOKEN_KEY, imageAsset);
+    putImageAsset(DefaultAssetKey.TOKEN_KEY, imageAsset);
   }
 
   public MD5Key getPortraitImage() {
     if (!heroImageAssets.containsKey(DefaultAssetKey.PORTRAIT_KEY))
-      heroImageAssets.put(DefaultAssetKey.PORTRAIT_KEY, DEFAULT_HERO_LAB_PORTRAIT_ASSET.getId());
+      putImageAsset(DefaultAssetKey.PORTRAIT_KEY, DEFAULT_HERO_LAB_PORTRAIT_ASSET.getId());
 
     return heroImageAssets.get(DefaultAssetKey.PORTRAIT_KEY);
   }
 
   public void setPortraitImage(MD5Key imageAsset) {
-    heroImageAssets.put(DefaultAssetKey.PORTRAIT_KEY, imageAsset);
+    putImageAsset(DefaultAssetKey.PORTRAIT_KEY, imageAsset);
   }
 
   public MD5Key getHandoutImage() {
@@ -440,7 +444,7 @@ public MD5Key getHandoutImage() {
   }
 
   public void setHandoutImage(MD5Key imageAsset) {
-    heroImageAssets.put(DefaultAssetKey.HANDOUT_KEY, imageAsset);
+    putImageAsset(DefaultAssetKey.HANDOUT_KEY, imageAsset);
   }
 
   public int getImageCount() {
@@ -483,16 +487,33 @@ public void addImage(String imageName, BufferedImage image) {
 
     Asset imageAsset = new Asset(imageName, baos.toByteArray());
     AssetManager.putAsset(imageAsset);
-    this.heroImageAssets.put(Integer.toString(heroImageAssets.size()), imageAsset.getId());
+    putImageAsset(Integer.toString(heroImageAssets.size()), imageAsset.getId());
   }
 
   public void clearImages() {
     this.heroImageAssets.clear();
+    assetVersion = Token.nextAssetVersion();
   }
 
   public void setDefaultImages() {
-    heroImageAssets.put(DefaultAssetKey.TOKEN_KEY, DEFAULT_HERO_LAB_TOKEN_ASSET.getId());
-    heroImageAssets.put(DefaultAssetKey.PORTRAIT_KEY, DEFAULT_HERO_LAB_PORTRAIT_ASSET.getId());
+    putImageAsset(DefaultAssetKey.TOKEN_KEY, DEFAULT_HERO_LAB_TOKEN_ASSET.getId());
+    putImageAsset(DefaultAssetKey.PORTRAIT_KEY, DEFAULT_HERO_LAB_PORTRAIT_ASSET.getId());
+  }
+
+  private void putImageAsset(String key, MD5Key imageAsset) {
+    heroImageAssets.put(key, imageAsset);
+    assetVersion = Token.nextAssetVersion();
+  }
+
+  /**
+   * Returns a version that is renewed whenever the images or statblocks are replaced in place, so
+   * that the zone can tell the assets of the token holding this data have changed.
+   *
+   * @return the asset version
+   * @see Token#getAssetVersion()
+   */
+  public long getAssetVersion() {
+    return assetVersion;
   }
 
   @Override
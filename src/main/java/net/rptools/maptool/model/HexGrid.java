@@ -28,6 +28,7 @@
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 import net.rptools.lib.image.ImageUtil;
 import net.rptools.lib.swing.SwingUtil;
@@ -397,6 +398,16 @@ public int getTokenSpace() {
 
   protected abstract void setGridDrawTranslation(Graphics2D g, double u, double v);
 
+  /**
+   * Converts a position or size from the U and V axes of the grid to screen X and Y. Swapping the
+   * axes is its own inverse, so this also converts from X and Y to U and V.
+   *
+   * @param u the U component
+   * @param v the V component
+   * @return the X and Y components
+   */
+  protected abstract Point2D getGridDrawPoint(double u, double v);
+
   protected abstract double getRendererSizeU(ZoneRenderer renderer);
 
   protected abstract double getRendererSizeV(ZoneRenderer renderer);
@@ -411,14 +422,54 @@ public void draw(ZoneRenderer renderer, Graphics2D g, Rectangle bounds) {
 
     int offU = getOffU(renderer);
     int offV = getOffV(renderer);
+    Color color = new Color(getZone().getGridColor());
+
+    // The hexes repeat every two rows, so they are painted from a cached tile of a few of them
+    Point2D origin = getGridDrawPoint(offU, offV);
+    Point2D period =
+        getGridDrawPoint(2 * scaledEdgeLength + 2 * scaledEdgeProjection, 2 * scaledMinorRadius);
+    List<Object> key =
+        List.of(
+            getClass(),
+            scaledMinorRadius,
+            scaledEdgeLength,
+            scaledEdgeProjection,
+            color.getRGB(),
+            AppState.getGridSize());
+    GridTileCache.TilePainter painter =
+        (tile, width, height) -> {
+          Point2D size = getGridDrawPoint(width, height);
+          drawHexes(tile, color, 0, 0, size.getX(), size.getY());
+        };
+    if (getTileCache()
+        .paint(
+            g, bounds, origin.getX(), origin.getY(), period.getX(), period.getY(), key, painter)) {
+      return;
+    }
+    drawHexes(g, color, offU, offV, getRendererSizeU(renderer), getRendererSizeV(renderer));
+  }
+
+  /**
+   * Draws the hexes of the grid over an area, at the scale of the last {@link
+   * #createShape(double)}.
+   *
+   * @param g the graphics to draw on
+   * @param color the color of the grid
+   * @param offU the U position of a hex row
+   * @param offV the V position of a hex row
+   * @param sizeU the U size of the area
+   * @param sizeV the V size of the area
+   */
+  private void drawHexes(
+      Graphics2D g, Color color, int offU, int offV, double sizeU, double sizeV) {
     int count = 0;
 
     Object oldAntiAlias = SwingUtil.useAntiAliasing(g);
-    g.setColor(new Color(getZone().getGridColor()));
+    g.setColor(color);
     g.setStroke(new BasicStroke(AppState.getGridSize()));
 
     for (double v = offV % (scaledMinorRadius * 2) - (scaledMinorRadius * 2);
-        v < getRendererSizeV(renderer);
+        v < sizeV;
         v += scaledMinorRadius) {
       double offsetU = (int) ((count & 1) == 0 ? 0 : -(scaledEdgeProjection + scaledEdgeLength));
       count++;
@@ -426,7 +477,7 @@ public void draw(ZoneRenderer renderer, Graphics2D g, Rectangle bounds) {
       double start =
           offU % (2 * scaledEdgeLength + 2 * scaledEdgeProjection)
               - (2 * scaledEdgeLength + 2 * scaledEdgeProjection);
-      double end = getRendererSizeU(renderer) + 2 * scaledEdgeLength + 2 * scaledEdgeProjection;
+      double end = sizeU + 2 * scaledEdgeLength + 2 * scaledEdgeProjection;
       double incr = 2 * scaledEdgeLength + 2 * scaledEdgeProjection;
       for (double u = start; u < end; u += incr) {
         setGridDrawTranslation(g, u + offsetU, v);
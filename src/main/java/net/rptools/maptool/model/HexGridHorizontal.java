@@ -20,6 +20,7 @@
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
 import java.awt.geom.GeneralPath;
+import java.awt.geom.Point2D;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
@@ -247,6 +248,11 @@ protected void setGridDrawTranslation(Graphics2D g, double U, double V) {
     g.translate(V, U);
   }
 
+  @Override
+  protected Point2D getGridDrawPoint(double u, double v) {
+    return new Point2D.Double(v, u);
+  }
+
   @Override
   protected double getRendererSizeV(ZoneRenderer renderer) {
     return renderer.getSize().getWidth();
@@ -20,6 +20,7 @@
 import java.awt.event.KeyEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.HashMap;
@@ -224,6 +225,11 @@ protected void setGridDrawTranslation(Graphics2D g, double U, double V) {
     g.translate(U, V);
   }
 
+  @Override
+  protected Point2D getGridDrawPoint(double u, double v) {
+    return new Point2D.Double(u, v);
+  }
+
   @Override
   protected double getRendererSizeV(ZoneRenderer renderer) {
     return renderer.getSize().getHeight();
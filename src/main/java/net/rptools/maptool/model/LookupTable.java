@@ -36,6 +36,15 @@ public class LookupTable {
   // table must be reset().
   private Boolean pickOnce = false;
 
+  /** The assets used by the table, cached until the image or entries change. */
+  private transient Set<MD5Key> assetIds;
+
+  /** Tables covering a wider range of values than this are scanned instead of resolved. */
+  private static final int MAX_RESOLVED_RANGE = 4096;
+
+  /** The entry each value resolves to, cached until the entries change. */
+  private transient ResolvedEntries resolvedEntries;
+
   public static final String NO_PICKS_LEFT = "NO_PICKS_LEFT";
 
   public LookupTable() {}
@@ -57,10 +66,14 @@ public void setRoll(String roll) {
 
   public void clearEntries() {
     getInternalEntryList().clear();
+    assetIds = null;
+    resolvedEntries = null;
   }
 
   public void addEntry(int min, int max, String result, MD5Key imageId) {
     getInternalEntryList().add(new LookupEntry(min, max, result, imageId));
+    assetIds = null;
+    resolvedEntries = null;
   }
 
   public LookupEntry getLookup() throws ParserException {
@@ -108,6 +121,29 @@ public LookupEntry getLookup(String roll) throws ParserException {
     return entry;
   }
 
+  /**
+   * Returns the entry matching an integer value, as {@link #getLookup(String)} would for the same
+   * value, but without going through the expression parser. For tables that aren't Pick Once the
+   * entry of every value in the range of the table is resolved once, so that the lookup is a simple
+   * array access until the entries change; this is what the renderer uses to pick the image of a
+   * token from its facing on every frame.
+   *
+   * @param value the value to look up
+   * @return A LookupEntry matching the value, or null if the table is empty
+   * @throws ParserException if the table is Pick Once and the lookup fails
+   */
+  public LookupEntry getLookup(int value) throws ParserException {
+    if (getPickOnce()) {
+      return getPickOnceLookup(Integer.toString(value));
+    }
+    ResolvedEntries resolved = resolvedEntries;
+    if (resolved == null) {
+      resolved = new ResolvedEntries(getInternalEntryList());
+      resolvedEntries = resolved;
+    }
+    return resolved.get(value);
+  }
+
   private LookupEntry getStandardLookup(String roll) throws ParserException {
     int tableResult = 0;
     LookupEntry retEntry = null;
@@ -287,6 +323,7 @@ public MD5Key getTableImage() {
    */
   public void setTableImage(MD5Key tableImage) {
     this.tableImage = tableImage;
+    assetIds = null;
   }
 
   /**
@@ -397,18 +434,69 @@ public String getValue() {
     }
   }
 
-  public Set<MD5Key> getAllAssetIds() {
+  /** The entries of a table resolved for each value between the lowest min and the highest max. */
+  private static class ResolvedEntries {
+    private final List<LookupEntry> entries;
+    private final int lowest;
+    private final int highest;
+    private final LookupEntry[] byValue;
+
+    private ResolvedEntries(List<LookupEntry> entryList) {
+      entries = new ArrayList<>(entryList);
+      int minmin = Integer.MAX_VALUE;
+      int maxmax = Integer.MIN_VALUE;
+      for (LookupEntry entry : entries) {
+        minmin = Math.min(minmin, entry.min);
+        maxmax = Math.max(maxmax, entry.max);
+      }
+      lowest = minmin;
+      highest = maxmax;
+      if (entries.isEmpty() || (long) highest - lowest >= MAX_RESOLVED_RANGE) {
+        byValue = null;
+        return;
+      }
+      byValue = new LookupEntry[highest - lowest + 1];
+      // Later entries win, as in getStandardLookup()
+      for (LookupEntry entry : entries) {
+        for (int value = entry.min; value <= entry.max; value++) {
+          byValue[value - lowest] = entry;
+        }
+      }
+    }
 
-    Set<MD5Key> assetSet = new HashSet<>();
-    if (getTableImage() != null) {
-      assetSet.add(getTableImage());
+    private LookupEntry get(int value) {
+      if (entries.isEmpty()) {
+        return null;
+      }
+      value = Math.max(lowest, Math.min(highest, value));
+      if (byValue != null) {
+        return byValue[value - lowest];
+      }
+      LookupEntry match = null;
+      for (LookupEntry entry : entries) {
+        if (value >= entry.min && value <= entry.max) {
+          match = entry;
+        }
+      }
+      return match;
     }
-    for (LookupEntry entry : getEntryList()) {
-      if (entry.getImageId() != null) {
-        assetSet.add(entry.getImageId());
+  }
+
+  public Set<MD5Key> getAllAssetIds() {
+    Set<MD5Key> assetSet = assetIds;
+    if (assetSet == null) {
+      assetSet = new HashSet<>();
+      if (getTableImage() != null) {
+        assetSet.add(getTableImage());
+      }
+      for (LookupEntry entry : getEntryList()) {
+        if (entry.getImageId() != null) {
+          assetSet.add(entry.getImageId());
+        }
       }
+      assetIds = assetSet;
     }
-    return assetSet;
+    return new HashSet<>(assetSet);
   }
 
   /**
@@ -582,7 +582,7 @@ public String getCommand() {
   }
 
   public void setCommand(String command) {
-    this.command = command;
+    this.command = StringUtil.share(command);
   }
 
   public String getLabel() {
@@ -1068,6 +1068,7 @@ public Object readResolve() {
     if (compareAutoExecute == null) compareAutoExecute = true;
     if (compareApplyToSelectedTokens == null) compareApplyToSelectedTokens = true;
     if (allowPlayerEdits == null) allowPlayerEdits = true;
+    command = StringUtil.share(command); // Copies of a token loaded separately share their macros
     return this;
   }
 }
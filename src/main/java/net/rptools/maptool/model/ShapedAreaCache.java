@@ -0,0 +1,76 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.awt.geom.Area;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The vision and light shapes of a grid, centered on the origin and kept by everything they
+ * depend on.
+ *
+ * <p>Every token with a light or a sight asks the grid for its shape each time the lights and
+ * vision are computed, and building an {@link Area} from an ellipse or a cone is expensive. Tokens
+ * with the same light, range and size get the same shape, so it is built once and each caller gets
+ * a copy that it is free to translate to the token position. Copying an {@link Area} shares its
+ * geometry until it is transformed, so it is cheap.
+ */
+class ShapedAreaCache {
+  /** The number of shapes kept. */
+  private static final int MAX_ENTRIES = 256;
+
+  private final Map<List<Object>, Area> areas =
+      new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Area> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * Returns a copy of the shape for a key, building it first if it isn't cached.
+   *
+   * @param key the values the shape depends on
+   * @param builder builds the shape, centered on the origin
+   * @return a copy of the shape
+   */
+  synchronized Area get(List<Object> key, Supplier<Area> builder) {
+    Area area = areas.get(key);
+    if (area == null) {
+      missCount++;
+      area = builder.get();
+      areas.put(key, area);
+    } else {
+      hitCount++;
+    }
+    return new Area(area);
+  }
+
+  /** Forgets all shapes, e.g. when the grid changed. */
+  synchronized void clear() {
+    areas.clear();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "shapedAreas: hits " + hitCount + ", misses " + missCount + ", size " + areas.size();
+  }
+}
@@ -330,10 +330,36 @@ public void draw(ZoneRenderer renderer, Graphics2D g, Rectangle bounds) {
     int offX = (int) (renderer.getViewOffsetX() % gridSize + getOffsetX() * scale);
     int offY = (int) (renderer.getViewOffsetY() % gridSize + getOffsetY() * scale);
 
+    // The lines repeat every cell, so they are painted from a cached tile of a few cells
+    Color color = g.getColor();
+    List<Object> key = List.of(getClass(), gridSize, color.getRGB(), AppState.getGridSize());
+    GridTileCache.TilePainter painter =
+        (tile, width, height) -> {
+          tile.setColor(color);
+          drawLines(tile, gridSize, 0, 0, new Rectangle(width, height));
+        };
+    if (getTileCache().paint(g, bounds, offX, offY, gridSize, gridSize, key, painter)) {
+      return;
+    }
+    drawLines(g, gridSize, offX, offY, bounds);
+  }
+
+  /**
+   * Draws the lines of the grid over an area.
+   *
+   * @param g the graphics to draw on, with the grid color set
+   * @param gridSize the size of a cell, in pixels
+   * @param offX the horizontal position of a vertical line
+   * @param offY the vertical position of a horizontal line
+   * @param bounds the area to draw
+   */
+  private void drawLines(Graphics2D g, double gridSize, int offX, int offY, Rectangle bounds) {
     int startCol = (int) ((int) (bounds.x / gridSize) * gridSize);
     int startRow = (int) ((int) (bounds.y / gridSize) * gridSize);
 
-    for (double row = startRow; row < bounds.y + bounds.height + gridSize; row += gridSize) {
+    // Positions are multiples of the size rather than sums of it, to match the tile cache
+    for (int i = 0; startRow + i * gridSize < bounds.y + bounds.height + gridSize; i++) {
+      double row = startRow + i * gridSize;
       if (AppState.getGridSize() == 1) {
         g.drawLine(bounds.x, (int) (row + offY), bounds.x + bounds.width, (int) (row + offY));
       } else {
@@ -344,7 +370,8 @@ public void draw(ZoneRenderer renderer, Graphics2D g, Rectangle bounds) {
             AppState.getGridSize());
       }
     }
-    for (double col = startCol; col < bounds.x + bounds.width + gridSize; col += gridSize) {
+    for (int i = 0; startCol + i * gridSize < bounds.x + bounds.width + gridSize; i++) {
+      double col = startCol + i * gridSize;
       if (AppState.getGridSize() == 1) {
         g.drawLine((int) (col + offX), bounds.y, (int) (col + offX), bounds.y + bounds.height);
       } else {
@@ -38,6 +38,7 @@
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import net.rptools.CaseInsensitiveHashMap;
@@ -68,6 +69,11 @@ public class Token extends BaseModel implements Cloneable {
 
   private static final Logger log = LogManager.getLogger(Token.class);
 
+  /** The number of properties evaluated, and how many of them went through the parser. */
+  private static final AtomicLong evaluatedProperties = new AtomicLong();
+
+  private static final AtomicLong parsedProperties = new AtomicLong();
+
   /** The unique GUID of the token. */
   private GUID id = new GUID();
 
@@ -237,6 +243,12 @@ public enum Update {
   private Integer visionOverlayColorValue;
   private transient Color visionOverlayColor;
 
+  /** Hands out the asset versions of all tokens and Hero Lab data, so they only ever increase. */
+  private static final AtomicLong assetVersions = new AtomicLong();
+
+  /** Renewed whenever the set returned by {@link #getAllImageAssets()} may have changed. */
+  private transient long assetVersion;
+
   // Jamz: allow token alpha channel modification
   private float tokenOpacity = 1.0f;
 
@@ -1114,6 +1126,7 @@ public MD5Key getImageAssetId() {
    */
   public void setImageAsset(String name, MD5Key assetId) {
     imageAssetMap.put(name, assetId);
+    assetVersion = nextAssetVersion();
 
     BufferedImage image = ImageManager.getImageAndWait(assetId);
     setWidth(image.getWidth(null));
@@ -1137,12 +1150,44 @@ public Set<MD5Key> getAllImageAssets() {
     return assetSet;
   }
 
+  /**
+   * Returns a counter that changes whenever the images, portrait, character sheet or Hero Lab data
+   * of the token are replaced, so callers can tell whether {@link #getAllImageAssets()} needs to be
+   * called again.
+   *
+   * @return the asset version
+   */
+  public long getAssetVersion() {
+    long version = assetVersion;
+    if (heroLabData != null) {
+      version = Math.max(version, heroLabData.getAssetVersion());
+    }
+    return version;
+  }
+
+  /**
+   * Returns the latest asset version handed out. As long as it stays the same, no token has had its
+   * assets changed.
+   *
+   * @return the latest asset version of any token
+   * @see #getAssetVersion()
+   */
+  public static long getLatestAssetVersion() {
+    return assetVersions.get();
+  }
+
+  /** @return a new asset version, higher than all versions handed out before */
+  static long nextAssetVersion() {
+    return assetVersions.incrementAndGet();
+  }
+
   public MD5Key getPortraitImage() {
     return portraitImage;
   }
 
   public void setPortraitImage(MD5Key image) {
     portraitImage = image;
+    assetVersion = nextAssetVersion();
   }
 
   public MD5Key getCharsheetImage() {
@@ -1151,6 +1196,7 @@ public MD5Key getCharsheetImage() {
 
   public void setCharsheetImage(MD5Key charsheetImage) {
     this.charsheetImage = charsheetImage;
+    assetVersion = nextAssetVersion();
   }
 
   public GUID getId() {
@@ -1686,7 +1732,7 @@ public void resetProperty(String key) {
   }
 
   public void setProperty(String key, Object value) {
-    getPropertyMap().put(key, value);
+    getPropertyMap().put(StringUtil.share(key), value);
   }
 
   public Object getProperty(String key) {
@@ -1716,23 +1762,26 @@ public Object getEvaluatedProperty(String key) {
    * @return the value
    */
   public Object getEvaluatedProperty(MapToolVariableResolver resolver, String key) {
+    evaluatedProperties.incrementAndGet();
     Object val = getProperty(key);
     if (val == null) {
       // Global default ?
-      List<TokenProperty> propertyList =
-          MapTool.getCampaign().getCampaignProperties().getTokenPropertyList(propertyType);
-      if (propertyList != null) {
-        for (TokenProperty property : propertyList) {
-          if (key.equalsIgnoreCase(property.getName())) {
-            val = property.getDefaultValue();
-            break;
-          }
-        }
+      TokenProperty property =
+          MapTool.getCampaign().getCampaignProperties().getTokenProperty(propertyType, key);
+      if (property != null) {
+        val = property.getDefaultValue();
       }
     }
     if (val == null) {
       return "";
     }
+    // Without brackets or braces there is no roll for the parser to evaluate; it would only trim
+    // the value and start a new line of rolls
+    String text = val.toString();
+    if (text.indexOf('[') < 0 && text.indexOf('{') < 0) {
+      MapTool.getParser().startNewLine();
+      return text.trim();
+    }
     // First we try convert it to a JSON array. Fixes #2057.
     if (val.toString().trim().startsWith("[")) {
       JsonElement json = JSONMacroFunctions.getInstance().asJsonElement(val.toString());
@@ -1751,6 +1800,7 @@ public Object getEvaluatedProperty(MapToolVariableResolver resolver, String key)
                 + getId()
                 + ")----------------------------------------------------------------------------------");
       }
+      parsedProperties.incrementAndGet();
       val = MapTool.getParser().parseLine(resolver, this, val.toString());
     } catch (ParserException pe) {
       // pe.printStackTrace();
@@ -1770,6 +1820,14 @@ public Object getEvaluatedProperty(MapToolVariableResolver resolver, String key)
     return val;
   }
 
+  /** @return how many properties were evaluated, and how many needed the parser, for profiling */
+  public static String getPropertyEvaluationStatistics() {
+    return "evaluated properties: "
+        + evaluatedProperties.get()
+        + ", parsed "
+        + parsedProperties.get();
+  }
+
   /** @return all property names, all in lowercase. */
   public Set<String> getPropertyNames() {
     return getPropertyMap().keySet();
@@ -2364,6 +2422,18 @@ protected Object readResolve() {
       }
       propertyMap = null;
     }
+    // Share the property names and text with the other tokens, such as copies of this one
+    if (propertyMapCI != null && !propertyMapCI.isEmpty()) {
+      CaseInsensitiveHashMap<Object> sharedMap = new CaseInsensitiveHashMap<Object>();
+      for (String key : propertyMapCI.keySetRaw()) {
+        Object value = propertyMapCI.get(key);
+        if (value instanceof String) {
+          value = StringUtil.share((String) value);
+        }
+        sharedMap.put(StringUtil.share(key), value);
+      }
+      propertyMapCI = sharedMap;
+    }
     // 1.3 b77
     if (exposedAreaGUID == null) {
       exposedAreaGUID = new GUID();
@@ -2407,6 +2477,7 @@ public HeroLabData getHeroLabData() {
 
   public void setHeroLabData(HeroLabData heroLabData) {
     this.heroLabData = heroLabData;
+    assetVersion = nextAssetVersion();
   }
 
   /**
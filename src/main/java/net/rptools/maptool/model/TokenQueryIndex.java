@@ -0,0 +1,197 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import net.rptools.maptool.model.Token.TerrainModifierOperation;
+import net.rptools.maptool.util.StringUtil;
+
+/**
+ * The ids of the tokens of a zone, filed by the attributes the zone is most often queried by: name,
+ * GM name, layer, type, and whether they have VBL, light sources, sight or a terrain modifier.
+ *
+ * <p>A token is filed under the attributes it had when it was last {@link #put(Token) put}, so the
+ * zone has to put it again when it changes. The sets returned are the index's own and must not be
+ * modified; they are candidates that callers check against the token as it is now. Checking them
+ * drops the tokens that no longer match, but a token changed to match since it was put, e.g. moved
+ * to another layer, is missed until it is put again. Code that changes a token in place must
+ * therefore call {@link Zone#tokenChanged(Token)} or {@link Zone#putToken(Token)}.
+ */
+class TokenQueryIndex {
+
+  /** The attributes a token was filed under. */
+  private static class Entry {
+    private final String name;
+    private final String gmName;
+    private final Zone.Layer layer;
+    private final Token.Type type;
+    private final boolean hasVBL;
+    private final boolean hasLightSources;
+    private final boolean hasSight;
+    private final boolean hasTerrainModifier;
+
+    private Entry(Token token) {
+      name = StringUtil.foldCase(token.getName());
+      gmName = StringUtil.foldCase(token.getGMName());
+      layer = token.getLayer();
+      type = token.getType();
+      hasVBL = token.hasVBL();
+      hasLightSources = token.hasLightSources();
+      hasSight = token.getHasSight();
+      hasTerrainModifier =
+          !TerrainModifierOperation.NONE.equals(token.getTerrainModifierOperation());
+    }
+  }
+
+  private final Map<GUID, Entry> entries = new HashMap<>();
+  private final Map<String, Set<GUID>> byName = new HashMap<>();
+  private final Map<String, Set<GUID>> byGMName = new HashMap<>();
+  private final Map<Zone.Layer, Set<GUID>> byLayer = new EnumMap<>(Zone.Layer.class);
+  private final Map<Token.Type, Set<GUID>> byType = new EnumMap<>(Token.Type.class);
+  private final Set<GUID> withVBL = new HashSet<>();
+  private final Set<GUID> withLightSources = new HashSet<>();
+  private final Set<GUID> withSight = new HashSet<>();
+  private final Set<GUID> withTerrainModifier = new HashSet<>();
+
+  /**
+   * Files a token under its current attributes, replacing where it was filed before.
+   *
+   * @param token the token
+   */
+  void put(Token token) {
+    remove(token);
+    GUID id = token.getId();
+    Entry entry = new Entry(token);
+    entries.put(id, entry);
+    add(byName, entry.name, id);
+    add(byGMName, entry.gmName, id);
+    add(byLayer, entry.layer, id);
+    add(byType, entry.type, id);
+    if (entry.hasVBL) {
+      withVBL.add(id);
+    }
+    if (entry.hasLightSources) {
+      withLightSources.add(id);
+    }
+    if (entry.hasSight) {
+      withSight.add(id);
+    }
+    if (entry.hasTerrainModifier) {
+      withTerrainModifier.add(id);
+    }
+  }
+
+  /**
+   * Removes a token.
+   *
+   * @param token the token
+   */
+  void remove(Token token) {
+    GUID id = token.getId();
+    Entry entry = entries.remove(id);
+    if (entry == null) {
+      return;
+    }
+    remove(byName, entry.name, id);
+    remove(byGMName, entry.gmName, id);
+    remove(byLayer, entry.layer, id);
+    remove(byType, entry.type, id);
+    withVBL.remove(id);
+    withLightSources.remove(id);
+    withSight.remove(id);
+    withTerrainModifier.remove(id);
+  }
+
+  /**
+   * @param name the name, matched case-insensitively
+   * @return the tokens with that name
+   */
+  Set<GUID> getByName(String name) {
+    return get(byName, StringUtil.foldCase(name));
+  }
+
+  /**
+   * @param gmName the GM name, matched case-insensitively
+   * @return the tokens with that GM name
+   */
+  Set<GUID> getByGMName(String gmName) {
+    return get(byGMName, StringUtil.foldCase(gmName));
+  }
+
+  /**
+   * @param layer the layer
+   * @return the tokens on that layer
+   */
+  Set<GUID> getByLayer(Zone.Layer layer) {
+    return get(byLayer, layer);
+  }
+
+  /**
+   * @param type the type
+   * @return the tokens of that type
+   */
+  Set<GUID> getByType(Token.Type type) {
+    return get(byType, type);
+  }
+
+  /** @return the tokens with VBL */
+  Set<GUID> getWithVBL() {
+    return Collections.unmodifiableSet(withVBL);
+  }
+
+  /** @return the tokens with light sources */
+  Set<GUID> getWithLightSources() {
+    return Collections.unmodifiableSet(withLightSources);
+  }
+
+  /** @return the tokens with sight */
+  Set<GUID> getWithSight() {
+    return Collections.unmodifiableSet(withSight);
+  }
+
+  /** @return the tokens with a terrain modifier */
+  Set<GUID> getWithTerrainModifier() {
+    return Collections.unmodifiableSet(withTerrainModifier);
+  }
+
+  private static <K> void add(Map<K, Set<GUID>> index, K key, GUID id) {
+    if (key != null) {
+      index.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+    }
+  }
+
+  private static <K> void remove(Map<K, Set<GUID>> index, K key, GUID id) {
+    if (key == null) {
+      return;
+    }
+    Set<GUID> ids = index.get(key);
+    if (ids != null) {
+      ids.remove(id);
+      if (ids.isEmpty()) {
+        index.remove(key);
+      }
+    }
+  }
+
+  private static <K> Set<GUID> get(Map<K, Set<GUID>> index, K key) {
+    Set<GUID> ids = key == null ? null : index.get(key);
+    return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tokens of a zone, kept ordered by z-order and then by id like {@link
+ * Zone#TOKEN_Z_ORDER_COMPARATOR}.
+ *
+ * <p>Each token is filed under the z-order it had when it was put, so a token can be found with a
+ * binary search even after its z-order was changed in place, and putting a token whose z-order
+ * didn't change doesn't move anything. The ordered list is the one the zone persists; reads go
+ * through an unmodifiable snapshot that is only copied again after the tokens changed.
+ */
+class ZOrderedTokens {
+  /** Above this many moved tokens, {@link #resort()} sorts the whole list instead. */
+  private static final int MAX_REPOSITIONED = 16;
+
+  private final List<Token> tokens;
+  private final Map<GUID, Integer> zOrders = new HashMap<>();
+  private final Comparator<Token> comparator =
+      Comparator.<Token>comparingInt(t -> zOrders.get(t.getId())).thenComparing(Token::getId);
+  private volatile List<Token> snapshot;
+
+  /**
+   * @param tokens the list to keep ordered, which is sorted by the current z-order of its tokens
+   */
+  ZOrderedTokens(ArrayList<Token> tokens) {
+    this.tokens = tokens;
+    for (Token token : tokens) {
+      zOrders.put(token.getId(), token.getZOrder());
+    }
+    tokens.sort(comparator);
+  }
+
+  /**
+   * Adds a token, or replaces the token with the same id and moves it to its current z-order.
+   *
+   * @param token the token
+   */
+  void put(Token token) {
+    Integer oldZOrder = zOrders.get(token.getId());
+    if (oldZOrder != null) {
+      int index = indexOf(oldZOrder, token.getId());
+      if (oldZOrder == token.getZOrder()) {
+        if (tokens.get(index) != token) {
+          tokens.set(index, token);
+          snapshot = null;
+        }
+        return;
+      }
+      tokens.remove(index);
+    }
+    zOrders.put(token.getId(), token.getZOrder());
+    tokens.add(-indexOf(token.getZOrder(), token.getId()) - 1, token);
+    snapshot = null;
+  }
+
+  /**
+   * Removes a token.
+   *
+   * @param token the token
+   */
+  void remove(Token token) {
+    Integer zOrder = zOrders.get(token.getId());
+    if (zOrder != null) {
+      tokens.remove(indexOf(zOrder, token.getId()));
+      zOrders.remove(token.getId());
+      snapshot = null;
+    }
+  }
+
+  /** Moves the tokens whose z-order was changed in place since they were put. */
+  void resort() {
+    List<Token> moved = new ArrayList<>();
+    for (Token token : tokens) {
+      if (zOrders.get(token.getId()) != token.getZOrder()) {
+        moved.add(token);
+      }
+    }
+    if (moved.isEmpty()) {
+      return;
+    }
+    if (moved.size() > MAX_REPOSITIONED) {
+      for (Token token : moved) {
+        zOrders.put(token.getId(), token.getZOrder());
+      }
+      tokens.sort(comparator);
+      snapshot = null;
+      return;
+    }
+    for (Token token : moved) {
+      put(token);
+    }
+  }
+
+  /** @return the number of tokens */
+  int size() {
+    return tokens.size();
+  }
+
+  /** @return the z-order of the bottom token, or 0 if there are no tokens */
+  int getSmallestZOrder() {
+    return tokens.isEmpty() ? 0 : tokens.get(0).getZOrder();
+  }
+
+  /** @return the z-order of the top token, or 0 if there are no tokens */
+  int getLargestZOrder() {
+    return tokens.isEmpty() ? 0 : tokens.get(tokens.size() - 1).getZOrder();
+  }
+
+  /** @return the tokens from bottom to top, as an unmodifiable list */
+  List<Token> getSnapshot() {
+    List<Token> result = snapshot;
+    if (result == null) {
+      result = List.copyOf(tokens);
+      snapshot = result;
+    }
+    return result;
+  }
+
+  /**
+   * Finds a token by the z-order it was filed under.
+   *
+   * @return the index of the token, or <code>(-(insertion point) - 1)</code> if it isn't there
+   */
+  private int indexOf(int zOrder, GUID id) {
+    int low = 0;
+    int high = tokens.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      Token token = tokens.get(mid);
+      int cmp = Integer.compare(zOrders.get(token.getId()), zOrder);
+      if (cmp == 0) {
+        cmp = token.getId().compareTo(id);
+      }
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+}
@@ -19,6 +19,8 @@
 import java.awt.Rectangle;
 import java.awt.geom.Area;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import net.rptools.lib.MD5Key;
 import net.rptools.maptool.client.AppPreferences;
 import net.rptools.maptool.client.AppUtil;
@@ -68,7 +70,7 @@ public enum Event {
     GRID_CHANGED,
     DRAWABLE_ADDED,
     DRAWABLE_REMOVED,
-    FOG_CHANGED,
+    FOG_CHANGED, // the arg is the Area exposed or hidden, when only part of the fog changed
     LABEL_ADDED,
     LABEL_REMOVED,
     LABEL_CHANGED,
@@ -172,12 +174,30 @@ public enum TopologyMode {
   private Map<GUID, ExposedAreaMetaData> exposedAreaMeta = new HashMap<GUID, ExposedAreaMetaData>();
 
   /** Token list ordered by Z. */
-  private final List<Token> tokenOrderedList = new LinkedList<Token>();
+  private List<Token> tokenOrderedList = new ArrayList<Token>();
+
+  /** Keeps {@link #tokenOrderedList} ordered; built on first use. */
+  private transient ZOrderedTokens orderedTokens;
+
+  /**
+   * The tokens by name, layer, type and so on; built on first use. A token changed in place is only
+   * filed again when {@link #tokenChanged(Token)} or {@link #putToken(Token)} is called, and until
+   * then the queries using the index can miss it.
+   */
+  private transient TokenQueryIndex tokenIndex;
+
+  /** Source of model versions, unique across all zones. */
+  private static final AtomicLong modelVersions = new AtomicLong();
+
+  /** Changes whenever the zone fires a model change event; 0 until first asked for. */
+  private transient volatile long modelVersion;
 
   private InitiativeList initiativeList = new InitiativeList(this);
 
   /** The global exposed area. */
   private Area exposedArea = new Area();
+  /** Raster copy of {@link #exposedArea} for quick visibility tests; built when needed. */
+  private transient ExposureMask exposedMask;
 
   private boolean hasFog;
   private DrawablePaint fogPaint;
@@ -218,6 +238,12 @@ public enum TopologyMode {
 
   private transient Map<String, Integer> tokenNumberCache;
 
+  /** Reference counts of the assets used in this zone; built on first use. */
+  private transient AssetReferenceIndex assetIndex;
+
+  /** The {@link Token#getLatestAssetVersion()} the asset index has caught up with. */
+  private transient long assetIndexVersion;
+
   /**
    * Note: When adding new fields to this class, make sure to update all constructors, {@link
    * #imported()}, {@link #readResolve()}, and potentially {@link #optimize()}.
@@ -231,6 +257,7 @@ public Zone() {
 
   public void setBackgroundPaint(DrawablePaint paint) {
     backgroundPaint = paint;
+    updateZoneAssets();
   }
 
   public void setBackgroundAsset(MD5Key id) {}
@@ -242,6 +269,7 @@ public MD5Key getBackgroundAsset() {
   public void setMapAsset(MD5Key id) {
     mapAsset = id;
     boardChanged = true;
+    updateZoneAssets();
   }
 
   public void setTokenVisionDistance(int units) {
@@ -279,6 +307,7 @@ public int getTokenVisionInPixels() {
 
   public void setFogPaint(DrawablePaint paint) {
     fogPaint = paint;
+    updateZoneAssets();
   }
 
   @Override
@@ -601,8 +630,12 @@ public boolean isPointVisible(ZonePoint point, PlayerView view) {
       return true;
     }
     if (MapTool.getServerPolicy().isUseIndividualFOW() && getVisionType() != VisionType.OFF) {
-      Area combined = new Area(exposedArea);
       List<Token> toks = view.getTokens(); // only owned and HasSight tokens are returned
+      ExposureMask.Answer quick = testExposure(m -> m.contains(point.x, point.y), toks, false);
+      if (quick != ExposureMask.Answer.MAYBE) {
+        return quick == ExposureMask.Answer.YES;
+      }
+      Area combined = new Area(exposedArea);
       if (toks != null && !toks.isEmpty()) {
         for (Token tok : toks) {
           ExposedAreaMetaData meta = exposedAreaMeta.get(tok.getExposedAreaGUID());
@@ -613,6 +646,10 @@ public boolean isPointVisible(ZonePoint point, PlayerView view) {
       }
       return combined.contains(point.x, point.y);
     } else {
+      ExposureMask.Answer quick = getExposedMask().contains(point.x, point.y);
+      if (quick != ExposureMask.Answer.MAYBE) {
+        return quick == ExposureMask.Answer.YES;
+      }
       return exposedArea.contains(point.x, point.y);
     }
   }
@@ -623,7 +660,7 @@ public boolean isEmpty() {
         && (gmDrawables == null || gmDrawables.isEmpty())
         && (objectDrawables == null || objectDrawables.isEmpty())
         && (backgroundDrawables == null || backgroundDrawables.isEmpty())
-        && (tokenOrderedList == null || tokenOrderedList.isEmpty())
+        && getTokenCount() == 0
         && (labels == null || labels.isEmpty());
     // @formatter:on
   }
@@ -665,6 +702,10 @@ public boolean isTokenVisible(Token token) {
 
     // Token is visible, and there is fog
     Rectangle tokenSize = token.getBounds(this);
+    ExposureMask.Answer quick = testExposure(m -> m.intersects(tokenSize), getFogTokens(), true);
+    if (quick != ExposureMask.Answer.MAYBE) {
+      return quick == ExposureMask.Answer.YES;
+    }
     Area combined = new Area(exposedArea);
     PlayerView view = MapTool.getFrame().getZoneRenderer(this).getPlayerView();
     if (MapTool.getServerPolicy().isUseIndividualFOW() && getVisionType() != VisionType.OFF) {
@@ -702,6 +743,10 @@ public boolean isTokenFootprintVisible(Token token) {
     }
     // Token is visible, and there is fog
     Rectangle tokenSize = token.getBounds(this);
+    if (testExposure(m -> m.intersects(tokenSize), getFogTokens(), true)
+        == ExposureMask.Answer.NO) {
+      return false;
+    }
     Area tokenFootprint = getGrid().getTokenCellArea(tokenSize);
     Area combined = new Area(exposedArea);
     PlayerView view = MapTool.getFrame().getZoneRenderer(this).getPlayerView();
@@ -724,6 +769,75 @@ public boolean isTokenFootprintVisible(Token token) {
     // return combined.intersects(tokenSize);
   }
 
+  /**
+   * @return the tokens of the current view whose exposed areas count towards visibility, or <code>
+   *     null</code> if only the global exposed area counts
+   */
+  private List<Token> getFogTokens() {
+    if (MapTool.getServerPolicy().isUseIndividualFOW() && getVisionType() != VisionType.OFF) {
+      return MapTool.getFrame().getZoneRenderer(this).getPlayerView().getTokens();
+    }
+    return null;
+  }
+
+  /**
+   * Runs a visibility test against the exposure masks of the global exposed area and of the given
+   * tokens, which answers most tests without combining the exposed areas.
+   *
+   * @param test the test to run on each mask
+   * @param toks the tokens whose exposed areas count; may be <code>null</code>
+   * @param ownedOnly whether to skip tokens the player does not own
+   * @return {@link ExposureMask.Answer#MAYBE} if the exact exposed areas have to be tested
+   */
+  private ExposureMask.Answer testExposure(
+      Function<ExposureMask, ExposureMask.Answer> test, List<Token> toks, boolean ownedOnly) {
+    ExposureMask.Answer result = test.apply(getExposedMask());
+    if (result == ExposureMask.Answer.YES || toks == null) {
+      return result;
+    }
+    for (Token tok : toks) {
+      if (ownedOnly && !AppUtil.playerOwns(tok)) {
+        continue;
+      }
+      ExposedAreaMetaData meta = exposedAreaMeta.get(tok.getExposedAreaGUID());
+      if (meta == null) {
+        continue;
+      }
+      ExposureMask.Answer answer = test.apply(meta.getExposureMask());
+      if (answer == ExposureMask.Answer.YES) {
+        return answer;
+      }
+      if (answer == ExposureMask.Answer.MAYBE) {
+        result = answer;
+      }
+    }
+    return result;
+  }
+
+  /** @return the exposure mask of the global exposed area */
+  private ExposureMask getExposedMask() {
+    ExposureMask mask = exposedMask;
+    if (mask == null) {
+      mask = ExposureMask.fromArea(exposedArea, ExposureMask.DEFAULT_RESOLUTION);
+      exposedMask = mask;
+    }
+    return mask;
+  }
+
+  private void addGlobalExposure(Area area) {
+    exposedArea.add(area);
+    if (exposedMask != null) {
+      exposedMask.add(area);
+    }
+  }
+
+  private void removeGlobalExposure(Area area) {
+    exposedArea.subtract(area);
+    if (exposedMask != null) {
+      exposedMask.subtract(area);
+    }
+  }
+
   public void clearTopology() {
     topology = new Area();
     fireModelChangeEvent(new ModelChangeEvent(this, Event.TOPOLOGY_CHANGED));
@@ -798,12 +912,35 @@ public Area getTopologyTerrain() {
     return topologyTerrain;
   }
 
+  @Override
+  protected void fireModelChangeEvent(ModelChangeEvent event) {
+    modelVersion = modelVersions.incrementAndGet();
+    super.fireModelChangeEvent(event);
+  }
+
+  /**
+   * Returns a version of the zone that changes whenever the zone fires a model change event, so
+   * that results computed from the zone can be cached until it changes. Versions are unique across
+   * zones and loads, so two different zones never have the same version.
+   *
+   * @return the version of the zone
+   */
+  public long getModelVersion() {
+    if (modelVersion == 0) {
+      modelVersion = modelVersions.incrementAndGet();
+    }
+    return modelVersion;
+  }
+
   /**
    * Fire the event TOKEN_CHANGED
    *
    * @param token the token that changed
    */
   public void tokenChanged(Token token) {
+    if (tokenIndex != null && tokenMap.containsKey(token.getId())) {
+      tokenIndex.put(token);
+    }
     fireModelChangeEvent(new ModelChangeEvent(this, Event.TOKEN_CHANGED, token));
   }
 
@@ -832,6 +969,7 @@ public void tokenPanelChanged(Token token) {
    */
   public void clearExposedArea(boolean globalOnly) {
     exposedArea = new Area();
+    exposedMask = null;
     if (!globalOnly) {
       exposedAreaMeta.clear();
     }
@@ -891,12 +1029,12 @@ public void exposeArea(Area area, Token tok) {
           zr.getZoneView().flush();
         }
         putToken(tok);
-        fireModelChangeEvent(new ModelChangeEvent(this, Event.FOG_CHANGED));
+        fireModelChangeEvent(new ModelChangeEvent(this, Event.FOG_CHANGED, area));
         return; // FJE Added so that TEA isn't added to the GEA, below.
       }
     }
-    exposedArea.add(area);
-    fireModelChangeEvent(new ModelChangeEvent(this, Event.FOG_CHANGED));
+    addGlobalExposure(area);
+    fireModelChangeEvent(new ModelChangeEvent(this, Event.FOG_CHANGED, area));
   }
 
   /**
@@ -914,7 +1052,7 @@ public void exposeArea(Area area, Set<GUID> selectedToks) {
       // Why is this done here and then again below???
       // And just because Vision==Off doesn't mean we aren't doing IF...
       // Jamz: if this exposedArea isn't done then it breaks getExposedTokens when vision is off...
-      exposedArea.add(area);
+      addGlobalExposure(area);
     }
     if (selectedToks != null
         && !selectedToks.isEmpty()
@@ -945,9 +1083,9 @@ public void exposeArea(Area area, Set<GUID> selectedToks) {
       }
     } else {
       // Not using IF so add the EA to the GEA instead of a TEA.
-      exposedArea.add(area);
+      addGlobalExposure(area);
     }
-    fireModelChangeEvent(new ModelChangeEvent(this, Event.FOG_CHANGED));
+    fireModelChangeEvent(new ModelChangeEvent(this, Event.FOG_CHANGED, area));
   }
 
   /**
@@ -984,6 +1122,7 @@ public void setFogArea(Area area, Set<GUID> selectedToks) {
     } else {
       exposedArea.reset();
       exposedArea.add(area);
+      exposedMask = null;
     }
     fireModelChangeEvent(new ModelChangeEvent(this, Event.FOG_CHANGED));
   }
@@ -993,7 +1132,7 @@ public void hideArea(Area area, Set<GUID> selectedToks) {
       return;
     }
     if (getVisionType() == VisionType.OFF) {
-      exposedArea.subtract(area);
+      removeGlobalExposure(area);
     }
     if (selectedToks != null
         && !selectedToks.isEmpty()
@@ -1020,9 +1159,9 @@ public void hideArea(Area area, Set<GUID> selectedToks) {
         putToken(tok);
       }
     } else {
-      exposedArea.subtract(area);
+      removeGlobalExposure(area);
     }
-    fireModelChangeEvent(new ModelChangeEvent(this, Event.FOG_CHANGED));
+    fireModelChangeEvent(new ModelChangeEvent(this, Event.FOG_CHANGED, area));
   }
 
   public long getCreationTime() {
@@ -1108,18 +1247,48 @@ public void setTopologyMode(TopologyMode topologyMode) {
   }
 
   public int getLargestZOrder() {
-    return tokenOrderedList.size() > 0
-        ? tokenOrderedList.get(tokenOrderedList.size() - 1).getZOrder()
-        : 0;
+    return getOrderedTokens().getLargestZOrder();
   }
 
   public int getSmallestZOrder() {
-    return tokenOrderedList.size() > 0 ? tokenOrderedList.get(0).getZOrder() : 0;
+    return getOrderedTokens().getSmallestZOrder();
   }
 
-  /** Sort the tokens by their ZOrder */
+  /** Sort the tokens by their ZOrder, after it was changed without putting the tokens again. */
   public void sortZOrder() {
-    tokenOrderedList.sort(TOKEN_Z_ORDER_COMPARATOR);
+    getOrderedTokens().resort();
+    modelVersion = modelVersions.incrementAndGet();
+  }
+
+  /**
+   * Returns the index of the tokens by name, layer and so on, building it the first time.
+   *
+   * @return the index
+   */
+  private TokenQueryIndex getTokenIndex() {
+    if (tokenIndex == null) {
+      tokenIndex = new TokenQueryIndex();
+      for (Token token : tokenMap.values()) {
+        tokenIndex.put(token);
+      }
+    }
+    return tokenIndex;
+  }
+
+  /**
+   * Returns the ordered tokens, building them from the persisted list the first time, e.g. after
+   * the zone was loaded.
+   *
+   * @return the ordered tokens
+   */
+  private ZOrderedTokens getOrderedTokens() {
+    if (orderedTokens == null) {
+      ArrayList<Token> list =
+          new ArrayList<>(tokenOrderedList != null ? tokenOrderedList : tokenMap.values());
+      tokenOrderedList = list;
+      orderedTokens = new ZOrderedTokens(list);
+    }
+    return orderedTokens;
   }
 
   ///////////////////////////////////////////////////////////////////////////
@@ -1165,6 +1334,9 @@ public void addDrawable(DrawnElement drawnElement) {
       default:
         drawables.add(drawnElement);
     }
+    if (assetIndex != null) {
+      assetIndex.putDrawable(drawnElement);
+    }
     fireModelChangeEvent(new ModelChangeEvent(this, Event.DRAWABLE_ADDED, drawnElement));
   }
 
@@ -1185,6 +1357,9 @@ private void updatePen(List<DrawnElement> elementList, DrawnElement drawnElement
     for (DrawnElement de : elementList) {
       if (de.getDrawable().getId().equals(drawnElement.getDrawable().getId())) {
         de.setPen(new Pen(pen));
+        if (assetIndex != null) {
+          assetIndex.putDrawable(de);
+        }
         break;
       }
     }
@@ -1206,6 +1381,9 @@ public void addDrawableRear(DrawnElement drawnElement) {
       default:
         ((LinkedList<DrawnElement>) drawables).addFirst(drawnElement);
     }
+    if (assetIndex != null) {
+      assetIndex.putDrawable(drawnElement);
+    }
     fireModelChangeEvent(new ModelChangeEvent(this, Event.DRAWABLE_ADDED, drawnElement));
   }
 
@@ -1254,6 +1432,9 @@ private void removeDrawable(List<DrawnElement> drawableList, GUID drawableId) {
       DrawnElement drawable = i.next();
       if (drawable.getDrawable().getId().equals(drawableId)) {
         i.remove();
+        if (assetIndex != null) {
+          assetIndex.removeDrawable(drawable);
+        }
         fireModelChangeEvent(new ModelChangeEvent(this, Event.DRAWABLE_REMOVED, drawable));
         return;
       }
@@ -1266,6 +1447,9 @@ private void removeDrawable(List<DrawnElement> drawableList, GUID drawableId) {
 
   public void clearDrawables(List<DrawnElement> drawableList) {
     for (DrawnElement drawable : drawableList) {
+      if (assetIndex != null) {
+        assetIndex.removeDrawable(drawable);
+      }
       fireModelChangeEvent(new ModelChangeEvent(this, Event.DRAWABLE_REMOVED, drawable));
     }
     drawableList.clear();
@@ -1307,11 +1491,14 @@ public void putToken(Token token) {
     boolean newToken = !tokenMap.containsKey(token.getId());
 
     tokenMap.put(token.getId(), token);
+    if (assetIndex != null) {
+      assetIndex.putToken(token);
+    }
 
-    // LATER: optimize this
-    tokenOrderedList.remove(token);
-    tokenOrderedList.add(token);
-    tokenOrderedList.sort(TOKEN_Z_ORDER_COMPARATOR);
+    getOrderedTokens().put(token);
+    if (tokenIndex != null) {
+      tokenIndex.put(token);
+    }
 
     if (newToken) {
       fireModelChangeEvent(new ModelChangeEvent(this, Event.TOKEN_ADDED, token));
@@ -1354,10 +1541,16 @@ public void putTokens(List<Token> tokens) {
 
     for (Token t : tokens) {
       tokenMap.put(t.getId(), t);
+      if (assetIndex != null) {
+        assetIndex.putToken(t);
+      }
+    }
+    for (Token t : tokens) {
+      getOrderedTokens().put(t);
+      if (tokenIndex != null) {
+        tokenIndex.put(t);
+      }
     }
-    tokenOrderedList.removeAll(tokens);
-    tokenOrderedList.addAll(tokens);
-    tokenOrderedList.sort(TOKEN_Z_ORDER_COMPARATOR);
 
     if (!addedTokens.isEmpty()) {
       fireModelChangeEvent(new ModelChangeEvent(this, Event.TOKEN_ADDED, addedTokens));
@@ -1375,7 +1568,13 @@ public void putTokens(List<Token> tokens) {
   public void removeToken(GUID id) {
     Token token = tokenMap.remove(id);
     if (token != null) {
-      tokenOrderedList.remove(token);
+      getOrderedTokens().remove(token);
+      if (tokenIndex != null) {
+        tokenIndex.remove(token);
+      }
+      if (assetIndex != null) {
+        assetIndex.removeToken(token);
+      }
       fireModelChangeEvent(new ModelChangeEvent(this, Event.TOKEN_REMOVED, token));
     }
   }
@@ -1391,7 +1590,13 @@ public void removeTokens(List<GUID> ids) {
       for (GUID id : ids) {
         Token token = tokenMap.remove(id);
         if (token != null) {
-          tokenOrderedList.remove(token);
+          getOrderedTokens().remove(token);
+          if (tokenIndex != null) {
+            tokenIndex.remove(token);
+          }
+          if (assetIndex != null) {
+            assetIndex.removeToken(token);
+          }
           removedTokens.add(token);
         }
       }
@@ -1410,12 +1615,17 @@ public Token getToken(GUID id) {
    * @return the first token with a given name. The name is matched case-insensitively.
    */
   public Token getTokenByName(String name) {
-    for (Token token : getAllTokens()) {
-      if (name.equalsIgnoreCase(token.getName())) {
-        return token;
-      }
-    }
-    return null;
+    return getFirstIndexedToken(
+        getTokenIndex().getByName(name), t -> name.equalsIgnoreCase(t.getName()));
+  }
+
+  /**
+   * @param name the name of the tokens.
+   * @return the tokens with a given name, in z order. The name is matched case-insensitively.
+   */
+  public List<Token> getTokensByName(String name) {
+    return getIndexedTokens(
+        getTokenIndex().getByName(name), t -> name.equalsIgnoreCase(t.getName()));
   }
 
   /**
@@ -1448,15 +1658,9 @@ public Token resolveToken(String identifier) {
    * @return the first token with a given GM name. The name is matched case-insensitively.
    */
   public Token getTokenByGMName(String name) {
-    for (Token token : getAllTokens()) {
-      if (StringUtil.isEmpty(token.getGMName())) {
-        continue;
-      }
-      if (token.getGMName().equalsIgnoreCase(name)) {
-        return token;
-      }
-    }
-    return null;
+    return getFirstIndexedToken(
+        getTokenIndex().getByGMName(name),
+        t -> !StringUtil.isEmpty(t.getGMName()) && t.getGMName().equalsIgnoreCase(name));
   }
 
   public List<DrawnElement> getAllDrawnElements() {
@@ -1492,51 +1696,100 @@ private DrawnElement findDrawnElement(List<DrawnElement> list, GUID id) {
   }
 
   public int getTokenCount() {
-    return tokenOrderedList.size();
+    return getOrderedTokens().size();
   }
 
   public List<Token> getAllTokens() {
-    return List.copyOf(tokenOrderedList);
+    return getOrderedTokens().getSnapshot();
   }
 
+  /**
+   * Returns every asset used by the zone: the board, background and fog textures, the images of
+   * all tokens and the textures of all drawings. This is answered from a reference-counted index
+   * kept up to date as tokens and drawables change, rather than by walking the whole zone.
+   *
+   * @return a new set holding the MD5 keys of the assets
+   */
   public Set<MD5Key> getAllAssetIds() {
-    Set<MD5Key> idSet = new HashSet<MD5Key>();
+    return getAssetIndex().getAssetIds();
+  }
 
-    // Zone
-    if (getBackgroundPaint() instanceof DrawableTexturePaint) {
-      idSet.add(((DrawableTexturePaint) getBackgroundPaint()).getAssetId());
-    }
-    idSet.add(getMapAssetId());
-    if (getFogPaint() instanceof DrawableTexturePaint) {
-      idSet.add(((DrawableTexturePaint) getFogPaint()).getAssetId());
-    }
+  /**
+   * @param key the MD5 key of an asset
+   * @return <code>true</code> if the asset is used anywhere in this zone
+   * @see #getAllAssetIds()
+   */
+  public boolean isAssetReferenced(MD5Key key) {
+    return getAssetIndex().contains(key);
+  }
 
-    // Tokens
-    for (Token token : getAllTokens()) {
-      idSet.addAll(token.getAllImageAssets());
-    }
+  /**
+   * Returns the assets that stopped being used by this zone since the last call, so that data
+   * cached for them can be released. Assets are only tracked once {@link #getAllAssetIds()} or
+   * {@link #isAssetReferenced(MD5Key)} has been called.
+   *
+   * @return the assets no longer used by this zone
+   */
+  public Set<MD5Key> takeUnreferencedAssetIds() {
+    return assetIndex == null ? Collections.emptySet() : getAssetIndex().takeReleased();
+  }
 
-    // Painted textures
-    for (DrawnElement drawn : getAllDrawnElements()) {
-      DrawablePaint paint = drawn.getPen().getPaint();
-      if (paint instanceof DrawableTexturePaint) {
-        idSet.add(((DrawableTexturePaint) paint).getAssetId());
+  /**
+   * Builds the asset index if needed, and catches up with tokens whose images were changed without
+   * {@link #putToken(Token)} being called. The tokens are only checked when some token anywhere
+   * had its assets changed since the last check.
+   *
+   * @return the asset index
+   */
+  private AssetReferenceIndex getAssetIndex() {
+    // Read first, so that a change made while the tokens are checked is caught next time
+    long latestVersion = Token.getLatestAssetVersion();
+    AssetReferenceIndex index = assetIndex;
+    if (index == null) {
+      index = new AssetReferenceIndex();
+      index.setZoneAssets(getZoneAssets());
+      for (DrawnElement drawn : getAllDrawnElements()) {
+        index.putDrawable(drawn);
       }
-      paint = drawn.getPen().getBackgroundPaint();
-      if (paint instanceof DrawableTexturePaint) {
-        idSet.add(((DrawableTexturePaint) paint).getAssetId());
+      for (Token token : getAllTokens()) {
+        index.putToken(token);
+      }
+      assetIndexVersion = latestVersion;
+      assetIndex = index;
+    } else if (assetIndexVersion != latestVersion) {
+      assetIndexVersion = latestVersion;
+      for (Token token : getAllTokens()) {
+        if (!index.isCurrent(token)) {
+          index.putToken(token);
+        }
       }
     }
-    // It's easier to just remove null at the end than to do a is-null check on each asset
-    idSet.remove(null);
+    return index;
+  }
+
+  /** @return the assets used by the zone itself; may contain <code>null</code> */
+  private List<MD5Key> getZoneAssets() {
+    List<MD5Key> assets = new ArrayList<MD5Key>(3);
+    if (getBackgroundPaint() instanceof DrawableTexturePaint) {
+      assets.add(((DrawableTexturePaint) getBackgroundPaint()).getAssetId());
+    }
+    assets.add(getMapAssetId());
+    if (getFogPaint() instanceof DrawableTexturePaint) {
+      assets.add(((DrawableTexturePaint) getFogPaint()).getAssetId());
+    }
+    return assets;
+  }
 
-    return idSet;
+  private void updateZoneAssets() {
+    if (assetIndex != null) {
+      assetIndex.setZoneAssets(getZoneAssets());
+    }
   }
 
   public List<Token> getTokensFiltered(Filter filter) {
     ArrayList<Token> copy = new ArrayList<Token>(getTokenCount());
 
-    for (Token token : tokenOrderedList) {
+    for (Token token : getAllTokens()) {
       if (filter.matchToken(token)) {
         copy.add(token);
       }
@@ -1544,6 +1797,48 @@ public List<Token> getTokensFiltered(Filter filter) {
     return Collections.unmodifiableList(copy);
   }
 
+  /**
+   * Returns the tokens among the ones found in the token index that still match a filter, in z
+   * order. The filter is applied again because the index only knows what the tokens were like when
+   * they were last put. This drops the tokens that no longer match, but the tokens that only match
+   * since they were last put aren't among the ids.
+   *
+   * @param ids the ids of the tokens found in the index
+   * @param filter the filter the tokens must match
+   * @return the matching tokens
+   */
+  private List<Token> getIndexedTokens(Collection<GUID> ids, Filter filter) {
+    ArrayList<Token> list = new ArrayList<Token>(ids.size());
+    for (GUID id : ids) {
+      Token token = tokenMap.get(id);
+      if (token != null && filter.matchToken(token)) {
+        list.add(token);
+      }
+    }
+    list.sort(TOKEN_Z_ORDER_COMPARATOR);
+    return Collections.unmodifiableList(list);
+  }
+
+  /**
+   * Returns the bottom token among the ones found in the token index that still match a filter.
+   *
+   * @param ids the ids of the tokens found in the index
+   * @param filter the filter the token must match
+   * @return the token, or <code>null</code> if none matches
+   */
+  private Token getFirstIndexedToken(Collection<GUID> ids, Filter filter) {
+    Token first = null;
+    for (GUID id : ids) {
+      Token token = tokenMap.get(id);
+      if (token != null
+          && filter.matchToken(token)
+          && (first == null || TOKEN_Z_ORDER_COMPARATOR.compare(token, first) < 0)) {
+        first = token;
+      }
+    }
+    return first;
+  }
+
   public List<Token> removeTokens(List<Token> tokensToKeep, List<Token> tokensToRemove) {
     ArrayList<Token> originalList = new ArrayList<Token>(tokensToKeep);
     originalList.removeAll(tokensToRemove);
@@ -1551,13 +1846,26 @@ public List<Token> removeTokens(List<Token> tokensToKeep, List<Token> tokensToRe
     return Collections.unmodifiableList(originalList);
   }
 
+  /**
+   * @param layers the layers
+   * @return the tokens on any of the layers, in z order
+   */
+  public List<Token> getTokensOnLayers(Set<Layer> layers) {
+    List<GUID> ids = new ArrayList<GUID>();
+    for (Layer layer : layers) {
+      ids.addAll(getTokenIndex().getByLayer(layer));
+    }
+    return getIndexedTokens(ids, t -> layers.contains(t.getLayer()));
+  }
+
   /** @return list of non-stamp tokens, both pc and npc */
   public List<Token> getTokens() {
     return getTokens(true);
   }
 
   public List<Token> getTokens(boolean getAlwaysVisible) {
-    return getTokensFiltered(
+    return getIndexedTokens(
+        getTokenIndex().getByLayer(Layer.TOKEN),
         t -> {
           if (getAlwaysVisible) {
             return !t.isStamp();
@@ -1572,7 +1880,8 @@ public List<Token> getGMStamps() {
   }
 
   public List<Token> getGMStamps(boolean getAlwaysVisible) {
-    return getTokensFiltered(
+    return getIndexedTokens(
+        getTokenIndex().getByLayer(Layer.GM),
         t -> {
           if (getAlwaysVisible) {
             return t.isGMStamp();
@@ -1587,7 +1896,8 @@ public List<Token> getStampTokens() {
   }
 
   public List<Token> getStampTokens(boolean getAlwaysVisible) {
-    return getTokensFiltered(
+    return getIndexedTokens(
+        getTokenIndex().getByLayer(Layer.OBJECT),
         t -> {
           if (getAlwaysVisible) {
             return t.isObjectStamp();
@@ -1602,7 +1912,8 @@ public List<Token> getBackgroundStamps() {
   }
 
   public List<Token> getBackgroundStamps(boolean getAlwaysVisible) {
-    return getTokensFiltered(
+    return getIndexedTokens(
+        getTokenIndex().getByLayer(Layer.BACKGROUND),
         t -> {
           if (getAlwaysVisible) {
             return t.isBackgroundStamp();
@@ -1613,7 +1924,8 @@ public List<Token> getBackgroundStamps(boolean getAlwaysVisible) {
   }
 
   public List<Token> getPlayerTokens() {
-    return getTokensFiltered(t -> t.getType() == Token.Type.PC);
+    return getIndexedTokens(
+        getTokenIndex().getByType(Token.Type.PC), t -> t.getType() == Token.Type.PC);
   }
 
   public List<Token> getFigureTokens() {
@@ -1625,11 +1937,12 @@ public List<Token> getTokensAlwaysVisible() {
   }
 
   public List<Token> getTokensWithVBL() {
-    return getTokensFiltered(Token::hasVBL);
+    return getIndexedTokens(getTokenIndex().getWithVBL(), Token::hasVBL);
   }
 
   public List<Token> getTokensWithTerrainModifiers() {
-    return getTokensFiltered(
+    return getIndexedTokens(
+        getTokenIndex().getWithTerrainModifier(),
         t -> !t.getTerrainModifierOperation().equals(TerrainModifierOperation.NONE));
   }
 
@@ -1644,7 +1957,8 @@ public List<Token> getTokensWithTerrainModifiers() {
    * @since updated 1.4.1.0
    */
   public List<Token> getOwnedTokensWithSight(Player p) {
-    return getTokensFiltered(
+    return getIndexedTokens(
+        getTokenIndex().getWithSight(),
         t -> {
           // System.out.println("isOwnedByAll(): " + t.getName() + ":" + t.isOwnedByAll());
           // System.out.println("AppUtil.playerOwns(t): " + t.getName() + ":" +
@@ -1677,7 +1991,8 @@ public List<Token> getOwnedTokensWithSight(Player p) {
 
   /** @return list of PCs tokens with sight. For FogUtil.exposePCArea to skip sight test. */
   public List<Token> getPlayerTokensWithSight() {
-    return getTokensFiltered(t -> t.getType() == Token.Type.PC && t.getHasSight());
+    return getIndexedTokens(
+        getTokenIndex().getWithSight(), t -> t.getType() == Token.Type.PC && t.getHasSight());
   }
 
   /**
@@ -1688,7 +2003,8 @@ public List<Token> getPlayerTokensWithSight() {
    */
   public List<Token> getTokensOwnedByAllWithSight() {
     // String playerId = MapTool.getPlayer().getName();
-    return getTokensFiltered(
+    return getIndexedTokens(
+        getTokenIndex().getWithSight(),
         t ->
             (t.getHasSight()
                 && (t.getType() == Token.Type.PC && (t.isOwnedByAll() || AppUtil.playerOwns(t)))));
@@ -1698,7 +2014,8 @@ public List<Token> getTokensOwnedByAllWithSight() {
   // All",
   // or "Owned" by the current player; in theory, NPC tokens the Player control.
   public List<Token> getTokensOwnedByAllWithSight(Player p) {
-    return getTokensFiltered(
+    return getIndexedTokens(
+        getTokenIndex().getWithSight(),
         new Filter() {
           String playerId = MapTool.getPlayer().getName();
 
@@ -1710,7 +2027,8 @@ public boolean matchToken(Token t) {
   }
 
   public List<Token> getPlayerOwnedTokensWithSight(Player p) {
-    return getTokensFiltered(
+    return getIndexedTokens(
+        getTokenIndex().getWithSight(),
         t -> t.getType() == Token.Type.PC && t.getHasSight() && AppUtil.playerOwns(t));
   }
 
@@ -1864,6 +2182,7 @@ private void collapseDrawables() {
     collapseDrawableLayer(gmDrawables);
     collapseDrawableLayer(objectDrawables);
     collapseDrawableLayer(backgroundDrawables);
+    assetIndex = null; // Rebuilt on next use
   }
 
   private void collapseDrawableLayer(List<DrawnElement> layer) {
@@ -1935,7 +2254,8 @@ protected Object readResolve() {
 
     // 1.3b47 -> 1.3b48
     if (visionType == null) {
-      if (getTokensFiltered(Token::hasLightSources).size() > 0) {
+      if (!getIndexedTokens(getTokenIndex().getWithLightSources(), Token::hasLightSources)
+          .isEmpty()) {
         visionType = VisionType.NIGHT;
       } else if (topology != null && !topology.isEmpty()) {
         visionType = VisionType.DAY;
@@ -1947,7 +2267,7 @@ protected Object readResolve() {
     // Look for the bizarre z-ordering disappearing trick
     boolean foundZero = false;
     boolean fixZOrder = false;
-    for (Token token : tokenOrderedList) {
+    for (Token token : getAllTokens()) {
       if (token.getZOrder() == 0) {
         if (foundZero) {
           fixZOrder = true;
@@ -1958,9 +2278,10 @@ protected Object readResolve() {
     }
     if (fixZOrder) {
       int z = 0;
-      for (Token token : tokenOrderedList) {
+      for (Token token : getAllTokens()) {
         token.setZOrder(z++);
       }
+      sortZOrder();
     }
     // Transient "undo" field added in 1.3.b88
     // This will be true; it's just in case we decide to make it persistent in the future
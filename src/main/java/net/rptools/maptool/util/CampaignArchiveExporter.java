@@ -0,0 +1,350 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import com.thoughtworks.xstream.XStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import net.rptools.lib.CodeTimer;
+import net.rptools.lib.FileUtil;
+import net.rptools.lib.MD5Key;
+import net.rptools.lib.io.ArchiveWriter;
+import net.rptools.lib.io.ParallelZipWriter;
+import net.rptools.lib.io.SequentialZipWriter;
+import net.rptools.maptool.model.Asset;
+import net.rptools.maptool.model.AssetManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes a campaign or campaign properties archive directly to its destination.
+ *
+ * <p>Saving through {@link net.rptools.lib.io.PackedFile} first copies every asset and the
+ * serialized content into a temporary directory and then zips that directory, so every byte is
+ * written twice and the caller waits for all of it. This class streams the content XML straight
+ * into the archive and has the assets compressed on worker threads by {@link ParallelZipWriter},
+ * so memory use stays bounded regardless of the size of the campaign. Progress is reported after
+ * each entry and the export can be cancelled between entries, which makes it suitable for running
+ * on a background thread behind a progress dialog. Archives too large for <code>
+ * ParallelZipWriter</code>, which has no ZIP64 support, are written by {@link
+ * net.rptools.lib.io.SequentialZipWriter} instead.
+ *
+ * <p>The archive layout is the same as the one written by <code>PackedFile</code>, so the result
+ * is read back by {@link PersistenceUtil} as usual.
+ */
+public class CampaignArchiveExporter {
+  private static final Logger log = LogManager.getLogger(CampaignArchiveExporter.class);
+
+  private static final String CONTENT_FILE = "content.xml";
+  private static final String PROPERTY_FILE = "properties.xml";
+  private static final String ASSET_DIR = "assets/";
+
+  /** Receives the progress of an export and lets the caller cancel it. */
+  public interface Progress {
+    /**
+     * Called on the exporting thread each time an entry has been added to the archive.
+     *
+     * @param done the number of entries added so far
+     * @param total the total number of entries
+     */
+    void update(int done, int total);
+
+    /** @return <code>true</code> if the export should be abandoned */
+    boolean isCancelled();
+  }
+
+  /** A {@link Progress} that ignores updates and is never cancelled. */
+  public static final Progress NO_PROGRESS =
+      new Progress() {
+        @Override
+        public void update(int done, int total) {}
+
+        @Override
+        public boolean isCancelled() {
+          return false;
+        }
+      };
+
+  private final XStream xstream = FileUtil.getConfiguredXStream();
+  private final Map<String, Object> propertyMap = new HashMap<String, Object>();
+  private final Set<MD5Key> assetIds = new LinkedHashSet<MD5Key>();
+  private Object content;
+  private boolean keepExistingEntries;
+
+  public CampaignArchiveExporter() {
+    // XML file to describe the Asset, but binary file for the image data
+    xstream.processAnnotations(Asset.class);
+  }
+
+  /**
+   * @return the XStream instance used to write the content, so it can be configured before the
+   *     export
+   */
+  public XStream getXStream() {
+    return xstream;
+  }
+
+  /** @param content the object written to <code>content.xml</code> */
+  public void setContent(Object content) {
+    this.content = content;
+  }
+
+  /**
+   * @param key the name of the property
+   * @param value the value written to <code>properties.xml</code>
+   */
+  public void setProperty(String key, Object value) {
+    propertyMap.put(key, value);
+  }
+
+  /** @param ids the assets to include in the archive; <code>null</code> values are ignored */
+  public void addAssets(Collection<MD5Key> ids) {
+    assetIds.addAll(ids);
+    assetIds.remove(null);
+  }
+
+  /**
+   * If set, entries of an existing archive at the destination that are not content, properties or
+   * assets are carried over into the new archive, the same way <code>PackedFile</code> keeps them
+   * when it saves over an existing file.
+   *
+   * @param keepExistingEntries whether to keep unrelated entries of the existing archive
+   */
+  public void setKeepExistingEntries(boolean keepExistingEntries) {
+    this.keepExistingEntries = keepExistingEntries;
+  }
+
+  /**
+   * Writes the archive. It is written next to <code>file</code> under a temporary name and only
+   * moved into place once complete, so a failed or cancelled export leaves an existing file alone.
+   *
+   * @param file the destination
+   * @param progress receives progress updates and is polled for cancellation
+   * @throws InterruptedIOException if the export was cancelled
+   * @throws IOException if the archive could not be written
+   */
+  public void export(File file, Progress progress) throws IOException {
+    CodeTimer exportTimer = new CodeTimer("CampaignArchiveExporter.export");
+    exportTimer.setEnabled(log.isDebugEnabled());
+
+    File destination = file.getAbsoluteFile();
+    File tmpFile = File.createTempFile(destination.getName(), ".tmp", destination.getParentFile());
+    ZipFile existing = null;
+    boolean complete = false;
+    try {
+      List<ZipEntry> keptEntries = Collections.emptyList();
+      if (keepExistingEntries && destination.exists()) {
+        existing = new ZipFile(destination);
+        keptEntries = getKeptEntries(existing);
+      }
+      int total = 2 + assetIds.size() * 2 + keptEntries.size();
+      boolean parallel = ParallelZipWriter.canWrite(total, estimateSize(keptEntries));
+      if (parallel) {
+        try {
+          writeArchive(
+              new ParallelZipWriter(openTempFile(tmpFile), Deflater.BEST_COMPRESSION),
+              existing,
+              keptEntries,
+              total,
+              progress,
+              exportTimer);
+        } catch (ParallelZipWriter.ArchiveTooLargeException e) {
+          // The content turned out larger than estimated; start over with ZIP64 support
+          log.info("Export to " + destination + " needs ZIP64 extensions: " + e.getMessage());
+          parallel = false;
+        }
+      }
+      if (!parallel) {
+        writeArchive(
+            new SequentialZipWriter(openTempFile(tmpFile), Deflater.BEST_COMPRESSION),
+            existing,
+            keptEntries,
+            total,
+            progress,
+            exportTimer);
+      }
+      if (existing != null) {
+        existing.close();
+        existing = null;
+      }
+
+      exportTimer.start("move");
+      try {
+        Files.move(tmpFile.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException ioe) {
+        // Cloud storage folders sometimes lock the destination against renames; copy instead
+        FileUtil.copyFile(tmpFile, destination);
+      }
+      exportTimer.stop("move");
+      complete = true;
+    } finally {
+      if (existing != null) {
+        try {
+          existing.close();
+        } catch (IOException ioe) {
+          // ignore close exception
+        }
+      }
+      tmpFile.delete();
+      if (!complete) {
+        log.info("Export to " + destination + " did not complete");
+      }
+      if (log.isDebugEnabled()) {
+        log.debug(exportTimer);
+      }
+    }
+  }
+
+  private void writeArchive(
+      ArchiveWriter zout,
+      ZipFile existing,
+      List<ZipEntry> keptEntries,
+      int total,
+      Progress progress,
+      CodeTimer exportTimer)
+      throws IOException {
+    try {
+      exportTimer.start("assets");
+      for (MD5Key assetId : assetIds) {
+        checkCancelled(progress);
+        putAsset(zout, assetId);
+        progress.update(zout.getWrittenCount(), total);
+      }
+      exportTimer.stop("assets");
+
+      exportTimer.start("existing");
+      for (ZipEntry entry : keptEntries) {
+        checkCancelled(progress);
+        if (entry.isDirectory()) {
+          zout.putDirectory(entry.getName());
+        } else {
+          zout.putEntry(entry.getName(), () -> existing.getInputStream(entry));
+        }
+        progress.update(zout.getWrittenCount(), total);
+      }
+      exportTimer.stop("existing");
+
+      exportTimer.start(PROPERTY_FILE);
+      checkCancelled(progress);
+      byte[] properties = xstream.toXML(propertyMap).getBytes(StandardCharsets.UTF_8);
+      zout.putEntry(PROPERTY_FILE, () -> new ByteArrayInputStream(properties));
+      exportTimer.stop(PROPERTY_FILE);
+
+      // The content is serialized straight into the archive while the workers finish the assets
+      exportTimer.start(CONTENT_FILE);
+      checkCancelled(progress);
+      if (content != null) {
+        zout.putStreamedEntry(
+            CONTENT_FILE,
+            out -> {
+              Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+              xstream.toXML(content, w);
+              w.write(System.lineSeparator());
+              w.flush();
+            });
+      }
+      exportTimer.stop(CONTENT_FILE);
+
+      exportTimer.start("close");
+      zout.close();
+      exportTimer.stop("close");
+      progress.update(total, total);
+    } finally {
+      zout.abort(); // Does nothing if the archive was completed
+    }
+  }
+
+  private static OutputStream openTempFile(File tmpFile) throws IOException {
+    return new BufferedOutputStream(new FileOutputStream(tmpFile));
+  }
+
+  /**
+   * Estimates the size of the archive before compression, from the assets and the kept entries.
+   * The content isn't known until it is serialized, so it isn't counted.
+   */
+  private long estimateSize(List<ZipEntry> keptEntries) {
+    long size = 0;
+    for (MD5Key assetId : assetIds) {
+      Asset asset = AssetManager.getAsset(assetId);
+      if (asset != null && asset.getImage() != null) {
+        size += asset.getImage().length;
+      }
+    }
+    for (ZipEntry entry : keptEntries) {
+      size += entry.getSize() < 0 ? ParallelZipWriter.MAX_ARCHIVE_SIZE : entry.getSize();
+    }
+    return size;
+  }
+
+  private List<ZipEntry> getKeptEntries(ZipFile zipFile) {
+    List<ZipEntry> kept = new ArrayList<ZipEntry>();
+    for (ZipEntry entry : Collections.list(zipFile.entries())) {
+      String name = entry.getName();
+      if (!name.equals(CONTENT_FILE)
+          && !name.equals(PROPERTY_FILE)
+          && !name.startsWith(ASSET_DIR)) {
+        kept.add(entry);
+      }
+    }
+    return kept;
+  }
+
+  private void putAsset(ArchiveWriter zout, MD5Key assetId) throws IOException {
+    Asset asset = AssetManager.getAsset(assetId);
+    if (asset == null) {
+      log.error("AssetId " + assetId + " not found while exporting?!");
+      return;
+    }
+    // As of 1.3.b64, assets are written in binary to allow them to be readable when a campaign
+    // file is unpacked. The image data is kept by the AssetManager, so no copy is made here.
+    zout.putEntry(
+        ASSET_DIR + assetId + "." + asset.getImageExtension(),
+        () -> new ByteArrayInputStream(asset.getImage()));
+    zout.putEntry(
+        ASSET_DIR + assetId,
+        () -> {
+          String xml = xstream.toXML(asset) + System.lineSeparator(); // Does not write the image
+          return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+        });
+  }
+
+  private static void checkCancelled(Progress progress) throws InterruptedIOException {
+    if (progress.isCancelled()) {
+      throw new InterruptedIOException("Export cancelled");
+    }
+  }
+}
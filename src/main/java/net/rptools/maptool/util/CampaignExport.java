@@ -14,6 +14,7 @@
  */
 package net.rptools.maptool.util;
 
+import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
@@ -67,34 +68,58 @@ public class CampaignExport {
   public static PackedFile stripContent(
       PackedFile pakFile, PersistedCampaign persistedCampaign, String campaignVersion)
       throws IOException {
-    if (!setVersions(campaignVersion)) {
+    if (!configureXStream(pakFile.getXStream(), campaignVersion)) {
       return pakFile;
     }
 
+    // write the old content.xml file instead of the new splitted xml files
+    if (writesContentFile()) {
+      pakFile.setContent(persistedCampaign);
+    }
+
+    pakFile.setProperty(PersistenceUtil.PROP_CAMPAIGN_VERSION, getCampaignFileVersion());
+    pakFile.setProperty(PersistenceUtil.PROP_VERSION, campaignVersion);
+
+    return pakFile;
+  }
+
+  /**
+   * Strips out the classes and fields that the given MapTool version doesn't know about from
+   * everything serialized by <code>xstream</code>.
+   *
+   * @param xstream the XStream instance used to write the campaign
+   * @param campaignVersion the MapTool version to export to
+   * @return <code>false</code> if the version number is invalid
+   */
+  public static boolean configureXStream(XStream xstream, String campaignVersion) {
+    if (!setVersions(campaignVersion)) {
+      return false;
+    }
+
     // Check Major version for sanity's sake...
     if (VERSION_MAJOR == 1 && VERSION_MINOR <= 4) {
       // Lumens, tokenSelection, & several Token class fields were introduced in 1.4.1.x
       if (VERSION_RELEASE == 0) {
-        pakFile.getXStream().omitField(LightSource.class, "lumens");
-        pakFile.getXStream().omitField(LightSource.class, "scaleWithToken");
-        pakFile.getXStream().omitField(SightType.class, "scaleWithToken");
-        pakFile.getXStream().omitField(Zone.class, "tokenSelection");
-        pakFile.getXStream().omitField(Token.class, "vbl");
-        pakFile.getXStream().omitField(Token.class, "isoWidth");
-        pakFile.getXStream().omitField(Token.class, "isoHeight");
-        pakFile.getXStream().omitField(Token.class, "vblAlphaSensitivity");
-        pakFile.getXStream().omitField(Token.class, "isAlwaysVisible");
-        pakFile.getXStream().omitField(Token.class, "alwaysVisibleTolerance");
-        pakFile.getXStream().omitField(Token.class, "tokenOpacity");
-        pakFile.getXStream().omitField(Token.class, "heroLabData");
-        pakFile.getXStream().omitField(MacroButtonProperties.class, "macroUUID");
+        xstream.omitField(LightSource.class, "lumens");
+        xstream.omitField(LightSource.class, "scaleWithToken");
+        xstream.omitField(SightType.class, "scaleWithToken");
+        xstream.omitField(Zone.class, "tokenSelection");
+        xstream.omitField(Token.class, "vbl");
+        xstream.omitField(Token.class, "isoWidth");
+        xstream.omitField(Token.class, "isoHeight");
+        xstream.omitField(Token.class, "vblAlphaSensitivity");
+        xstream.omitField(Token.class, "isAlwaysVisible");
+        xstream.omitField(Token.class, "alwaysVisibleTolerance");
+        xstream.omitField(Token.class, "tokenOpacity");
+        xstream.omitField(Token.class, "heroLabData");
+        xstream.omitField(MacroButtonProperties.class, "macroUUID");
 
         if (VERSION_BUILD == 0) {
-          // pakFile.getXStream().registerConverter(new DrawablesGroupConverter());
-          pakFile.getXStream().omitField(Zone.class, "drawables");
-          pakFile.getXStream().omitField(Zone.class, "gmDrawables");
-          pakFile.getXStream().omitField(Zone.class, "objectDrawables");
-          pakFile.getXStream().omitField(Zone.class, "backgroundDrawables");
+          // xstream.registerConverter(new DrawablesGroupConverter());
+          xstream.omitField(Zone.class, "drawables");
+          xstream.omitField(Zone.class, "gmDrawables");
+          xstream.omitField(Zone.class, "objectDrawables");
+          xstream.omitField(Zone.class, "backgroundDrawables");
         }
       }
     }
@@ -102,44 +127,47 @@ public static PackedFile stripContent(
     // care for the unitsPerCell change from integer to double
     if ((VERSION_MAJOR == 1 && VERSION_MINOR <= 4)
         || (VERSION_MAJOR == 1 && VERSION_MINOR == 5 && VERSION_RELEASE < 1)) {
-      pakFile
-          .getXStream()
-          .registerLocalConverter(
-              Zone.class,
-              "unitsPerCell",
-              new Converter() {
-
-                @Override
-                public boolean canConvert(@SuppressWarnings("rawtypes") Class type) {
-                  return Double.class.equals(type);
-                }
-
-                @Override
-                public Object unmarshal(
-                    HierarchicalStreamReader reader, UnmarshallingContext context) {
-                  return null;
-                }
-
-                @Override
-                public void marshal(
-                    Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
-                  writer.setValue(Integer.valueOf(((Double) source).intValue()).toString());
-                }
-              });
-    }
-
-    // write the old content.xml file instead of the new splitted xml files
-    if ((VERSION_MAJOR == 1 && VERSION_MINOR <= 4)
-        || (VERSION_MAJOR == 1 && VERSION_MINOR == 5 && VERSION_RELEASE <= 1)) {
-      pakFile.setContent(persistedCampaign);
+      xstream.registerLocalConverter(
+          Zone.class,
+          "unitsPerCell",
+          new Converter() {
+
+            @Override
+            public boolean canConvert(@SuppressWarnings("rawtypes") Class type) {
+              return Double.class.equals(type);
+            }
+
+            @Override
+            public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+              return null;
+            }
+
+            @Override
+            public void marshal(
+                Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+              writer.setValue(Integer.valueOf(((Double) source).intValue()).toString());
+            }
+          });
     }
+    return true;
+  }
 
-    pakFile.setProperty(
-        PersistenceUtil.PROP_CAMPAIGN_VERSION,
-        VERSION_MAJOR + "." + VERSION_MINOR + "." + VERSION_RELEASE);
-    pakFile.setProperty(PersistenceUtil.PROP_VERSION, campaignVersion);
+  /**
+   * @return <code>true</code> if the MapTool version last passed to {@link
+   *     #configureXStream(XStream, String)} reads the whole campaign from the old single
+   *     <code>content.xml</code> file
+   */
+  public static boolean writesContentFile() {
+    return (VERSION_MAJOR == 1 && VERSION_MINOR <= 4)
+        || (VERSION_MAJOR == 1 && VERSION_MINOR == 5 && VERSION_RELEASE <= 1);
+  }
 
-    return pakFile;
+  /**
+   * @return the campaign file version matching the MapTool version last passed to {@link
+   *     #configureXStream(XStream, String)}
+   */
+  public static String getCampaignFileVersion() {
+    return VERSION_MAJOR + "." + VERSION_MINOR + "." + VERSION_RELEASE;
   }
 
   /**
@@ -37,6 +37,12 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.imageio.ImageIO;
 import net.rptools.lib.CodeTimer;
 import net.rptools.lib.FileUtil;
@@ -95,6 +101,9 @@ public class PersistenceUtil {
   private static final ModelVersionManager assetnameVersionManager = new ModelVersionManager();
   private static final ModelVersionManager tokenVersionManager = new ModelVersionManager();
 
+  /** Serializes assets when a campaign is saved; its threads go away between saves. */
+  private static final ExecutorService assetSaveExecutor = createAssetSaveExecutor();
+
   static {
     PackedFile.init(AppUtil.getAppHome("tmp")); // $NON-NLS-1$
 
@@ -369,6 +378,54 @@ public static void saveCampaign(Campaign campaign, File campaignFile, String cam
     }
   }
 
+  /**
+   * Exports the campaign to a file readable by an older version of MapTool. Unlike {@link
+   * #saveCampaign(Campaign, File, String)} the archive is streamed straight to the destination
+   * with its assets compressed in parallel, and the export can be followed and cancelled through
+   * <code>progress</code>. Meant to be called from a background thread while the campaign can't be
+   * edited, as the campaign is serialized as it is.
+   *
+   * @param campaign the campaign to export
+   * @param currentZoneId the zone shown when the campaign is opened; may be <code>null</code>
+   * @param currentView the view of that zone, read on the EDT; may be <code>null</code>
+   * @param campaignFile the destination
+   * @param campaignVersion the MapTool version to export to
+   * @param progress receives progress updates and is polled for cancellation
+   * @throws java.io.InterruptedIOException if the export was cancelled
+   * @throws IOException if the export failed
+   */
+  public static void exportCampaign(
+      Campaign campaign,
+      GUID currentZoneId,
+      Scale currentView,
+      File campaignFile,
+      String campaignVersion,
+      CampaignArchiveExporter.Progress progress)
+      throws IOException {
+    CampaignArchiveExporter exporter = new CampaignArchiveExporter();
+    if (!CampaignExport.configureXStream(exporter.getXStream(), campaignVersion)) {
+      throw new IOException(I18N.getString("dialog.campaignexport.error.invalidversion"));
+    }
+    PersistedCampaign persistedCampaign = new PersistedCampaign();
+    persistedCampaign.campaign = campaign;
+    persistedCampaign.currentZoneId = currentZoneId;
+    persistedCampaign.currentView = currentView;
+
+    Set<MD5Key> allAssetIds = campaign.getAllAssetIds();
+    for (MD5Key key : allAssetIds) {
+      // Put in a placeholder; all we really care about is the MD5Key for now...
+      persistedCampaign.assetMap.put(key, null);
+    }
+    exporter.addAssets(allAssetIds);
+    // Only the versions that read the old content.xml file get the campaign, as in stripContent
+    if (CampaignExport.writesContentFile()) {
+      exporter.setContent(persistedCampaign);
+    }
+    exporter.setProperty(PROP_CAMPAIGN_VERSION, CampaignExport.getCampaignFileVersion());
+    exporter.setProperty(PROP_VERSION, campaignVersion);
+    exporter.export(campaignFile, progress);
+  }
+
   /*
    * A public function because I think it should be called when a campaign is opened as well so if it is opened then closed without saving, there is still a preview created; however, the rendering
    * of the campaign appears to complete after AppActions.loadCampaign returns, causing the preview to always appear as black if this method is called from within loadCampaign. Either need to find
@@ -695,38 +752,77 @@ private static void loadAssets(Collection<MD5Key> assetIds, PackedFile pakFile)
     }
   }
 
+  private static ExecutorService createAssetSaveExecutor() {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            (new com.google.common.util.concurrent.ThreadFactoryBuilder())
+                .setNameFormat("asset-save-%d")
+                .setDaemon(true)
+                .build());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
   private static void saveAssets(Collection<MD5Key> assetIds, PackedFile pakFile)
       throws IOException {
     // Special handling of assets: XML file to describe the Asset, but binary file for the image
     // data
     pakFile.getXStream().processAnnotations(Asset.class);
 
-    for (MD5Key assetId : assetIds) {
-      if (assetId == null) continue;
-
-      // And store the asset elsewhere
-      // As of 1.3.b64, assets are written in binary to allow them to be readable
-      // when a campaign file is unpacked.
-      Asset asset = AssetManager.getAsset(assetId);
-      if (asset == null) {
-        log.error("AssetId " + assetId + " not found while saving?!");
-        continue;
+    // Serializing each asset is independent of the others, so spread them over all cores. The
+    // PackedFile compresses the resulting files in parallel as well when it is saved.
+    List<Future<Void>> futures = new ArrayList<>(assetIds.size());
+    try {
+      for (MD5Key assetId : assetIds) {
+        if (assetId == null) continue;
+        futures.add(
+            assetSaveExecutor.submit(
+                () -> {
+                  saveAsset(assetId, pakFile);
+                  return null;
+                }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof IOException) {
+        throw (IOException) ee.getCause();
+      }
+      throw new IOException(ee.getCause());
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true); // Only the ones still queued after a failure
       }
-
-      String extension = asset.getImageExtension();
-      byte[] assetData = asset.getImage();
-      // System.out.println("Saving AssetId " + assetId + "." + extension + " with size of " +
-      // assetData.length);
-
-      pakFile.putFile(ASSET_DIR + assetId + "." + extension, assetData);
-      pakFile.putFile(ASSET_DIR + assetId + "", asset); // Does not write the image
     }
   }
 
-  private static void clearAssets(PackedFile pakFile) throws IOException {
-    for (String path : pakFile.getPaths()) {
-      if (path.startsWith(ASSET_DIR) && !path.equals(ASSET_DIR)) pakFile.removeFile(path);
+  private static void saveAsset(MD5Key assetId, PackedFile pakFile) throws IOException {
+    // And store the asset elsewhere
+    // As of 1.3.b64, assets are written in binary to allow them to be readable
+    // when a campaign file is unpacked.
+    Asset asset = AssetManager.getAsset(assetId);
+    if (asset == null) {
+      log.error("AssetId " + assetId + " not found while saving?!");
+      return;
     }
+
+    String extension = asset.getImageExtension();
+    byte[] assetData = asset.getImage();
+    // System.out.println("Saving AssetId " + assetId + "." + extension + " with size of " +
+    // assetData.length);
+
+    pakFile.putFile(ASSET_DIR + assetId + "." + extension, assetData);
+    pakFile.putFile(ASSET_DIR + assetId + "", asset); // Does not write the image
   }
 
   public static CampaignProperties loadLegacyCampaignProperties(File file) throws IOException {
@@ -809,17 +905,34 @@ public static CampaignProperties loadCampaignProperties(File file) {
   }
 
   public static void saveCampaignProperties(Campaign campaign, File file) throws IOException {
+    saveCampaignProperties(
+        campaign.getCampaignProperties(), file, CampaignArchiveExporter.NO_PROGRESS);
+  }
+
+  /**
+   * Saves the campaign properties and the images they use. Any other entries of an existing file
+   * are kept. Meant to be called from a background thread on properties no one else changes, such
+   * as a copy taken on the EDT.
+   *
+   * @param properties the campaign properties to save
+   * @param file the destination; the properties extension is added if it has no extension
+   * @param progress receives progress updates and is polled for cancellation
+   * @throws java.io.InterruptedIOException if the export was cancelled
+   * @throws IOException if the export failed
+   */
+  public static void saveCampaignProperties(
+      CampaignProperties properties, File file, CampaignArchiveExporter.Progress progress)
+      throws IOException {
     // Put this in FileUtil
     if (!file.getName().contains(".")) {
       file = new File(file.getAbsolutePath() + AppConstants.CAMPAIGN_PROPERTIES_FILE_EXTENSION);
     }
-    try (PackedFile pakFile = new PackedFile(file)) {
-      clearAssets(pakFile);
-      saveAssets(campaign.getCampaignProperties().getAllImageAssets(), pakFile);
-      pakFile.setContent(campaign.getCampaignProperties());
-      pakFile.setProperty(PROP_VERSION, MapTool.getVersion());
-      pakFile.save();
-    }
+    CampaignArchiveExporter exporter = new CampaignArchiveExporter();
+    exporter.setKeepExistingEntries(true);
+    exporter.addAssets(properties.getAllImageAssets());
+    exporter.setContent(properties);
+    exporter.setProperty(PROP_VERSION, MapTool.getVersion());
+    exporter.export(file, progress);
   }
 
   // Macro import/export support
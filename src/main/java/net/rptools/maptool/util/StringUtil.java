@@ -14,6 +14,8 @@
  */
 package net.rptools.maptool.util;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -25,6 +27,9 @@ public class StringUtil {
   private static NumberFormat nf = NumberFormat.getNumberInstance();
   private static final int MIN_FRACTION_DIGITS = 0;
 
+  /** The shared copies of strings, released once no one uses them. */
+  private static final Interner<String> sharedStrings = Interners.newWeakInterner();
+
   public static String formatDecimal(double value) {
     String result1;
     result1 = nf.format(value); // On a separate line to allow for breakpoints
@@ -195,6 +200,35 @@ public static String wrapText(String string, int wrapLength) {
     return wrapText(string, wrapLength, 0, "\n");
   }
 
+  /**
+   * Returns a shared copy of a string, so that the many tokens holding the same text, such as the
+   * macros and properties of copies of a token, hold it only once after they were loaded.
+   *
+   * @param string the string, or null
+   * @return the shared string equal to <code>string</code>, or null
+   */
+  public static String share(String string) {
+    return string == null ? null : sharedStrings.intern(string);
+  }
+
+  /**
+   * Folds the case of a name so that two names match with {@link String#equalsIgnoreCase(String)}
+   * if and only if their folded forms are equal.
+   *
+   * @param name the name, or null
+   * @return the folded name, or null
+   */
+  public static String foldCase(String name) {
+    if (name == null) {
+      return null;
+    }
+    char[] chars = name.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
   /**
    * Whether the string is null or all whitespace chars (This should use {@link String#isEmpty()}
    * but that's new to Java 6 and we're trying to stay compatible with Java 5 if possible.)
@@ -14,12 +14,15 @@
  */
 package net.rptools.lib.swing.preference.net.rptools.lib.io;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Random;
 import net.rptools.lib.io.PackedFile;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -53,4 +56,41 @@ public void saveWithOneResource(@TempDir File tempDir) throws IOException {
       assertEquals(test_content, s);
     }
   }
+
+  @Test
+  public void resaveKeepsExistingResources(@TempDir File tempDir) throws IOException {
+    File f = new File(tempDir, PACKED_TEST_FILE);
+    byte[] binary = new byte[64 * 1024];
+    new Random(counter++).nextBytes(binary);
+    try (PackedFile pf = new PackedFile(f)) {
+      for (int i = 0; i < 20; i++) {
+        pf.putFile("assets/" + i, ("content " + i).getBytes());
+      }
+      pf.putFile("assets/binary", binary);
+      pf.setProperty("version", "1.0");
+      pf.save();
+    }
+
+    try (PackedFile pf = new PackedFile(f)) {
+      pf.putFile(A_PATH_TXT, "added later".getBytes());
+      pf.removeFile("assets/0");
+      pf.save();
+    }
+
+    try (PackedFile loaded = new PackedFile(f)) {
+      assertEquals("1.0", loaded.getProperty("version"));
+      assertFalse(loaded.hasFile("assets/0"));
+      for (int i = 1; i < 20; i++) {
+        try (InputStream is = loaded.getFileAsInputStream("assets/" + i)) {
+          assertEquals("content " + i, new String(is.readAllBytes()));
+        }
+      }
+      try (InputStream is = loaded.getFileAsInputStream("assets/binary")) {
+        assertArrayEquals(binary, is.readAllBytes());
+      }
+      try (InputStream is = loaded.getFileAsInputStream(A_PATH_TXT)) {
+        assertEquals("added later", new String(is.readAllBytes()));
+      }
+    }
+  }
 }
@@ -0,0 +1,87 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChatAutoSaveTest {
+
+  private static final String NL = System.lineSeparator();
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()));
+  }
+
+  private static int count(String text, String part) {
+    return text.split(part, -1).length - 1;
+  }
+
+  @Test
+  @DisplayName("Appended messages go before the closing tags, which stay at the end of the log")
+  void testAppend(@TempDir File tempDir) throws IOException {
+    File log = new File(tempDir, "chatlog.html");
+    ChatAutoSave.writeHistory(log, "<html>" + NL + "<body>" + NL + "<div>a</div>" + NL + "</body>");
+    String prefix = "<html>" + NL + "<body>" + NL + "<div>a</div>" + NL;
+    assertEquals(prefix + ChatAutoSave.LOG_TAIL, read(log));
+
+    assertTrue(ChatAutoSave.appendMessages(log, List.of("<div>b</div>", "<div>c</div>")));
+    assertTrue(ChatAutoSave.appendMessages(log, List.of("<div>d</div>")));
+    assertEquals(
+        prefix
+            + "<div>b</div>"
+            + NL
+            + "<div>c</div>"
+            + NL
+            + "<div>d</div>"
+            + NL
+            + ChatAutoSave.LOG_TAIL,
+        read(log));
+  }
+
+  @Test
+  @DisplayName("A log that doesn't end the way it was left is not appended to")
+  void testAppendToChangedLog(@TempDir File tempDir) throws IOException {
+    File log = new File(tempDir, "chatlog.html");
+    Files.write(log.toPath(), "<html><body><div>a</div>".getBytes());
+    assertFalse(ChatAutoSave.appendMessages(log, List.of("<div>b</div>")));
+    assertEquals("<html><body><div>a</div>", read(log));
+    assertFalse(ChatAutoSave.appendMessages(log, null));
+  }
+
+  @Test
+  @DisplayName("Messages with unbalanced tags are closed before they are appended")
+  void testNormalizeMessages() {
+    List<String> messages =
+        ChatAutoSave.normalizeMessages(List.of("<div><b>bold <i>text", "<div>plain</div>"));
+    assertEquals(2, messages.size());
+    String first = messages.get(0);
+    assertTrue(first.contains("bold"));
+    assertEquals(count(first, "<b>"), count(first, "</b>"));
+    assertEquals(count(first, "<i>"), count(first, "</i>"));
+    assertEquals(count(first, "<div"), count(first, "</div>"));
+    assertTrue(messages.get(1).contains("plain"));
+    assertFalse(messages.get(1).contains("<body"));
+  }
+}
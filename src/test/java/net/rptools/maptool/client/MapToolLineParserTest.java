@@ -19,6 +19,7 @@
 
 import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.List;
 import net.rptools.common.expression.Result;
 import net.rptools.maptool.model.MacroButtonProperties;
 import net.rptools.maptool.model.Token;
@@ -271,4 +272,24 @@ public void testExpression() throws ParserException {
     assertEquals(resolver.getVariable("a"), BigDecimal.TEN);
     assertEquals(result.getDetailExpression(), "a = (a * 10)");
   }
+
+  @Test
+  public void testEvaluatedPropertyWithoutRolls() throws ParserException {
+    Token token = new Token();
+    for (String value : List.of("  plain text  ", "", " ", "a (b) c", "1d6", "x\ty")) {
+      token.setProperty("Prop", value);
+
+      // What parsing the value gives, after a line that rolled
+      parseLine("[r: 1d1]", token, null);
+      String expected = parser.parseLine(null, token, value);
+      List<Integer> expectedLastRolled = parser.getLastRolled();
+      List<Integer> expectedRolled = parser.getRolled();
+
+      // The property isn't parsed, but must give the same value and leave the same rolls
+      parseLine("[r: 1d1]", token, null);
+      assertEquals(expected, token.getEvaluatedProperty("Prop"));
+      assertEquals(expectedLastRolled, parser.getLastRolled());
+      assertEquals(expectedRolled, parser.getRolled());
+    }
+  }
 }
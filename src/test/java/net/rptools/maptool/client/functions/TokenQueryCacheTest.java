@@ -0,0 +1,97 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.functions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonParser;
+import java.util.List;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TokenQueryCacheTest {
+
+  private static final String QUERY = "{\"layer\":[\"TOKEN\"],\"npc\":1}";
+
+  @Test
+  @DisplayName("Results are reused until the map changes")
+  void testResultFollowsModelVersion() {
+    TokenQueryCache cache = new TokenQueryCache(8);
+    Zone zone = new Zone();
+    assertNull(cache.getResult(zone, QUERY, true, "player"));
+
+    cache.putResult(zone, zone.getModelVersion(), QUERY, true, "player", List.of("Goblin"));
+    assertEquals(List.of("Goblin"), cache.getResult(zone, QUERY, true, "player"));
+
+    zone.putToken(new Token());
+    assertNull(cache.getResult(zone, QUERY, true, "player"));
+
+    // A result computed while the map changed is never used
+    long before = zone.getModelVersion();
+    zone.putToken(new Token());
+    cache.putResult(zone, before, QUERY, true, "player", List.of("Goblin"));
+    assertNull(cache.getResult(zone, QUERY, true, "player"));
+  }
+
+  @Test
+  @DisplayName("Results are kept apart by map, conditions, output and player")
+  void testResultKey() {
+    TokenQueryCache cache = new TokenQueryCache(8);
+    Zone zone = new Zone();
+    Zone other = new Zone();
+    cache.putResult(zone, zone.getModelVersion(), QUERY, true, "player", List.of("Goblin"));
+
+    assertNull(cache.getResult(other, QUERY, true, "player"));
+    assertNull(cache.getResult(zone, "{\"pc\":1}", true, "player"));
+    assertNull(cache.getResult(zone, QUERY, false, "player"));
+    assertNull(cache.getResult(zone, QUERY, true, "gm"));
+    assertEquals(List.of("Goblin"), cache.getResult(zone, QUERY, true, "player"));
+  }
+
+  @Test
+  @DisplayName("Only the most recently used queries are kept")
+  void testEviction() {
+    TokenQueryCache cache = new TokenQueryCache(2);
+    Zone zone = new Zone();
+    long version = zone.getModelVersion();
+    cache.putResult(zone, version, "{\"pc\":1}", true, "player", List.of("a"));
+    cache.putResult(zone, version, "{\"npc\":1}", true, "player", List.of("b"));
+    cache.getResult(zone, "{\"pc\":1}", true, "player");
+    cache.putResult(zone, version, QUERY, true, "player", List.of("c"));
+
+    assertEquals(List.of("a"), cache.getResult(zone, "{\"pc\":1}", true, "player"));
+    assertNull(cache.getResult(zone, "{\"npc\":1}", true, "player"));
+    assertEquals(List.of("c"), cache.getResult(zone, QUERY, true, "player"));
+  }
+
+  @Test
+  @DisplayName("Conditions are parsed once, and only queries on the tokens themselves are cached")
+  void testParseAndCacheable() {
+    TokenQueryCache cache = new TokenQueryCache(8);
+    assertSame(cache.parse(QUERY), cache.parse(QUERY));
+    assertEquals(JsonParser.parseString(QUERY), cache.parse(QUERY));
+
+    assertTrue(TokenQueryCache.isCacheable(cache.parse(QUERY)));
+    assertTrue(TokenQueryCache.isCacheable(cache.parse("{\"setStates\":\"Dead\",\"owned\":1}")));
+    assertFalse(TokenQueryCache.isCacheable(cache.parse("{\"selected\":1}")));
+    assertFalse(TokenQueryCache.isCacheable(cache.parse("{\"npc\":1,\"range\":{\"upto\":3}}")));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.tool.drawing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.maptool.model.drawing.Pen;
+import net.rptools.maptool.model.drawing.ShapeDrawable;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UndoHistoryStoreTest {
+
+  private static ShapeDrawable drawable(int i) {
+    return new ShapeDrawable(new Rectangle(i, 2 * i, 10 + i, 20 + i));
+  }
+
+  private static void assertLoads(
+      UndoHistoryStore store, UndoHistoryStore.Record record, ShapeDrawable expected)
+      throws Exception {
+    UndoHistoryStore.Operation op = store.load(record);
+    assertEquals(expected.getId(), op.getDrawable().getId());
+    assertEquals(expected.getBounds(), op.getDrawable().getBounds());
+    assertEquals(5f, op.getPen().getThickness());
+  }
+
+  private static List<UndoHistoryStore.Record> storeAll(
+      UndoHistoryStore store, List<ShapeDrawable> drawables, long memoryBudget) {
+    Pen pen = new Pen();
+    pen.setThickness(5f);
+    List<UndoHistoryStore.Record> records = new ArrayList<>();
+    for (ShapeDrawable drawable : drawables) {
+      records.add(store.store(pen, drawable, memoryBudget));
+    }
+    return records;
+  }
+
+  private static List<ShapeDrawable> drawables(int count) {
+    List<ShapeDrawable> drawables = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      drawables.add(drawable(i));
+    }
+    return drawables;
+  }
+
+  @Test
+  @DisplayName("Operations read back the same from memory and from the spill file")
+  void testRoundTrip(@TempDir File tempDir) throws Exception {
+    UndoHistoryStore store = new UndoHistoryStore(tempDir, Long.MAX_VALUE);
+    List<ShapeDrawable> drawables = drawables(10);
+    List<UndoHistoryStore.Record> inMemory = storeAll(store, drawables, Long.MAX_VALUE);
+    store.flush();
+    assertTrue(store.getMemoryBytes() > 0);
+    assertEquals(0, store.getSpilledBytes());
+    for (int i = 0; i < drawables.size(); i++) {
+      assertLoads(store, inMemory.get(i), drawables.get(i));
+    }
+
+    List<UndoHistoryStore.Record> spilled = storeAll(store, drawables, 0);
+    store.flush();
+    assertEquals(0, store.getMemoryBytes());
+    assertEquals(20, store.getRecordCount());
+    for (int i = 0; i < drawables.size(); i++) {
+      assertLoads(store, inMemory.get(i), drawables.get(i));
+      assertLoads(store, spilled.get(i), drawables.get(i));
+    }
+    store.clear();
+  }
+
+  @Test
+  @DisplayName("Discarded edits can't be loaded and free their space")
+  void testRelease(@TempDir File tempDir) throws Exception {
+    UndoHistoryStore store = new UndoHistoryStore(tempDir, Long.MAX_VALUE);
+    List<ShapeDrawable> drawables = drawables(4);
+    List<UndoHistoryStore.Record> records = storeAll(store, drawables, Long.MAX_VALUE);
+    store.release(records.get(0)); // Possibly before it was compressed
+    store.flush();
+    store.release(records.get(1));
+    long remaining = records.get(2).getLength() + records.get(3).getLength();
+    assertEquals(remaining, store.getMemoryBytes());
+    assertEquals(2, store.getRecordCount());
+    assertThrows(IllegalStateException.class, () -> store.load(records.get(1)));
+    assertLoads(store, records.get(3), drawables.get(3));
+
+    store.clear();
+    assertEquals(0, store.getRecordCount());
+    assertEquals(0, store.getTotalBytes());
+    assertThrows(IllegalStateException.class, () -> store.load(records.get(3)));
+  }
+
+  @Test
+  @DisplayName("The spill file is compacted once most of it was discarded, and deleted when empty")
+  void testCompaction(@TempDir File tempDir) throws Exception {
+    UndoHistoryStore store = new UndoHistoryStore(tempDir, 0);
+    List<ShapeDrawable> drawables = drawables(20);
+    List<UndoHistoryStore.Record> records = storeAll(store, drawables, 0);
+    store.flush();
+    long fullLength = store.getSpillFileLength();
+    assertEquals(fullLength, store.getSpilledBytes());
+    assertEquals(1, tempDir.listFiles().length);
+
+    for (int i = 0; i < 15; i++) {
+      store.release(records.get(i));
+    }
+    store.flush();
+    assertTrue(store.getSpillFileLength() < fullLength);
+    assertEquals(1, tempDir.listFiles().length);
+    for (int i = 15; i < 20; i++) {
+      assertLoads(store, records.get(i), drawables.get(i));
+    }
+
+    for (int i = 15; i < 20; i++) {
+      store.release(records.get(i));
+    }
+    assertEquals(0, store.getSpillFileLength());
+    assertEquals(0, tempDir.listFiles().length);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class FogTileCacheTest {
+  private static final int SIZE = FogTileCache.TILE_SIZE;
+
+  private final BufferedImage screen =
+      new BufferedImage(2 * SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+  private final FogTileCache cache = new FogTileCache();
+
+  private int render(int offsetX, int offsetY, double scale) {
+    Graphics2D g = screen.createGraphics();
+    try {
+      return cache.render(
+          g,
+          offsetX,
+          offsetY,
+          screen.getWidth(),
+          screen.getHeight(),
+          scale,
+          BufferedImage.TYPE_INT_ARGB,
+          "view",
+          null,
+          tileG -> {
+            // Fill a 10x10 square around the map origin, drawn in screen coordinates
+            tileG.setColor(Color.BLACK);
+            tileG.fillRect(offsetX - 5, offsetY - 5, 10, 10);
+          });
+    } finally {
+      g.dispose();
+    }
+  }
+
+  @Test
+  @DisplayName("Panning only rasterizes the tiles that scroll into view")
+  void testPanReusesTiles() {
+    assertEquals(2, render(0, 0, 1.0));
+    assertEquals(0, render(0, 0, 1.0));
+    // Moving right by a few pixels brings the column of tiles left of the origin into view
+    assertEquals(1, render(10, 0, 1.0));
+    // The origin square was drawn into the cached tiles and follows the map
+    assertEquals(Color.BLACK.getRGB(), screen.getRGB(12, 2));
+    assertEquals(Color.BLACK.getRGB(), screen.getRGB(6, 2));
+    assertEquals(0, screen.getRGB(20, 20));
+  }
+
+  @Test
+  @DisplayName("Changing the scale or the view drops every tile")
+  void testScaleChangeFlushes() {
+    render(0, 0, 1.0);
+    assertEquals(2, render(0, 0, 2.0));
+  }
+
+  @Test
+  @DisplayName("Invalidating a region only drops the tiles covering it")
+  void testInvalidateRegion() {
+    render(0, 0, 1.0);
+    cache.invalidate(new Rectangle2D.Double(SIZE + 10, 10, 20, 20));
+    assertEquals(1, cache.getTileCount());
+    assertEquals(1, render(0, 0, 1.0));
+  }
+}
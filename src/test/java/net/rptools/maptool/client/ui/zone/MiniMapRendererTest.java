@@ -0,0 +1,70 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import net.rptools.maptool.model.Player;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class MiniMapRendererTest {
+
+  private static final PlayerView PLAYER = new PlayerView(Player.Role.PLAYER);
+  private static final PlayerView GM = new PlayerView(Player.Role.GM);
+  private static final Rectangle BOUNDS = new Rectangle(100, 100, 50, 50);
+
+  private static Token token(Zone.Layer layer, boolean visible) {
+    Token token = new Token();
+    token.setLayer(layer);
+    token.setVisible(visible);
+    return token;
+  }
+
+  @Test
+  @DisplayName("Hidden tokens and hidden layer stamps are only shown to the GM")
+  void testHidden() {
+    Token hidden = token(Zone.Layer.TOKEN, false);
+    assertFalse(MiniMapRenderer.isShown(hidden, BOUNDS, PLAYER, false, null));
+    assertTrue(MiniMapRenderer.isShown(hidden, BOUNDS, GM, false, null));
+
+    Token gmStamp = token(Zone.Layer.GM, true);
+    assertFalse(MiniMapRenderer.isShown(gmStamp, BOUNDS, PLAYER, false, null));
+    assertTrue(MiniMapRenderer.isShown(gmStamp, BOUNDS, GM, false, null));
+
+    assertTrue(MiniMapRenderer.isShown(token(Zone.Layer.TOKEN, true), BOUNDS, PLAYER, false, null));
+  }
+
+  @Test
+  @DisplayName("With vision, players only see the tokens their tokens can see")
+  void testVision() {
+    Token token = token(Zone.Layer.TOKEN, true);
+    Area visible = new Area(new Rectangle(0, 0, 120, 120));
+    assertTrue(MiniMapRenderer.isShown(token, BOUNDS, PLAYER, true, visible));
+    assertFalse(
+        MiniMapRenderer.isShown(token, new Rectangle(200, 200, 50, 50), PLAYER, true, visible));
+    assertFalse(MiniMapRenderer.isShown(token, BOUNDS, PLAYER, true, null));
+
+    // Vision doesn't hide stamps
+    Token stamp = token(Zone.Layer.OBJECT, true);
+    assertTrue(
+        MiniMapRenderer.isShown(stamp, new Rectangle(200, 200, 50, 50), PLAYER, true, visible));
+  }
+}
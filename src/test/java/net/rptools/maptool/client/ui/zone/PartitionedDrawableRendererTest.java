@@ -0,0 +1,154 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import net.rptools.maptool.model.drawing.AbstractDrawing;
+import net.rptools.maptool.model.drawing.DrawableColorPaint;
+import net.rptools.maptool.model.drawing.DrawablesGroup;
+import net.rptools.maptool.model.drawing.DrawnElement;
+import net.rptools.maptool.model.drawing.LineSegment;
+import net.rptools.maptool.model.drawing.Pen;
+import net.rptools.maptool.model.drawing.ShapeDrawable;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class PartitionedDrawableRendererTest {
+
+  /** Stands in for the labels and templates, which read other state when drawn. */
+  private static class OtherDrawable extends AbstractDrawing {
+    @Override
+    protected void draw(Graphics2D g) {}
+
+    @Override
+    protected void drawBackground(Graphics2D g) {}
+
+    @Override
+    public Rectangle getBounds() {
+      return new Rectangle(0, 0, 10, 10);
+    }
+
+    @Override
+    public Area getArea() {
+      return new Area(getBounds());
+    }
+  }
+
+  private static Pen filledPen(Color color) {
+    Pen pen = new Pen();
+    pen.setThickness(2f);
+    pen.setForegroundMode(Pen.MODE_TRANSPARENT);
+    pen.setBackgroundMode(Pen.MODE_SOLID);
+    pen.setBackgroundPaint(new DrawableColorPaint(color));
+    return pen;
+  }
+
+  @Test
+  @DisplayName("The snapshot keeps its own pen and shares shapes, which don't change")
+  void testSnapshotPen() {
+    ShapeDrawable shape = new ShapeDrawable(new Rectangle(5, 5, 20, 20));
+    Pen pen = filledPen(Color.red);
+    DrawnElement element = new DrawnElement(shape, pen);
+    DrawnElement snapshot = PartitionedDrawableRenderer.snapshot(element);
+
+    pen.setThickness(8f);
+    element.setPen(filledPen(Color.blue));
+    assertSame(shape, snapshot.getDrawable());
+    assertNotSame(pen, snapshot.getPen());
+    assertEquals(2f, snapshot.getPen().getThickness());
+  }
+
+  @Test
+  @DisplayName("Line segments are copied, since drawing one updates it")
+  void testSnapshotLineSegment() {
+    LineSegment line = new LineSegment(3f, true);
+    line.getPoints().add(new Point(0, 0));
+    line.getPoints().add(new Point(10, 20));
+    DrawnElement snapshot =
+        PartitionedDrawableRenderer.snapshot(new DrawnElement(line, filledPen(Color.red)));
+
+    line.getPoints().add(new Point(30, 30));
+    LineSegment copy = (LineSegment) snapshot.getDrawable();
+    assertNotSame(line, copy);
+    assertEquals(List.of(new Point(0, 0), new Point(10, 20)), copy.getPoints());
+    assertEquals(3f, copy.getWidth().floatValue());
+    assertTrue(copy.isSquareCap());
+  }
+
+  @Test
+  @DisplayName("Groups are copied with their members, unless one can only be drawn on the EDT")
+  void testSnapshotGroup() {
+    List<DrawnElement> members = new ArrayList<>();
+    members.add(
+        new DrawnElement(new ShapeDrawable(new Rectangle(0, 0, 5, 5)), filledPen(Color.red)));
+    DrawnElement group = new DrawnElement(new DrawablesGroup(members), filledPen(Color.red));
+    DrawnElement snapshot = PartitionedDrawableRenderer.snapshot(group);
+
+    members.add(new DrawnElement(new OtherDrawable(), filledPen(Color.red)));
+    List<DrawnElement> copied = ((DrawablesGroup) snapshot.getDrawable()).getDrawableList();
+    assertEquals(1, copied.size());
+    assertNotSame(members.get(0).getPen(), copied.get(0).getPen());
+
+    assertNull(PartitionedDrawableRenderer.snapshot(group));
+    assertNull(
+        PartitionedDrawableRenderer.snapshot(
+            new DrawnElement(new OtherDrawable(), filledPen(Color.red))));
+  }
+
+  @Test
+  @DisplayName("Chunks drawn in the background use the pen the drawable had when queued")
+  void testBackgroundChunk() throws Exception {
+    CountDownLatch rendered = new CountDownLatch(1);
+    PartitionedDrawableRenderer renderer = new PartitionedDrawableRenderer(rendered::countDown);
+    Pen pen = filledPen(Color.red);
+    List<DrawnElement> layer =
+        List.of(new DrawnElement(new ShapeDrawable(new Rectangle(10, 10, 50, 50)), pen));
+    Rectangle viewport = new Rectangle(0, 0, 200, 200);
+    BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+
+    SwingUtilities.invokeAndWait(
+        () -> {
+          Graphics2D g = image.createGraphics();
+          renderer.renderDrawables(g, layer, viewport, 1, false);
+          g.dispose();
+          // Changed in place after the chunk was queued
+          pen.setBackgroundPaint(new DrawableColorPaint(Color.blue));
+        });
+    assertTrue(rendered.await(10, TimeUnit.SECONDS));
+    SwingUtilities.invokeAndWait(
+        () -> {
+          Graphics2D g = image.createGraphics();
+          renderer.renderDrawables(g, layer, viewport, 1, false);
+          g.dispose();
+        });
+    assertEquals(Color.red.getRGB(), image.getRGB(30, 30));
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class RepaintSchedulerTest {
+
+  @Test
+  @DisplayName("Requests within a frame are merged into one repaint of their union")
+  void testMergesRequests() throws InterruptedException {
+    List<Rectangle> repaints = new CopyOnWriteArrayList<>();
+    CountDownLatch merged = new CountDownLatch(2);
+    RepaintScheduler scheduler =
+        new RepaintScheduler(
+            (x, y, width, height) -> {
+              repaints.add(new Rectangle(x, y, width, height));
+              merged.countDown();
+            },
+            () -> 2);
+
+    scheduler.request(0, 0, 10, 10);
+    assertEquals(1, repaints.size());
+    for (int i = 1; i <= 50; i++) {
+      scheduler.request(i, i, 10, 10);
+    }
+    assertEquals(1, repaints.size());
+
+    assertTrue(merged.await(5, TimeUnit.SECONDS));
+    assertEquals(new Rectangle(1, 1, 59, 59), repaints.get(1));
+  }
+
+  @Test
+  @DisplayName("Without a frame rate cap every request is passed on")
+  void testUncapped() {
+    List<Rectangle> repaints = new CopyOnWriteArrayList<>();
+    RepaintScheduler scheduler =
+        new RepaintScheduler(
+            (x, y, width, height) -> repaints.add(new Rectangle(x, y, width, height)), () -> 0);
+    for (int i = 0; i < 5; i++) {
+      scheduler.request(0, 0, 10, 10);
+    }
+    assertEquals(5, repaints.size());
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class RetainedLayerTest {
+  private static final int WIDTH = 40;
+  private static final int HEIGHT = 30;
+
+  private final BufferedImage screen =
+      new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+  private final RetainedLayer layer = new RetainedLayer("test");
+  private int renders;
+
+  /** Paints the layer the way the renderer does, rendering it only if it isn't current. */
+  private void paint(List<Object> key, Color color) {
+    Graphics2D g = screen.createGraphics();
+    try {
+      if (layer.isCurrent(key)) {
+        layer.paint(g, WIDTH, HEIGHT, true);
+        return;
+      }
+      renders++;
+      Graphics2D layerG = layer.startRender(g, key, WIDTH, HEIGHT);
+      try {
+        layerG.setColor(color);
+        layerG.fillRect(0, 0, WIDTH, HEIGHT);
+      } finally {
+        layerG.dispose();
+      }
+      layer.paint(g, WIDTH, HEIGHT, false);
+    } finally {
+      g.dispose();
+    }
+  }
+
+  /** @return a key like the renderer's: scale, view offset and player view */
+  private static List<Object> key(double scale, int offsetX, int offsetY, String view) {
+    return List.of(scale, offsetX, offsetY, WIDTH, HEIGHT, view);
+  }
+
+  @Test
+  @DisplayName("The image is reused while the content and the view are unchanged")
+  void testReuse() {
+    assertFalse(layer.isCurrent(key(1.0, 0, 0, "player")));
+    paint(key(1.0, 0, 0, "player"), Color.RED);
+    paint(key(1.0, 0, 0, "player"), Color.BLUE);
+    paint(key(1.0, 0, 0, "player"), Color.BLUE);
+
+    assertEquals(1, renders);
+    // Still the first rendering
+    assertEquals(Color.RED.getRGB(), screen.getRGB(WIDTH / 2, HEIGHT / 2));
+    assertEquals("test: rendered 1, reused 2", layer.toString());
+  }
+
+  @Test
+  @DisplayName("A change to a token on the layers, the zoom or the view renders it again")
+  void testInvalidation() {
+    paint(key(1.0, 0, 0, "player"), Color.RED);
+
+    // The renderer invalidates the layer when a token drawn in it changes
+    layer.invalidate();
+    assertFalse(layer.isCurrent(key(1.0, 0, 0, "player")));
+    paint(key(1.0, 0, 0, "player"), Color.BLUE);
+    assertEquals(2, renders);
+    assertEquals(Color.BLUE.getRGB(), screen.getRGB(WIDTH / 2, HEIGHT / 2));
+    assertTrue(layer.isCurrent(key(1.0, 0, 0, "player")));
+
+    // Zooming
+    assertFalse(layer.isCurrent(key(1.1, 0, 0, "player")));
+    paint(key(1.1, 0, 0, "player"), Color.GREEN);
+    assertEquals(3, renders);
+
+    // Panning and switching the player view
+    assertFalse(layer.isCurrent(key(1.1, 10, 0, "player")));
+    assertFalse(layer.isCurrent(key(1.1, 0, 0, "gm")));
+    paint(key(1.1, 0, 0, "gm"), Color.GREEN);
+    assertEquals(4, renders);
+    assertFalse(layer.isCurrent(key(1.1, 0, 0, "player")));
+
+    layer.release();
+    assertFalse(layer.isCurrent(key(1.1, 0, 0, "gm")));
+  }
+}
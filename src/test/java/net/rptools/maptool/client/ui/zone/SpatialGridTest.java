@@ -0,0 +1,73 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Set;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SpatialGridTest {
+
+  @Test
+  @DisplayName("Queries return only the items overlapping the region")
+  void testQuery() {
+    SpatialGrid<String> grid = new SpatialGrid<>(100);
+    grid.put("a", new Rectangle2D.Double(10, 10, 20, 20));
+    grid.put("b", new Rectangle2D.Double(250, 250, 20, 20));
+    grid.put("c", new Rectangle2D.Double(-150, 50, 300, 20));
+
+    assertEquals(Set.of("a", "c"), grid.query(new Rectangle2D.Double(0, 0, 100, 100)));
+    assertEquals(Set.of("b"), grid.query(new Rectangle2D.Double(240, 240, 100, 100)));
+    assertEquals(Set.of("c"), grid.query(new Rectangle2D.Double(-120, 55, 10, 10)));
+    assertTrue(grid.query(new Rectangle2D.Double(500, 500, 10, 10)).isEmpty());
+  }
+
+  @Test
+  @DisplayName("Moving and removing items updates the cells")
+  void testMoveAndRemove() {
+    SpatialGrid<String> grid = new SpatialGrid<>(100);
+    grid.put("a", new Rectangle2D.Double(10, 10, 20, 20));
+    grid.put("a", new Rectangle2D.Double(510, 10, 20, 20));
+
+    assertEquals(1, grid.size());
+    assertTrue(grid.query(new Rectangle2D.Double(0, 0, 100, 100)).isEmpty());
+    assertEquals(Set.of("a"), grid.query(new Rectangle2D.Double(500, 0, 100, 100)));
+
+    assertTrue(grid.remove("a"));
+    assertFalse(grid.remove("a"));
+    assertTrue(grid.query(new Rectangle2D.Double(500, 0, 100, 100)).isEmpty());
+  }
+
+  @Test
+  @DisplayName("Items spanning a very large area are still found")
+  void testOversizedItems() {
+    SpatialGrid<String> grid = new SpatialGrid<>(10);
+    grid.put("huge", new Rectangle2D.Double(-100000, -100000, 200000, 200000));
+    grid.put("small", new Rectangle2D.Double(5, 5, 2, 2));
+
+    assertEquals(Set.of("huge", "small"), grid.query(new Rectangle2D.Double(0, 0, 10, 10)));
+    assertEquals(Set.of("huge"), grid.query(new Rectangle2D.Double(90000, 90000, 10, 10)));
+    assertEquals(
+        Set.of("huge", "small"), grid.query(new Rectangle2D.Double(-5000, -5000, 10000, 10000)));
+
+    assertTrue(grid.remove("huge"));
+    assertTrue(grid.query(new Rectangle2D.Double(90000, 90000, 10, 10)).isEmpty());
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import net.rptools.maptool.model.GUID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TokenDecorationCacheTest {
+  private static final Rectangle BOUNDS = new Rectangle(10, 10, 50, 50);
+
+  private final BufferedImage screen = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+  private final TokenDecorationCache cache = new TokenDecorationCache();
+  private final GUID tokenId = new GUID();
+  private int paints;
+
+  private void paint(Rectangle bounds, List<Object> key, Color color) {
+    Graphics2D g = screen.createGraphics();
+    try {
+      cache.paint(
+          g,
+          tokenId,
+          bounds,
+          key,
+          (locg, origin) -> {
+            paints++;
+            locg.setColor(color);
+            locg.fill(origin);
+          });
+    } finally {
+      g.dispose();
+    }
+  }
+
+  /** @return a key like the renderer's: opacity, state values and the overlays shown */
+  private static List<Object> key(Object stateValue, Object overlay) {
+    return List.of(1.0f, stateValue, overlay);
+  }
+
+  @Test
+  @DisplayName("Decorations are painted once and copied while the token is unchanged")
+  void testHit() {
+    Object overlay = new Object();
+    paint(BOUNDS, key(Boolean.TRUE, overlay), Color.RED);
+    paint(BOUNDS, key(Boolean.TRUE, overlay), Color.BLUE);
+
+    assertEquals(1, paints);
+    assertEquals(Color.RED.getRGB(), screen.getRGB(30, 30));
+    assertEquals(0, screen.getRGB(80, 80));
+
+    // Moving the token only moves the copy
+    paint(new Rectangle(40, 40, 50, 50), key(Boolean.TRUE, overlay), Color.BLUE);
+    assertEquals(1, paints);
+    assertEquals(Color.RED.getRGB(), screen.getRGB(80, 80));
+  }
+
+  @Test
+  @DisplayName("Decorations are painted again when a state, an overlay or the size changes")
+  void testInvalidation() {
+    Object overlay = new Object();
+    paint(BOUNDS, key(Boolean.TRUE, overlay), Color.RED);
+
+    paint(BOUNDS, key(0.5, overlay), Color.BLUE);
+    assertEquals(2, paints);
+    assertEquals(Color.BLUE.getRGB(), screen.getRGB(30, 30));
+
+    // Editing an overlay in the campaign properties replaces it
+    paint(BOUNDS, key(0.5, new Object()), Color.GREEN);
+    assertEquals(3, paints);
+    assertEquals(Color.GREEN.getRGB(), screen.getRGB(30, 30));
+
+    paint(new Rectangle(10, 10, 60, 60), key(0.5, overlay), Color.GREEN);
+    assertEquals(4, paints);
+
+    cache.remove(tokenId);
+    paint(new Rectangle(10, 10, 60, 60), key(0.5, overlay), Color.GREEN);
+    assertEquals(5, paints);
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Set;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.model.SquareGrid;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TokenSpatialIndexTest {
+
+  private static final Rectangle2D NEAR = new Rectangle2D.Double(-100, -100, 400, 400);
+  private static final Rectangle2D FAR = new Rectangle2D.Double(4900, 4900, 400, 400);
+
+  private static Zone createZone() {
+    Zone zone = new Zone();
+    zone.setGrid(new SquareGrid());
+    return zone;
+  }
+
+  private static Token createToken(Zone zone, String name, int x, int y) {
+    Token token = new Token(name, new MD5Key("aaaa"));
+    token.setX(x);
+    token.setY(y);
+    zone.putToken(token);
+    return token;
+  }
+
+  @Test
+  @DisplayName("The index is built from the zone and follows moved tokens")
+  void testMove() {
+    Zone zone = createZone();
+    Token token = createToken(zone, "a", 0, 0);
+    TokenSpatialIndex index = new TokenSpatialIndex(zone);
+
+    assertTrue(index.contains(token));
+    assertEquals(Set.of(token), index.query(Zone.Layer.TOKEN, NEAR));
+    assertTrue(index.query(Zone.Layer.TOKEN, FAR).isEmpty());
+
+    token.setX(5000);
+    token.setY(5000);
+    index.update(token);
+    assertTrue(index.contains(token));
+    assertTrue(index.query(Zone.Layer.TOKEN, NEAR).isEmpty());
+    assertEquals(Set.of(token), index.query(Zone.Layer.TOKEN, FAR));
+    assertEquals(Set.of(token), index.query(FAR));
+  }
+
+  @Test
+  @DisplayName("Added, removed and relayered tokens are found only where they now are")
+  void testAddRemove() {
+    Zone zone = createZone();
+    Token first = createToken(zone, "a", 0, 0);
+    TokenSpatialIndex index = new TokenSpatialIndex(zone);
+    assertEquals(Set.of(first), index.query(Zone.Layer.TOKEN, NEAR));
+
+    Token second = createToken(zone, "b", 100, 100);
+    assertFalse(index.contains(second)); // Not looked at again until it is updated
+    index.update(second);
+    assertTrue(index.contains(second));
+    assertEquals(Set.of(first, second), index.query(Zone.Layer.TOKEN, NEAR));
+
+    second.setLayer(Zone.Layer.OBJECT);
+    index.update(second);
+    assertEquals(Zone.Layer.OBJECT, index.getLayer(second));
+    assertEquals(Set.of(first), index.query(Zone.Layer.TOKEN, NEAR));
+    assertEquals(Set.of(second), index.query(Zone.Layer.OBJECT, NEAR));
+
+    index.remove(first);
+    assertFalse(index.contains(first));
+    assertTrue(index.query(Zone.Layer.TOKEN, NEAR).isEmpty());
+
+    // Updating a token that is no longer on the map removes it
+    zone.removeToken(second.getId());
+    index.update(second);
+    assertFalse(index.contains(second));
+    assertNull(index.getLayer(second));
+    assertTrue(index.query(NEAR).isEmpty());
+  }
+}
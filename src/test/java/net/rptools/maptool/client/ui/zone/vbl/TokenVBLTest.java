@@ -0,0 +1,84 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone.vbl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TokenVBLTest {
+  private static final Rectangle SQUARE = new Rectangle(0, 0, 10, 10);
+
+  /** Stands in for the image asset; a new one for each test as the cache is shared. */
+  private final Object image = new Object();
+
+  private int generated;
+
+  private Area get(List<Object> key, boolean cacheable) {
+    return TokenVBL.getCachedArea(
+        key,
+        () -> {
+          generated++;
+          return new Area(SQUARE);
+        },
+        () -> cacheable);
+  }
+
+  @Test
+  @DisplayName("Areas are generated once and changing a copy leaves the cached area unchanged")
+  void testHit() {
+    Area first = get(List.of(image, 10), true);
+    Area second = get(List.of(image, 10), true);
+    assertEquals(1, generated);
+    assertNotSame(first, second);
+    assertTrue(first.equals(second));
+
+    // Editing the VBL of a token edits its copy
+    first.subtract(new Area(new Rectangle(0, 0, 5, 5)));
+    assertTrue(get(List.of(image, 10), true).equals(new Area(SQUARE)));
+    assertEquals(1, generated);
+  }
+
+  @Test
+  @DisplayName("Areas are generated again for another image or parameters, not another position")
+  void testInvalidation() {
+    Area area = get(List.of(image, 10), true);
+    get(List.of(image, 20), true);
+    assertEquals(2, generated);
+    get(List.of(new Object(), 10), true);
+    assertEquals(3, generated);
+
+    // Areas are in image coordinates; each token moves, scales and rotates its own copy
+    AffineTransform at = AffineTransform.getTranslateInstance(100, 50);
+    at.scale(2, 2);
+    at.rotate(Math.PI / 2, 5, 5);
+    Area transformed = get(List.of(image, 10), true).createTransformedArea(at);
+    assertEquals(new Rectangle(100, 50, 20, 20), transformed.getBounds());
+    assertTrue(get(List.of(image, 10), true).equals(area));
+    assertEquals(3, generated);
+
+    // Areas of images that aren't loaded yet aren't kept
+    get(List.of(image, 30), false);
+    get(List.of(image, 30), false);
+    assertEquals(5, generated);
+  }
+}
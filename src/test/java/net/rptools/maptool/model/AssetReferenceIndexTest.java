@@ -0,0 +1,111 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Set;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.model.drawing.DrawableColorPaint;
+import net.rptools.maptool.model.drawing.DrawableTexturePaint;
+import net.rptools.maptool.model.drawing.DrawnElement;
+import net.rptools.maptool.model.drawing.Pen;
+import net.rptools.maptool.model.drawing.ShapeDrawable;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class AssetReferenceIndexTest {
+
+  private static final MD5Key A = new MD5Key("aaaa");
+  private static final MD5Key B = new MD5Key("bbbb");
+  private static final MD5Key C = new MD5Key("cccc");
+
+  private static DrawnElement drawn(MD5Key texture) {
+    Pen pen = new Pen();
+    pen.setPaint(new DrawableTexturePaint(texture));
+    pen.setBackgroundPaint(new DrawableColorPaint(Color.red));
+    return new DrawnElement(new ShapeDrawable(new Rectangle(0, 0, 10, 10)), pen);
+  }
+
+  @Test
+  @DisplayName("An asset stays referenced until the last token or drawable using it is removed")
+  void testAddRemove() {
+    AssetReferenceIndex index = new AssetReferenceIndex();
+    Token first = new Token("first", A);
+    Token second = new Token("second", A);
+    DrawnElement drawing = drawn(B);
+    index.putToken(first);
+    index.putToken(second);
+    index.putDrawable(drawing);
+    index.setZoneAssets(List.of(C));
+    assertEquals(Set.of(A, B, C), index.getAssetIds());
+
+    index.removeToken(first);
+    assertTrue(index.contains(A));
+    assertEquals(Set.of(), index.takeReleased());
+
+    index.removeToken(second);
+    index.removeDrawable(drawing);
+    index.removeToken(second);
+    assertFalse(index.contains(A));
+    assertEquals(Set.of(C), index.getAssetIds());
+    assertEquals(Set.of(A, B), index.takeReleased());
+    assertEquals(Set.of(), index.takeReleased());
+  }
+
+  @Test
+  @DisplayName("Putting a changed token or drawable again moves its references to the new assets")
+  void testRepoint() {
+    AssetReferenceIndex index = new AssetReferenceIndex();
+    Token token = new Token("token", A);
+    DrawnElement drawing = drawn(B);
+    index.putToken(token);
+    index.putDrawable(drawing);
+    assertTrue(index.isCurrent(token));
+
+    token.setPortraitImage(C);
+    assertFalse(index.isCurrent(token));
+    // Not looked at again until it is put
+    assertFalse(index.contains(C));
+
+    index.putToken(token);
+    assertTrue(index.isCurrent(token));
+    assertEquals(Set.of(A, B, C), index.getAssetIds());
+
+    token.setPortraitImage(null);
+    index.putToken(token);
+    assertEquals(Set.of(A, B), index.getAssetIds());
+    assertEquals(Set.of(C), index.takeReleased());
+    token.setPortraitImage(C);
+    index.putToken(token);
+
+    drawing.getPen().setPaint(new DrawableTexturePaint(C));
+    index.putDrawable(drawing);
+    assertEquals(Set.of(A, C), index.getAssetIds());
+    assertEquals(Set.of(B), index.takeReleased());
+
+    // An asset released and then used again isn't reported as released
+    index.setZoneAssets(List.of(B));
+    index.setZoneAssets(List.of());
+    index.putToken(new Token("other", B));
+    assertEquals(Set.of(), index.takeReleased());
+    assertEquals(Set.of(A, B, C), index.getAssetIds());
+  }
+}
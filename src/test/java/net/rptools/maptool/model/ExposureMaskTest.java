@@ -0,0 +1,108 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+import net.rptools.maptool.model.ExposureMask.Answer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ExposureMaskTest {
+
+  @Test
+  @DisplayName("Conclusive answers always agree with the exact area")
+  void testAgreesWithArea() {
+    Random random = new Random(42);
+    Area area = new Area();
+    ExposureMask mask = new ExposureMask(8);
+    for (int i = 0; i < 40; i++) {
+      Area shape =
+          new Area(
+              new Ellipse2D.Double(
+                  random.nextInt(2000) - 1000,
+                  random.nextInt(2000) - 1000,
+                  random.nextInt(300) + 5,
+                  random.nextInt(300) + 5));
+      if (i % 4 == 3) {
+        area.subtract(shape);
+        mask.subtract(shape);
+      } else {
+        area.add(shape);
+        mask.add(shape);
+      }
+    }
+    for (int i = 0; i < 20000; i++) {
+      double x = random.nextDouble() * 2400 - 1200;
+      double y = random.nextDouble() * 2400 - 1200;
+      Answer point = mask.contains(x, y);
+      if (point != Answer.MAYBE) {
+        assertEquals(area.contains(x, y), point == Answer.YES);
+      }
+      Rectangle2D rect = new Rectangle2D.Double(x, y, random.nextInt(80) + 1, 50);
+      Answer intersects = mask.intersects(rect);
+      if (intersects != Answer.MAYBE) {
+        assertEquals(area.intersects(rect), intersects == Answer.YES);
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Only cells on the edge of the area are undecided")
+  void testInteriorIsConclusive() {
+    ExposureMask mask = ExposureMask.fromArea(new Area(new Rectangle2D.Double(0, 0, 100, 100)), 8);
+    assertEquals(Answer.YES, mask.contains(50, 50));
+    assertEquals(Answer.NO, mask.contains(150, 50));
+    assertEquals(Answer.NO, mask.contains(-50, -50));
+    assertEquals(Answer.MAYBE, mask.contains(99, 50));
+    assertEquals(Answer.YES, mask.intersects(new Rectangle2D.Double(70, 40, 50, 20)));
+    assertEquals(Answer.NO, mask.intersects(new Rectangle2D.Double(120, 40, 50, 20)));
+  }
+
+  @Test
+  @DisplayName("Converting back to an area covers the original")
+  void testToAreaCoversOriginal() {
+    Area area = new Area(new Ellipse2D.Double(-300, 200, 517, 311));
+    area.subtract(new Area(new Rectangle2D.Double(-100, 300, 40, 40)));
+    Area converted = ExposureMask.fromArea(area, 8).toArea();
+    Area uncovered = new Area(area);
+    uncovered.subtract(converted);
+    assertTrue(uncovered.isEmpty());
+    assertFalse(converted.contains(-80, 320)); // Well inside the hole
+  }
+
+  @Test
+  @DisplayName("Union combines exposure and clear removes it")
+  void testUnionAndClear() {
+    ExposureMask first = ExposureMask.fromArea(new Area(new Rectangle2D.Double(0, 0, 64, 64)), 8);
+    ExposureMask second =
+        ExposureMask.fromArea(new Area(new Rectangle2D.Double(5000, 0, 64, 64)), 8);
+    first.union(second);
+    assertEquals(Answer.YES, first.contains(32, 32));
+    assertEquals(Answer.YES, first.contains(5032, 32));
+    assertNotEquals(Answer.YES, second.contains(32, 32));
+
+    first.clear();
+    assertTrue(first.isEmpty());
+    assertEquals(Answer.NO, first.contains(32, 32));
+  }
+}
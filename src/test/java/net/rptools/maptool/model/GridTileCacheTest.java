@@ -0,0 +1,136 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class GridTileCacheTest {
+
+  @Test
+  @DisplayName("Copies of the tile cover the painted area without gaps")
+  void testCoversBounds() {
+    BufferedImage image = new BufferedImage(700, 500, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    GridTileCache cache = new GridTileCache();
+    Rectangle bounds = new Rectangle(13, 7, 650, 480);
+    boolean painted =
+        cache.paint(
+            g,
+            bounds,
+            -41.5,
+            1000.25,
+            37.3,
+            51.9,
+            List.of(1),
+            (tile, width, height) -> {
+              tile.setColor(Color.RED);
+              tile.fillRect(0, 0, width, height);
+            });
+    g.dispose();
+
+    assertTrue(painted);
+    for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+      for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+        assertEquals(Color.RED.getRGB(), image.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("The tile is only redrawn when the pattern changes")
+  void testRedrawnOnKeyChange() {
+    BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    GridTileCache cache = new GridTileCache();
+    int[] paints = new int[1];
+    GridTileCache.TilePainter painter = (tile, width, height) -> paints[0]++;
+    Rectangle bounds = new Rectangle(0, 0, 100, 100);
+
+    cache.paint(g, bounds, 0, 0, 50, 50, List.of(1), painter);
+    cache.paint(g, bounds, 17, 3, 50, 50, List.of(1), painter);
+    assertEquals(1, paints[0]);
+    cache.paint(g, bounds, 17, 3, 50, 50, List.of(2), painter);
+    assertEquals(2, paints[0]);
+    assertFalse(cache.paint(g, bounds, 0, 0, 5000, 50, List.of(2), painter));
+    g.dispose();
+  }
+
+  @Test
+  @DisplayName("Lines with a fractional period stay evenly spaced across the copies of the tile")
+  void testFractionalPeriod() {
+    double period = 41.7;
+    int originX = 13;
+    int originY = -20;
+    BufferedImage image = new BufferedImage(1500, 900, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    boolean painted =
+        new GridTileCache()
+            .paint(
+                g,
+                new Rectangle(0, 0, 1500, 900),
+                originX,
+                originY,
+                period,
+                period,
+                List.of(1),
+                (tile, width, height) -> {
+                  tile.setColor(Color.RED);
+                  for (int i = 0; i * period < width; i++) {
+                    tile.drawLine((int) (i * period), 0, (int) (i * period), height);
+                  }
+                  for (int i = 0; i * period < height; i++) {
+                    tile.drawLine(0, (int) (i * period), width, (int) (i * period));
+                  }
+                });
+    g.dispose();
+    assertTrue(painted);
+
+    // A row between two horizontal lines crosses only the vertical ones
+    int y = (int) (originY + period * 3 / 2);
+    List<Integer> lines = new ArrayList<>();
+    for (int x = 0; x < image.getWidth(); x++) {
+      if (image.getRGB(x, y) == Color.RED.getRGB()) {
+        lines.add(x);
+      }
+    }
+    assertTrue(lines.size() > 30);
+    for (int i = 0; i < lines.size(); i++) {
+      int x = lines.get(i);
+      double exact = originX + Math.round((x - originX) / period) * period;
+      assertTrue(Math.abs(x - exact) < 1, "line at " + x);
+      if (i > 0) {
+        int spacing = x - lines.get(i - 1);
+        assertTrue(spacing == 41 || spacing == 42, "spacing " + spacing + " before " + x);
+      }
+    }
+
+    // Horizontal lines run through the edges of the copies without gaps
+    int lineY = (int) (originY + period * 10);
+    for (int x = 0; x < image.getWidth(); x++) {
+      assertEquals(Color.RED.getRGB(), image.getRGB(x, lineY), "gap at " + x);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import net.rptools.parser.ParserException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LookupTableTest {
+
+  @Test
+  @DisplayName("Integer lookups resolve to the last matching entry and clamp to the table range")
+  void testIntegerLookup() throws ParserException {
+    LookupTable table = new LookupTable();
+    assertNull(table.getLookup(0));
+
+    table.addEntry(-180, 0, "west", null);
+    table.addEntry(1, 180, "east", null);
+    table.addEntry(90, 90, "north", null);
+
+    assertEquals("west", table.getLookup(-90).getValue());
+    assertEquals("east", table.getLookup(45).getValue());
+    assertEquals("north", table.getLookup(90).getValue());
+    assertEquals("west", table.getLookup(-1000).getValue());
+    assertEquals("east", table.getLookup(1000).getValue());
+  }
+
+  @Test
+  @DisplayName("Integer lookups follow changes to the entries")
+  void testIntegerLookupAfterEdit() throws ParserException {
+    LookupTable table = new LookupTable();
+    table.addEntry(0, 359, "any", null);
+    assertEquals("any", table.getLookup(270).getValue());
+
+    table.addEntry(270, 270, "south", null);
+    assertEquals("south", table.getLookup(270).getValue());
+
+    table.clearEntries();
+    table.addEntry(0, 100000, "wide", null);
+    assertEquals("wide", table.getLookup(270).getValue());
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ShapedAreaCacheTest {
+
+  @Test
+  @DisplayName("Shapes are built once per key and callers get independent copies")
+  void testCopiesAreIndependent() {
+    ShapedAreaCache cache = new ShapedAreaCache();
+    AtomicInteger built = new AtomicInteger();
+    List<Object> key = List.of(ShapeType.SQUARE, 10.0);
+
+    Area first =
+        cache.get(
+            key,
+            () -> {
+              built.incrementAndGet();
+              return new Area(new Rectangle(-10, -10, 20, 20));
+            });
+    first.transform(AffineTransform.getTranslateInstance(100, 100));
+    Area second = cache.get(key, () -> new Area());
+
+    assertEquals(1, built.get());
+    assertNotSame(first, second);
+    assertEquals(new Rectangle(90, 90, 20, 20), first.getBounds());
+    assertEquals(new Rectangle(-10, -10, 20, 20), second.getBounds());
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Set;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TokenQueryIndexTest {
+
+  private static Token token(String name, Zone.Layer layer, Token.Type type) {
+    Token token = new Token();
+    token.setName(name);
+    token.setLayer(layer);
+    token.setType(type);
+    return token;
+  }
+
+  @Test
+  @DisplayName("Tokens are found by each attribute they were put with")
+  void testLookup() {
+    TokenQueryIndex index = new TokenQueryIndex();
+    Token goblin = token("Goblin", Zone.Layer.TOKEN, Token.Type.NPC);
+    goblin.setGMName("Boss");
+    goblin.setHasSight(true);
+    Token hero = token("Hero", Zone.Layer.TOKEN, Token.Type.PC);
+    Token tree = token("goblin", Zone.Layer.OBJECT, Token.Type.NPC);
+    tree.setTerrainModifierOperation(Token.TerrainModifierOperation.MULTIPLY);
+    index.put(goblin);
+    index.put(hero);
+    index.put(tree);
+
+    assertEquals(Set.of(goblin.getId(), tree.getId()), index.getByName("GOBLIN"));
+    assertEquals(Set.of(goblin.getId()), index.getByGMName("boss"));
+    assertEquals(Set.of(goblin.getId(), hero.getId()), index.getByLayer(Zone.Layer.TOKEN));
+    assertEquals(Set.of(), index.getByLayer(Zone.Layer.GM));
+    assertEquals(Set.of(hero.getId()), index.getByType(Token.Type.PC));
+    assertEquals(Set.of(goblin.getId()), index.getWithSight());
+    assertEquals(Set.of(tree.getId()), index.getWithTerrainModifier());
+    assertEquals(Set.of(), index.getWithVBL());
+    assertEquals(Set.of(), index.getByName(null));
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> index.getByLayer(Zone.Layer.TOKEN).add(tree.getId()));
+  }
+
+  @Test
+  @DisplayName("Putting a token again files it under its new attributes only")
+  void testPutAgain() {
+    TokenQueryIndex index = new TokenQueryIndex();
+    Token token = token("Goblin", Zone.Layer.TOKEN, Token.Type.NPC);
+    index.put(token);
+
+    token.setName("Orc");
+    token.setLayer(Zone.Layer.GM);
+    token.setHasSight(true);
+    // Not refiled until it is put again
+    assertEquals(Set.of(token.getId()), index.getByName("Goblin"));
+    assertEquals(Set.of(), index.getByLayer(Zone.Layer.GM));
+
+    index.put(token);
+    assertEquals(Set.of(), index.getByName("Goblin"));
+    assertEquals(Set.of(token.getId()), index.getByName("orc"));
+    assertEquals(Set.of(), index.getByLayer(Zone.Layer.TOKEN));
+    assertEquals(Set.of(token.getId()), index.getByLayer(Zone.Layer.GM));
+    assertEquals(Set.of(token.getId()), index.getByType(Token.Type.NPC));
+    assertEquals(Set.of(token.getId()), index.getWithSight());
+  }
+
+  @Test
+  @DisplayName("Removed tokens are no longer found, even if they changed since they were put")
+  void testRemove() {
+    TokenQueryIndex index = new TokenQueryIndex();
+    Token a = token("Goblin", Zone.Layer.TOKEN, Token.Type.NPC);
+    Token b = token("Goblin", Zone.Layer.TOKEN, Token.Type.NPC);
+    a.setHasSight(true);
+    index.put(a);
+    index.put(b);
+
+    a.setLayer(Zone.Layer.BACKGROUND);
+    index.remove(a);
+    assertEquals(Set.of(b.getId()), index.getByName("goblin"));
+    assertEquals(Set.of(b.getId()), index.getByLayer(Zone.Layer.TOKEN));
+    assertEquals(Set.of(), index.getWithSight());
+
+    index.remove(b);
+    index.remove(b);
+    assertEquals(Set.of(), index.getByName("goblin"));
+    assertEquals(Set.of(), index.getByType(Token.Type.NPC));
+  }
+}
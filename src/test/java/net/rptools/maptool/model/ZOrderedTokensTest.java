@@ -0,0 +1,63 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ZOrderedTokensTest {
+
+  private static Token token(int zOrder) {
+    Token token = new Token();
+    token.setZOrder(zOrder);
+    return token;
+  }
+
+  @Test
+  @DisplayName("Tokens stay ordered when their z-order is changed in place")
+  void testOrderFollowsZOrder() {
+    Token a = token(3);
+    Token b = token(1);
+    Token c = token(2);
+    ArrayList<Token> list = new ArrayList<>(List.of(a, b));
+    ZOrderedTokens tokens = new ZOrderedTokens(list);
+    tokens.put(c);
+    assertEquals(List.of(b, c, a), tokens.getSnapshot());
+    assertEquals(list, tokens.getSnapshot());
+
+    List<Token> before = tokens.getSnapshot();
+    tokens.put(c);
+    assertSame(before, tokens.getSnapshot());
+
+    b.setZOrder(5);
+    tokens.put(b);
+    assertEquals(List.of(c, a, b), tokens.getSnapshot());
+    assertEquals(2, tokens.getSmallestZOrder());
+    assertEquals(5, tokens.getLargestZOrder());
+
+    c.setZOrder(4);
+    a.setZOrder(6);
+    tokens.resort();
+    assertEquals(List.of(c, b, a), tokens.getSnapshot());
+
+    tokens.remove(b);
+    assertEquals(List.of(c, a), list);
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import net.rptools.lib.io.ParallelZipWriter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CampaignArchiveExporterTest {
+
+  private static byte[] readEntry(ZipFile zipFile, String name) throws IOException {
+    ZipEntry entry = zipFile.getEntry(name);
+    assertNotNull(entry, name);
+    try (InputStream in = zipFile.getInputStream(entry)) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static void writeArchive(File file, String... namesAndContents) throws IOException {
+    try (ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(file))) {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        zout.putNextEntry(new ZipEntry(namesAndContents[i]));
+        zout.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+        zout.closeEntry();
+      }
+    }
+  }
+
+  private static CampaignArchiveExporter newExporter(Object content) {
+    CampaignArchiveExporter exporter = new CampaignArchiveExporter();
+    exporter.setContent(content);
+    exporter.setProperty("version", "1.0");
+    return exporter;
+  }
+
+  @Test
+  @DisplayName("The content and properties are written where PackedFile reads them")
+  void testExport(@TempDir File tempDir) throws IOException {
+    File file = new File(tempDir, "test.cmpgn");
+    CampaignArchiveExporter exporter = newExporter(List.of("a", "b"));
+    List<int[]> updates = new ArrayList<>();
+    exporter.export(
+        file,
+        new CampaignArchiveExporter.Progress() {
+          @Override
+          public void update(int done, int total) {
+            updates.add(new int[] {done, total});
+          }
+
+          @Override
+          public boolean isCancelled() {
+            return false;
+          }
+        });
+
+    try (ZipFile zipFile = new ZipFile(file)) {
+      String content = new String(readEntry(zipFile, "content.xml"), StandardCharsets.UTF_8);
+      assertEquals(List.of("a", "b"), exporter.getXStream().fromXML(content));
+      String properties = new String(readEntry(zipFile, "properties.xml"), StandardCharsets.UTF_8);
+      assertEquals("1.0", ((Map<?, ?>) exporter.getXStream().fromXML(properties)).get("version"));
+    }
+    assertArrayEquals(new int[] {2, 2}, updates.get(updates.size() - 1));
+    assertEquals(1, tempDir.listFiles().length);
+  }
+
+  @Test
+  @DisplayName("Unrelated entries of an existing archive are kept only when asked for")
+  void testKeepExistingEntries(@TempDir File tempDir) throws IOException {
+    File file = new File(tempDir, "test.mtprops");
+    writeArchive(file, "content.xml", "old", "assets/old", "old", "extra/notes.txt", "notes");
+    CampaignArchiveExporter exporter = newExporter("new");
+    exporter.setKeepExistingEntries(true);
+    exporter.export(file, CampaignArchiveExporter.NO_PROGRESS);
+    try (ZipFile zipFile = new ZipFile(file)) {
+      assertArrayEquals(
+          "notes".getBytes(StandardCharsets.UTF_8), readEntry(zipFile, "extra/notes.txt"));
+      assertNull(zipFile.getEntry("assets/old"));
+      String content = new String(readEntry(zipFile, "content.xml"), StandardCharsets.UTF_8);
+      assertEquals("new", exporter.getXStream().fromXML(content));
+    }
+
+    newExporter("new").export(file, CampaignArchiveExporter.NO_PROGRESS);
+    try (ZipFile zipFile = new ZipFile(file)) {
+      assertNull(zipFile.getEntry("extra/notes.txt"));
+    }
+  }
+
+  @Test
+  @DisplayName("A cancelled export leaves the existing file alone and cleans up after itself")
+  void testCancelled(@TempDir File tempDir) throws IOException {
+    File file = new File(tempDir, "test.cmpgn");
+    writeArchive(file, "content.xml", "old");
+    byte[] before = Files.readAllBytes(file.toPath());
+    CampaignArchiveExporter.Progress cancelled =
+        new CampaignArchiveExporter.Progress() {
+          @Override
+          public void update(int done, int total) {}
+
+          @Override
+          public boolean isCancelled() {
+            return true;
+          }
+        };
+    assertThrows(InterruptedIOException.class, () -> newExporter("new").export(file, cancelled));
+    assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+    assertEquals(1, tempDir.listFiles().length);
+  }
+
+  @Test
+  @DisplayName("Archives with too many entries for ParallelZipWriter are written with ZIP64")
+  void testTooManyEntries(@TempDir File tempDir) throws IOException {
+    File file = new File(tempDir, "test.mtprops");
+    int entries = ParallelZipWriter.MAX_ENTRIES + 10;
+    try (ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(file))) {
+      for (int i = 0; i < entries; i++) {
+        zout.putNextEntry(new ZipEntry("extra/" + i));
+        zout.closeEntry();
+      }
+    }
+    CampaignArchiveExporter exporter = newExporter("new");
+    exporter.setKeepExistingEntries(true);
+    exporter.export(file, CampaignArchiveExporter.NO_PROGRESS);
+
+    try (ZipFile zipFile = new ZipFile(file)) {
+      assertEquals(entries + 2, zipFile.size());
+      assertNotNull(zipFile.getEntry("extra/" + (entries - 1)));
+      String content = new String(readEntry(zipFile, "content.xml"), StandardCharsets.UTF_8);
+      assertEquals("new", exporter.getXStream().fromXML(content));
+    }
+    assertEquals(1, tempDir.listFiles().length);
+  }
+}
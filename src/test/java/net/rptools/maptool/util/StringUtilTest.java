@@ -16,6 +16,7 @@
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.List;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -33,4 +34,36 @@ void testCountOccurances() throws Exception {
     assertEquals(2, StringUtil.countOccurances("one<div>two<div>three", str));
     assertEquals(3, StringUtil.countOccurances("one<div>two<div>three<div>", str));
   }
+
+  @Test
+  @DisplayName("Folded names are equal exactly when the names are equal ignoring case")
+  void testFoldCaseMatchesEqualsIgnoreCase() {
+    List<String> names =
+        List.of(
+            "Goblin", "GOBLIN", "goblin 1", "\u01C4", "\u01C5", "\u01C6", "\u0130", "i", "\u0131",
+            "");
+    for (String a : names) {
+      for (String b : names) {
+        assertEquals(
+            a.equalsIgnoreCase(b),
+            StringUtil.foldCase(a).equals(StringUtil.foldCase(b)),
+            a + " / " + b);
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Equal strings are shared as one instance, strings differing in case are not")
+  void testShare() {
+    String shared = StringUtil.share(new String("[h: x = 1]"));
+    assertSame(shared, StringUtil.share(new String("[h: x = 1]")));
+    assertEquals("[h: x = 1]", shared);
+
+    String upper = StringUtil.share(new String("[H: X = 1]"));
+    assertNotSame(shared, upper);
+    assertEquals("[H: X = 1]", upper);
+    assertSame(upper, StringUtil.share(new String("[H: X = 1]")));
+
+    assertNull(StringUtil.share(null));
+  }
 }